@@ -59,8 +59,10 @@ var Languages = LanguageOptions{
 		"generated_annotations": "[undated|suppress] " +
 			"undated: suppress the date at @Generated annotations, " +
 			"suppress: suppress @Generated annotations entirely",
-		"async":            "Generate async client code using futures",
-		"boxed_primitives": "Generate primitives as the boxed equivalents",
+		"async":             "Generate async client code using futures",
+		"boxed_primitives":  "Generate primitives as the boxed equivalents",
+		"batch_subscribers": "Generate scope subscribe methods which deliver messages in batches",
+		"delta_structs":     "Generate scope publishers and subscribers which send only the changed fields of structs",
 	},
 	"dart": Options{
 		"library_prefix": "Generate code that can be used within an existing library. " +
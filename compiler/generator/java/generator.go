@@ -17,6 +17,7 @@ import (
 	"fmt"
 	"os"
 	"path/filepath"
+	"regexp"
 	"strconv"
 	"strings"
 	"time"
@@ -27,6 +28,8 @@ import (
 	"github.com/Workiva/frugal/compiler/parser"
 )
 
+var topicVariable = regexp.MustCompile("{\\w*}")
+
 const (
 	lang                        = "java"
 	defaultOutputDir            = "gen-java"
@@ -2307,6 +2310,15 @@ func (g *Generator) GenerateScopeImports(file *os.File, s *parser.Scope) error {
 	imports += "import com.workiva.frugal.transport.FSubscriberTransport;\n"
 	imports += "import com.workiva.frugal.transport.FSubscription;\n"
 	imports += "import com.workiva.frugal.transport.TMemoryOutputBuffer;\n"
+	if g.generateDeltaStructs() {
+		imports += "import com.workiva.frugal.util.DeltaDecoder;\n"
+		imports += "import com.workiva.frugal.util.DeltaEncoder;\n"
+	}
+	// Only publishers of scopes with fan-out publish methods use FanOutFrame.
+	if hasFanOut(s) && strings.HasSuffix(file.Name(), "Publisher.java") {
+		imports += "import com.workiva.frugal.util.FanOutFrame;\n"
+	}
+	imports += "import com.workiva.frugal.util.TopicTemplate;\n"
 	imports += "import org.apache.thrift.TException;\n"
 	imports += "import org.apache.thrift.TApplicationException;\n"
 	imports += "import org.apache.thrift.transport.TTransport;\n"
@@ -2366,6 +2378,11 @@ func (g *Generator) generatePublisherIface(scope *parser.Scope) string {
 
 	contents += tabtab + "public void open() throws TException;\n\n"
 	contents += tabtab + "public void close() throws TException;\n\n"
+	contents += tabtab + "/**\n"
+	contents += tabtab + " * Blocks until previously published messages have been sent. Does nothing unless overridden.\n"
+	contents += tabtab + " */\n"
+	contents += tabtab + "public default void flush() throws TException {\n"
+	contents += tabtab + "}\n\n"
 
 	args := g.generateScopePrefixArgs(scope)
 
@@ -2374,6 +2391,14 @@ func (g *Generator) generatePublisherIface(scope *parser.Scope) string {
 			contents += g.GenerateBlockComment(op.Comment, tabtab)
 		}
 		contents += fmt.Sprintf(tabtab+"public void publish%s(FContext ctx, %s%s req) throws TException;\n\n", op.Name, args, g.getJavaTypeFromThriftType(op.Type))
+		if hasFanOut(scope) {
+			prefixVar := scope.Prefix.Variables[0]
+			contents += g.GenerateBlockComment([]string{
+				fmt.Sprintf("Publishes req to the topic of each of the given %s values, serializing it only once.", prefixVar),
+			}, tabtab)
+			contents += fmt.Sprintf(tabtab+"public void publish%sToMany(FContext ctx, java.util.Collection<String> %sValues, %s req) throws TException;\n\n",
+				op.Name, prefixVar, g.getJavaTypeFromThriftType(op.Type))
+		}
 	}
 
 	contents += tab + "}\n\n"
@@ -2389,7 +2414,6 @@ func (g *Generator) generatePublisherClient(scope *parser.Scope) string {
 		publisher += g.GenerateBlockComment(scope.Comment, tab)
 	}
 	publisher += tab + "public static class Client implements Iface {\n"
-	publisher += fmt.Sprintf(tabtab+"private static final String DELIMITER = \"%s\";\n\n", globals.TopicDelimiter)
 	publisher += tabtab + "private final Iface target;\n"
 	publisher += tabtab + "private final Iface proxy;\n\n"
 
@@ -2409,6 +2433,10 @@ func (g *Generator) generatePublisherClient(scope *parser.Scope) string {
 	publisher += tabtabtab + "target.close();\n"
 	publisher += tabtab + "}\n\n"
 
+	publisher += tabtab + "public void flush() throws TException {\n"
+	publisher += tabtabtab + "target.flush();\n"
+	publisher += tabtab + "}\n\n"
+
 	args := g.generateScopePrefixArgs(scope)
 
 	for _, op := range scope.Operations {
@@ -2418,10 +2446,29 @@ func (g *Generator) generatePublisherClient(scope *parser.Scope) string {
 		publisher += fmt.Sprintf(tabtab+"public void publish%s(FContext ctx, %s%s req) throws TException {\n", op.Name, args, g.getJavaTypeFromThriftType(op.Type))
 		publisher += fmt.Sprintf(tabtabtab+"proxy.publish%s(%s);\n", op.Name, g.generateScopeArgs(scope))
 		publisher += tabtab + "}\n\n"
+
+		if hasFanOut(scope) {
+			prefixVar := scope.Prefix.Variables[0]
+			publisher += g.GenerateBlockComment([]string{
+				fmt.Sprintf("Publishes req to the topic of each of the given %s values, serializing it only once.", prefixVar),
+			}, tabtab)
+			publisher += fmt.Sprintf(tabtab+"public void publish%sToMany(FContext ctx, java.util.Collection<String> %sValues, %s req) throws TException {\n",
+				op.Name, prefixVar, g.getJavaTypeFromThriftType(op.Type))
+			publisher += fmt.Sprintf(tabtabtab+"proxy.publish%sToMany(ctx, %sValues, req);\n", op.Name, prefixVar)
+			publisher += tabtab + "}\n\n"
+		}
 	}
 
 	publisher += fmt.Sprintf(tabtab+"protected static class Internal%sPublisher implements Iface {\n\n", scopeTitle)
 
+	publisher += g.generateTopicTemplates(scope, tabtabtab)
+	publisher += "\n"
+	for _, op := range scope.Operations {
+		if g.isDeltaOp(op) {
+			publisher += tabtabtab + fmt.Sprintf("private final %s %s = %s;\n",
+				g.deltaType("DeltaEncoder", op), deltaEncoderName(op), g.newDeltaEncoder(op))
+		}
+	}
 	publisher += tabtabtab + "private FScopeProvider provider;\n"
 	publisher += tabtabtab + "private FPublisherTransport transport;\n"
 
@@ -2445,6 +2492,10 @@ func (g *Generator) generatePublisherClient(scope *parser.Scope) string {
 	publisher += tabtabtabtab + "transport.close();\n"
 	publisher += tabtabtab + "}\n\n"
 
+	publisher += tabtabtab + "public void flush() throws TException {\n"
+	publisher += tabtabtabtab + "transport.flush();\n"
+	publisher += tabtabtab + "}\n\n"
+
 	prefix := ""
 	for _, op := range scope.Operations {
 		publisher += prefix
@@ -2453,23 +2504,47 @@ func (g *Generator) generatePublisherClient(scope *parser.Scope) string {
 			publisher += g.GenerateBlockComment(op.Comment, tabtabtab)
 		}
 
-		publisher += fmt.Sprintf(tabtabtab+"public void publish%s(FContext ctx, %s%s req) throws TException {\n", op.Name, args, g.getJavaTypeFromThriftType(op.Type))
+		reqType := g.getJavaTypeFromThriftType(op.Type)
+		publisher += fmt.Sprintf(tabtabtab+"public void publish%s(FContext ctx, %s%s req) throws TException {\n", op.Name, args, reqType)
 
 		// Inject the prefix variables into the FContext to send
 		for _, prefixVar := range scope.Prefix.Variables {
 			publisher += fmt.Sprintf(tabtabtabtab+"ctx.addRequestHeader(\"_topic_%s\", %s);\n", prefixVar, prefixVar)
 		}
 
+		publisher += tabtabtabtab + fmt.Sprintf("String topic = %s;\n", generateTopicFormat(scope, op))
+		if g.isDeltaOp(op) {
+			publisher += tabtabtabtab + fmt.Sprintf("transport.publish(topic, write%s(ctx, %s.encode(topic, ctx, req)));\n",
+				op.Name, deltaEncoderName(op))
+		} else {
+			publisher += tabtabtabtab + fmt.Sprintf("transport.publish(topic, write%s(ctx, req));\n", op.Name)
+		}
+		publisher += tabtabtab + "}\n\n"
+
+		if hasFanOut(scope) {
+			prefixVar := scope.Prefix.Variables[0]
+			publisher += fmt.Sprintf(tabtabtab+"public void publish%sToMany(FContext ctx, java.util.Collection<String> %sValues, %s req) throws TException {\n",
+				op.Name, prefixVar, reqType)
+			if g.isDeltaOp(op) {
+				// Keyframes are tracked per topic, so a message shared by many topics is sent in full.
+				publisher += tabtabtabtab + "DeltaEncoder.removeHeaders(ctx);\n"
+			}
+			publisher += tabtabtabtab + fmt.Sprintf("FanOutFrame frame = new FanOutFrame(write%s(ctx, req), \"_topic_%s\");\n", op.Name, prefixVar)
+			publisher += tabtabtabtab + fmt.Sprintf("for (String %s : %sValues) {\n", prefixVar, prefixVar)
+			publisher += tabtabtabtabtab + fmt.Sprintf("transport.publish(%s, frame.toFrame(%s));\n", generateTopicFormat(scope, op), prefixVar)
+			publisher += tabtabtabtab + "}\n"
+			publisher += tabtabtab + "}\n\n"
+		}
+
+		publisher += fmt.Sprintf(tabtabtab+"private byte[] write%s(FContext ctx, %s req) throws TException {\n", op.Name, reqType)
 		publisher += tabtabtabtab + fmt.Sprintf("String op = \"%s\";\n", op.Name)
-		publisher += tabtabtabtab + fmt.Sprintf("String prefix = %s;\n", generatePrefixStringTemplate(scope))
-		publisher += tabtabtabtab + "String topic = String.format(\"%s" + strings.Title(scope.Name) + "%s%s\", prefix, DELIMITER, op);\n"
 		publisher += tabtabtabtab + "TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());\n"
 		publisher += tabtabtabtab + "FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);\n"
 		publisher += tabtabtabtab + "oprot.writeRequestHeader(ctx);\n"
 		publisher += tabtabtabtab + "oprot.writeMessageBegin(new TMessage(op, TMessageType.CALL, 0));\n"
 		publisher += g.generateWriteFieldRec(parser.FieldFromType(op.Type, "req"), false, false, tabtabtabtab)
 		publisher += tabtabtabtab + "oprot.writeMessageEnd();\n"
-		publisher += tabtabtabtab + "transport.publish(topic, memoryBuffer.getWriteBytes());\n"
+		publisher += tabtabtabtab + "return memoryBuffer.getWriteBytes();\n"
 		publisher += tabtabtab + "}\n"
 	}
 
@@ -2479,23 +2554,42 @@ func (g *Generator) generatePublisherClient(scope *parser.Scope) string {
 	return publisher
 }
 
-func generatePrefixStringTemplate(scope *parser.Scope) string {
-	if len(scope.Prefix.Variables) == 0 {
-		if scope.Prefix.String == "" {
-			return `""`
-		}
-		return fmt.Sprintf(`"%s%s"`, scope.Prefix.String, globals.TopicDelimiter)
+// generateTopicTemplates generates a precompiled TopicTemplate constant for
+// each operation of the scope, so topics are built without parsing a format
+// string on every publish.
+func (g *Generator) generateTopicTemplates(scope *parser.Scope, indent string) string {
+	prefix := scope.Prefix.String
+	if prefix != "" {
+		prefix += globals.TopicDelimiter
 	}
-	template := "String.format(\""
-	template += scope.Prefix.Template("%s")
-	template += globals.TopicDelimiter + "\", "
-	prefix := ""
-	for _, variable := range scope.Prefix.Variables {
-		template += prefix + variable
-		prefix = ", "
+	contents := ""
+	for _, op := range scope.Operations {
+		topic := prefix + strings.Title(scope.Name) + globals.TopicDelimiter + op.Name
+		segments := []string{}
+		for _, segment := range topicVariable.Split(topic, -1) {
+			segments = append(segments, fmt.Sprintf("\"%s\"", segment))
+		}
+		contents += fmt.Sprintf(indent+"private static final TopicTemplate %s = new TopicTemplate(%s);\n",
+			topicTemplateName(op), strings.Join(segments, ", "))
 	}
-	template += ")"
-	return template
+	return contents
+}
+
+// generateTopicFormat generates the expression building the topic of an
+// operation from the scope prefix variables.
+func generateTopicFormat(scope *parser.Scope, op *parser.Operation) string {
+	return fmt.Sprintf("%s.format(%s)", topicTemplateName(op), strings.Join(scope.Prefix.Variables, ", "))
+}
+
+// hasFanOut returns true if publish methods which serialize a message once
+// and publish it to many topics should be generated for the scope, i.e. the
+// scope prefix has a single variable.
+func hasFanOut(scope *parser.Scope) bool {
+	return len(scope.Prefix.Variables) == 1
+}
+
+func topicTemplateName(op *parser.Operation) string {
+	return toConstantName(op.Name) + "_TOPIC"
 }
 
 func (g *Generator) GenerateSubscriber(file *os.File, scope *parser.Scope) error {
@@ -2548,6 +2642,19 @@ func (g *Generator) generateSubscriberIface(scope *parser.Scope) string {
 	}
 
 	contents += tab + "}\n\n"
+
+	if g.generateBatchSubscribers() {
+		// generate a batch interface
+		contents += tab + "public interface BatchIface {\n"
+		for _, op := range scope.Operations {
+			if op.Comment != nil {
+				contents += g.GenerateBlockComment(op.Comment, tabtab)
+			}
+			contents += fmt.Sprintf(tabtab+"public FSubscription subscribe%sBatch(%sint maxBatchSize, long maxBatchDelay, final %sBatchHandler handler) throws TException;\n\n",
+				op.Name, args, op.Name)
+		}
+		contents += tab + "}\n\n"
+	}
 	return contents
 }
 
@@ -2568,6 +2675,16 @@ func (g *Generator) generateHandlerIfaces(scope *parser.Scope) string {
 		contents += tab + "}\n\n"
 	}
 
+	// generate batch handler interfaces
+	if g.generateBatchSubscribers() {
+		for _, op := range scope.Operations {
+			contents += fmt.Sprintf(tab+"public interface %sBatchHandler {\n", op.Name)
+			contents += fmt.Sprintf(tabtab+"void on%sBatch(List<FContext> ctxs, List<%s> reqs) throws TException;\n",
+				op.Name, containerType(g.getJavaTypeFromThriftType(op.Type)))
+			contents += tab + "}\n\n"
+		}
+	}
+
 	return contents
 }
 
@@ -2580,10 +2697,15 @@ func (g *Generator) generateSubscriberClient(scope *parser.Scope) string {
 	if scope.Comment != nil {
 		subscriber += g.GenerateBlockComment(scope.Comment, tab)
 	}
-	subscriber += tab + "public static class Client implements Iface, IfaceThrowable {\n"
+	ifaces := "Iface, IfaceThrowable"
+	if g.generateBatchSubscribers() {
+		ifaces += ", BatchIface"
+	}
+	subscriber += tab + fmt.Sprintf("public static class Client implements %s {\n", ifaces)
 
-	subscriber += fmt.Sprintf(tabtab+"private static final String DELIMITER = \"%s\";\n", globals.TopicDelimiter)
 	subscriber += tabtab + "private static final Logger LOGGER = LoggerFactory.getLogger(Client.class);\n\n"
+	subscriber += g.generateTopicTemplates(scope, tabtab)
+	subscriber += "\n"
 
 	subscriber += tabtab + "private final FScopeProvider provider;\n"
 	subscriber += tabtab + "private final ServiceMiddleware[] middleware;\n\n"
@@ -2610,8 +2732,7 @@ func (g *Generator) generateSubscriberClient(scope *parser.Scope) string {
 				subscriber += tabtab + fmt.Sprintf("public FSubscription subscribe%s(%sfinal %sHandler handler) throws TException {\n", op.Name, args, op.Name)
 			}
 			subscriber += tabtabtab + fmt.Sprintf("final String op = \"%s\";\n", op.Name)
-			subscriber += tabtabtab + fmt.Sprintf("String prefix = %s;\n", generatePrefixStringTemplate(scope))
-			subscriber += tabtabtab + "final String topic = String.format(\"%s" + strings.Title(scope.Name) + "%s%s\", prefix, DELIMITER, op);\n"
+			subscriber += tabtabtab + fmt.Sprintf("final String topic = %s;\n", generateTopicFormat(scope, op))
 			subscriber += tabtabtab + "final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();\n"
 
 			subscriber += tabtabtab + "final FSubscriberTransport transport = subscriber.getTransport();\n"
@@ -2626,17 +2747,20 @@ func (g *Generator) generateSubscriberClient(scope *parser.Scope) string {
 					op.Name, op.Name)
 			}
 
-			subscriber += tabtabtab + fmt.Sprintf("transport.subscribe(topic, recv%s(op, subscriber.getProtocolFactory(), proxiedHandler));\n", op.Name)
+			subscriber += tabtabtab + fmt.Sprintf("transport.subscribe(topic, recv%s(op, subscriber.getProtocolFactory(), proxiedHandler%s));\n", op.Name, g.deltaTransportArg(op))
 			subscriber += tabtabtab + "return FSubscription.of(topic, transport);\n"
 			subscriber += tabtab + "}\n\n"
 
 			callback := "FAsyncCallback"
 			if throwable {
-				subscriber += tabtab + fmt.Sprintf("private %s recv%s(String op, FProtocolFactory pf, %sThrowableHandler handler) {\n", callback, op.Name, op.Name)
+				subscriber += tabtab + fmt.Sprintf("private %s recv%s(String op, FProtocolFactory pf, %sThrowableHandler handler%s) {\n", callback, op.Name, op.Name, g.deltaTransportParam(op))
 			} else {
-				subscriber += tabtab + fmt.Sprintf("private %s recv%s(String op, FProtocolFactory pf, %sHandler handler) {\n", callback, op.Name, op.Name)
+				subscriber += tabtab + fmt.Sprintf("private %s recv%s(String op, FProtocolFactory pf, %sHandler handler%s) {\n", callback, op.Name, op.Name, g.deltaTransportParam(op))
 			}
 
+			if g.isDeltaOp(op) {
+				subscriber += g.newDeltaDecoder(op)
+			}
 			subscriber += tabtabtab + fmt.Sprintf("return new %s() {\n", callback)
 
 			subscriber += tabtabtabtab + "public void onMessage(TTransport tr) throws TException {\n"
@@ -2650,6 +2774,12 @@ func (g *Generator) generateSubscriberClient(scope *parser.Scope) string {
 			subscriber += tabtabtabtabtab + "}\n"
 			subscriber += g.generateReadFieldRec(parser.FieldFromType(op.Type, "received"), false, false, false, tabtabtabtabtab)
 			subscriber += tabtabtabtabtab + "iprot.readMessageEnd();\n"
+			if g.isDeltaOp(op) {
+				subscriber += tabtabtabtabtab + "received = deltas.decode(ctx, received);\n"
+				subscriber += tabtabtabtabtab + "if (received == null) {\n"
+				subscriber += tabtabtabtabtabtab + "return;\n"
+				subscriber += tabtabtabtabtab + "}\n"
+			}
 
 			subscriber += tabtabtabtabtab + fmt.Sprintf("handler.on%s(ctx, received);\n", op.Name)
 			subscriber += tabtabtabtab + "}\n"
@@ -2658,11 +2788,79 @@ func (g *Generator) generateSubscriberClient(scope *parser.Scope) string {
 		}
 		throwable = true
 	}
+
+	if g.generateBatchSubscribers() {
+		for _, op := range scope.Operations {
+			subscriber += prefix
+			subscriber += g.generateBatchSubscribe(scope, op, args)
+		}
+	}
 	subscriber += "\n" + tab + "}\n"
 
 	return subscriber
 }
 
+// generateBatchSubscribe generates a subscribe method delivering batches of
+// messages to a batch handler. Middleware is not applied since batch handlers
+// do not receive a single FContext.
+func (g *Generator) generateBatchSubscribe(scope *parser.Scope, op *parser.Operation, args string) string {
+	subscriber := ""
+	if op.Comment != nil {
+		subscriber += g.GenerateBlockComment(op.Comment, tabtab)
+	}
+	subscriber += tabtab + fmt.Sprintf("public FSubscription subscribe%sBatch(%sint maxBatchSize, long maxBatchDelay, final %sBatchHandler handler) throws TException {\n", op.Name, args, op.Name)
+	subscriber += tabtabtab + fmt.Sprintf("final String op = \"%s\";\n", op.Name)
+	subscriber += tabtabtab + fmt.Sprintf("final String topic = %s;\n", generateTopicFormat(scope, op))
+	subscriber += tabtabtab + "final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();\n"
+	subscriber += tabtabtab + "final FSubscriberTransport transport = subscriber.getTransport();\n"
+	subscriber += tabtabtab + fmt.Sprintf("transport.subscribeBatch(topic, maxBatchSize, maxBatchDelay, recv%sBatch(op, subscriber.getProtocolFactory(), handler%s));\n", op.Name, g.deltaTransportArg(op))
+	subscriber += tabtabtab + "return FSubscription.of(topic, transport);\n"
+	subscriber += tabtab + "}\n\n"
+
+	reqType := containerType(g.getJavaTypeFromThriftType(op.Type))
+	subscriber += tabtab + fmt.Sprintf("private FAsyncBatchCallback recv%sBatch(String op, FProtocolFactory pf, %sBatchHandler handler%s) {\n", op.Name, op.Name, g.deltaTransportParam(op))
+	if g.isDeltaOp(op) {
+		subscriber += g.newDeltaDecoder(op)
+	}
+	subscriber += tabtabtab + "return new FAsyncBatchCallback() {\n"
+	subscriber += tabtabtabtab + "public void onMessages(List<TTransport> trs) throws TException {\n"
+	subscriber += tabtabtabtabtab + "List<FContext> ctxs = new ArrayList<FContext>(trs.size());\n"
+	subscriber += tabtabtabtabtab + fmt.Sprintf("List<%s> reqs = new ArrayList<%s>(trs.size());\n", reqType, reqType)
+	subscriber += tabtabtabtabtab + "for (TTransport tr : trs) {\n"
+	// A message which fails to decode is skipped rather than losing the rest of the batch.
+	subscriber += tabtabtabtabtabtab + "try {\n"
+	subscriber += tabtabtabtabtabtabtab + "FProtocol iprot = pf.getProtocol(tr);\n"
+	subscriber += tabtabtabtabtabtabtab + "FContext ctx = iprot.readRequestHeader();\n"
+	subscriber += tabtabtabtabtabtabtab + "TMessage msg = iprot.readMessageBegin();\n"
+	subscriber += tabtabtabtabtabtabtab + "if (!msg.name.equals(op)) {\n"
+	subscriber += tabtabtabtabtabtabtabtab + "TProtocolUtil.skip(iprot, TType.STRUCT);\n"
+	subscriber += tabtabtabtabtabtabtabtab + "iprot.readMessageEnd();\n"
+	subscriber += tabtabtabtabtabtabtabtab + "LOGGER.warn(\"discarding message with unknown method \" + msg.name);\n"
+	subscriber += tabtabtabtabtabtabtabtab + "continue;\n"
+	subscriber += tabtabtabtabtabtabtab + "}\n"
+	subscriber += g.generateReadFieldRec(parser.FieldFromType(op.Type, "received"), false, false, false, tabtabtabtabtabtabtab)
+	subscriber += tabtabtabtabtabtabtab + "iprot.readMessageEnd();\n"
+	if g.isDeltaOp(op) {
+		subscriber += tabtabtabtabtabtabtab + "received = deltas.decode(ctx, received);\n"
+		subscriber += tabtabtabtabtabtabtab + "if (received == null) {\n"
+		subscriber += tabtabtabtabtabtabtabtab + "continue;\n"
+		subscriber += tabtabtabtabtabtabtab + "}\n"
+	}
+	subscriber += tabtabtabtabtabtabtab + "ctxs.add(ctx);\n"
+	subscriber += tabtabtabtabtabtabtab + "reqs.add(received);\n"
+	subscriber += tabtabtabtabtabtab + "} catch (TException e) {\n"
+	subscriber += tabtabtabtabtabtabtab + "LOGGER.warn(\"discarding message which could not be decoded: \" + e.getMessage());\n"
+	subscriber += tabtabtabtabtabtab + "}\n"
+	subscriber += tabtabtabtabtab + "}\n"
+	subscriber += tabtabtabtabtab + "if (!reqs.isEmpty()) {\n"
+	subscriber += tabtabtabtabtabtab + fmt.Sprintf("handler.on%sBatch(ctxs, reqs);\n", op.Name)
+	subscriber += tabtabtabtabtab + "}\n"
+	subscriber += tabtabtabtab + "}\n"
+	subscriber += tabtabtab + "};\n"
+	subscriber += tabtab + "}"
+	return subscriber
+}
+
 func (g *Generator) generateScopePrefixArgs(scope *parser.Scope) string {
 	args := ""
 	if len(scope.Prefix.Variables) > 0 {
@@ -3264,6 +3462,83 @@ func (g *Generator) generateBoxedPrimitives() bool {
 	return ok
 }
 
+func (g *Generator) generateBatchSubscribers() bool {
+	_, ok := g.Options["batch_subscribers"]
+	return ok
+}
+
+func (g *Generator) generateDeltaStructs() bool {
+	_, ok := g.Options["delta_structs"]
+	return ok
+}
+
+// isDeltaOp returns true if messages of the scope operation are sent as
+// deltas holding only the changed fields. Unions always hold a single field,
+// so only structs benefit from it.
+func (g *Generator) isDeltaOp(op *parser.Operation) bool {
+	return g.generateDeltaStructs() && g.Frugal.IsStruct(op.Type) && !g.Frugal.IsUnion(op.Type)
+}
+
+// deltaType returns the DeltaEncoder or DeltaDecoder type for the struct type
+// of the scope operation.
+func (g *Generator) deltaType(class string, op *parser.Operation) string {
+	reqType := g.getJavaTypeFromThriftType(op.Type)
+	return fmt.Sprintf("%s<%s, %s._Fields>", class, reqType, reqType)
+}
+
+// newDeltaEncoder generates the construction of the DeltaEncoder for the
+// scope operation, passing the required struct fields which must be set in
+// every delta.
+func (g *Generator) newDeltaEncoder(op *parser.Operation) string {
+	reqType := g.getJavaTypeFromThriftType(op.Type)
+	args := []string{reqType + "._Fields.class"}
+	if s := g.Frugal.FindStruct(g.Frugal.UnderlyingType(op.Type)); s != nil {
+		for _, field := range s.Fields {
+			if field.Modifier == parser.Required {
+				args = append(args, fmt.Sprintf("%s._Fields.%s", reqType, toConstantName(field.Name)))
+			}
+		}
+	}
+	return fmt.Sprintf("new %s(%s)", g.deltaType("DeltaEncoder", op), strings.Join(args, ", "))
+}
+
+// newDeltaDecoder generates the construction of the DeltaDecoder for the
+// struct type of the scope operation, which requests missing keyframes
+// through the subscriber transport.
+func (g *Generator) newDeltaDecoder(op *parser.Operation) string {
+	decoder := tabtabtab + fmt.Sprintf("final %s deltas = new %s(new Runnable() {\n",
+		g.deltaType("DeltaDecoder", op), g.deltaType("DeltaDecoder", op))
+	decoder += tabtabtabtab + "public void run() {\n"
+	decoder += tabtabtabtabtab + "transport.requestKeyframe();\n"
+	decoder += tabtabtabtab + "}\n"
+	decoder += tabtabtab + "});\n"
+	return decoder
+}
+
+// deltaTransportParam returns the subscriber transport parameter of the
+// receive method of a delta scope operation, whose decoder requests keyframes.
+func (g *Generator) deltaTransportParam(op *parser.Operation) string {
+	if g.isDeltaOp(op) {
+		return ", final FSubscriberTransport transport"
+	}
+	return ""
+}
+
+// deltaTransportArg returns the subscriber transport argument of the receive
+// method of a delta scope operation.
+func (g *Generator) deltaTransportArg(op *parser.Operation) string {
+	if g.isDeltaOp(op) {
+		return ", transport"
+	}
+	return ""
+}
+
+func deltaEncoderName(op *parser.Operation) string {
+	name := []rune(op.Name)
+	name[0] = unicode.ToLower(name[0])
+	return string(name) + "Deltas"
+}
+
 func containerType(typeName string) string {
 	switch typeName {
 	case "int":
@@ -17,6 +17,7 @@ import com.workiva.frugal.transport.FPublisherTransport;
 import com.workiva.frugal.transport.FSubscriberTransport;
 import com.workiva.frugal.transport.FSubscription;
 import com.workiva.frugal.transport.TMemoryOutputBuffer;
+import com.workiva.frugal.util.TopicTemplate;
 import org.apache.thrift.TException;
 import org.apache.thrift.TApplicationException;
 import org.apache.thrift.transport.TTransport;
@@ -55,6 +56,12 @@ public class AlbumWinnersPublisher {
 
 		public void close() throws TException;
 
+		/**
+		 * Blocks until previously published messages have been sent. Does nothing unless overridden.
+		 */
+		public default void flush() throws TException {
+		}
+
 		public void publishContestStart(FContext ctx, java.util.List<Album> req) throws TException;
 
 		public void publishTimeLeft(FContext ctx, double req) throws TException;
@@ -69,8 +76,6 @@ public class AlbumWinnersPublisher {
 	 * Scopes must have a prefix.
 	 */
 	public static class Client implements Iface {
-		private static final String DELIMITER = ".";
-
 		private final Iface target;
 		private final Iface proxy;
 
@@ -90,6 +95,10 @@ public class AlbumWinnersPublisher {
 			target.close();
 		}
 
+		public void flush() throws TException {
+			target.flush();
+		}
+
 		public void publishContestStart(FContext ctx, java.util.List<Album> req) throws TException {
 			proxy.publishContestStart(ctx, req);
 		}
@@ -104,6 +113,10 @@ public class AlbumWinnersPublisher {
 
 		protected static class InternalAlbumWinnersPublisher implements Iface {
 
+			private static final TopicTemplate CONTEST_START_TOPIC = new TopicTemplate("v1.music.AlbumWinners.ContestStart");
+			private static final TopicTemplate TIME_LEFT_TOPIC = new TopicTemplate("v1.music.AlbumWinners.TimeLeft");
+			private static final TopicTemplate WINNER_TOPIC = new TopicTemplate("v1.music.AlbumWinners.Winner");
+
 			private FScopeProvider provider;
 			private FPublisherTransport transport;
 			private FProtocolFactory protocolFactory;
@@ -126,10 +139,17 @@ public class AlbumWinnersPublisher {
 				transport.close();
 			}
 
+			public void flush() throws TException {
+				transport.flush();
+			}
+
 			public void publishContestStart(FContext ctx, java.util.List<Album> req) throws TException {
+				String topic = CONTEST_START_TOPIC.format();
+				transport.publish(topic, writeContestStart(ctx, req));
+			}
+
+			private byte[] writeContestStart(FContext ctx, java.util.List<Album> req) throws TException {
 				String op = "ContestStart";
-				String prefix = "v1.music.";
-				String topic = String.format("%sAlbumWinners%s%s", prefix, DELIMITER, op);
 				TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());
 				FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);
 				oprot.writeRequestHeader(ctx);
@@ -140,14 +160,17 @@ public class AlbumWinnersPublisher {
 				}
 				oprot.writeListEnd();
 				oprot.writeMessageEnd();
-				transport.publish(topic, memoryBuffer.getWriteBytes());
+				return memoryBuffer.getWriteBytes();
 			}
 
 
 			public void publishTimeLeft(FContext ctx, double req) throws TException {
+				String topic = TIME_LEFT_TOPIC.format();
+				transport.publish(topic, writeTimeLeft(ctx, req));
+			}
+
+			private byte[] writeTimeLeft(FContext ctx, double req) throws TException {
 				String op = "TimeLeft";
-				String prefix = "v1.music.";
-				String topic = String.format("%sAlbumWinners%s%s", prefix, DELIMITER, op);
 				TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());
 				FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);
 				oprot.writeRequestHeader(ctx);
@@ -155,21 +178,24 @@ public class AlbumWinnersPublisher {
 				double elem41 = req;
 				oprot.writeDouble(elem41);
 				oprot.writeMessageEnd();
-				transport.publish(topic, memoryBuffer.getWriteBytes());
+				return memoryBuffer.getWriteBytes();
 			}
 
 
 			public void publishWinner(FContext ctx, Album req) throws TException {
+				String topic = WINNER_TOPIC.format();
+				transport.publish(topic, writeWinner(ctx, req));
+			}
+
+			private byte[] writeWinner(FContext ctx, Album req) throws TException {
 				String op = "Winner";
-				String prefix = "v1.music.";
-				String topic = String.format("%sAlbumWinners%s%s", prefix, DELIMITER, op);
 				TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());
 				FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);
 				oprot.writeRequestHeader(ctx);
 				oprot.writeMessageBegin(new TMessage(op, TMessageType.CALL, 0));
 				req.write(oprot);
 				oprot.writeMessageEnd();
-				transport.publish(topic, memoryBuffer.getWriteBytes());
+				return memoryBuffer.getWriteBytes();
 			}
 		}
 	}
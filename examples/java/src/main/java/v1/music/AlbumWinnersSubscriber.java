@@ -17,6 +17,7 @@ import com.workiva.frugal.transport.FPublisherTransport;
 import com.workiva.frugal.transport.FSubscriberTransport;
 import com.workiva.frugal.transport.FSubscription;
 import com.workiva.frugal.transport.TMemoryOutputBuffer;
+import com.workiva.frugal.util.TopicTemplate;
 import org.apache.thrift.TException;
 import org.apache.thrift.TApplicationException;
 import org.apache.thrift.transport.TTransport;
@@ -98,9 +99,12 @@ public class AlbumWinnersSubscriber {
 	 * Scopes must have a prefix.
 	 */
 	public static class Client implements Iface, IfaceThrowable {
-		private static final String DELIMITER = ".";
 		private static final Logger LOGGER = LoggerFactory.getLogger(Client.class);
 
+		private static final TopicTemplate CONTEST_START_TOPIC = new TopicTemplate("v1.music.AlbumWinners.ContestStart");
+		private static final TopicTemplate TIME_LEFT_TOPIC = new TopicTemplate("v1.music.AlbumWinners.TimeLeft");
+		private static final TopicTemplate WINNER_TOPIC = new TopicTemplate("v1.music.AlbumWinners.Winner");
+
 		private final FScopeProvider provider;
 		private final ServiceMiddleware[] middleware;
 
@@ -113,8 +117,7 @@ public class AlbumWinnersSubscriber {
 
 		public FSubscription subscribeContestStart(final ContestStartHandler handler) throws TException {
 			final String op = "ContestStart";
-			String prefix = "v1.music.";
-			final String topic = String.format("%sAlbumWinners%s%s", prefix, DELIMITER, op);
+			final String topic = CONTEST_START_TOPIC.format();
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final ContestStartHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, ContestStartHandler.class, middleware);
@@ -149,8 +152,7 @@ public class AlbumWinnersSubscriber {
 
 		public FSubscription subscribeTimeLeft(final TimeLeftHandler handler) throws TException {
 			final String op = "TimeLeft";
-			String prefix = "v1.music.";
-			final String topic = String.format("%sAlbumWinners%s%s", prefix, DELIMITER, op);
+			final String topic = TIME_LEFT_TOPIC.format();
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final TimeLeftHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, TimeLeftHandler.class, middleware);
@@ -178,8 +180,7 @@ public class AlbumWinnersSubscriber {
 
 		public FSubscription subscribeWinner(final WinnerHandler handler) throws TException {
 			final String op = "Winner";
-			String prefix = "v1.music.";
-			final String topic = String.format("%sAlbumWinners%s%s", prefix, DELIMITER, op);
+			final String topic = WINNER_TOPIC.format();
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final WinnerHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, WinnerHandler.class, middleware);
@@ -208,8 +209,7 @@ public class AlbumWinnersSubscriber {
 
 		public FSubscription subscribeContestStartThrowable(final ContestStartThrowableHandler handler) throws TException {
 			final String op = "ContestStart";
-			String prefix = "v1.music.";
-			final String topic = String.format("%sAlbumWinners%s%s", prefix, DELIMITER, op);
+			final String topic = CONTEST_START_TOPIC.format();
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final ContestStartThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, ContestStartThrowableHandler.class, middleware);
@@ -244,8 +244,7 @@ public class AlbumWinnersSubscriber {
 
 		public FSubscription subscribeTimeLeftThrowable(final TimeLeftThrowableHandler handler) throws TException {
 			final String op = "TimeLeft";
-			String prefix = "v1.music.";
-			final String topic = String.format("%sAlbumWinners%s%s", prefix, DELIMITER, op);
+			final String topic = TIME_LEFT_TOPIC.format();
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final TimeLeftThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, TimeLeftThrowableHandler.class, middleware);
@@ -273,8 +272,7 @@ public class AlbumWinnersSubscriber {
 
 		public FSubscription subscribeWinnerThrowable(final WinnerThrowableHandler handler) throws TException {
 			final String op = "Winner";
-			String prefix = "v1.music.";
-			final String topic = String.format("%sAlbumWinners%s%s", prefix, DELIMITER, op);
+			final String topic = WINNER_TOPIC.format();
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final WinnerThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, WinnerThrowableHandler.class, middleware);
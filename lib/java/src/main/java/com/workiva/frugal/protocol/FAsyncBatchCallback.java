@@ -0,0 +1,28 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.protocol;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransport;
+
+import java.util.List;
+
+/**
+ * FAsyncBatchCallback is an internal callback which is constructed by generated code for batch subscriptions and
+ * invoked with batches of messages received on a subscription. Each message is wrapped in its own in-memory
+ * TTransport, in the order the messages were received.
+ */
+public interface FAsyncBatchCallback {
+    void onMessages(List<TTransport> transports) throws TException;
+}
@@ -123,16 +123,71 @@ public class HeaderUtils {
      * @throws TException if invalid data
      */
     public static Map<String, String> decodeFromFrame(byte[] bytes) throws TException {
-        if (bytes.length < 5) {
-            throw new TProtocolException(TProtocolException.INVALID_DATA, "invalid frame size " + bytes.length);
+        return decodeFromFrame(bytes, 0);
+    }
+
+    /**
+     * Decodes header information from a byte sequence, starting at the given offset. This allows headers to be read
+     * from framed bytes without first copying off the frame size.
+     *
+     * @param bytes  a sequence of bytes containing a frame
+     * @param offset position in bytes where the frame begins
+     * @return Map of headers
+     *
+     * @throws TException if invalid data
+     */
+    public static Map<String, String> decodeFromFrame(byte[] bytes, int offset) throws TException {
+        if (bytes.length - offset < 5) {
+            throw new TProtocolException(TProtocolException.INVALID_DATA,
+                    "invalid frame size " + (bytes.length - offset));
         }
 
         // Support more versions when available
-        if (bytes[0] != V0) {
-            throw new TProtocolException(TProtocolException.BAD_VERSION, "unsupported header version " + bytes[0]);
+        if (bytes[offset] != V0) {
+            throw new TProtocolException(TProtocolException.BAD_VERSION,
+                    "unsupported header version " + bytes[offset]);
+        }
+
+        int end = ProtocolUtils.readInt(bytes, offset + 1) + offset + 5;
+        if (end > bytes.length) {
+            throw new TProtocolException(TProtocolException.INVALID_DATA, "invalid header size");
         }
+        return readPairs(bytes, offset + 5, end);
+    }
+
+    /**
+     * Returns the offset of the message body in the given framed bytes, i.e. the position immediately following the
+     * 4 byte frame size and the encoded headers.
+     *
+     * @param framedBytes a frame prepended with its 4 byte frame size
+     * @return offset of the message body
+     */
+    public static int getBodyOffset(byte[] framedBytes) {
+        return ProtocolUtils.readInt(framedBytes, 5) + 9;
+    }
 
-        return readPairs(bytes, 5, ProtocolUtils.readInt(bytes, 1) + 5);
+    /**
+     * Adds the given headers to an already encoded frame, replacing any existing headers with the same names. The
+     * message body is copied as-is, so this is considerably cheaper than serializing the message again.
+     *
+     * @param framedBytes a frame prepended with its 4 byte frame size
+     * @param headers     headers to add to the frame
+     * @return a new frame, prepended with its 4 byte frame size, containing the merged headers
+     *
+     * @throws TException if the frame contains invalid header data
+     */
+    public static byte[] addHeadersToFrame(byte[] framedBytes, Map<String, String> headers) throws TException {
+        Map<String, String> merged = decodeFromFrame(framedBytes, 4);
+        merged.putAll(headers);
+        byte[] encodedHeaders = encode(merged);
+
+        int bodyOffset = getBodyOffset(framedBytes);
+        int bodyLength = framedBytes.length - bodyOffset;
+        byte[] patched = new byte[4 + encodedHeaders.length + bodyLength];
+        ProtocolUtils.writeInt(patched.length - 4, patched, 0);
+        System.arraycopy(encodedHeaders, 0, patched, 4, encodedHeaders.length);
+        System.arraycopy(framedBytes, bodyOffset, patched, 4 + encodedHeaders.length, bodyLength);
+        return patched;
     }
 
     private static Map<String, String> readPairs(byte[] buff, int start, int end) throws TException {
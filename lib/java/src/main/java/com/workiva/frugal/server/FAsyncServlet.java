@@ -0,0 +1,416 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.server;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.processor.FProcessor;
+import com.workiva.frugal.protocol.FProtocolFactory;
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.transport.TChunkedOutputBuffer;
+import com.workiva.frugal.util.FrameCompressor;
+import com.workiva.frugal.util.HttpBatch;
+import com.workiva.frugal.util.HttpContentEncoding;
+import com.workiva.frugal.util.HttpTransferEncoding;
+import com.workiva.frugal.util.ProtocolUtils;
+import org.apache.thrift.TException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Processes POST requests as Frugal requests for a processor, like {@link FServlet},
+ * without tying up container threads. The request body is read and the response
+ * written with Servlet 3.1 non-blocking I/O, and frames are processed on the given
+ * executor, so slow clients and slow handlers only hold a thread while there is
+ * work to do. The servlet must be registered with async support enabled.
+ * <p>
+ * The container async timeout is disabled; request deadlines come from the Frugal
+ * request timeout instead. A request whose timeout has elapsed by the time the
+ * executor picks it up is answered with a 503 response without being processed,
+ * since the client has given up on it. Clients which stall while sending the body
+ * are bounded by the container idle timeout.
+ * <p>
+ * Batch requests, see {@link HttpBatch}, are processed with blocking I/O as by
+ * {@link FServlet}. Request spilling is not supported, see
+ * {@link #setRequestSpilling(int, long, long, Path)}.
+ */
+@SuppressWarnings("serial")
+public class FAsyncServlet extends FServlet {
+    private static final Logger LOGGER = LoggerFactory.getLogger(FAsyncServlet.class);
+
+    private static final int DEFAULT_MAX_REQUEST_SIZE = 64 * 1024 * 1024;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int maxRequestSize;
+    private final int maxBodySize;
+    private final Executor executor;
+
+    /**
+     * Creates an async servlet for the specified processor and protocol factory,
+     * which is used for both input and output.
+     *
+     * @param executor executor processing frames
+     */
+    public FAsyncServlet(FProcessor processor, FProtocolFactory protocolFactory, Executor executor) {
+        this(processor, protocolFactory, protocolFactory, DEFAULT_MAX_REQUEST_SIZE, null, executor);
+    }
+
+    /**
+     * Creates an async servlet for the specified processor and input/output
+     * protocol factories which compresses frames using the given FrameCompressor.
+     *
+     * @param maxRequestSize the maximum Frugal request size in bytes
+     * @param compressor     FrameCompressor, or null to disable compression
+     * @param executor       executor processing frames
+     */
+    public FAsyncServlet(
+            FProcessor processor,
+            FProtocolFactory inProtocolFactory,
+            FProtocolFactory outProtocolFactory,
+            int maxRequestSize,
+            FrameCompressor compressor,
+            Executor executor) {
+        super(processor, inProtocolFactory, outProtocolFactory, maxRequestSize, compressor);
+        this.maxRequestSize = maxRequestSize;
+        // The largest body holding a valid frame, which is base64 encoded by default.
+        long maxFrameSize = maxRequestSize + 4L;
+        this.maxBodySize = (int) Math.min(Integer.MAX_VALUE - 8, (maxFrameSize + 2) / 3 * 4);
+        this.executor = executor;
+    }
+
+    /**
+     * Ignored with a warning: request frames are read into the heap as they
+     * arrive with non-blocking I/O, so they cannot be spilled to temporary files.
+     */
+    @Override
+    public void setRequestSpilling(int spillThreshold, long maxBufferedBytes, long maxSpilledBytes,
+                                   Path spillDirectory) {
+        LOGGER.warn("FAsyncServlet does not spill requests, ignoring request spilling configuration");
+    }
+
+    @Override
+    public void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (HttpBatch.isBatch(req.getHeader(HttpBatch.BATCH_HEADER))) {
+            super.doPost(req, resp);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        AsyncContext async = req.startAsync();
+        async.setTimeout(0);
+        ServletInputStream in = req.getInputStream();
+        in.setReadListener(new BodyReader(async, req, resp, in, start));
+    }
+
+    /**
+     * Reads the request body as it arrives, then hands it off to the executor.
+     * Unless the body has a content encoding, it is decoded as it arrives: the
+     * frame size is read first and the rest of the frame is written straight
+     * into an array of that size, so the frame is the only copy of the request
+     * held in memory.
+     */
+    private class BodyReader implements ReadListener {
+        private final AsyncContext async;
+        private final HttpServletRequest req;
+        private final HttpServletResponse resp;
+        private final ServletInputStream in;
+        private final long start;
+        private final boolean binary;
+        // Bodies with a content encoding are buffered and decoded once read.
+        private final ByteArrayOutputStream encodedBody;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private long bodySize;
+        private boolean answered;
+        // Set once the body is known to be invalid, which is answered after it
+        // has been read unless it turns out to be too large.
+        private boolean invalid;
+
+        // Base64 characters left over from the previous read, which decode
+        // together with the next ones.
+        private final byte[] base64 = new byte[BUFFER_SIZE + 4];
+        private int base64Length;
+
+        private final byte[] header = new byte[4];
+        private int headerLength;
+        private byte[] frame;
+        private int frameLength;
+
+        BodyReader(AsyncContext async, HttpServletRequest req, HttpServletResponse resp, ServletInputStream in,
+                   long start) {
+            this.async = async;
+            this.req = req;
+            this.resp = resp;
+            this.in = in;
+            this.start = start;
+            this.binary = HttpTransferEncoding.isBinary(
+                    req.getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER));
+            this.encodedBody = HttpContentEncoding.isIdentity(
+                    req.getHeader(HttpContentEncoding.CONTENT_ENCODING_HEADER)) ? null : new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            int n;
+            while (!answered && in.isReady() && (n = in.read(buffer)) != -1) {
+                bodySize += n;
+                if (bodySize > maxBodySize) {
+                    LOGGER.debug("Request body too large. Limit: {}", maxBodySize);
+                    answer(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                } else if (invalid) {
+                    // Read the rest so a body which is too large is answered as such.
+                    continue;
+                } else if (encodedBody != null) {
+                    encodedBody.write(buffer, 0, n);
+                } else if (binary) {
+                    append(buffer, 0, n);
+                } else {
+                    appendBase64(n);
+                }
+            }
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException {
+            if (answered) {
+                return;
+            }
+            if (invalid) {
+                answer(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            byte[] frame;
+            if (encodedBody != null) {
+                frame = readFrame(req, resp, new ByteArrayInputStream(encodedBody.toByteArray()));
+            } else {
+                frame = decodedFrame();
+            }
+            if (frame == null) {
+                async.complete();
+                return;
+            }
+
+            long deadline = start + getTimeout(frame);
+            try {
+                executor.execute(() -> process(frame, deadline));
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("Frugal request rejected by executor: {}", e.getMessage());
+                resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                async.complete();
+            }
+        }
+
+        // Decodes the complete groups of four base64 characters read so far.
+        private void appendBase64(int n) {
+            System.arraycopy(buffer, 0, base64, base64Length, n);
+            base64Length += n;
+            int complete = base64Length - base64Length % 4;
+            if (complete > 0) {
+                decodeBase64(complete);
+            }
+        }
+
+        private void decodeBase64(int length) {
+            ByteBuffer decoded;
+            try {
+                decoded = Base64.getDecoder().decode(ByteBuffer.wrap(base64, 0, length));
+            } catch (IllegalArgumentException e) {
+                LOGGER.debug("Invalid base64 request body: {}", e.getMessage());
+                invalid = true;
+                return;
+            }
+            base64Length -= length;
+            System.arraycopy(base64, length, base64, 0, base64Length);
+            append(decoded.array(), decoded.arrayOffset() + decoded.position(), decoded.remaining());
+        }
+
+        // Adds decoded bytes to the frame, allocating it once its size is read.
+        private void append(byte[] bytes, int offset, int length) {
+            while (length > 0 && !answered && !invalid) {
+                if (frame == null) {
+                    int n = Math.min(length, 4 - headerLength);
+                    System.arraycopy(bytes, offset, header, headerLength, n);
+                    headerLength += n;
+                    offset += n;
+                    length -= n;
+                    if (headerLength == 4) {
+                        allocateFrame();
+                    }
+                    continue;
+                }
+                if (frameLength == frame.length) {
+                    LOGGER.debug("Request body too long");
+                    invalid = true;
+                    return;
+                }
+                int n = Math.min(length, frame.length - frameLength);
+                System.arraycopy(bytes, offset, frame, frameLength, n);
+                frameLength += n;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        private void allocateFrame() {
+            long size = ProtocolUtils.readInt(header, 0) & 0xffff_ffffL;
+            if (size > maxRequestSize) {
+                LOGGER.debug("Request size too large. Received: {}, Limit: {}", size, maxRequestSize);
+                answer(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                return;
+            }
+            frame = new byte[(int) size];
+        }
+
+        // Returns the complete frame, or null if the body was too short, in
+        // which case the response status has been set.
+        private byte[] decodedFrame() {
+            if (!binary && base64Length > 0) {
+                // The final group may be unpadded.
+                decodeBase64(base64Length);
+                if (invalid) {
+                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    return null;
+                }
+            }
+            if (frame == null || frameLength < frame.length) {
+                LOGGER.debug("Request body too short");
+                resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return null;
+            }
+            return frame;
+        }
+
+        private void answer(int status) {
+            resp.setStatus(status);
+            answered = true;
+            async.complete();
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            LOGGER.debug("Could not read request body: {}", t.getMessage());
+            async.complete();
+        }
+
+        private void process(byte[] frame, long deadline) {
+            try {
+                if (System.currentTimeMillis() > deadline) {
+                    LOGGER.debug("Request timed out before processing");
+                    resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    async.complete();
+                    return;
+                }
+
+                TChunkedOutputBuffer data = processFrame(req, resp, frame);
+                if (data == null) {
+                    async.complete();
+                    return;
+                }
+
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                OutputStream encoder = encodeResponse(req, resp, data.size(), encoded);
+                ServletOutputStream out = resp.getOutputStream();
+                out.setWriteListener(new BodyWriter(async, out, data, encoder, encoded));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Could not write Frugal response", e);
+                async.complete();
+            }
+        }
+    }
+
+    /**
+     * Writes the response body as the client accepts it, encoding one chunk of
+     * the response at a time.
+     */
+    private static class BodyWriter implements WriteListener {
+        private final AsyncContext async;
+        private final ServletOutputStream out;
+        private final TChunkedOutputBuffer data;
+        private final OutputStream encoder;
+        private final ByteArrayOutputStream encoded;
+        private int chunk;
+        private boolean finished;
+        private ByteBuffer body = ByteBuffer.allocate(0);
+
+        BodyWriter(AsyncContext async, ServletOutputStream out, TChunkedOutputBuffer data, OutputStream encoder,
+                   ByteArrayOutputStream encoded) {
+            this.async = async;
+            this.out = out;
+            this.data = data;
+            this.encoder = encoder;
+            this.encoded = encoded;
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+            while (out.isReady()) {
+                if (!body.hasRemaining()) {
+                    if (finished) {
+                        async.complete();
+                        return;
+                    }
+                    // The encoder writes the encoded chunk, or as much of it as
+                    // it has flushed, to the encoded buffer.
+                    if (chunk == data.getChunkCount()) {
+                        encoder.close();
+                        finished = true;
+                    } else {
+                        ByteBuffer next = data.getChunk(chunk++);
+                        encoder.write(next.array(), next.arrayOffset() + next.position(), next.remaining());
+                    }
+                    body = ByteBuffer.wrap(encoded.toByteArray());
+                    encoded.reset();
+                    continue;
+                }
+                int n = Math.min(BUFFER_SIZE, body.remaining());
+                out.write(body.array(), body.arrayOffset() + body.position(), n);
+                body.position(body.position() + n);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            LOGGER.debug("Could not write response body: {}", t.getMessage());
+            async.complete();
+        }
+    }
+
+    // Returns the Frugal request timeout of the frame, or the default timeout
+    // if its headers cannot be read.
+    private static long getTimeout(byte[] frame) {
+        try {
+            return FContext.withRequestHeaders(HeaderUtils.decodeFromFrame(frame)).getTimeout();
+        } catch (TException e) {
+            return new FContext().getTimeout();
+        }
+    }
+}
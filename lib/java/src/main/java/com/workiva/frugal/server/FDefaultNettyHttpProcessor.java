@@ -13,11 +13,20 @@
 
 package com.workiva.frugal.server;
 
+import com.workiva.frugal.exception.TTransportExceptionType;
 import com.workiva.frugal.processor.FProcessor;
 import com.workiva.frugal.protocol.FProtocolFactory;
-import com.workiva.frugal.transport.TMemoryOutputBuffer;
+import com.workiva.frugal.transport.TByteBufTransport;
+import com.workiva.frugal.util.HttpBatch;
+import com.workiva.frugal.util.HttpContentEncoding;
+import com.workiva.frugal.util.HttpTransferEncoding;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.base64.Base64;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
@@ -25,33 +34,41 @@ import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
-import org.apache.commons.codec.binary.Base64;
 import org.apache.thrift.TException;
-import org.apache.thrift.transport.TMemoryInputTransport;
-import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.BufferUnderflowException;
-import java.nio.ByteBuffer;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+import static io.netty.handler.codec.http.HttpHeaderNames.ACCEPT_ENCODING;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_ENCODING;
 import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_LENGTH;
 import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TRANSFER_ENCODING;
 import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TYPE;
 import static io.netty.handler.codec.http.HttpHeaderNames.DATE;
+import static io.netty.handler.codec.http.HttpHeaderNames.VARY;
 import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
 import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
 import static io.netty.handler.codec.http.HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpResponseStatus.UNSUPPORTED_MEDIA_TYPE;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
 /**
@@ -64,16 +81,32 @@ import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
  * a frame, a 400 response for an invalid frame, and a 413 response if the response
  * exceeds the payload limit specified by the client.
  * <p>
- * Both the request and response are base64 encoded.
+ * Both the request and response are base64 encoded, unless the client negotiates
+ * raw binary bodies as described in {@link HttpTransferEncoding}.
+ * <p>
+ * Request bodies compressed with a standard HTTP content encoding are
+ * decompressed, and responses are compressed as described in
+ * {@link HttpContentEncoding} once a threshold is set with
+ * {@link #setContentEncodingThreshold(int)}. The payload limit of the client
+ * applies to the response before compression.
+ * <p>
+ * Requests may batch several frames as described in {@link HttpBatch}. The
+ * frames of a batch are processed one after the other, or in parallel on the
+ * executor set with {@link #setBatchExecutor(Executor)}.
  */
 public class FDefaultNettyHttpProcessor implements FNettyHttpProcessor {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FDefaultNettyHttpProcessor.class);
 
+    // Decompressed requests are limited to the default Frugal payload size of FServlet.
+    private static final int MAX_DECODED_REQUEST_SIZE = 64 * 1024 * 1024;
+
     private final FProcessor processor;
     private final FProtocolFactory inProtocolFactory;
     private final FProtocolFactory outProtocolFactory;
     private final Collection<Map.Entry<String, String>> customHeaders;
+    private volatile Executor batchExecutor;
+    private volatile int contentEncodingThreshold = -1;
 
     private FDefaultNettyHttpProcessor(
             FProcessor processor,
@@ -138,39 +171,257 @@ public class FDefaultNettyHttpProcessor implements FNettyHttpProcessor {
      * @throws IOException if the frame is invalid, not conforming to the Frugal protocol
      */
     public ByteBuf processFrame(ByteBuf inputBuffer) throws TException, IOException {
-        // Read base64 encoded input
-        byte[] encodedBytes = new byte[inputBuffer.readableBytes()];
-        inputBuffer.readBytes(encodedBytes);
-        byte[] inputBytes = Base64.decodeBase64(encodedBytes);
+        return processFrame(inputBuffer, false, false);
+    }
+
+    /**
+     * Process one frame of data, which is base64 encoded unless it is binary.
+     * The frame is decoded and processed in buffers from the allocator of the
+     * input buffer rather than in byte arrays, and the returned buffer must be
+     * released by the caller.
+     *
+     * @param inputBuffer    an input frame
+     * @param binaryRequest  whether the input frame is raw binary
+     * @param binaryResponse whether to return a raw binary output frame
+     * @return The processes frame as an output buffer
+     * @throws TException  if an application error occurred when processing a validly formed frame
+     * @throws IOException if the frame is invalid, not conforming to the Frugal protocol
+     */
+    public ByteBuf processFrame(ByteBuf inputBuffer, boolean binaryRequest, boolean binaryResponse)
+            throws TException, IOException {
+        // Decode base64 input into a buffer from the same allocator, binary input is read in place
+        ByteBuf inputFrame = binaryRequest ? inputBuffer.retainedDuplicate() : decodeBase64(inputBuffer);
+        ByteBuf outputFrame = inputBuffer.alloc().buffer();
+        try {
+            int size = inputFrame.readableBytes();
+            if (size < 4) {
+                // Need 4 bytes for the frame size, at a minimum.
+                throw new IOException("Invalid request size " + size);
+            }
+
+            // Ensure expected frame size equals actual size.
+            int sz = inputFrame.readInt();
+            if (sz != inputFrame.readableBytes()) {
+                throw new IOException(
+                        String.format("Mismatch between expected frame size (%d) and actual size (%d)",
+                                sz, size - 4)
+                );
+            }
 
-        ByteBuffer buff = ByteBuffer.wrap(inputBytes);
+            // Process a frame, excluding the frame length, into an output frame
+            // whose length is filled in afterwards.
+            outputFrame.writeInt(0);
+            processor.process(
+                    inProtocolFactory.getProtocol(new TByteBufTransport(inputFrame)),
+                    outProtocolFactory.getProtocol(new TByteBufTransport(outputFrame)));
+            outputFrame.setInt(0, outputFrame.readableBytes() - 4);
+
+            // Write base64 encoded or binary output
+            if (binaryResponse) {
+                return outputFrame.retain();
+            }
+            return Base64.encode(outputFrame, false);
+        } finally {
+            inputFrame.release();
+            outputFrame.release();
+        }
+    }
 
-        int sz;
+    /**
+     * Process the frames of a batch, which is base64 encoded unless it is binary,
+     * into the concatenated output frames of the frames which have one. The
+     * returned buffer must be released by the caller.
+     * <p>
+     * Frames which fail, and frames whose output would take the batch over the
+     * response limit, are left out of the output and added to the given map with
+     * the HTTP status a single request with the frame would get, see
+     * {@link HttpBatch}.
+     *
+     * @param inputBuffer    the batch of input frames
+     * @param binaryRequest  whether the input batch is raw binary
+     * @param binaryResponse whether to return a raw binary output batch
+     * @param responseLimit  size limit of the output frames together, 0 for no limit
+     * @param frameStatuses  map the HTTP status of each failed frame is added to by op id
+     * @return The processed frames as an output buffer
+     * @throws TException  if an application error occurred when processing a validly formed frame
+     *                     without an op id
+     * @throws IOException if the batch is invalid, not conforming to the Frugal protocol, or a frame
+     *                     without an op id is invalid
+     */
+    public ByteBuf processBatch(ByteBuf inputBuffer, boolean binaryRequest, boolean binaryResponse,
+                                int responseLimit, Map<String, Integer> frameStatuses)
+            throws TException, IOException {
+        ByteBuf inputBatch = binaryRequest ? inputBuffer.retainedDuplicate() : decodeBase64(inputBuffer);
         try {
-            sz = buff.getInt();
-        } catch (BufferUnderflowException e) {
-            // Need 4 bytes for the frame size, at a minimum.
-            throw new IOException("Invalid request size " + inputBytes.length);
+            List<ByteBuf> frames = new ArrayList<>();
+            while (inputBatch.isReadable()) {
+                int size = inputBatch.readableBytes() < 4 ? -1 : inputBatch.getInt(inputBatch.readerIndex());
+                if (size < 0 || size > inputBatch.readableBytes() - 4) {
+                    throw new IOException("Truncated frame in batch");
+                }
+                frames.add(inputBatch.readSlice(4 + size));
+            }
+
+            Executor executor = batchExecutor;
+            List<CompletableFuture<ByteBuf>> results = new ArrayList<>(frames.size());
+            for (ByteBuf frame : frames) {
+                if (executor == null) {
+                    CompletableFuture<ByteBuf> result = new CompletableFuture<>();
+                    try {
+                        result.complete(processBatchFrame(frame));
+                    } catch (CompletionException e) {
+                        result.completeExceptionally(e.getCause());
+                    } catch (RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                    results.add(result);
+                    continue;
+                }
+                try {
+                    results.add(CompletableFuture.supplyAsync(() -> processBatchFrame(frame), executor));
+                } catch (RejectedExecutionException e) {
+                    CompletableFuture<ByteBuf> result = new CompletableFuture<>();
+                    result.completeExceptionally(e);
+                    results.add(result);
+                }
+            }
+
+            // Wait for every frame, so that no output frame is leaked on failure.
+            CompositeByteBuf outputBatch = inputBuffer.alloc().compositeBuffer(Math.max(2, frames.size()));
+            Throwable failure = null;
+            for (int i = 0; i < results.size(); i++) {
+                Throwable frameFailure = null;
+                ByteBuf outputFrame = null;
+                try {
+                    outputFrame = results.get(i).join();
+                } catch (CompletionException e) {
+                    frameFailure = e.getCause();
+                }
+                if (outputFrame != null && responseLimit > 0
+                        && outputBatch.readableBytes() + outputFrame.readableBytes() > responseLimit) {
+                    frameFailure = new TTransportException(TTransportExceptionType.RESPONSE_TOO_LARGE,
+                            "Batch response size too large for client. Limit: " + responseLimit);
+                }
+                if (frameFailure == null && failure == null && outputFrame.readableBytes() > 4) {
+                    outputBatch.addComponent(true, outputFrame);
+                    continue;
+                }
+                if (outputFrame != null) {
+                    outputFrame.release();
+                }
+                if (frameFailure != null && failure == null) {
+                    String opId = getOpId(frames.get(i));
+                    if (opId != null) {
+                        LOGGER.error("Frugal batch frame failed:", frameFailure);
+                        frameStatuses.put(opId, getStatus(frameFailure).code());
+                    } else {
+                        failure = frameFailure;
+                    }
+                }
+            }
+
+            if (failure != null) {
+                outputBatch.release();
+                if (failure instanceof TException) {
+                    throw (TException) failure;
+                }
+                if (failure instanceof IOException) {
+                    throw (IOException) failure;
+                }
+                if (failure instanceof Error) {
+                    throw (Error) failure;
+                }
+                throw (RuntimeException) failure;
+            }
+            if (binaryResponse) {
+                return outputBatch;
+            }
+            try {
+                return Base64.encode(outputBatch, false);
+            } finally {
+                outputBatch.release();
+            }
+        } finally {
+            inputBatch.release();
         }
+    }
 
-        // Ensure expected frame size equals actual size.
-        if (sz != buff.remaining()) {
-            throw new IOException(
-                    String.format("Mismatch between expected frame size (%d) and actual size (%d)",
-                            sz, inputBytes.length - 4)
-            );
+    // Returns the op id of a batched frame, or null if it has none.
+    private static String getOpId(ByteBuf frame) {
+        try {
+            return HttpBatch.getOpId(ByteBufUtil.getBytes(frame, frame.readerIndex(), frame.readableBytes()));
+        } catch (TException e) {
+            return null;
         }
+    }
 
-        // Process a frame, exclude frame length (first 4 bytes)
-        // TODO: use TByteBuffer that wraps buff once Thrift 0.10.0 is released to avoid this copy.
-        byte[] inputFrame = Arrays.copyOfRange(inputBytes, 4, inputBytes.length);
-        TTransport inTransport = new TMemoryInputTransport(inputFrame);
-        TMemoryOutputBuffer outTransport = new TMemoryOutputBuffer();
-        processor.process(inProtocolFactory.getProtocol(inTransport), outProtocolFactory.getProtocol(outTransport));
+    // Returns the status a single request failing with the given error is answered with.
+    private static HttpResponseStatus getStatus(Throwable failure) {
+        if (failure instanceof RejectedExecutionException) {
+            return SERVICE_UNAVAILABLE;
+        }
+        if (failure instanceof TTransportException
+                && ((TTransportException) failure).getType() == TTransportExceptionType.RESPONSE_TOO_LARGE) {
+            return REQUEST_ENTITY_TOO_LARGE;
+        }
+        if (failure instanceof IOException) {
+            return BAD_REQUEST;
+        }
+        return INTERNAL_SERVER_ERROR;
+    }
 
-        // Write base64 encoded output
-        byte[] outputBytes = Base64.encodeBase64(outTransport.getWriteBytes());
-        return Unpooled.copiedBuffer(outputBytes);
+    private ByteBuf processBatchFrame(ByteBuf frame) {
+        try {
+            return processFrame(frame, true, true);
+        } catch (TException | IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private static ByteBuf decodeBase64(ByteBuf inputBuffer) throws IOException {
+        try {
+            return Base64.decode(inputBuffer, inputBuffer.readerIndex(), inputBuffer.readableBytes());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid base64 request: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Decompresses a request body with the given content encoding into a buffer
+     * from the same allocator, releasing the compressed body.
+     */
+    private static ByteBuf decodeContent(ByteBuf body, String contentEncoding)
+            throws TTransportException, IOException {
+        ByteBuf decoded = body.alloc().buffer();
+        try (InputStream in = HttpContentEncoding.decode(new ByteBufInputStream(body), contentEncoding)) {
+            while (decoded.writeBytes(in, 8192) != -1) {
+                if (decoded.readableBytes() > MAX_DECODED_REQUEST_SIZE) {
+                    throw new TTransportException(TTransportExceptionType.REQUEST_TOO_LARGE,
+                            "Decompressed request size too large. Limit: " + MAX_DECODED_REQUEST_SIZE);
+                }
+            }
+            return decoded.retain();
+        } finally {
+            decoded.release();
+            body.release();
+        }
+    }
+
+    /**
+     * Compresses a response body with the given content encoding into a buffer
+     * from the same allocator, releasing the uncompressed body.
+     */
+    private static ByteBuf encodeContent(ByteBuf body, String contentEncoding) throws IOException {
+        ByteBuf encoded = body.alloc().buffer();
+        try (OutputStream out = HttpContentEncoding.encode(new ByteBufOutputStream(encoded), contentEncoding)) {
+            body.readBytes(out, body.readableBytes());
+        } catch (IOException e) {
+            encoded.release();
+            throw e;
+        } finally {
+            body.release();
+        }
+        return encoded;
     }
 
     private FullHttpResponse newErrorResponse(HttpResponseStatus status, String errorMessage) {
@@ -195,10 +446,53 @@ public class FDefaultNettyHttpProcessor implements FNettyHttpProcessor {
         }
 
         ByteBuf body = request.content();
+        String contentEncoding = request.headers().get(CONTENT_ENCODING);
+        if (!HttpContentEncoding.isIdentity(contentEncoding)) {
+            if (!HttpContentEncoding.isSupported(contentEncoding)) {
+                body.release();
+                return newErrorResponse(UNSUPPORTED_MEDIA_TYPE, "Unsupported content encoding " + contentEncoding);
+            }
+            try {
+                body = decodeContent(body, contentEncoding);
+            } catch (TTransportException e) {
+                LOGGER.error(e.getMessage());
+                return newErrorResponse(REQUEST_ENTITY_TOO_LARGE, "");
+            } catch (IOException e) {
+                LOGGER.error("Frugal processor invalid compressed request:", e);
+                String errorMessage = "";
+                if (e.getMessage() != null) {
+                    errorMessage = e.getMessage();
+                }
+                return newErrorResponse(BAD_REQUEST, errorMessage);
+            }
+        }
+
         ByteBuf outputBuffer = Unpooled.EMPTY_BUFFER;
+        String contentTransferEncoding = request.headers().get(CONTENT_TRANSFER_ENCODING);
+        boolean binaryRequest = HttpTransferEncoding.isBinary(contentTransferEncoding);
+        boolean binaryResponse = HttpTransferEncoding.acceptsBinary(contentTransferEncoding,
+                request.headers().get(HttpTransferEncoding.ACCEPT_TRANSFER_ENCODING_HEADER));
+        boolean batch = HttpBatch.isBatch(request.headers().get(HttpBatch.BATCH_HEADER));
+        Integer responseLimit = getResponseLimit(request.headers());
+        Map<String, Integer> frameStatuses = new LinkedHashMap<>();
         try {
-            outputBuffer = processFrame(body);
+            if (batch) {
+                outputBuffer = processBatch(body, binaryRequest, binaryResponse, responseLimit, frameStatuses);
+            } else {
+                // Base64 frames go through the single argument method, which subclasses may override.
+                outputBuffer = binaryRequest || binaryResponse
+                        ? processFrame(body, binaryRequest, binaryResponse)
+                        : processFrame(body);
+            }
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Frugal batch frame rejected by executor: {}", e.getMessage());
+            return newErrorResponse(SERVICE_UNAVAILABLE, "");
         } catch (TException e) {
+            if (batch && e instanceof TTransportException
+                    && ((TTransportException) e).getType() == TTransportExceptionType.RESPONSE_TOO_LARGE) {
+                LOGGER.error(e.getMessage());
+                return newErrorResponse(REQUEST_ENTITY_TOO_LARGE, "");
+            }
             LOGGER.error("Frugal processor returned unhandled error:", e);
             String errorMessage = "";
             if (e.getMessage() != null) {
@@ -216,13 +510,27 @@ public class FDefaultNettyHttpProcessor implements FNettyHttpProcessor {
             body.release();
         }
 
-        Integer responseLimit = getResponseLimit(request.headers());
-        if (responseLimit > 0 && outputBuffer.readableBytes() > responseLimit) {
+        if (!batch && responseLimit > 0 && outputBuffer.readableBytes() > responseLimit) {
             LOGGER.error("Response size too large for client." +
                     " Received: " + outputBuffer.readableBytes() + ", Limit: " + responseLimit);
+            outputBuffer.release();
             return newErrorResponse(REQUEST_ENTITY_TOO_LARGE, "");
         }
 
+        int threshold = contentEncodingThreshold;
+        String responseEncoding = null;
+        if (threshold >= 0 && outputBuffer.readableBytes() >= threshold) {
+            responseEncoding = HttpContentEncoding.select(request.headers().get(ACCEPT_ENCODING));
+        }
+        if (responseEncoding != null) {
+            try {
+                outputBuffer = encodeContent(outputBuffer, responseEncoding);
+            } catch (IOException e) {
+                LOGGER.error("Could not compress response:", e);
+                return newErrorResponse(INTERNAL_SERVER_ERROR, "");
+            }
+        }
+
         FullHttpResponse response = new DefaultFullHttpResponse(
                 HTTP_1_1,
                 OK,
@@ -238,12 +546,51 @@ public class FDefaultNettyHttpProcessor implements FNettyHttpProcessor {
         DateTimeFormatter formatter = DateTimeFormatter.RFC_1123_DATE_TIME;
         headers.set(DATE, dateTime.format(formatter));
         headers.set(CONTENT_TYPE, "application/x-frugal");
-        headers.set(CONTENT_TRANSFER_ENCODING, "base64");
+        headers.set(CONTENT_TRANSFER_ENCODING,
+                binaryResponse ? HttpTransferEncoding.BINARY : HttpTransferEncoding.BASE64);
         headers.set(CONTENT_LENGTH, Integer.toString(outputBuffer.readableBytes()));
+        if (threshold >= 0) {
+            headers.set(VARY, ACCEPT_ENCODING);
+            headers.set(ACCEPT_ENCODING, HttpContentEncoding.SUPPORTED_ENCODINGS);
+        }
+        if (responseEncoding != null) {
+            headers.set(CONTENT_ENCODING, responseEncoding);
+        }
+        if (!frameStatuses.isEmpty()) {
+            headers.set(HttpBatch.FRAME_STATUS_HEADER, HttpBatch.formatStatuses(frameStatuses));
+        }
 
         return response;
     }
 
+    /**
+     * Process the frames of batch requests in parallel on the given executor.
+     * Frames the executor rejects fail with a 503 status, see {@link HttpBatch}.
+     * The calling thread waits for the frames of a batch to be processed.
+     * NOTE: Once an HTTP handler is created with this processor,
+     * this should not be called.
+     *
+     * @param batchExecutor executor processing batched frames, or null to
+     *                      process them on the calling thread
+     */
+    public void setBatchExecutor(Executor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * Compress response bodies of at least the given size in bytes with a
+     * content encoding the client accepts, and advertise that compressed
+     * requests are accepted. Compressed requests are decompressed regardless.
+     * NOTE: Once an HTTP handler is created with this processor,
+     * this should not be called.
+     *
+     * @param contentEncodingThreshold minimum body size to compress, or a
+     *                                 negative value to disable compression
+     */
+    public void setContentEncodingThreshold(int contentEncodingThreshold) {
+        this.contentEncodingThreshold = contentEncodingThreshold;
+    }
+
     /**
      * Add a custom header to the returned response.
      * NOTE: Once an HTTP handler is created with this processor,
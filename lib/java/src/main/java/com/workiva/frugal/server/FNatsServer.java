@@ -15,8 +15,12 @@ package com.workiva.frugal.server;
 
 import com.workiva.frugal.processor.FProcessor;
 import com.workiva.frugal.protocol.FProtocolFactory;
+import com.workiva.frugal.protocol.HeaderUtils;
 import com.workiva.frugal.transport.TMemoryOutputBuffer;
 import com.workiva.frugal.util.BlockingRejectedExecutionHandler;
+import com.workiva.frugal.util.FrameCompressor;
+import com.workiva.frugal.util.FrameFragmenter;
+import com.workiva.frugal.util.FrameReassembler;
 import io.nats.client.Connection;
 import io.nats.client.MessageHandler;
 import io.nats.client.Subscription;
@@ -29,6 +33,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -54,6 +59,8 @@ public class FNatsServer implements FServer {
     private final String[] subjects;
     private final String queue;
     private final long highWatermark;
+    private final FrameReassembler reassembler;
+    private final FrameCompressor compressor;
 
     private final CountDownLatch shutdownSignal = new CountDownLatch(1);
     private final ExecutorService executorService;
@@ -73,9 +80,12 @@ public class FNatsServer implements FServer {
      * @param queue           NATS queue group to receive requests on
      * @param highWatermark   Milliseconds when high watermark logic is triggered
      * @param executorService Custom executor service for processing messages
+     * @param reassembler     FrameReassembler for fragmented requests, or null if fragmentation is disabled
+     * @param compressor      FrameCompressor for compressed frames, or null if compression is disabled
      */
     private FNatsServer(Connection conn, FProcessor processor, FProtocolFactory protoFactory,
-                        String[] subjects, String queue, long highWatermark, ExecutorService executorService) {
+                        String[] subjects, String queue, long highWatermark, ExecutorService executorService,
+                        FrameReassembler reassembler, FrameCompressor compressor) {
         this.conn = conn;
         this.processor = processor;
         this.inputProtoFactory = protoFactory;
@@ -84,6 +94,8 @@ public class FNatsServer implements FServer {
         this.queue = queue;
         this.highWatermark = highWatermark;
         this.executorService = executorService;
+        this.reassembler = reassembler;
+        this.compressor = compressor;
     }
 
     /**
@@ -101,6 +113,8 @@ public class FNatsServer implements FServer {
         private int queueLength = DEFAULT_WORK_QUEUE_LEN;
         private long highWatermark = DEFAULT_WATERMARK;
         private ExecutorService executorService;
+        private boolean fragmentation;
+        private FrameCompressor compressor;
 
         /**
          * Creates a new Builder which creates FStatelessNatsServers that subscribe to the given NATS subjects.
@@ -186,6 +200,33 @@ public class FNatsServer implements FServer {
             return this;
         }
 
+        /**
+         * Enables fragmentation of frames larger than NATS_MAX_MESSAGE_SIZE (disabled by default). When enabled,
+         * fragmented requests are reassembled, and responses are fragmented for clients which advertise
+         * fragmentation support. Clients which do not advertise support are unaffected.
+         *
+         * @param fragmentation whether to enable fragmentation
+         * @return Builder
+         */
+        public Builder withFragmentation(boolean fragmentation) {
+            this.fragmentation = fragmentation;
+            return this;
+        }
+
+        /**
+         * Enables compression of frames using the given FrameCompressor (disabled by default). When enabled,
+         * compressed requests are decompressed, and responses are compressed for clients which advertise
+         * compression support. Clients which do not advertise support are unaffected. Size limits apply to
+         * uncompressed frames.
+         *
+         * @param compressor FrameCompressor used to compress responses and decompress requests
+         * @return Builder
+         */
+        public Builder withCompression(FrameCompressor compressor) {
+            this.compressor = compressor;
+            return this;
+        }
+
         /**
          * Creates a new configured FNatsServer.
          *
@@ -198,7 +239,8 @@ public class FNatsServer implements FServer {
                         new ArrayBlockingQueue<>(queueLength),
                         new BlockingRejectedExecutionHandler());
             }
-            return new FNatsServer(conn, processor, protoFactory, subjects, queue, highWatermark, executorService);
+            return new FNatsServer(conn, processor, protoFactory, subjects, queue, highWatermark, executorService,
+                    fragmentation ? new FrameReassembler() : null, compressor);
         }
 
     }
@@ -267,9 +309,24 @@ public class FNatsServer implements FServer {
                 return;
             }
 
+            byte[] data = message.getData();
+            if (reassembler != null) {
+                try {
+                    data = reassembler.reassemble(reply, data);
+                } catch (TException e) {
+                    LOGGER.warn("Discarding invalid NATS request fragment: " + e.getMessage());
+                    return;
+                }
+                if (data == null) {
+                    // Waiting on more fragments.
+                    return;
+                }
+            }
+
             executorService.execute(
-                    new Request(message.getData(), System.currentTimeMillis(), message.getReplyTo(),
-                            highWatermark, inputProtoFactory, outputProtoFactory, processor, conn));
+                    new Request(data, System.currentTimeMillis(), message.getReplyTo(),
+                            highWatermark, inputProtoFactory, outputProtoFactory, processor, conn,
+                            reassembler != null, compressor));
         };
     }
 
@@ -286,10 +343,26 @@ public class FNatsServer implements FServer {
         final FProtocolFactory outputProtoFactory;
         final FProcessor processor;
         final Connection conn;
+        final boolean fragmentation;
+        final FrameCompressor compressor;
 
         Request(byte[] frameBytes, long timestamp, String reply, long highWatermark,
                 FProtocolFactory inputProtoFactory, FProtocolFactory outputProtoFactory,
                 FProcessor processor, Connection conn) {
+            this(frameBytes, timestamp, reply, highWatermark, inputProtoFactory, outputProtoFactory, processor, conn,
+                    false);
+        }
+
+        Request(byte[] frameBytes, long timestamp, String reply, long highWatermark,
+                FProtocolFactory inputProtoFactory, FProtocolFactory outputProtoFactory,
+                FProcessor processor, Connection conn, boolean fragmentation) {
+            this(frameBytes, timestamp, reply, highWatermark, inputProtoFactory, outputProtoFactory, processor, conn,
+                    fragmentation, null);
+        }
+
+        Request(byte[] frameBytes, long timestamp, String reply, long highWatermark,
+                FProtocolFactory inputProtoFactory, FProtocolFactory outputProtoFactory,
+                FProcessor processor, Connection conn, boolean fragmentation, FrameCompressor compressor) {
             this.frameBytes = frameBytes;
             this.timestamp = timestamp;
             this.reply = reply;
@@ -298,6 +371,8 @@ public class FNatsServer implements FServer {
             this.outputProtoFactory = outputProtoFactory;
             this.processor = processor;
             this.conn = conn;
+            this.fragmentation = fragmentation;
+            this.compressor = compressor;
         }
 
         @Override
@@ -311,11 +386,29 @@ public class FNatsServer implements FServer {
         }
 
         private void process() {
+            // Only fragment or compress responses for clients which advertise support for it.
+            boolean fragmentResponse = false;
+            boolean compressResponse = false;
             // Read and process frame (exclude first 4 bytes which represent frame size).
             byte[] frame = Arrays.copyOfRange(frameBytes, 4, frameBytes.length);
+            if (fragmentation || compressor != null) {
+                try {
+                    Map<String, String> headers = HeaderUtils.decodeFromFrame(frame);
+                    fragmentResponse = fragmentation && FrameFragmenter.supportsFragmentation(headers);
+                    if (compressor != null) {
+                        compressResponse = compressor.isAccepted(headers);
+                        frame = compressor.decompress(headers, frame, fragmentation
+                                ? FrameFragmenter.MAX_FRAGMENTED_FRAME_SIZE : NATS_MAX_MESSAGE_SIZE);
+                    }
+                } catch (TException e) {
+                    LOGGER.error("error processing request", e);
+                    return;
+                }
+            }
             TTransport input = new TMemoryInputTransport(frame);
 
-            TMemoryOutputBuffer output = new TMemoryOutputBuffer(NATS_MAX_MESSAGE_SIZE);
+            TMemoryOutputBuffer output = new TMemoryOutputBuffer(
+                    fragmentResponse ? FrameFragmenter.MAX_FRAGMENTED_FRAME_SIZE : NATS_MAX_MESSAGE_SIZE);
             try {
                 processor.process(inputProtoFactory.getProtocol(input), outputProtoFactory.getProtocol(output));
             } catch (TException e) {
@@ -336,9 +429,22 @@ public class FNatsServer implements FServer {
 
             // Send response.
             try {
-                conn.publish(reply, output.getWriteBytes());
+                byte[] response = output.getWriteBytes();
+                if (compressResponse) {
+                    response = compressor.compress(response, true);
+                }
+                if (!fragmentResponse) {
+                    conn.publish(reply, response);
+                    return;
+                }
+                response = HeaderUtils.addHeadersToFrame(response, FrameFragmenter.FRAGMENTATION_HEADERS);
+                for (byte[] fragment : FrameFragmenter.fragment(response, NATS_MAX_MESSAGE_SIZE)) {
+                    conn.publish(reply, fragment);
+                }
             } catch (IOException e) {
                 LOGGER.warn("failed to request response: " + e.getMessage());
+            } catch (TException e) {
+                LOGGER.warn("failed to encode response: " + e.getMessage());
             }
         }
 
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import io.netty.handler.ssl.SslContext;
+import io.netty.util.AsciiString;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+
+/**
+ * Initializes Netty server channels which serve Frugal over HTTP/2 as well as
+ * HTTP/1.1.
+ * <p>
+ * Without TLS, a connection starting with the HTTP/2 connection preface is
+ * served over HTTP/2 (prior knowledge h2c). Any other connection is served over
+ * HTTP/1.1 by a {@link FNettyHttpHandler} and may be upgraded to h2c with an
+ * {@code Upgrade: h2c} request. With TLS, the protocol is negotiated with ALPN,
+ * so the {@link SslContext} must be built with an ALPN configuration advertising
+ * {@code h2} and {@code http/1.1}.
+ * <p>
+ * Each HTTP/2 stream is processed independently by the {@link FNettyHttpProcessor},
+ * so slow requests do not hold up other requests of the connection. Responses are
+ * written through the HTTP/2 flow controller, which only sends data while the
+ * client has window for it, and the number of streams a client may open at once
+ * is bounded with the {@code SETTINGS_MAX_CONCURRENT_STREAMS} setting. HTTP/2
+ * connections stop reading while their outbound buffer is full and, when requests
+ * are processed on an executor, while the number of HTTP/2 requests pending across
+ * all connections is at the limit.
+ */
+public class FNettyHttp2ServerInitializer extends ChannelInitializer<SocketChannel> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FNettyHttp2ServerInitializer.class);
+
+    public static final int DEFAULT_MAX_CONTENT_LENGTH = 64 * 1024 * 1024;
+    public static final long DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
+    private static final String STREAM_ID = HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text().toString();
+
+    private final FNettyHttpProcessor processor;
+    private final Executor executor;
+    private final FNettyHttpHandler http1Handler;
+    private final SslContext sslContext;
+    private final int maxContentLength;
+    private final long maxConcurrentStreams;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Queue<Channel> paused = new ConcurrentLinkedQueue<>();
+
+    private FNettyHttp2ServerInitializer(Builder builder) {
+        this.processor = builder.processor;
+        this.executor = builder.executor;
+        this.http1Handler = builder.executor == null
+                ? FNettyHttpHandler.of(builder.processor)
+                : FNettyHttpHandler.of(builder.processor, builder.executor, builder.maxPending);
+        this.sslContext = builder.sslContext;
+        this.maxContentLength = builder.maxContentLength;
+        this.maxConcurrentStreams = builder.maxConcurrentStreams;
+        this.maxPending = builder.maxPending;
+    }
+
+    /**
+     * Builder for configuring and constructing FNettyHttp2ServerInitializer instances.
+     */
+    public static class Builder {
+
+        private final FNettyHttpProcessor processor;
+
+        private Executor executor;
+        private int maxPending;
+        private SslContext sslContext;
+        private int maxContentLength = DEFAULT_MAX_CONTENT_LENGTH;
+        private long maxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+
+        /**
+         * Creates a new Builder which creates initializers serving the given processor.
+         *
+         * @param processor HTTP processor used to process requests
+         */
+        public Builder(FNettyHttpProcessor processor) {
+            this.processor = processor;
+        }
+
+        /**
+         * Processes requests on the given executor rather than on the event loops.
+         * Requests the executor rejects are answered with a 503 response.
+         *
+         * @param executor   executor processing requests
+         * @param maxPending number of requests read but not yet answered at which
+         *                   connections stop reading, counted separately for
+         *                   HTTP/1.1 and HTTP/2 connections, see
+         *                   {@link FNettyHttpHandler#of(FNettyHttpProcessor, Executor, int)}
+         * @return Builder
+         */
+        public Builder withExecutor(Executor executor, int maxPending) {
+            if (maxPending < 1) {
+                throw new IllegalArgumentException("maxPending must be positive");
+            }
+            this.executor = executor;
+            this.maxPending = maxPending;
+            return this;
+        }
+
+        /**
+         * Serves connections over TLS, negotiating HTTP/2 or HTTP/1.1 with ALPN.
+         *
+         * @param sslContext server SslContext configured for ALPN
+         * @return Builder
+         */
+        public Builder withSslContext(SslContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        /**
+         * Sets the maximum size in bytes of a request body.
+         *
+         * @param maxContentLength maximum request body size
+         * @return Builder
+         */
+        public Builder withMaxContentLength(int maxContentLength) {
+            this.maxContentLength = maxContentLength;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of HTTP/2 streams a client may have open at once
+         * on a connection.
+         *
+         * @param maxConcurrentStreams maximum concurrent streams per connection
+         * @return Builder
+         */
+        public Builder withMaxConcurrentStreams(long maxConcurrentStreams) {
+            if (maxConcurrentStreams < 1) {
+                throw new IllegalArgumentException("maxConcurrentStreams must be positive");
+            }
+            this.maxConcurrentStreams = maxConcurrentStreams;
+            return this;
+        }
+
+        /**
+         * Creates a new configured FNettyHttp2ServerInitializer.
+         *
+         * @return FNettyHttp2ServerInitializer
+         */
+        public FNettyHttp2ServerInitializer build() {
+            return new FNettyHttp2ServerInitializer(this);
+        }
+    }
+
+    @Override
+    protected void initChannel(SocketChannel ch) {
+        if (sslContext != null) {
+            ch.pipeline().addLast(sslContext.newHandler(ch.alloc()), new ProtocolNegotiator());
+        } else {
+            ch.pipeline().addLast(new PrefaceDetector());
+        }
+    }
+
+    private void configureHttp2(ChannelPipeline pipeline) {
+        pipeline.addLast(newHttp2Handler(), new StreamHandler());
+    }
+
+    private void configureHttp1(ChannelPipeline pipeline, boolean upgradable) {
+        HttpServerCodec codec = new HttpServerCodec();
+        pipeline.addLast(codec);
+        if (upgradable) {
+            pipeline.addLast(new HttpServerUpgradeHandler(codec, protocol ->
+                    AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)
+                            ? new Http2ServerUpgradeCodec(newHttp2Handler())
+                            : null,
+                    maxContentLength));
+            pipeline.addLast(new UpgradeListener());
+        }
+        pipeline.addLast(new HttpObjectAggregator(maxContentLength), http1Handler);
+    }
+
+    private HttpToHttp2ConnectionHandler newHttp2Handler() {
+        Http2Connection connection = new DefaultHttp2Connection(true);
+        return new HttpToHttp2ConnectionHandlerBuilder()
+                .connection(connection)
+                .initialSettings(new Http2Settings().maxConcurrentStreams(maxConcurrentStreams))
+                .frameListener(new InboundHttp2ToHttpAdapterBuilder(connection)
+                        .maxContentLength(maxContentLength)
+                        .propagateSettings(false)
+                        .build())
+                .build();
+    }
+
+    // Pauses reading on the channel while HTTP/2 requests are at the limit.
+    private void acquire(Channel channel) {
+        if (pending.incrementAndGet() >= maxPending) {
+            channel.config().setAutoRead(false);
+            paused.add(channel);
+        }
+    }
+
+    // Resumes reading on paused connections once requests are no longer at the limit.
+    private void release() {
+        if (pending.decrementAndGet() < maxPending) {
+            resumePaused();
+        }
+    }
+
+    // Connections whose outbound buffer is full are resumed once it drains instead.
+    private void resumePaused() {
+        Channel channel;
+        while ((channel = paused.poll()) != null) {
+            if (channel.isWritable()) {
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+
+    private static FullHttpResponse newErrorResponse(HttpResponseStatus status) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, status, Unpooled.EMPTY_BUFFER);
+        HttpUtil.setContentLength(response, 0);
+        return response;
+    }
+
+    /**
+     * Serves cleartext connections starting with the HTTP/2 connection preface
+     * over HTTP/2 and all others over HTTP/1.1.
+     */
+    private class PrefaceDetector extends ByteToMessageDecoder {
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+            ByteBuf preface = Http2CodecUtil.connectionPrefaceBuf();
+            try {
+                int length = Math.min(in.readableBytes(), preface.readableBytes());
+                if (!ByteBufUtil.equals(preface, preface.readerIndex(), in, in.readerIndex(), length)) {
+                    configureHttp1(ctx.pipeline(), true);
+                } else if (length == preface.readableBytes()) {
+                    configureHttp2(ctx.pipeline());
+                } else {
+                    return;
+                }
+            } finally {
+                preface.release();
+            }
+            // Removing the detector passes the bytes read so far on to the new handlers.
+            ctx.pipeline().remove(this);
+        }
+    }
+
+    /**
+     * Configures TLS connections for the protocol negotiated with ALPN.
+     */
+    private class ProtocolNegotiator extends ApplicationProtocolNegotiationHandler {
+        ProtocolNegotiator() {
+            super(ApplicationProtocolNames.HTTP_1_1);
+        }
+
+        @Override
+        protected void configurePipeline(ChannelHandlerContext ctx, String protocol) {
+            if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+                configureHttp2(ctx.pipeline());
+            } else if (ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+                configureHttp1(ctx.pipeline(), false);
+            } else {
+                throw new IllegalStateException("Unknown protocol: " + protocol);
+            }
+        }
+    }
+
+    /**
+     * Switches an upgraded connection from the HTTP/1.1 handlers to HTTP/2 stream
+     * processing and answers the upgrade request on stream 1.
+     */
+    private class UpgradeListener extends ChannelInboundHandlerAdapter {
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (!(evt instanceof HttpServerUpgradeHandler.UpgradeEvent)) {
+                ctx.fireUserEventTriggered(evt);
+                return;
+            }
+
+            FullHttpRequest request = ((HttpServerUpgradeHandler.UpgradeEvent) evt).upgradeRequest().retain();
+            request.headers().setInt(STREAM_ID, 1);
+
+            ChannelPipeline pipeline = ctx.pipeline();
+            pipeline.remove(HttpObjectAggregator.class);
+            pipeline.remove(http1Handler);
+            StreamHandler streams = new StreamHandler();
+            pipeline.replace(this, null, streams);
+            streams.channelRead(pipeline.context(streams), request);
+        }
+    }
+
+    /**
+     * Processes the requests of an HTTP/2 connection, each one independently of
+     * the others, and writes every response to the stream of its request.
+     */
+    private class StreamHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (!(msg instanceof FullHttpRequest)) {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+
+            FullHttpRequest request = (FullHttpRequest) msg;
+            String streamId = request.headers().get(STREAM_ID);
+            if (executor == null) {
+                write(ctx, streamId, process(request));
+                return;
+            }
+
+            acquire(ctx.channel());
+            try {
+                executor.execute(() -> {
+                    FullHttpResponse response = process(request);
+                    ctx.executor().execute(() -> {
+                        write(ctx, streamId, response);
+                        release();
+                    });
+                });
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("Frugal HTTP/2 request rejected by executor: {}", e.getMessage());
+                request.release();
+                write(ctx, streamId, newErrorResponse(SERVICE_UNAVAILABLE));
+                release();
+            }
+        }
+
+        @Override
+        public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+            Channel channel = ctx.channel();
+            if (!channel.isWritable()) {
+                channel.config().setAutoRead(false);
+            } else if (executor == null || pending.get() < maxPending) {
+                channel.config().setAutoRead(true);
+            } else {
+                // Leave it to the next request answered, unless that already happened.
+                paused.add(channel);
+                if (pending.get() < maxPending) {
+                    resumePaused();
+                }
+            }
+            ctx.fireChannelWritabilityChanged();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            LOGGER.error("Closing HTTP/2 connection " + ctx.channel() + " after unhandled error", cause);
+            ctx.close();
+        }
+
+        private FullHttpResponse process(FullHttpRequest request) {
+            try {
+                return processor.process(request);
+            } catch (RuntimeException e) {
+                LOGGER.error("Frugal HTTP processor failed", e);
+                return newErrorResponse(INTERNAL_SERVER_ERROR);
+            }
+        }
+
+        private void write(ChannelHandlerContext ctx, String streamId, FullHttpResponse response) {
+            response.headers().set(STREAM_ID, streamId);
+            ctx.writeAndFlush(response);
+        }
+    }
+}
@@ -13,33 +13,86 @@
 
 package com.workiva.frugal.server;
 
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
 import io.netty.handler.codec.http.HttpUtil;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static io.netty.handler.codec.http.HttpHeaderNames.CONNECTION;
+import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 
 /**
  * Reference implementation of a Netty HTTP handler.
  *
  * This handler uses {@link FDefaultNettyHttpProcessor} to process HTTP requests
  * using a Frugal processor and protocol.
+ * <p>
+ * By default, requests are processed on the event loop of the connection, so
+ * processors must not block. Handlers created with
+ * {@link #of(FNettyHttpProcessor, Executor, int)} process requests on the given
+ * executor instead. Requests of a connection are then processed one at a time, so
+ * responses are written in request order, and connections stop reading while the
+ * number of requests pending across all connections is at the limit.
  */
 @ChannelHandler.Sharable
 public class FNettyHttpHandler extends ChannelInboundHandlerAdapter {
 
+    private static final Logger LOGGER = LoggerFactory.getLogger(FNettyHttpHandler.class);
+
+    private static final AttributeKey<RequestQueue> REQUESTS =
+            AttributeKey.valueOf(FNettyHttpHandler.class, "requests");
+
     private final FNettyHttpProcessor processor;
+    private final Executor executor;
+    private final int maxPending;
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Queue<Channel> paused = new ConcurrentLinkedQueue<>();
 
-    private FNettyHttpHandler(FNettyHttpProcessor processor) {
+    private FNettyHttpHandler(FNettyHttpProcessor processor, Executor executor, int maxPending) {
         this.processor = processor;
+        this.executor = executor;
+        this.maxPending = maxPending;
     }
 
     public static FNettyHttpHandler of(FNettyHttpProcessor processor) {
-        return new FNettyHttpHandler(processor);
+        return new FNettyHttpHandler(processor, null, 0);
+    }
+
+    /**
+     * Creates a handler which processes requests on the given executor, such as
+     * an {@link io.netty.util.concurrent.EventExecutorGroup} or a thread pool.
+     * Requests the executor rejects are answered with a 503 response.
+     *
+     * @param processor  HTTP processor
+     * @param executor   executor processing requests
+     * @param maxPending number of requests read but not yet answered, across all
+     *                   connections, at which connections stop reading
+     * @return a new handler
+     */
+    public static FNettyHttpHandler of(FNettyHttpProcessor processor, Executor executor, int maxPending) {
+        if (maxPending < 1) {
+            throw new IllegalArgumentException("maxPending must be positive");
+        }
+        return new FNettyHttpHandler(processor, executor, maxPending);
     }
 
     @Override
@@ -51,21 +104,129 @@ public class FNettyHttpHandler extends ChannelInboundHandlerAdapter {
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         if (msg instanceof FullHttpRequest) {
             FullHttpRequest request = (FullHttpRequest) msg;
+            if (executor != null) {
+                requests(ctx).add(request);
+                return;
+            }
+
             FullHttpResponse response = processor.process(request);
+            write(ctx, HttpUtil.isKeepAlive(request), response);
+        }
+    }
 
-            boolean keepAlive = HttpUtil.isKeepAlive(request);
-            if (!keepAlive) {
-                ctx.write(response).addListener(ChannelFutureListener.CLOSE);
-            } else {
-                response.headers().set(CONNECTION, "keep-alive");
-                ctx.write(response);
-            }
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        if (executor != null) {
+            requests(ctx).clear();
         }
+        ctx.fireChannelInactive();
     }
 
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-        cause.printStackTrace();
+        LOGGER.error("Closing HTTP connection " + ctx.channel() + " after unhandled error", cause);
         ctx.close();
     }
+
+    private static void write(ChannelHandlerContext ctx, boolean keepAlive, FullHttpResponse response) {
+        if (!keepAlive) {
+            ctx.write(response).addListener(ChannelFutureListener.CLOSE);
+        } else {
+            response.headers().set(CONNECTION, "keep-alive");
+            ctx.write(response);
+        }
+    }
+
+    private static FullHttpResponse newErrorResponse(HttpResponseStatus status) {
+        FullHttpResponse response = new DefaultFullHttpResponse(HTTP_1_1, status, Unpooled.EMPTY_BUFFER);
+        HttpUtil.setContentLength(response, 0);
+        return response;
+    }
+
+    private RequestQueue requests(ChannelHandlerContext ctx) {
+        RequestQueue requests = ctx.channel().attr(REQUESTS).get();
+        if (requests == null) {
+            requests = new RequestQueue(ctx);
+            ctx.channel().attr(REQUESTS).set(requests);
+        }
+        return requests;
+    }
+
+    // Resumes reading on paused connections once requests are no longer at the limit.
+    private void release() {
+        if (pending.decrementAndGet() < maxPending) {
+            Channel channel;
+            while ((channel = paused.poll()) != null) {
+                channel.config().setAutoRead(true);
+            }
+        }
+    }
+
+    /**
+     * The requests of a connection waiting to be processed. All methods run on
+     * the event loop of the connection.
+     */
+    private class RequestQueue {
+        private final ChannelHandlerContext ctx;
+        private final Queue<FullHttpRequest> requests = new ArrayDeque<>();
+        private boolean processing;
+
+        RequestQueue(ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+        }
+
+        void add(FullHttpRequest request) {
+            requests.add(request);
+            if (pending.incrementAndGet() >= maxPending) {
+                ctx.channel().config().setAutoRead(false);
+                paused.add(ctx.channel());
+            }
+            if (!processing) {
+                processNext();
+            }
+        }
+
+        void clear() {
+            FullHttpRequest request;
+            while ((request = requests.poll()) != null) {
+                request.release();
+                release();
+            }
+        }
+
+        private void processNext() {
+            FullHttpRequest request = requests.poll();
+            if (request == null) {
+                processing = false;
+                return;
+            }
+            processing = true;
+
+            boolean keepAlive = HttpUtil.isKeepAlive(request);
+            try {
+                executor.execute(() -> {
+                    FullHttpResponse response;
+                    try {
+                        response = processor.process(request);
+                    } catch (RuntimeException e) {
+                        LOGGER.error("Frugal HTTP processor failed", e);
+                        response = newErrorResponse(INTERNAL_SERVER_ERROR);
+                    }
+                    FullHttpResponse processed = response;
+                    ctx.executor().execute(() -> complete(keepAlive, processed));
+                });
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("Frugal HTTP request rejected by executor: {}", e.getMessage());
+                request.release();
+                complete(keepAlive, newErrorResponse(SERVICE_UNAVAILABLE));
+            }
+        }
+
+        private void complete(boolean keepAlive, FullHttpResponse response) {
+            write(ctx, keepAlive, response);
+            ctx.flush();
+            release();
+            processNext();
+        }
+    }
 }
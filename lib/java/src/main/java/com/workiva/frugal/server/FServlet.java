@@ -1,11 +1,20 @@
 package com.workiva.frugal.server;
 
+import com.workiva.frugal.FContext;
 import com.workiva.frugal.processor.FProcessor;
 import com.workiva.frugal.protocol.FProtocolFactory;
-import com.workiva.frugal.transport.TMemoryOutputBuffer;
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.transport.TChunkedOutputBuffer;
+import com.workiva.frugal.transport.TFileChannelTransport;
+import com.workiva.frugal.util.FrameCompressor;
+import com.workiva.frugal.util.HttpBatch;
+import com.workiva.frugal.util.HttpContentEncoding;
+import com.workiva.frugal.util.HttpTransferEncoding;
 import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocolException;
 import org.apache.thrift.transport.TMemoryInputTransport;
 import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,13 +22,29 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
 
+import java.io.Closeable;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipException;
 
 /**
  * Processes POST requests as Frugal requests for a processor.
@@ -34,7 +59,25 @@ import java.util.Base64;
  * a frame, a 400 response for an invalid frame, and a 413 response if the response
  * exceeds the payload limit specified by the client.
  * <p>
- * Both the request and response are base64 encoded.
+ * Both the request and response are base64 encoded, unless the client negotiates
+ * raw binary bodies as described in {@link HttpTransferEncoding}.
+ * <p>
+ * If a FrameCompressor is provided, compressed requests are decompressed, and
+ * responses are compressed for clients which advertise compression support.
+ * Size limits apply to uncompressed frames.
+ * <p>
+ * Request bodies compressed with a standard HTTP content encoding are
+ * decompressed, and responses are compressed as described in
+ * {@link HttpContentEncoding} once a threshold is set with
+ * {@link #setContentEncodingThreshold(int)}. The payload limit of the client
+ * applies to the framed response before compression.
+ * <p>
+ * Requests may batch several frames as described in {@link HttpBatch}. The
+ * frames of a batch are processed one after the other, or in parallel on the
+ * executor set with {@link #setBatchExecutor(Executor)}.
+ * <p>
+ * Large request frames may be spilled to temporary files rather than read
+ * into the heap, see {@link #setRequestSpilling(int, long, long, Path)}.
  */
 @SuppressWarnings("serial")
 public class FServlet extends HttpServlet {
@@ -46,6 +89,15 @@ public class FServlet extends HttpServlet {
     private final FProtocolFactory inProtocolFactory;
     private final FProtocolFactory outProtocolFactory;
     private final int maxRequestSize;
+    private final FrameCompressor compressor;
+    private volatile Executor batchExecutor;
+    private volatile int contentEncodingThreshold = -1;
+    private volatile int spillThreshold = -1;
+    private volatile long maxBufferedBytes;
+    private volatile long maxSpilledBytes;
+    private volatile Path spillDirectory;
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final AtomicLong spilledBytes = new AtomicLong();
 
     /**
      * Creates a servlet for the specified processor and protocol factory, which
@@ -84,69 +136,568 @@ public class FServlet extends HttpServlet {
             FProtocolFactory inProtocolFactory,
             FProtocolFactory outProtocolFactory,
             int maxRequestSize) {
+        this(processor, inProtocolFactory, outProtocolFactory, maxRequestSize, null);
+    }
+
+    /**
+     * Creates a servlet for the specified processor and input/output protocol
+     * factories which compresses frames using the given FrameCompressor.
+     *
+     * @param maxRequestSize the maximum Frugal request size in bytes
+     * @param compressor     FrameCompressor, or null to disable compression
+     */
+    public FServlet(
+            FProcessor processor,
+            FProtocolFactory inProtocolFactory,
+            FProtocolFactory outProtocolFactory,
+            int maxRequestSize,
+            FrameCompressor compressor) {
         this.processor = processor;
         this.inProtocolFactory = inProtocolFactory;
         this.outProtocolFactory = outProtocolFactory;
         this.maxRequestSize = maxRequestSize;
+        this.compressor = compressor;
+    }
+
+    /**
+     * Processes the frames of batch requests in parallel on the given executor.
+     * Frames the executor rejects fail with a 503 status, see {@link HttpBatch}.
+     *
+     * @param batchExecutor executor processing batched frames, or null to process
+     *                      them on the request thread
+     */
+    public void setBatchExecutor(Executor batchExecutor) {
+        this.batchExecutor = batchExecutor;
+    }
+
+    /**
+     * Compresses response bodies of at least the given size in bytes with a
+     * content encoding the client accepts, and advertises that compressed
+     * requests are accepted. Compressed requests are decompressed regardless.
+     *
+     * @param contentEncodingThreshold minimum body size to compress, or a
+     *                                 negative value to disable compression
+     */
+    public void setContentEncodingThreshold(int contentEncodingThreshold) {
+        this.contentEncodingThreshold = contentEncodingThreshold;
+    }
+
+    /**
+     * Spills request frames larger than the threshold to temporary files, which
+     * are processed in place with positional reads rather than read into the
+     * heap. Frames which would take the total size of the frames held in the
+     * heap by in-flight requests above the given maximum are spilled as well.
+     * Frames which would take the total size of the frames spilled by in-flight
+     * requests above the spill maximum are rejected with a 503 response. Batch
+     * requests are always read into the heap.
+     * <p>
+     * Each temporary file is deleted once its request has been processed.
+     * Spilled frames compressed with the FrameCompressor are decompressed in the
+     * heap, and count towards the heap maximum while they are processed, along
+     * with their decompressed copy at the maximum request size.
+     *
+     * @param spillThreshold   largest frame size in bytes read into the heap, or
+     *                         a negative value to disable spilling
+     * @param maxBufferedBytes maximum total size in bytes of the frames held in
+     *                         the heap by in-flight requests
+     * @param maxSpilledBytes  maximum total size in bytes of the frames spilled
+     *                         by in-flight requests
+     * @param spillDirectory   directory of the temporary files, or null for the
+     *                         default temporary-file directory
+     */
+    public void setRequestSpilling(int spillThreshold, long maxBufferedBytes, long maxSpilledBytes,
+                                   Path spillDirectory) {
+        if (maxBufferedBytes < 0) {
+            throw new IllegalArgumentException("maxBufferedBytes must not be negative");
+        }
+        if (maxSpilledBytes < 0) {
+            throw new IllegalArgumentException("maxSpilledBytes must not be negative");
+        }
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.maxSpilledBytes = maxSpilledBytes;
+        this.spillDirectory = spillDirectory;
+        this.spillThreshold = spillThreshold;
     }
 
     @Override
     public void doPost(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
-        byte[] frame;
-        try (InputStream decoderIn = Base64.getDecoder().wrap(req.getInputStream());
+        if (HttpBatch.isBatch(req.getHeader(HttpBatch.BATCH_HEADER))) {
+            doBatch(req, resp);
+            return;
+        }
+
+        TChunkedOutputBuffer data;
+        try (RequestFrame frame = readRequestFrame(req, resp, req.getInputStream(), spillThreshold >= 0)) {
+            if (frame == null) {
+                return;
+            }
+            data = processFrame(req, resp, frame);
+        }
+        if (data == null) {
+            return;
+        }
+
+        try (OutputStream out = encodeResponse(req, resp, data.size(), resp.getOutputStream())) {
+            data.writeTo(out);
+        }
+    }
+
+    private void doBatch(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        List<byte[]> frames = readFrames(req, resp, req.getInputStream());
+        if (frames == null) {
+            return;
+        }
+
+        List<TChunkedOutputBuffer> responses = processFrames(req, resp, frames);
+        if (responses == null) {
+            return;
+        }
+
+        int size = 0;
+        for (TChunkedOutputBuffer response : responses) {
+            size += response.size();
+        }
+        try (OutputStream out = encodeResponse(req, resp, size, resp.getOutputStream())) {
+            for (TChunkedOutputBuffer response : responses) {
+                response.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Reads the Frugal frame from the request body, which is closed afterwards.
+     * Returns null if the frame is invalid, in which case the response status
+     * has been set.
+     */
+    byte[] readFrame(HttpServletRequest req, HttpServletResponse resp, InputStream body) throws IOException {
+        RequestFrame frame = readRequestFrame(req, resp, body, false);
+        return frame != null ? frame.bytes : null;
+    }
+
+    /**
+     * Reads the Frugal frame from the request body, which is closed afterwards,
+     * into the heap or, if spilling is enabled, possibly into a temporary file.
+     * Returns null if the frame is invalid or cannot be spilled, in which case
+     * the response status has been set.
+     */
+    private RequestFrame readRequestFrame(HttpServletRequest req, HttpServletResponse resp, InputStream body,
+                                          boolean spilling) throws IOException {
+        boolean binaryRequest = HttpTransferEncoding.isBinary(
+                req.getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER));
+
+        InputStream decodedBody = decodeRequest(req, resp, body);
+        if (decodedBody == null) {
+            return null;
+        }
+
+        RequestFrame frame;
+        try (InputStream decoderIn = binaryRequest ? decodedBody : Base64.getDecoder().wrap(decodedBody);
                 DataInputStream dataIn = new DataInputStream(decoderIn)) {
             try {
                 long size = dataIn.readInt() & 0xffff_ffffL;
                 if (size > maxRequestSize) {
                     LOGGER.debug("Request size too large. Received: {}, Limit: {}", size, maxRequestSize);
                     resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
-                    return;
+                    return null;
                 }
 
-                frame = new byte[(int) size];
-                dataIn.readFully(frame);
+                frame = spilling ? readSpillableFrame(dataIn, (int) size) : new RequestFrame(dataIn, (int) size, false);
+                if (frame == null) {
+                    LOGGER.debug("Request of {} bytes exceeds the spill limit", size);
+                    resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    return null;
+                }
             } catch (EOFException e) {
                 LOGGER.debug("Request body too short");
                 resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                return;
+                return null;
             }
 
             if (dataIn.read() != -1) {
                 LOGGER.debug("Request body too long");
                 resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
-                return;
+                frame.close();
+                return null;
+            }
+        } catch (ZipException e) {
+            LOGGER.debug("Invalid compressed request body: {}", e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+        return frame;
+    }
+
+    /**
+     * Reads a frame of the given size into the heap, or spills it to a temporary
+     * file if it is larger than the spill threshold or does not fit in the heap
+     * alongside the frames of other requests. Returns null if the frame does not
+     * fit in the spill limit either.
+     */
+    private RequestFrame readSpillableFrame(DataInputStream in, int size) throws IOException {
+        if (size <= spillThreshold && reserve(bufferedBytes, maxBufferedBytes, size)) {
+            try {
+                return new RequestFrame(in, size, true);
+            } catch (IOException e) {
+                bufferedBytes.addAndGet(-size);
+                throw e;
             }
         }
 
-        TTransport inTransport = new TMemoryInputTransport(frame);
-        TMemoryOutputBuffer outTransport = new TMemoryOutputBuffer();
+        if (!reserve(spilledBytes, maxSpilledBytes, size)) {
+            return null;
+        }
+
+        LOGGER.debug("Spilling request of {} bytes to a temporary file", size);
+        Path directory = spillDirectory;
+        Path file = null;
+        FileChannel channel = null;
+        try {
+            file = directory != null
+                    ? Files.createTempFile(directory, "frugal-request", ".tmp")
+                    : Files.createTempFile("frugal-request", ".tmp");
+            // The file is deleted once the channel is closed with the frame.
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            byte[] buffer = new byte[8192];
+            int remaining = size;
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, Math.min(buffer.length, remaining));
+                if (n == -1) {
+                    throw new EOFException();
+                }
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, n);
+                while (chunk.hasRemaining()) {
+                    channel.write(chunk);
+                }
+                remaining -= n;
+            }
+            return new RequestFrame(channel, size);
+        } catch (IOException | RuntimeException e) {
+            if (channel != null) {
+                channel.close();
+            } else if (file != null) {
+                Files.deleteIfExists(file);
+            }
+            spilledBytes.addAndGet(-size);
+            throw e;
+        }
+    }
+
+    // Reserves space for a frame of the given size, unless the total would exceed the maximum.
+    private static boolean reserve(AtomicLong total, long max, long size) {
+        long current;
+        do {
+            current = total.get();
+            if (current + size > max) {
+                return false;
+            }
+        } while (!total.compareAndSet(current, current + size));
+        return true;
+    }
+
+    /**
+     * Reads the Frugal frames of a batch request body, which is closed afterwards.
+     * Returns null if the batch is invalid, in which case the response status has
+     * been set. The maximum request size applies to the batch as a whole.
+     */
+    List<byte[]> readFrames(HttpServletRequest req, HttpServletResponse resp, InputStream body) throws IOException {
+        boolean binaryRequest = HttpTransferEncoding.isBinary(
+                req.getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER));
+
+        InputStream decodedBody = decodeRequest(req, resp, body);
+        if (decodedBody == null) {
+            return null;
+        }
+
+        List<byte[]> frames = new ArrayList<>();
+        long total = 0;
+        try (InputStream decoderIn = binaryRequest ? decodedBody : Base64.getDecoder().wrap(decodedBody);
+                DataInputStream dataIn = new DataInputStream(decoderIn)) {
+            int first;
+            while ((first = dataIn.read()) != -1) {
+                try {
+                    long size = ((long) first << 24 | dataIn.readUnsignedShort() << 8 | dataIn.readUnsignedByte());
+                    total += size;
+                    if (total > maxRequestSize) {
+                        LOGGER.debug("Batch size too large. Limit: {}", maxRequestSize);
+                        resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                        return null;
+                    }
+
+                    byte[] frame = new byte[(int) size];
+                    dataIn.readFully(frame);
+                    frames.add(frame);
+                } catch (EOFException e) {
+                    LOGGER.debug("Batch body too short");
+                    resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                    return null;
+                }
+            }
+        } catch (ZipException e) {
+            LOGGER.debug("Invalid compressed batch body: {}", e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            return null;
+        }
+        return frames;
+    }
+
+    /**
+     * Wraps the request body to decompress it according to its content encoding.
+     * Returns null if the body cannot be decompressed, in which case the body is
+     * closed and the response status has been set.
+     */
+    private static InputStream decodeRequest(HttpServletRequest req, HttpServletResponse resp, InputStream body)
+            throws IOException {
+        String contentEncoding = req.getHeader(HttpContentEncoding.CONTENT_ENCODING_HEADER);
+        if (HttpContentEncoding.isIdentity(contentEncoding)) {
+            return body;
+        }
+        if (!HttpContentEncoding.isSupported(contentEncoding)) {
+            LOGGER.debug("Unsupported request content encoding: {}", contentEncoding);
+            resp.setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+            body.close();
+            return null;
+        }
+        try {
+            return HttpContentEncoding.decode(body, contentEncoding);
+        } catch (IOException e) {
+            LOGGER.debug("Invalid compressed request body: {}", e.getMessage());
+            resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            body.close();
+            return null;
+        }
+    }
+
+    /**
+     * Processes the Frugal frames of a batch and returns the framed responses
+     * of the frames which have one. Frames which fail are listed with their
+     * status in the {@link HttpBatch#FRAME_STATUS_HEADER} header, as are frames
+     * whose response would take the batch over the payload limit of the client.
+     * Returns null if a frame without an op id failed, in which case the
+     * response status has been set.
+     */
+    private List<TChunkedOutputBuffer> processFrames(
+            HttpServletRequest req, HttpServletResponse resp, List<byte[]> frames) {
+        Executor executor = batchExecutor;
+        List<StatusRecorder> statuses = new ArrayList<>(frames.size());
+        List<CompletableFuture<TChunkedOutputBuffer>> results = new ArrayList<>(frames.size());
+        for (byte[] frame : frames) {
+            StatusRecorder status = new StatusRecorder(resp);
+            statuses.add(status);
+            if (executor == null) {
+                results.add(CompletableFuture.completedFuture(processFrame(req, status, frame)));
+                continue;
+            }
+            try {
+                results.add(CompletableFuture.supplyAsync(() -> processFrame(req, status, frame), executor));
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("Frugal batch frame rejected by executor: {}", e.getMessage());
+                status.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                results.add(CompletableFuture.completedFuture(null));
+            }
+        }
+
+        int responseLimit = getResponseLimit(req);
+        long responseSize = 0;
+        List<TChunkedOutputBuffer> responses = new ArrayList<>(frames.size());
+        Map<String, Integer> failed = new LinkedHashMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            TChunkedOutputBuffer response = results.get(i).join();
+            if (response != null && responseLimit > 0 && responseSize + response.size() > responseLimit) {
+                LOGGER.debug("Batch response size too large for client. Limit: {}", responseLimit);
+                statuses.get(i).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+                response = null;
+            }
+            if (response == null) {
+                String opId = getOpId(frames.get(i));
+                if (opId == null) {
+                    resp.setStatus(statuses.get(i).status);
+                    return null;
+                }
+                failed.put(opId, statuses.get(i).status);
+                continue;
+            }
+            if (response.hasWriteData()) {
+                responseSize += response.size();
+                responses.add(response);
+            }
+        }
+        if (!failed.isEmpty()) {
+            resp.setHeader(HttpBatch.FRAME_STATUS_HEADER, HttpBatch.formatStatuses(failed));
+        }
+        return responses;
+    }
+
+    // Returns the op id of a request frame, or null if it has none.
+    private static String getOpId(byte[] frame) {
+        try {
+            return HeaderUtils.decodeFromFrame(frame).get(FContext.OPID_HEADER);
+        } catch (TException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Processes the Frugal frame and returns the framed response. Returns null
+     * if processing failed, in which case the response status has been set.
+     * <p>
+     * The response is buffered in chunks which are written out one at a time,
+     * and processing is cut short as soon as the response exceeds the payload
+     * limit of the client.
+     */
+    TChunkedOutputBuffer processFrame(HttpServletRequest req, HttpServletResponse resp, byte[] frame) {
+        boolean compressResponse = false;
+        if (compressor != null) {
+            try {
+                Map<String, String> headers = HeaderUtils.decodeFromFrame(frame);
+                compressResponse = compressor.isAccepted(headers);
+                frame = compressor.decompress(headers, frame, maxRequestSize);
+            } catch (TProtocolException e) {
+                LOGGER.debug("Could not decompress request: {}", e.getMessage());
+                resp.setStatus(e.getType() == TProtocolException.SIZE_LIMIT
+                        ? HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE
+                        : HttpServletResponse.SC_BAD_REQUEST);
+                return null;
+            } catch (TException e) {
+                LOGGER.debug("Could not decompress request: {}", e.getMessage());
+                resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return null;
+            }
+        }
+
+        return processFrame(req, resp, new TMemoryInputTransport(frame), compressResponse);
+    }
+
+    /**
+     * Processes a request frame held in the heap or in a temporary file. Spilled
+     * frames are read in place, unless their body is compressed with the
+     * FrameCompressor and has to be decompressed in the heap, in which case they
+     * are rejected with a 503 response if they do not fit in the heap.
+     */
+    private TChunkedOutputBuffer processFrame(HttpServletRequest req, HttpServletResponse resp, RequestFrame frame) {
+        if (frame.bytes != null) {
+            return processFrame(req, resp, frame.bytes);
+        }
+
+        boolean compressResponse = false;
+        if (compressor != null) {
+            Map<String, String> headers;
+            try {
+                headers = HeaderUtils.read(frame.transport());
+            } catch (TException e) {
+                LOGGER.debug("Could not read request headers: {}", e.getMessage());
+                resp.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+                return null;
+            }
+            if (headers.containsKey(FrameCompressor.COMPRESSION_HEADER)) {
+                return processCompressedFrame(req, resp, frame);
+            }
+            compressResponse = compressor.isAccepted(headers);
+        }
+        return processFrame(req, resp, frame.transport(), compressResponse);
+    }
+
+    // Reads a compressed spilled frame into the heap, within the heap maximum, to decompress it. The
+    // decompressed copy is counted at its largest size, since it is only known once it has been made.
+    private TChunkedOutputBuffer processCompressedFrame(HttpServletRequest req, HttpServletResponse resp,
+                                                        RequestFrame frame) {
+        long size = (long) frame.size + maxRequestSize;
+        if (!reserve(bufferedBytes, maxBufferedBytes, size)) {
+            LOGGER.debug("Compressed request of {} bytes does not fit in the heap", frame.size);
+            resp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return null;
+        }
+        try {
+            byte[] bytes = new byte[frame.size];
+            try {
+                frame.transport().readAll(bytes, 0, bytes.length);
+            } catch (TTransportException e) {
+                LOGGER.error("Could not read spilled request: {}", e.getMessage());
+                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                return null;
+            }
+            return processFrame(req, resp, bytes);
+        } finally {
+            bufferedBytes.addAndGet(-size);
+        }
+    }
+
+    private TChunkedOutputBuffer processFrame(HttpServletRequest req, HttpServletResponse resp,
+                                              TTransport inTransport, boolean compressResponse) {
+        int responseLimit = getResponseLimit(req);
+        TChunkedOutputBuffer outTransport = new TChunkedOutputBuffer(responseLimit);
         try {
             processor.process(inProtocolFactory.getProtocol(inTransport), outProtocolFactory.getProtocol(outTransport));
         } catch (RuntimeException e) {
             // Already logged by FBaseProcessor.
             resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            return;
+            return null;
         } catch (TException e) {
-            LOGGER.error("Frugal processor returned unhandled error", e);
-            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-            return;
+            if (!outTransport.isLimitExceeded()) {
+                LOGGER.error("Frugal processor returned unhandled error", e);
+                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                return null;
+            }
         }
 
-        byte[] data = outTransport.getWriteBytes();
-
-        int responseLimit = getResponseLimit(req);
-        if (responseLimit > 0 && outTransport.size() > responseLimit) {
-            LOGGER.debug("Response size too large for client. Received: {}, Limit: {}",
-                    outTransport.size(), responseLimit);
+        if (outTransport.isLimitExceeded()) {
+            LOGGER.debug("Response size too large for client. Limit: {}", responseLimit);
             resp.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
-            return;
+            return null;
+        }
+
+        if (compressResponse && outTransport.hasWriteData()) {
+            try {
+                byte[] compressed = compressor.compress(outTransport.getWriteBytes(), true);
+                outTransport = new TChunkedOutputBuffer();
+                outTransport.write(compressed, 4, compressed.length - 4);
+            } catch (TException e) {
+                LOGGER.error("Could not compress response", e);
+                resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                return null;
+            }
+        }
+        return outTransport;
+    }
+
+    /**
+     * Sets the response headers for a framed response of the given size and
+     * wraps the stream the response body is written to. The returned stream
+     * transfer encodes the framed response, then compresses it if the client
+     * accepts a content encoding and the body reaches the threshold set with
+     * {@link #setContentEncodingThreshold(int)}. Closing it finishes the body.
+     */
+    OutputStream encodeResponse(HttpServletRequest req, HttpServletResponse resp, int size, OutputStream body)
+            throws IOException {
+        boolean binaryResponse = HttpTransferEncoding.acceptsBinary(
+                req.getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER),
+                req.getHeader(HttpTransferEncoding.ACCEPT_TRANSFER_ENCODING_HEADER));
+        long bodySize = binaryResponse ? size : (size + 2L) / 3 * 4;
+
+        String contentEncoding = null;
+        int threshold = contentEncodingThreshold;
+        if (threshold >= 0) {
+            resp.setHeader("Vary", "Accept-Encoding");
+            resp.setHeader("Accept-Encoding", HttpContentEncoding.SUPPORTED_ENCODINGS);
+            if (bodySize >= threshold) {
+                contentEncoding = HttpContentEncoding.select(req.getHeader(HttpContentEncoding.ACCEPT_ENCODING_HEADER));
+            }
         }
 
         resp.setContentType("application/x-frugal");
-        resp.setHeader("Content-Transfer-Encoding", "base64");
-        try (OutputStream out = Base64.getEncoder().wrap(resp.getOutputStream())) {
-            out.write(data);
+        if (contentEncoding != null) {
+            resp.setHeader("Content-Encoding", contentEncoding);
+            body = HttpContentEncoding.encode(body, contentEncoding);
         }
+        if (binaryResponse) {
+            resp.setHeader("Content-Transfer-Encoding", HttpTransferEncoding.BINARY);
+            if (contentEncoding == null) {
+                resp.setContentLength(size);
+            }
+            return body;
+        }
+        resp.setHeader("Content-Transfer-Encoding", HttpTransferEncoding.BASE64);
+        return Base64.getEncoder().wrap(body);
     }
 
     // Visible for testing.
@@ -160,4 +711,67 @@ public class FServlet extends HttpServlet {
         }
         return responseLimit;
     }
+
+    /**
+     * Records the status set while processing a frame of a batch, rather than
+     * setting it on the shared response.
+     */
+    private static class StatusRecorder extends HttpServletResponseWrapper {
+        private volatile int status = HttpServletResponse.SC_OK;
+
+        StatusRecorder(HttpServletResponse resp) {
+            super(resp);
+        }
+
+        @Override
+        public void setStatus(int status) {
+            this.status = status;
+        }
+    }
+
+    /**
+     * A request frame held in the heap or in a temporary file. Closing it
+     * deletes the file and returns the heap or spill space reserved for it.
+     */
+    private final class RequestFrame implements Closeable {
+        private final byte[] bytes;
+        private final FileChannel channel;
+        private final int size;
+        private final boolean reserved;
+
+        RequestFrame(DataInputStream in, int size, boolean reserved) throws IOException {
+            this.bytes = new byte[size];
+            this.channel = null;
+            this.size = size;
+            this.reserved = reserved;
+            in.readFully(bytes);
+        }
+
+        RequestFrame(FileChannel channel, int size) {
+            this.bytes = null;
+            this.channel = channel;
+            this.size = size;
+            this.reserved = false;
+        }
+
+        // Returns a transport reading the spilled frame from the start.
+        TTransport transport() {
+            return new TFileChannelTransport(channel, 0, size);
+        }
+
+        @Override
+        public void close() {
+            if (reserved) {
+                bufferedBytes.addAndGet(-size);
+            }
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Could not delete spilled request: {}", e.getMessage());
+                }
+                spilledBytes.addAndGet(-size);
+            }
+        }
+    }
 }
@@ -14,6 +14,7 @@
 package com.workiva.frugal.transport;
 
 import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.util.FrameCompressor;
 import org.apache.thrift.TException;
 import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
@@ -43,9 +44,27 @@ public class FAdapterTransport extends FAsyncTransport {
      */
     public static class Factory implements FTransportFactory {
 
+        private final FrameCompressor compressor;
+
+        /**
+         * Creates a Factory for FAdapterTransports without compression.
+         */
+        public Factory() {
+            this(null);
+        }
+
+        /**
+         * Creates a Factory for FAdapterTransports which compress frames using the given FrameCompressor.
+         *
+         * @param compressor FrameCompressor, or null to disable compression
+         */
+        public Factory(FrameCompressor compressor) {
+            this.compressor = compressor;
+        }
+
         @Override
         public FTransport getTransport(TTransport transport) {
-            return new FAdapterTransport(transport);
+            return new FAdapterTransport(transport, compressor);
         }
 
     }
@@ -56,9 +75,22 @@ public class FAdapterTransport extends FAsyncTransport {
      * @param tr TTransport to adapt to
      */
     public FAdapterTransport(TTransport tr) {
+        this(tr, null);
+    }
+
+    /**
+     * Creates a new FAdapterTransport which wraps the given TTransport and compresses frames using the given
+     * FrameCompressor. Requests advertise compression support, and are only compressed once a response from the
+     * server has advertised support in return.
+     *
+     * @param tr         TTransport to adapt to
+     * @param compressor FrameCompressor, or null to disable compression
+     */
+    public FAdapterTransport(TTransport tr, FrameCompressor compressor) {
         transport = tr;
         framedTransport = new TFramedTransport(tr);
         executorFactory = Executors::newSingleThreadExecutor;
+        this.compressor = compressor;
     }
 
     @Override
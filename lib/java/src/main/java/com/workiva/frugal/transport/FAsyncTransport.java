@@ -16,6 +16,7 @@ package com.workiva.frugal.transport;
 import com.workiva.frugal.FContext;
 import com.workiva.frugal.exception.TTransportExceptionType;
 import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.FrameCompressor;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TProtocolException;
 import org.apache.thrift.transport.TMemoryInputTransport;
@@ -40,6 +41,13 @@ public abstract class FAsyncTransport extends FTransport {
 
     protected Map<Long, BlockingQueue<byte[]>> queueMap = new HashMap<>();
 
+    /**
+     * FrameCompressor used to compress requests and decompress responses, or null if compression is disabled.
+     */
+    protected FrameCompressor compressor;
+
+    private volatile boolean compressionNegotiated;
+
     /**
      * Interrupt all pending requests and signal close.
      */
@@ -72,7 +80,7 @@ public abstract class FAsyncTransport extends FTransport {
     public void oneway(FContext context, byte[] payload) throws TTransportException {
         preflightRequestCheck(payload.length);
 
-        flush(payload);
+        flush(compress(payload));
     }
 
     /**
@@ -95,7 +103,7 @@ public abstract class FAsyncTransport extends FTransport {
         }
 
         try {
-            flush(payload);
+            flush(compress(payload));
 
             byte[] response;
             try {
@@ -129,6 +137,25 @@ public abstract class FAsyncTransport extends FTransport {
      */
     protected abstract void flush(byte[] payload) throws TTransportException;
 
+    /**
+     * Advertises compression support in the given payload, compressing it if the server has advertised support in
+     * return. Payloads are returned unchanged if compression is disabled.
+     *
+     * @param payload framed frugal bytes
+     * @return framed frugal bytes
+     * @throws TTransportException if the payload could not be compressed
+     */
+    protected byte[] compress(byte[] payload) throws TTransportException {
+        if (compressor == null) {
+            return payload;
+        }
+        try {
+            return compressor.compress(payload, compressionNegotiated);
+        } catch (TException e) {
+            throw new TTransportException("request: unable to compress data: " + e.getMessage());
+        }
+    }
+
     /**
      * Handles a frugal frame response (NOTE: this frame must NOT include the frame size).
      * Implementations should call this when asynchronous responses are received from the server.
@@ -139,6 +166,12 @@ public abstract class FAsyncTransport extends FTransport {
     protected void handleResponse(byte[] frame) throws TException {
         Map<String, String> headers;
         headers = HeaderUtils.decodeFromFrame(frame);
+        if (compressor != null) {
+            if (!compressionNegotiated && compressor.isAccepted(headers)) {
+                compressionNegotiated = true;
+            }
+            frame = compressor.decompress(headers, frame);
+        }
 
         long opId;
         try {
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.protocol.HeaderUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FConflatingPublisherTransport is an FPublisherTransport which conflates high-frequency updates before handing them
+ * to another FPublisherTransport. Messages are conflated per topic, or per topic and value of a frame header if a
+ * key header is configured. The first message for a key is published immediately. Messages published for the same
+ * key within the following window replace each other, and only the newest is published when the window ends,
+ * starting a new window. Each key is therefore published at most once per window. If publishing the newest message
+ * fails it stays pending, unless replaced by a newer message, and is retried when the next window ends, so the latest
+ * message is eventually published once the underlying transport recovers.
+ * <p>
+ * Messages for a key are handed to the underlying transport one at a time, in the order they were published, so a
+ * concurrent flush or window end never overtakes an earlier message. A message is dropped rather than published after
+ * a newer message for its key.
+ * <p>
+ * Windows are ended on a timer thread owned by the transport, so an underlying transport which blocks while
+ * publishing only delays its own conflated messages.
+ * <p>
+ * Conflation is only suitable for messages carrying full state, where subscribers only need the latest message.
+ */
+public class FConflatingPublisherTransport implements FPublisherTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FConflatingPublisherTransport.class);
+
+    private final FPublisherTransport transport;
+    private final long window;
+    private final String keyHeader;
+
+    // Keys published within the current window. Guarded by this.
+    private final Map<String, Window> windows = new HashMap<>();
+    // Keys with messages being published. Guarded by this.
+    private final Map<String, Sender> senders = new HashMap<>();
+    // Orders the published messages. Guarded by this.
+    private long seq;
+    private long conflatedCount;
+    // Created when the first window starts and shut down on close. Guarded by this.
+    private ScheduledExecutorService timer;
+
+    private static class Window {
+        final String topic;
+        byte[] pending;
+        long pendingSeq;
+
+        Window(String topic) {
+            this.topic = topic;
+        }
+    }
+
+    // Serializes the messages published for a key, and remembers the newest one so older ones are dropped.
+    private static class Sender {
+        // Guarded by the FConflatingPublisherTransport.
+        int inFlight;
+        // Guarded by the Sender.
+        long sent;
+    }
+
+    /**
+     * Creates a new FConflatingPublisherTransport.
+     *
+     * @param transport transport to publish conflated messages on
+     * @param window    conflation window in milliseconds
+     * @param keyHeader frame header to conflate by in addition to the topic, or null to conflate by topic
+     */
+    protected FConflatingPublisherTransport(FPublisherTransport transport, long window, String keyHeader) {
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        this.transport = transport;
+        this.window = window;
+        this.keyHeader = keyHeader;
+    }
+
+    /**
+     * An FPublisherTransportFactory implementation which wraps the FPublisherTransports of another factory with
+     * FConflatingPublisherTransports.
+     */
+    public static class Factory implements FPublisherTransportFactory {
+
+        private final FPublisherTransportFactory factory;
+        private final long window;
+        private final String keyHeader;
+
+        /**
+         * Creates a conflating FPublisherTransportFactory which conflates messages per topic.
+         *
+         * @param factory factory creating the transports to publish conflated messages on
+         * @param window  conflation window in milliseconds
+         */
+        public Factory(FPublisherTransportFactory factory, long window) {
+            this(factory, window, null);
+        }
+
+        /**
+         * Creates a conflating FPublisherTransportFactory which conflates messages per topic and value of the given
+         * frame header, e.g. a request header set by the publisher on its FContext. Messages without the header are
+         * conflated per topic.
+         *
+         * @param factory   factory creating the transports to publish conflated messages on
+         * @param window    conflation window in milliseconds
+         * @param keyHeader frame header to conflate by in addition to the topic
+         */
+        public Factory(FPublisherTransportFactory factory, long window, String keyHeader) {
+            if (window <= 0) {
+                throw new IllegalArgumentException("window must be positive");
+            }
+            this.factory = factory;
+            this.window = window;
+            this.keyHeader = keyHeader;
+        }
+
+        /**
+         * Get a new FPublisherTransport instance.
+         *
+         * @return A new FPublisherTransport instance.
+         */
+        public FConflatingPublisherTransport getTransport() {
+            return new FConflatingPublisherTransport(factory.getTransport(), window, keyHeader);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return transport.isOpen();
+    }
+
+    @Override
+    public void open() throws TTransportException {
+        transport.open();
+    }
+
+    /**
+     * Publishes the pending messages, stops the window timer, and closes the underlying transport.
+     */
+    @Override
+    public void close() {
+        try {
+            publishPending();
+        } catch (TTransportException e) {
+            LOGGER.warn("could not publish pending conflated messages: " + e.getMessage());
+        }
+        synchronized (this) {
+            windows.clear();
+            if (timer != null) {
+                timer.shutdownNow();
+                timer = null;
+            }
+        }
+        transport.close();
+    }
+
+    @Override
+    public int getPublishSizeLimit() {
+        return transport.getPublishSizeLimit();
+    }
+
+    /**
+     * Publishes the payload immediately if no message was published for its key within the current window,
+     * otherwise replaces any pending message for the key, to be published when the window ends.
+     *
+     * @param topic   the topic on which to publish the payload
+     * @param payload framed frugal bytes
+     * @throws TTransportException if publishing the payload failed
+     */
+    @Override
+    public void publish(String topic, byte[] payload) throws TTransportException {
+        String key = getKey(topic, payload);
+        long payloadSeq;
+        Sender sender;
+        synchronized (this) {
+            payloadSeq = ++seq;
+            Window current = windows.get(key);
+            if (current != null) {
+                if (current.pending != null) {
+                    conflatedCount++;
+                }
+                current.pending = payload;
+                current.pendingSeq = payloadSeq;
+                return;
+            }
+            startWindow(key, new Window(topic));
+            sender = acquireSender(key);
+        }
+        try {
+            send(sender, topic, payload, payloadSeq);
+        } finally {
+            releaseSender(key, sender);
+        }
+    }
+
+    /**
+     * Publishes the pending messages immediately and flushes the underlying transport. Messages which could not be
+     * published stay pending.
+     *
+     * @throws TTransportException if the payloads could not be sent
+     */
+    @Override
+    public void flush() throws TTransportException {
+        publishPending();
+        transport.flush();
+    }
+
+    /**
+     * Returns the number of messages which were replaced by a newer message before being published.
+     *
+     * @return conflated message count
+     */
+    public synchronized long getConflatedCount() {
+        return conflatedCount;
+    }
+
+    private String getKey(String topic, byte[] payload) {
+        if (keyHeader == null) {
+            return topic;
+        }
+        try {
+            String value = HeaderUtils.decodeFromFrame(payload, 4).get(keyHeader);
+            // Topics cannot contain spaces, so the key cannot collide with another topic.
+            return value != null ? topic + " " + value : topic;
+        } catch (TException e) {
+            return topic;
+        }
+    }
+
+    // Must hold the lock.
+    private Sender acquireSender(String key) {
+        Sender sender = senders.computeIfAbsent(key, k -> new Sender());
+        sender.inFlight++;
+        return sender;
+    }
+
+    private synchronized void releaseSender(String key, Sender sender) {
+        if (--sender.inFlight == 0) {
+            senders.remove(key);
+        }
+    }
+
+    // Publishes the payload once earlier sends for its key are done, unless a newer payload was published meanwhile.
+    private void send(Sender sender, String topic, byte[] payload, long payloadSeq) throws TTransportException {
+        synchronized (sender) {
+            if (payloadSeq <= sender.sent) {
+                return;
+            }
+            transport.publish(topic, payload);
+            sender.sent = payloadSeq;
+        }
+    }
+
+    // Must hold the lock.
+    private void startWindow(String key, Window window) {
+        windows.put(key, window);
+        if (timer == null) {
+            timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "frugal-conflation-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        timer.schedule(() -> endWindow(key, window), this.window, TimeUnit.MILLISECONDS);
+    }
+
+    private void endWindow(String key, Window window) {
+        byte[] payload;
+        long payloadSeq;
+        Window next;
+        Sender sender;
+        synchronized (this) {
+            if (windows.get(key) != window) {
+                return;
+            }
+            payload = window.pending;
+            payloadSeq = window.pendingSeq;
+            if (payload == null) {
+                windows.remove(key);
+                return;
+            }
+            // Publishing the pending message starts a new window for the key.
+            next = new Window(window.topic);
+            startWindow(key, next);
+            sender = acquireSender(key);
+        }
+        try {
+            send(sender, window.topic, payload, payloadSeq);
+        } catch (TTransportException e) {
+            LOGGER.warn("could not publish conflated message on " + window.topic + ", retrying when the window ends: "
+                    + e.getMessage());
+            retry(key, next, payload, payloadSeq);
+        } finally {
+            releaseSender(key, sender);
+        }
+    }
+
+    // Keeps a payload which failed to publish pending in the given window, unless a newer message replaced it.
+    private synchronized void retry(String key, Window window, byte[] payload, long payloadSeq) {
+        if (windows.get(key) == window && window.pending == null) {
+            window.pending = payload;
+            window.pendingSeq = payloadSeq;
+        }
+    }
+
+    private void publishPending() throws TTransportException {
+        List<Map.Entry<String, Window>> pending = new ArrayList<>();
+        List<Sender> pendingSenders = new ArrayList<>();
+        synchronized (this) {
+            for (Map.Entry<String, Window> entry : windows.entrySet()) {
+                if (entry.getValue().pending != null) {
+                    pending.add(entry);
+                    pendingSenders.add(acquireSender(entry.getKey()));
+                }
+            }
+            windows.clear();
+        }
+        try {
+            for (int i = 0; i < pending.size(); i++) {
+                Window window = pending.get(i).getValue();
+                try {
+                    send(pendingSenders.get(i), window.topic, window.pending, window.pendingSeq);
+                } catch (TTransportException e) {
+                    restore(pending.subList(i, pending.size()));
+                    throw e;
+                }
+            }
+        } finally {
+            for (int i = 0; i < pending.size(); i++) {
+                releaseSender(pending.get(i).getKey(), pendingSenders.get(i));
+            }
+        }
+    }
+
+    // Puts back windows whose pending messages could not be published, unless newer windows started meanwhile.
+    private synchronized void restore(List<Map.Entry<String, Window>> unpublished) {
+        for (Map.Entry<String, Window> entry : unpublished) {
+            if (!windows.containsKey(entry.getKey())) {
+                Window window = new Window(entry.getValue().topic);
+                window.pending = entry.getValue().pending;
+                window.pendingSeq = entry.getValue().pendingSeq;
+                startWindow(entry.getKey(), window);
+            }
+        }
+    }
+}
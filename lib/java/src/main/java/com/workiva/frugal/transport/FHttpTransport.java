@@ -16,28 +16,53 @@ package com.workiva.frugal.transport;
 
 import com.workiva.frugal.FContext;
 import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.FrameCompressor;
+import com.workiva.frugal.util.HttpBatch;
+import com.workiva.frugal.util.HttpContentEncoding;
+import com.workiva.frugal.util.HttpTransferEncoding;
 import org.apache.commons.codec.binary.Base64;
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.DecompressingEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.util.EntityUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocolException;
 import org.apache.thrift.transport.TMemoryInputTransport;
 import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 
 /**
@@ -45,25 +70,53 @@ import java.util.Map;
  * sense that this transport is not persistently connected to a single server.
  * A request is simply an http request and a response is an http response.
  * This assumes requests/responses fit within a single http request.
+ * <p>
+ * Bodies are base64 encoded unless binary transfer encoding is enabled with
+ * {@link Builder#withBinaryTransferEncoding()}, see {@link HttpTransferEncoding}.
+ * <p>
+ * With {@link Builder#withBatching(long, int)}, calls made within a short window
+ * share one HTTP request, see {@link HttpBatch}.
+ * <p>
+ * With {@link Builder#withContentEncoding(int)}, request and response bodies
+ * are compressed with a standard HTTP content encoding, see
+ * {@link HttpContentEncoding}. Compressed bodies are raw binary rather than
+ * base64 encoded.
  */
 public class FHttpTransport extends FTransport {
     // Logger
     private static final Logger LOGGER = LoggerFactory.getLogger(FHttpTransport.class);
 
+    // Maximum number of batch requests a transport has in flight at once.
+    private static final int MAX_BATCH_SENDERS = 4;
+
     // Immutable
     private final CloseableHttpClient httpClient;
     private final String url;
     private final int responseSizeLimit;
     private final FHttpTransportHeaders requestHeaders;
+    private final FrameCompressor compressor;
+    private final boolean binary;
+    private final Batcher batcher;
+    private final int contentEncodingThreshold;
+
+    // Mutable
+    private volatile boolean compressionNegotiated;
+    private volatile boolean binaryNegotiated;
+    private volatile String requestEncoding;
 
     private FHttpTransport(CloseableHttpClient httpClient, String url, int requestSizeLimit, int responseSizeLimit,
-            FHttpTransportHeaders requestHeaders) {
+            FHttpTransportHeaders requestHeaders, FrameCompressor compressor, boolean binary,
+            long batchWindow, int maxBatchSize, int contentEncodingThreshold) {
         super();
         this.httpClient = httpClient;
         this.url = url;
         this.requestSizeLimit = requestSizeLimit;
         this.responseSizeLimit = responseSizeLimit;
         this.requestHeaders = requestHeaders;
+        this.compressor = compressor;
+        this.binary = binary;
+        this.batcher = maxBatchSize > 0 ? new Batcher(batchWindow, maxBatchSize) : null;
+        this.contentEncodingThreshold = contentEncodingThreshold;
     }
 
     /**
@@ -98,6 +151,11 @@ public class FHttpTransport extends FTransport {
         private int requestSizeLimit;
         private int responseSizeLimit;
         private FHttpTransportHeaders requestHeaders;
+        private FrameCompressor compressor;
+        private boolean binary;
+        private long batchWindow;
+        private int maxBatchSize;
+        private int contentEncodingThreshold = -1;
 
         /**
          * Create a new Builder which create FHttpTransports that communicate with a server
@@ -146,6 +204,83 @@ public class FHttpTransport extends FTransport {
             return this;
         }
 
+        /**
+         * Adds a FrameCompressor to the Builder. Requests advertise compression
+         * support, and are only compressed once a response from the server has
+         * advertised support in return. Size limits apply to uncompressed frames.
+         *
+         * @param compressor FrameCompressor used to compress requests and decompress responses.
+         * @return Builder
+         */
+        public Builder withCompression(FrameCompressor compressor) {
+            this.compressor = compressor;
+            return this;
+        }
+
+        /**
+         * Enables raw binary request and response bodies instead of base64
+         * encoded ones. Requests advertise binary support, and are only sent
+         * as binary once a response from the server has been binary, so
+         * servers without binary support are unaffected.
+         *
+         * @return Builder
+         */
+        public Builder withBinaryTransferEncoding() {
+            this.binary = true;
+            return this;
+        }
+
+        /**
+         * Enables batching calls into shared HTTP requests. The first call waits
+         * up to the batch window for other calls to join it, and calls with the
+         * same HTTP request headers are then sent in one batch request. Each call
+         * still times out after its own timeout, and fails on its own if the
+         * server fails its frame. Batching requires a server which supports
+         * batch requests, see {@link HttpBatch}.
+         *
+         * @param batchWindow  time in milliseconds calls wait for a batch to fill up
+         * @param maxBatchSize number of calls which are sent without waiting further
+         * @return Builder
+         */
+        public Builder withBatching(long batchWindow, int maxBatchSize) {
+            if (batchWindow < 0) {
+                throw new IllegalArgumentException("batchWindow must not be negative");
+            }
+            if (maxBatchSize < 1) {
+                throw new IllegalArgumentException("maxBatchSize must be positive");
+            }
+            this.batchWindow = batchWindow;
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Enables compressing request and response bodies with a standard HTTP
+         * content encoding. Requests advertise the supported encodings, and
+         * request bodies of at least the threshold size are only compressed
+         * once a response from the server has advertised that it accepts
+         * compressed requests, so servers without support are unaffected.
+         * Compressed request bodies are sent raw binary, and requests advertise
+         * binary support so that compressed responses are not base64 encoded
+         * either.
+         * <p>
+         * The HTTP client should be built with
+         * {@link org.apache.http.impl.client.HttpClientBuilder#disableContentCompression()}.
+         * Otherwise it decompresses responses itself and removes their
+         * <code>Content-Encoding</code> header, and the transport can only
+         * bound the decompressed body by the response size limit as it reads it.
+         *
+         * @param contentEncodingThreshold minimum request body size in bytes to compress
+         * @return Builder
+         */
+        public Builder withContentEncoding(int contentEncodingThreshold) {
+            if (contentEncodingThreshold < 0) {
+                throw new IllegalArgumentException("contentEncodingThreshold must not be negative");
+            }
+            this.contentEncodingThreshold = contentEncodingThreshold;
+            return this;
+        }
+
         /**
          * Creates new configured FHttpTransport.
          *
@@ -154,7 +289,8 @@ public class FHttpTransport extends FTransport {
         public FHttpTransport build() {
             return new FHttpTransport(this.httpClient, this.url,
                     this.requestSizeLimit, this.responseSizeLimit,
-                    this.requestHeaders);
+                    this.requestHeaders, this.compressor, this.binary,
+                    this.batchWindow, this.maxBatchSize, this.contentEncodingThreshold);
         }
     }
 
@@ -176,10 +312,14 @@ public class FHttpTransport extends FTransport {
     }
 
     /**
-     * This is a no-op for FHttpTransport.
+     * Stops the batch sender threads, if batching is enabled. Batches which
+     * were already handed to a sender are still sent.
      */
     @Override
     public void close() {
+        if (batcher != null) {
+            batcher.close();
+        }
     }
 
     /**
@@ -191,7 +331,11 @@ public class FHttpTransport extends FTransport {
     public void oneway(FContext context, byte[] payload) throws TTransportException {
         preflightRequestCheck(payload.length);
 
-        makeRequest(context, payload);
+        if (batcher != null) {
+            batcher.call(context, compress(payload), true);
+            return;
+        }
+        makeRequest(context, compress(payload));
     }
 
     /**
@@ -203,7 +347,9 @@ public class FHttpTransport extends FTransport {
     public TTransport request(FContext context, byte[] payload) throws TTransportException {
         preflightRequestCheck(payload.length);
 
-        byte[] response = makeRequest(context, payload);
+        byte[] response = batcher != null
+                ? batcher.call(context, compress(payload), false)
+                : makeRequest(context, compress(payload));
 
         // All responses should be framed with 4 bytes
         if (response.length < 4) {
@@ -218,38 +364,109 @@ public class FHttpTransport extends FTransport {
             }
             return null;
         }
-        return new TMemoryInputTransport(Arrays.copyOfRange(response, 4, response.length));
+        return new TMemoryInputTransport(decompress(Arrays.copyOfRange(response, 4, response.length)));
+    }
+
+    private byte[] compress(byte[] payload) throws TTransportException {
+        if (compressor == null) {
+            return payload;
+        }
+        try {
+            return compressor.compress(payload, compressionNegotiated);
+        } catch (TException e) {
+            throw new TTransportException("unable to compress request: " + e.getMessage());
+        }
+    }
+
+    private byte[] decompress(byte[] frame) throws TTransportException {
+        if (compressor == null) {
+            return frame;
+        }
+        try {
+            Map<String, String> headers = HeaderUtils.decodeFromFrame(frame);
+            if (!compressionNegotiated && compressor.isAccepted(headers)) {
+                compressionNegotiated = true;
+            }
+            return responseSizeLimit > 0
+                    ? compressor.decompress(headers, frame, responseSizeLimit)
+                    : compressor.decompress(headers, frame);
+        } catch (TException e) {
+            throw new TTransportException("unable to decompress response: " + e.getMessage());
+        }
+    }
+
+    private Map<String, String> getRequestHeaders(FContext context) {
+        return requestHeaders != null ? requestHeaders.getRequestHeaders(context) : Collections.emptyMap();
     }
 
     private byte[] makeRequest(FContext context, byte[] requestPayload) throws TTransportException {
-        // Encode request payload
-        String encoded = Base64.encodeBase64String(requestPayload);
-        StringEntity requestEntity = new StringEntity(encoded, ContentType.create("application/x-frugal", "utf-8"));
+        return makeRequest(getRequestHeaders(context), requestPayload, context.getTimeout(), null);
+    }
+
+    /**
+     * Sends a request and returns the decoded response body. Batch requests
+     * pass a map the HTTP statuses of failed frames are added to by op id,
+     * other requests pass null.
+     */
+    private byte[] makeRequest(Map<String, String> headers, byte[] requestPayload, long timeout,
+            Map<String, Integer> frameStatuses) throws TTransportException {
+        boolean batch = frameStatuses != null;
+        // Compress the raw payload once the server accepts compressed requests, base64 would only
+        // cost time and compression ratio
+        boolean binaryRequest = binaryNegotiated;
+        long bodySize = binaryRequest ? requestPayload.length : (requestPayload.length + 2L) / 3 * 4;
+        String contentEncoding = requestEncoding;
+        HttpEntity requestEntity;
+        if (contentEncoding != null && bodySize >= contentEncodingThreshold) {
+            binaryRequest = true;
+            requestEntity = new ByteArrayEntity(HttpContentEncoding.encode(requestPayload, contentEncoding),
+                    ContentType.create("application/x-frugal"));
+        } else {
+            contentEncoding = null;
+            requestEntity = binaryRequest
+                    ? new ByteArrayEntity(requestPayload, ContentType.create("application/x-frugal"))
+                    : new StringEntity(Base64.encodeBase64String(requestPayload),
+                            ContentType.create("application/x-frugal", "utf-8"));
+        }
 
         // Set headers and payload
         HttpPost request = new HttpPost(url);
 
         // add user supplied headers first, to avoid monkeying
         // with the size limits headers below.
-        if (requestHeaders != null) {
-            for (Map.Entry<String, String> entry : requestHeaders.getRequestHeaders(context).entrySet()) {
-                String key = entry.getKey();
-                String value = entry.getValue();
-                if (key != null && value != null) {
-                    request.setHeader(key, value);
-                }
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            String key = entry.getKey();
+            String value = entry.getValue();
+            if (key != null && value != null) {
+                request.setHeader(key, value);
             }
         }
 
         request.setHeader("accept", "application/x-frugal");
-        request.setHeader("content-transfer-encoding", "base64");
+        if (binaryRequest) {
+            request.setHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER, HttpTransferEncoding.BINARY);
+        } else {
+            request.setHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER, HttpTransferEncoding.BASE64);
+        }
+        if (binary || contentEncodingThreshold >= 0) {
+            request.setHeader(HttpTransferEncoding.ACCEPT_TRANSFER_ENCODING_HEADER, HttpTransferEncoding.BINARY);
+        }
         if (responseSizeLimit > 0) {
             request.setHeader("x-frugal-payload-limit", Integer.toString(responseSizeLimit));
         }
+        if (batch) {
+            request.setHeader(HttpBatch.BATCH_HEADER, "true");
+        }
+        if (contentEncodingThreshold >= 0) {
+            request.setHeader(HttpContentEncoding.ACCEPT_ENCODING_HEADER, HttpContentEncoding.SUPPORTED_ENCODINGS);
+        }
+        if (contentEncoding != null) {
+            request.setHeader(HttpContentEncoding.CONTENT_ENCODING_HEADER, contentEncoding);
+        }
         request.setEntity(requestEntity);
         request.setConfig(RequestConfig.custom()
-                .setConnectTimeout((int) context.getTimeout())
-                .setSocketTimeout((int) context.getTimeout())
+                .setConnectTimeout((int) timeout)
+                .setSocketTimeout((int) timeout)
                 .build());
 
         // Make request
@@ -271,17 +488,49 @@ public class FHttpTransport extends FTransport {
                         TTransportExceptionType.RESPONSE_TOO_LARGE, "response was too large for the transport");
             }
 
-            // Decode body
-            String responseBody = "";
+            // Read body, bounding bodies the HTTP client decompresses itself
+            Header encoding = response.getFirstHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER);
+            boolean binaryResponse = encoding != null && HttpTransferEncoding.isBinary(encoding.getValue());
+            byte[] responseBody = new byte[0];
             HttpEntity responseEntity = response.getEntity();
-            if (responseEntity != null) {
-                responseBody = EntityUtils.toString(responseEntity, "utf-8");
+            if (responseEntity instanceof DecompressingEntity) {
+                responseBody = readDecompressed(responseEntity, getMaxBodySize(binaryResponse));
+            } else if (responseEntity != null) {
+                responseBody = EntityUtils.toByteArray(responseEntity);
+            }
+            // Check bad status code, and stop compressing requests the server no longer accepts
+            if (status == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE && contentEncoding != null) {
+                requestEncoding = null;
             }
-            // Check bad status code
             if (status >= 300) {
-                throw new TTransportException("response errored with code " + status + " and message " + responseBody);
+                throw new TTransportException("response errored with code " + status + " and message "
+                        + new String(responseBody, StandardCharsets.UTF_8));
+            }
+            Header frameStatus = response.getFirstHeader(HttpBatch.FRAME_STATUS_HEADER);
+            if (batch && frameStatus != null) {
+                try {
+                    frameStatuses.putAll(HttpBatch.parseStatuses(frameStatus.getValue()));
+                } catch (TProtocolException e) {
+                    throw new TTransportException("invalid batch response: " + e.getMessage());
+                }
+            }
+            // Decompress and decode the response body
+            Header responseEncoding = response.getFirstHeader(HttpContentEncoding.CONTENT_ENCODING_HEADER);
+            if (responseEncoding != null && !HttpContentEncoding.isIdentity(responseEncoding.getValue())) {
+                responseBody = decodeContent(responseBody, responseEncoding.getValue(), binaryResponse);
+            }
+            if (contentEncodingThreshold >= 0 && requestEncoding == null) {
+                Header acceptEncoding = response.getFirstHeader(HttpContentEncoding.ACCEPT_ENCODING_HEADER);
+                if (acceptEncoding != null) {
+                    requestEncoding = HttpContentEncoding.select(acceptEncoding.getValue());
+                }
+            }
+            if (binaryResponse) {
+                if (binary && !binaryNegotiated) {
+                    binaryNegotiated = true;
+                }
+                return responseBody;
             }
-            // Decode and return response body
             return Base64.decodeBase64(responseBody);
 
         } catch (IOException e) {
@@ -294,4 +543,240 @@ public class FHttpTransport extends FTransport {
             }
         }
     }
+
+    /**
+     * Returns the size of the largest decoded response body holding response
+     * frames within the response size limit.
+     */
+    private int getMaxBodySize(boolean binaryResponse) {
+        int maxSize = Integer.MAX_VALUE - 8;
+        if (responseSizeLimit > 0) {
+            maxSize = binaryResponse
+                    ? responseSizeLimit
+                    : (int) Math.min(maxSize, (responseSizeLimit + 2L) / 3 * 4);
+        }
+        return maxSize;
+    }
+
+    /**
+     * Reads a response body the HTTP client decompresses, failing as soon as
+     * it exceeds the given size rather than decompressing it completely.
+     */
+    private static byte[] readDecompressed(HttpEntity entity, int maxSize) throws IOException, TTransportException {
+        try (InputStream in = entity.getContent()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                if (out.size() + n > maxSize) {
+                    throw new TTransportException(
+                            TTransportExceptionType.RESPONSE_TOO_LARGE, "response was too large for the transport");
+                }
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Decompresses a response body. Its decompressed size is limited to the
+     * largest body holding response frames within the response size limit,
+     * which applies to the frames of a batch together.
+     */
+    private byte[] decodeContent(byte[] responseBody, String contentEncoding, boolean binaryResponse)
+            throws TTransportException {
+        if (!HttpContentEncoding.isSupported(contentEncoding)) {
+            throw new TTransportException("unsupported response content encoding " + contentEncoding);
+        }
+        try {
+            return HttpContentEncoding.decode(responseBody, contentEncoding, getMaxBodySize(binaryResponse));
+        } catch (TProtocolException e) {
+            if (e.getType() == TProtocolException.SIZE_LIMIT) {
+                throw new TTransportException(
+                        TTransportExceptionType.RESPONSE_TOO_LARGE, "response was too large for the transport");
+            }
+            throw new TTransportException("could not decompress response body: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Coalesces calls made within the batch window into batch requests. The
+     * first call of a window waits for the window to pass or the batch to fill
+     * up, and then hands the batch to a sender thread, so every call in it,
+     * including the first, waits for its response no longer than its own
+     * timeout. At most {@link #MAX_BATCH_SENDERS} batches are sent at once;
+     * further batches queue for a sender thread.
+     */
+    private class Batcher {
+        private final long window;
+        private final int maxSize;
+        private final ThreadPoolExecutor senders;
+        private List<BatchedCall> batch;
+
+        Batcher(long window, int maxSize) {
+            this.window = window;
+            this.maxSize = maxSize;
+            this.senders = new ThreadPoolExecutor(MAX_BATCH_SENDERS, MAX_BATCH_SENDERS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "frugal-http-batch");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.senders.allowCoreThreadTimeOut(true);
+        }
+
+        void close() {
+            senders.shutdown();
+        }
+
+        byte[] call(FContext context, byte[] payload, boolean oneway) throws TTransportException {
+            String opId;
+            try {
+                opId = HttpBatch.getOpId(payload);
+            } catch (TException e) {
+                throw new TTransportException("invalid request frame: " + e.getMessage());
+            }
+            BatchedCall call = new BatchedCall(getRequestHeaders(context), payload, context.getTimeout(),
+                    opId, oneway);
+
+            List<BatchedCall> own = null;
+            synchronized (this) {
+                if (batch == null) {
+                    batch = new ArrayList<>();
+                    own = batch;
+                }
+                batch.add(call);
+                if (batch.size() >= maxSize) {
+                    batch = null;
+                    notifyAll();
+                }
+            }
+            if (own != null) {
+                awaitWindow(own);
+                List<BatchedCall> calls = own;
+                try {
+                    senders.execute(() -> send(calls));
+                } catch (RejectedExecutionException e) {
+                    TTransportException error = new TTransportException(
+                            TTransportExceptionType.NOT_OPEN, "transport is closed");
+                    calls.forEach(batched -> batched.response.completeExceptionally(error));
+                }
+            }
+            return call.await();
+        }
+
+        private synchronized void awaitWindow(List<BatchedCall> own) {
+            long deadline = System.currentTimeMillis() + window;
+            long remaining;
+            try {
+                while (batch == own && (remaining = deadline - System.currentTimeMillis()) > 0) {
+                    wait(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (batch == own) {
+                batch = null;
+            }
+        }
+
+        private void send(List<BatchedCall> calls) {
+            Map<Map<String, String>, List<BatchedCall>> groups = new LinkedHashMap<>();
+            for (BatchedCall call : calls) {
+                groups.computeIfAbsent(call.headers, headers -> new ArrayList<>()).add(call);
+            }
+            for (Map.Entry<Map<String, String>, List<BatchedCall>> group : groups.entrySet()) {
+                try {
+                    send(group.getKey(), group.getValue());
+                } catch (TTransportException e) {
+                    group.getValue().forEach(call -> call.response.completeExceptionally(e));
+                } catch (TException | RuntimeException e) {
+                    TTransportException error = new TTransportException("invalid batch response: " + e.getMessage());
+                    group.getValue().forEach(call -> call.response.completeExceptionally(error));
+                }
+            }
+        }
+
+        private void send(Map<String, String> headers, List<BatchedCall> calls) throws TException {
+            if (calls.size() == 1) {
+                BatchedCall call = calls.get(0);
+                call.response.complete(makeRequest(headers, call.payload, call.timeout, null));
+                return;
+            }
+
+            // The request lasts as long as the longest call may wait; each call gives up at its own timeout.
+            List<byte[]> payloads = new ArrayList<>(calls.size());
+            long timeout = 0;
+            for (BatchedCall call : calls) {
+                payloads.add(call.payload);
+                timeout = Math.max(timeout, call.timeout);
+            }
+            Map<String, Integer> statuses = new HashMap<>();
+            byte[] body = makeRequest(headers, HttpBatch.join(payloads), timeout, statuses);
+
+            Map<String, byte[]> responses = new HashMap<>();
+            for (byte[] frame : HttpBatch.split(body)) {
+                responses.put(HttpBatch.getOpId(frame), frame);
+            }
+            for (BatchedCall call : calls) {
+                byte[] response = responses.get(call.opId);
+                Integer status = statuses.get(call.opId);
+                if (status != null) {
+                    call.response.completeExceptionally(frameError(status));
+                } else if (response != null) {
+                    call.response.complete(response);
+                } else if (call.oneway) {
+                    call.response.complete(new byte[4]);
+                } else {
+                    call.response.completeExceptionally(new TTransportException("missing response in batch"));
+                }
+            }
+        }
+    }
+
+    private static TTransportException frameError(int status) {
+        if (status == HttpStatus.SC_REQUEST_TOO_LONG) {
+            return new TTransportException(
+                    TTransportExceptionType.RESPONSE_TOO_LARGE, "response was too large for the transport");
+        }
+        return new TTransportException("batched request errored with code " + status);
+    }
+
+    /**
+     * A call waiting in a batch.
+     */
+    private static class BatchedCall {
+        private final Map<String, String> headers;
+        private final byte[] payload;
+        private final long timeout;
+        private final long deadline;
+        private final String opId;
+        private final boolean oneway;
+        private final CompletableFuture<byte[]> response = new CompletableFuture<>();
+
+        BatchedCall(Map<String, String> headers, byte[] payload, long timeout, String opId, boolean oneway) {
+            this.headers = headers;
+            this.payload = payload;
+            this.timeout = timeout;
+            this.deadline = System.currentTimeMillis() + timeout;
+            this.opId = opId;
+            this.oneway = oneway;
+        }
+
+        byte[] await() throws TTransportException {
+            try {
+                return response.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new TTransportException(TTransportExceptionType.TIMED_OUT, "batched request timed out");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TTransportException("interrupted waiting for batch response");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof TTransportException) {
+                    throw (TTransportException) e.getCause();
+                }
+                throw new TTransportException(e.getCause());
+            }
+        }
+    }
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.transport;
+
+import io.nats.client.Connection;
+import io.nats.client.Statistics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FNatsConnectionPool spreads publishes and requests across several NATS connections, since a single connection
+ * writes every message through one socket. Traffic which must stay ordered, such as the messages of one topic, is
+ * assigned to a connection by key, so it always uses the same connection. Other traffic is assigned round-robin.
+ * <p>
+ * The throughput of each connection since the previous measurement is returned by {@link #getThroughput()}, and the
+ * cumulative NATS client statistics by {@link #getStats()}.
+ * Use the pool with {@link FNatsPooledPublisherTransport} and {@link FNatsPooledTransport}.
+ */
+public class FNatsConnectionPool {
+
+    private final List<Connection> conns;
+    private final AtomicInteger next = new AtomicInteger();
+
+    // Counters of each connection at the previous throughput measurement. Guarded by this.
+    private final long[][] lastCounters;
+    private long lastMeasured;
+
+    /**
+     * Creates a new FNatsConnectionPool over the given connections. The pool does not own the connections, so they
+     * must be closed by the caller.
+     *
+     * @param conns NATS connections to the same cluster
+     */
+    public FNatsConnectionPool(List<Connection> conns) {
+        if (conns.isEmpty()) {
+            throw new IllegalArgumentException("pool requires at least one connection");
+        }
+        this.conns = Collections.unmodifiableList(new ArrayList<>(conns));
+        this.lastCounters = new long[this.conns.size()][];
+        for (int i = 0; i < lastCounters.length; i++) {
+            lastCounters[i] = counters(this.conns.get(i));
+        }
+        this.lastMeasured = System.nanoTime();
+    }
+
+    /**
+     * Returns the number of connections in the pool.
+     *
+     * @return connection count
+     */
+    public int size() {
+        return conns.size();
+    }
+
+    /**
+     * Returns the connections in the pool.
+     *
+     * @return unmodifiable list of connections
+     */
+    public List<Connection> getConnections() {
+        return conns;
+    }
+
+    /**
+     * Returns the index of the connection assigned to the key. A key is always assigned the same connection.
+     *
+     * @param key ordering key, such as a topic
+     * @return connection index
+     */
+    public int indexFor(String key) {
+        int hash = key.hashCode();
+        // Spread the hash so keys differing only in their last characters use different connections.
+        return Math.floorMod(hash ^ (hash >>> 16), conns.size());
+    }
+
+    /**
+     * Returns the index of the next connection in round-robin order.
+     *
+     * @return connection index
+     */
+    public int nextIndex() {
+        return Math.floorMod(next.getAndIncrement(), conns.size());
+    }
+
+    /**
+     * Returns the NATS client statistics of each connection, in pool order. The counters are cumulative over the
+     * lifetime of each connection.
+     *
+     * @return statistics of each connection
+     */
+    public List<Statistics> getStats() {
+        List<Statistics> stats = new ArrayList<>(conns.size());
+        for (Connection conn : conns) {
+            stats.add(conn.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the throughput of each connection, in pool order, since the previous call, or since the pool was
+     * created for the first call.
+     *
+     * @return throughput of each connection
+     */
+    public synchronized List<Throughput> getThroughput() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastMeasured, 1) / 1e9;
+        List<Throughput> throughput = new ArrayList<>(conns.size());
+        for (int i = 0; i < conns.size(); i++) {
+            long[] counters = counters(conns.get(i));
+            long[] last = lastCounters[i];
+            throughput.add(new Throughput(
+                    (counters[0] - last[0]) / seconds, (counters[1] - last[1]) / seconds,
+                    (counters[2] - last[2]) / seconds, (counters[3] - last[3]) / seconds));
+            lastCounters[i] = counters;
+        }
+        lastMeasured = now;
+        return throughput;
+    }
+
+    private static long[] counters(Connection conn) {
+        Statistics stats = conn.getStats();
+        if (stats == null) {
+            return new long[4];
+        }
+        return new long[]{stats.getOutMsgs(), stats.getOutBytes(), stats.getInMsgs(), stats.getInBytes()};
+    }
+
+    /**
+     * Message and byte rates of a pool connection over a measurement interval.
+     */
+    public static class Throughput {
+
+        private final double outMsgsPerSecond;
+        private final double outBytesPerSecond;
+        private final double inMsgsPerSecond;
+        private final double inBytesPerSecond;
+
+        Throughput(double outMsgsPerSecond, double outBytesPerSecond, double inMsgsPerSecond,
+                   double inBytesPerSecond) {
+            this.outMsgsPerSecond = outMsgsPerSecond;
+            this.outBytesPerSecond = outBytesPerSecond;
+            this.inMsgsPerSecond = inMsgsPerSecond;
+            this.inBytesPerSecond = inBytesPerSecond;
+        }
+
+        /**
+         * Returns the messages sent per second.
+         *
+         * @return outgoing message rate
+         */
+        public double getOutMsgsPerSecond() {
+            return outMsgsPerSecond;
+        }
+
+        /**
+         * Returns the bytes sent per second.
+         *
+         * @return outgoing byte rate
+         */
+        public double getOutBytesPerSecond() {
+            return outBytesPerSecond;
+        }
+
+        /**
+         * Returns the messages received per second.
+         *
+         * @return incoming message rate
+         */
+        public double getInMsgsPerSecond() {
+            return inMsgsPerSecond;
+        }
+
+        /**
+         * Returns the bytes received per second.
+         *
+         * @return incoming byte rate
+         */
+        public double getInBytesPerSecond() {
+            return inBytesPerSecond;
+        }
+    }
+}
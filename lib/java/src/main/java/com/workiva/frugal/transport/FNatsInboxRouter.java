@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.exception.TTransportExceptionType;
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.MessageHandler;
+import io.nats.client.Subscription;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FNatsInboxRouter lets many {@link FNatsTransport} clients on one NATS connection share a single inbox
+ * subscription. Each transport receives responses on its own inbox under a common prefix, and the router subscribes
+ * to the prefix with a wildcard and routes each response to its transport by the inbox suffix. The transport then
+ * routes the response to the waiting request by opid as usual.
+ * <p>
+ * The wildcard subscription is created when the first transport is opened and removed when the last one is closed.
+ * Create one router per connection and share it with {@link FNatsTransport#withInboxRouter(FNatsInboxRouter)}.
+ */
+public class FNatsInboxRouter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FNatsInboxRouter.class);
+
+    private final Connection conn;
+    private final String prefix;
+    private final AtomicLong nextId = new AtomicLong();
+    private final Map<String, MessageHandler> handlers = new ConcurrentHashMap<>();
+
+    // Guarded by this.
+    private Subscription sub;
+
+    /**
+     * Creates a new FNatsInboxRouter which routes responses received on the given connection.
+     *
+     * @param conn NATS connection
+     */
+    public FNatsInboxRouter(Connection conn) {
+        this.conn = conn;
+        this.prefix = conn.newInbox() + ".";
+    }
+
+    /**
+     * Returns a new unique inbox routed by this router.
+     *
+     * @return NATS subject to receive responses on
+     */
+    public String newInbox() {
+        return prefix + nextId.incrementAndGet();
+    }
+
+    /**
+     * Routes messages received on the inbox to the handler, subscribing to the inbox prefix if needed.
+     *
+     * @param inbox   inbox returned by {@link #newInbox()}
+     * @param handler handler for messages received on the inbox
+     * @throws TTransportException if a handler is already registered for the inbox
+     */
+    public synchronized void register(String inbox, MessageHandler handler) throws TTransportException {
+        if (!inbox.startsWith(prefix)) {
+            throw new IllegalArgumentException("inbox " + inbox + " is not routed by this router");
+        }
+        if (handlers.putIfAbsent(inbox.substring(prefix.length()), handler) != null) {
+            throw new TTransportException(TTransportExceptionType.ALREADY_OPEN, "NATS inbox already registered");
+        }
+        if (sub == null) {
+            sub = conn.subscribe(prefix + "*", this::route);
+        }
+    }
+
+    /**
+     * Stops routing messages received on the inbox, unsubscribing from the inbox prefix once no inbox is left.
+     *
+     * @param inbox inbox to stop routing
+     */
+    public synchronized void unregister(String inbox) {
+        if (!inbox.startsWith(prefix) || handlers.remove(inbox.substring(prefix.length())) == null) {
+            return;
+        }
+        if (handlers.isEmpty() && sub != null) {
+            try {
+                sub.unsubscribe();
+            } catch (IOException e) {
+                LOGGER.warn("NATS inbox router could not unsubscribe from subscription: " + e.getMessage());
+            }
+            sub = null;
+        }
+    }
+
+    /**
+     * Returns the number of registered inboxes.
+     *
+     * @return registered inbox count
+     */
+    public int getInboxCount() {
+        return handlers.size();
+    }
+
+    private void route(Message message) {
+        String subject = message.getSubject();
+        MessageHandler handler = subject.startsWith(prefix) ? handlers.get(subject.substring(prefix.length())) : null;
+        if (handler == null) {
+            LOGGER.debug("discarding response for unregistered inbox {}", subject);
+            return;
+        }
+        handler.onMessage(message);
+    }
+}
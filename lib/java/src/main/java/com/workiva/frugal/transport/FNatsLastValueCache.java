@@ -0,0 +1,278 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.DeltaEncoder;
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.Subscription;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static com.workiva.frugal.transport.FNatsTransport.FRUGAL_PREFIX;
+
+/**
+ * FNatsLastValueCache is a bounded, in-process store of the last message published on each scope topic. It answers
+ * snapshot requests from subscribers so they learn the current state of a topic without waiting for the next
+ * publish. When the cache is full, the least recently published topic is evicted.
+ * <p>
+ * Publishers using the cache stamp every message with a per-topic sequence number in the
+ * {@link #SEQUENCE_HEADER} header. Subscribers use it to merge the snapshot with messages received live while the
+ * snapshot was requested, without gaps or duplicates. This assumes each topic has a single publishing process.
+ * <p>
+ * The cache also keeps the last {@link DeltaEncoder} keyframe published on each topic, which subscribers request
+ * with {@link #requestKeyframeAsync(Connection, String, long)} when they receive a delta relative to a keyframe they
+ * missed, rather than waiting for the publisher's next keyframe.
+ * <p>
+ * Only caches holding the requested topic reply to a snapshot request, so subscribers wait for the request timeout
+ * when no publisher has published on the topic yet.
+ */
+public class FNatsLastValueCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FNatsLastValueCache.class);
+
+    private static final ExecutorService SNAPSHOT_REQUESTS = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "frugal-snapshot-request");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Frame header carrying the per-topic sequence number of a cached message.
+     */
+    public static final String SEQUENCE_HEADER = "_lvc_seq";
+
+    /**
+     * Prefix of the NATS subjects snapshot requests are sent on, followed by the topic.
+     */
+    public static final String SNAPSHOT_PREFIX = FRUGAL_PREFIX + "_snapshot.";
+
+    /**
+     * Snapshot request data asking for the last keyframe published on the topic rather than its last message.
+     */
+    public static final byte[] KEYFRAME_REQUEST = "keyframe".getBytes(StandardCharsets.UTF_8);
+
+    private final Connection conn;
+    private final int maxTopics;
+
+    // Ordered from least to most recently published. Guarded by this.
+    private final LinkedHashMap<String, byte[]> values = new LinkedHashMap<>();
+    private final Map<String, Long> sequences = new HashMap<>();
+    private final Map<String, byte[]> keyframes = new HashMap<>();
+    private Subscription sub;
+
+    /**
+     * Creates a new FNatsLastValueCache holding at most <code>maxTopics</code> topics.
+     *
+     * @param conn      NATS connection to serve snapshot requests on
+     * @param maxTopics maximum number of cached topics
+     */
+    public FNatsLastValueCache(Connection conn, int maxTopics) {
+        if (maxTopics <= 0) {
+            throw new IllegalArgumentException("maxTopics must be positive");
+        }
+        this.conn = conn;
+        this.maxTopics = maxTopics;
+    }
+
+    /**
+     * Starts answering snapshot requests, if not already started.
+     */
+    public synchronized void start() {
+        if (sub != null) {
+            return;
+        }
+        sub = conn.subscribe(SNAPSHOT_PREFIX + ">", this::onRequest);
+    }
+
+    /**
+     * Stops answering snapshot requests. Cached messages are kept.
+     */
+    public synchronized void stop() {
+        if (sub == null) {
+            return;
+        }
+        try {
+            sub.unsubscribe();
+        } catch (IOException e) {
+            LOGGER.warn("could not unsubscribe from snapshot subscription. " + e.getMessage());
+        }
+        sub = null;
+    }
+
+    /**
+     * Stamps the frame with the next sequence number for the topic and caches it as the topic's last value.
+     *
+     * @param topic topic the frame is published on
+     * @param frame framed frugal bytes
+     * @return the stamped frame, to be published instead of the given frame
+     * @throws TException if the frame contains invalid header data
+     */
+    public synchronized byte[] record(String topic, byte[] frame) throws TException {
+        long sequence = sequences.getOrDefault(topic, 0L) + 1;
+        byte[] stamped = HeaderUtils.addHeadersToFrame(frame,
+                Collections.singletonMap(SEQUENCE_HEADER, Long.toString(sequence)));
+        sequences.put(topic, sequence);
+        values.remove(topic);
+        values.put(topic, stamped);
+        if (HeaderUtils.decodeFromFrame(frame, 4).containsKey(DeltaEncoder.KEYFRAME_HEADER)) {
+            keyframes.put(topic, stamped);
+        }
+        if (values.size() > maxTopics) {
+            String eldest = values.keySet().iterator().next();
+            values.remove(eldest);
+            sequences.remove(eldest);
+            keyframes.remove(eldest);
+        }
+        return stamped;
+    }
+
+    /**
+     * Returns the last frame cached for the topic.
+     *
+     * @param topic scope topic
+     * @return the stamped frame, or null if the topic is not cached
+     */
+    public synchronized byte[] get(String topic) {
+        return values.get(topic);
+    }
+
+    /**
+     * Returns the last delta keyframe cached for the topic.
+     *
+     * @param topic scope topic
+     * @return the stamped keyframe, or null if no keyframe of the topic is cached
+     */
+    public synchronized byte[] getKeyframe(String topic) {
+        return keyframes.get(topic);
+    }
+
+    /**
+     * Returns the number of cached topics.
+     *
+     * @return cached topic count
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Requests a snapshot of the topic from the last-value caches reachable over the connection.
+     *
+     * @param conn    NATS connection
+     * @param topic   scope topic
+     * @param timeout milliseconds to wait for a reply
+     * @return the last frame published on the topic, or null if no cache replied
+     * @throws TTransportException if the request could not be sent
+     */
+    public static byte[] requestSnapshot(Connection conn, String topic, long timeout) throws TTransportException {
+        return request(conn, topic, new byte[0], timeout);
+    }
+
+    private static byte[] request(Connection conn, String topic, byte[] data, long timeout)
+            throws TTransportException {
+        try {
+            Message reply = conn.request(SNAPSHOT_PREFIX + topic, data, timeout, TimeUnit.MILLISECONDS);
+            return reply != null && reply.getData() != null && reply.getData().length > 0 ? reply.getData() : null;
+        } catch (IOException e) {
+            throw new TTransportException("snapshot: unable to request snapshot: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TTransportException("snapshot: interrupted");
+        }
+    }
+
+    /**
+     * Requests a snapshot of a topic from the last-value caches on a background thread, so the caller does not block
+     * for up to the timeout.
+     *
+     * @param conn    NATS connection
+     * @param topic   topic to request a snapshot of
+     * @param timeout milliseconds to wait for a reply
+     * @return future completing with the last message published on the topic, or null if no cache replied in time
+     */
+    public static CompletableFuture<byte[]> requestSnapshotAsync(Connection conn, String topic, long timeout) {
+        return requestAsync(conn, topic, new byte[0], timeout);
+    }
+
+    /**
+     * Requests the last delta keyframe of a topic from the last-value caches on a background thread.
+     *
+     * @param conn    NATS connection
+     * @param topic   topic to request the keyframe of
+     * @param timeout milliseconds to wait for a reply
+     * @return future completing with the last keyframe published on the topic, or null if no cache replied in time
+     */
+    public static CompletableFuture<byte[]> requestKeyframeAsync(Connection conn, String topic, long timeout) {
+        return requestAsync(conn, topic, KEYFRAME_REQUEST, timeout);
+    }
+
+    private static CompletableFuture<byte[]> requestAsync(Connection conn, String topic, byte[] data, long timeout) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        SNAPSHOT_REQUESTS.execute(() -> {
+            try {
+                future.complete(request(conn, topic, data, timeout));
+            } catch (TTransportException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Returns the sequence number of a frame stamped by a last-value cache.
+     *
+     * @param frame framed frugal bytes
+     * @return the sequence number, or -1 if the frame is not stamped
+     */
+    public static long getSequence(byte[] frame) {
+        try {
+            String sequence = HeaderUtils.decodeFromFrame(frame, 4).get(SEQUENCE_HEADER);
+            return sequence != null ? Long.parseLong(sequence) : -1;
+        } catch (TException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void onRequest(Message msg) {
+        if (msg.getReplyTo() == null) {
+            return;
+        }
+        String topic = msg.getSubject().substring(SNAPSHOT_PREFIX.length());
+        byte[] value = Arrays.equals(msg.getData(), KEYFRAME_REQUEST) ? getKeyframe(topic) : get(topic);
+        if (value == null) {
+            return;
+        }
+        try {
+            conn.publish(msg.getReplyTo(), value);
+        } catch (IOException e) {
+            LOGGER.warn("could not reply to snapshot request. " + e.getMessage());
+        }
+    }
+}
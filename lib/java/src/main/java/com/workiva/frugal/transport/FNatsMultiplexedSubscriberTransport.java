@@ -0,0 +1,364 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.protocol.FAsyncCallback;
+import com.workiva.frugal.util.FrameReassembler;
+import com.workiva.frugal.util.TopicTrie;
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.Nats;
+import io.nats.client.Subscription;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.workiva.frugal.transport.FNatsTransport.FRUGAL_PREFIX;
+
+/**
+ * FNatsMultiplexedSubscriberTransport implements FSubscriberTransport by sharing a small number of NATS
+ * subscriptions between many frugal subscriptions. Topics matching one of the configured wildcard patterns (e.g.
+ * <code>foo.*.Events.*</code>) are served by a single wildcard NATS subscription per pattern, and messages are
+ * dispatched to the subscribed callbacks through an in-memory topic trie. Topics which match no pattern share one
+ * NATS subscription per topic. NATS subscriptions are created when the first frugal subscription needs them and
+ * removed when the last one unsubscribes.
+ * <p>
+ * A wildcard subscription receives every message matching its pattern, including messages for topics no callback
+ * is subscribed to, which are discarded. Patterns should therefore be chosen to cover mostly subscribed topics.
+ * Callbacks are invoked on the NATS dispatcher thread. Messages are limited to 1MB in size unless fragmentation is
+ * enabled.
+ */
+public class FNatsMultiplexedSubscriberTransport implements FSubscriberTransport {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FNatsMultiplexedSubscriberTransport.class);
+
+    private final Factory factory;
+    protected Registration registration;
+
+    protected FNatsMultiplexedSubscriberTransport(Factory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public synchronized boolean isSubscribed() {
+        return registration != null && factory.isSubscribed(registration);
+    }
+
+    @Override
+    public synchronized void subscribe(String topic, FAsyncCallback callback) throws TException {
+        if (factory.conn.getState() != Nats.ConnState.CONNECTED) {
+            throw new TTransportException(TTransportExceptionType.NOT_OPEN,
+                    "NATS not connected, has status " + factory.conn.getState());
+        }
+        if (topic == null || "".equals(topic)) {
+            throw new TTransportException("Subject cannot be empty.");
+        }
+        if (registration != null) {
+            throw new TTransportException(TTransportExceptionType.ALREADY_OPEN,
+                    "already subscribed to " + registration.topic);
+        }
+        registration = factory.register(topic, callback);
+    }
+
+    @Override
+    public synchronized void unsubscribe() {
+        if (registration == null) {
+            LOGGER.warn("attempted to unsubscribe without a subscription - possibly unsubscribing more than once");
+            return;
+        }
+        factory.unregister(registration);
+        registration = null;
+    }
+
+    /**
+     * A frugal subscription, bound to the NATS subscription serving its topic.
+     */
+    protected static class Registration {
+        final String topic;
+        final String pattern;
+        final FAsyncCallback callback;
+
+        Registration(String topic, String pattern, FAsyncCallback callback) {
+            this.topic = topic;
+            this.pattern = pattern;
+            this.callback = callback;
+        }
+    }
+
+    /**
+     * A NATS subscription and the number of frugal subscriptions sharing it.
+     */
+    private static class SharedSubscription {
+        Subscription sub;
+        int refs;
+    }
+
+    /**
+     * An FSubscriberTransportFactory which creates FSubscriberTransports sharing the NATS subscriptions held by the
+     * factory. Transports from different factories do not share subscriptions.
+     */
+    public static class Factory implements FSubscriberTransportFactory {
+
+        private final Connection conn;
+        private final String queue;
+        private final FrameReassembler reassembler;
+
+        // Configured wildcard patterns in the order they were added, and their indexes keyed by pattern.
+        private final List<String> wildcards;
+        private final TopicTrie<Integer> patterns = new TopicTrie<>();
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        // Guarded by lock.
+        private final TopicTrie<Registration> registrations = new TopicTrie<>();
+        private final Map<String, SharedSubscription> subscriptions = new HashMap<>();
+
+        private Factory(Connection conn, String queue, boolean fragmentation, List<String> wildcards) {
+            this.conn = conn;
+            this.queue = queue;
+            this.reassembler = fragmentation ? new FrameReassembler() : null;
+            this.wildcards = new ArrayList<>(wildcards);
+            for (int i = 0; i < wildcards.size(); i++) {
+                patterns.add(wildcards.get(i), i);
+            }
+        }
+
+        /**
+         * Get a new FSubscriberTransport instance.
+         *
+         * @return A new FSubscriberTransport instance.
+         */
+        public FNatsMultiplexedSubscriberTransport getTransport() {
+            return new FNatsMultiplexedSubscriberTransport(this);
+        }
+
+        /**
+         * Returns the number of NATS subscriptions currently held.
+         *
+         * @return NATS subscription count
+         */
+        public int getNatsSubscriptionCount() {
+            lock.readLock().lock();
+            try {
+                return subscriptions.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Returns the number of frugal subscriptions currently sharing this factory's NATS subscriptions.
+         *
+         * @return frugal subscription count
+         */
+        public int getSubscriptionCount() {
+            lock.readLock().lock();
+            try {
+                return registrations.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        Registration register(String topic, FAsyncCallback callback) throws TException {
+            // The trie returns matches by specificity, so pick the pattern added first.
+            List<Integer> matching = patterns.match(topic);
+            String pattern = matching.isEmpty() ? topic : wildcards.get(Collections.min(matching));
+            Registration registration = new Registration(topic, pattern, callback);
+
+            lock.writeLock().lock();
+            try {
+                SharedSubscription shared = subscriptions.get(pattern);
+                if (shared == null) {
+                    shared = new SharedSubscription();
+                    shared.sub = conn.subscribe(FRUGAL_PREFIX + pattern, queue, msg -> onMessage(pattern, msg));
+                    subscriptions.put(pattern, shared);
+                }
+                shared.refs++;
+                registrations.add(topic, registration);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            return registration;
+        }
+
+        void unregister(Registration registration) {
+            Subscription unused = null;
+            lock.writeLock().lock();
+            try {
+                if (!registrations.remove(registration.topic, registration)) {
+                    return;
+                }
+                SharedSubscription shared = subscriptions.get(registration.pattern);
+                if (--shared.refs == 0) {
+                    subscriptions.remove(registration.pattern);
+                    unused = shared.sub;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (unused != null) {
+                try {
+                    unused.unsubscribe();
+                } catch (IOException e) {
+                    LOGGER.warn("could not unsubscribe from subscription. " + e.getMessage());
+                }
+            }
+        }
+
+        boolean isSubscribed(Registration registration) {
+            if (conn.getState() != Nats.ConnState.CONNECTED) {
+                return false;
+            }
+            lock.readLock().lock();
+            try {
+                SharedSubscription shared = subscriptions.get(registration.pattern);
+                return shared != null && shared.sub != null && shared.sub.isValid();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private void onMessage(String pattern, Message msg) {
+            byte[] data = msg.getData();
+            if (data.length < 4) {
+                LOGGER.warn("discarding invalid scope message frame");
+                return;
+            }
+            String subject = msg.getSubject();
+            if (!subject.startsWith(FRUGAL_PREFIX)) {
+                return;
+            }
+            String topic = subject.substring(FRUGAL_PREFIX.length());
+
+            List<Registration> matches;
+            lock.readLock().lock();
+            try {
+                matches = registrations.match(topic);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (matches.isEmpty()) {
+                return;
+            }
+
+            if (reassembler != null) {
+                try {
+                    data = reassembler.reassemble(subject, data);
+                } catch (TException e) {
+                    LOGGER.warn("discarding invalid scope message fragment: " + e.getMessage());
+                    return;
+                }
+                if (data == null) {
+                    return;
+                }
+            }
+            for (Registration registration : matches) {
+                // Only deliver messages received on the subscription the registration is bound to, so topics
+                // matching several patterns are not delivered more than once.
+                if (!registration.pattern.equals(pattern)) {
+                    continue;
+                }
+                try {
+                    registration.callback.onMessage(
+                            new TMemoryInputTransport(Arrays.copyOfRange(data, 4, data.length)));
+                } catch (TException ignored) {
+                }
+            }
+        }
+
+        /**
+         * Builder for configuring and constructing multiplexed NATS FSubscriberTransportFactory instances.
+         */
+        public static class Builder {
+
+            private final Connection conn;
+            private final List<String> wildcards = new ArrayList<>();
+
+            private String queue;
+            private boolean fragmentation;
+
+            /**
+             * Creates a new Builder which creates factories for FSubscriberTransports using the given NATS
+             * connection.
+             *
+             * @param conn NATS connection
+             */
+            public Builder(Connection conn) {
+                this.conn = conn;
+            }
+
+            /**
+             * Adds a wildcard topic pattern, without the frugal subject prefix, e.g. <code>foo.*.Events.*</code>.
+             * Subscribed topics matching the pattern share a single NATS subscription. A topic matching several
+             * patterns uses the first one added.
+             *
+             * @param wildcard topic pattern using NATS wildcards
+             * @return Builder
+             */
+            public Builder withWildcard(String wildcard) {
+                wildcards.add(wildcard);
+                return this;
+            }
+
+            /**
+             * Adds a NATS queue group to subscribe with. When a queue group is formed, only one member receives
+             * each message. Queue groups cannot be combined with wildcard patterns, since a member would receive
+             * messages for topics it has not subscribed to and discard them.
+             *
+             * @param queue subscription queue
+             * @return Builder
+             */
+            public Builder withQueueGroup(String queue) {
+                this.queue = queue;
+                return this;
+            }
+
+            /**
+             * Enables reassembly of messages fragmented by a publisher (disabled by default).
+             *
+             * @param fragmentation whether to reassemble fragmented messages
+             * @return Builder
+             */
+            public Builder withFragmentation(boolean fragmentation) {
+                this.fragmentation = fragmentation;
+                return this;
+            }
+
+            /**
+             * Creates a new configured Factory.
+             *
+             * @return Factory
+             * @throws IllegalStateException if both a queue group and wildcard patterns are configured
+             */
+            public Factory build() {
+                if (queue != null && !wildcards.isEmpty()) {
+                    throw new IllegalStateException("queue groups cannot be combined with wildcard patterns");
+                }
+                return new Factory(conn, queue, fragmentation, wildcards);
+            }
+        }
+    }
+}
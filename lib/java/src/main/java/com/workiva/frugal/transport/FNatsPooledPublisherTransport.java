@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.transport;
+
+import io.nats.client.Connection;
+import org.apache.thrift.transport.TTransportException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * FNatsPooledPublisherTransport spreads publishes across the connections of an {@link FNatsConnectionPool}. Each
+ * topic is assigned a connection by the pool, so messages of a topic are published in order.
+ */
+public class FNatsPooledPublisherTransport implements FPublisherTransport {
+
+    private final FNatsConnectionPool pool;
+    private final List<FPublisherTransport> transports;
+
+    /**
+     * Creates a new FNatsPooledPublisherTransport publishing through the given transports, one per pool connection.
+     *
+     * @param pool       NATS connection pool
+     * @param transports publisher transports of the pool connections, in pool order
+     */
+    protected FNatsPooledPublisherTransport(FNatsConnectionPool pool, List<FPublisherTransport> transports) {
+        this.pool = pool;
+        this.transports = transports;
+    }
+
+    /**
+     * An FPublisherTransportFactory implementation which creates FPublisherTransports backed by a NATS connection
+     * pool.
+     */
+    public static class Factory implements FPublisherTransportFactory {
+
+        private final FNatsConnectionPool pool;
+        private final List<FPublisherTransportFactory> factories;
+
+        /**
+         * Creates a pooled FPublisherTransportFactory using default NATS publisher transports.
+         *
+         * @param pool NATS connection pool
+         */
+        public Factory(FNatsConnectionPool pool) {
+            this(pool, FNatsPublisherTransport.Factory::new);
+        }
+
+        /**
+         * Creates a pooled FPublisherTransportFactory using the factories created for each pool connection, e.g.
+         * <code>conn -&gt; new FNatsPublisherTransport.Factory.Builder(conn).withFragmentation(true).build()</code>.
+         *
+         * @param pool    NATS connection pool
+         * @param factory creates the publisher transport factory of a connection
+         */
+        public Factory(FNatsConnectionPool pool, Function<Connection, FPublisherTransportFactory> factory) {
+            this.pool = pool;
+            this.factories = new ArrayList<>(pool.size());
+            for (Connection conn : pool.getConnections()) {
+                factories.add(factory.apply(conn));
+            }
+        }
+
+        /**
+         * Get a new FPublisherTransport instance.
+         *
+         * @return A new FPublisherTransport instance.
+         */
+        public FPublisherTransport getTransport() {
+            List<FPublisherTransport> transports = new ArrayList<>(factories.size());
+            for (FPublisherTransportFactory factory : factories) {
+                transports.add(factory.getTransport());
+            }
+            return new FNatsPooledPublisherTransport(pool, transports);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        for (FPublisherTransport transport : transports) {
+            if (!transport.isOpen()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Opens the transport of every pool connection. If one fails to open, the transports already opened are closed.
+     *
+     * @throws TTransportException if a transport could not be opened
+     */
+    @Override
+    public void open() throws TTransportException {
+        for (int i = 0; i < transports.size(); i++) {
+            try {
+                transports.get(i).open();
+            } catch (TTransportException e) {
+                for (int j = 0; j < i; j++) {
+                    transports.get(j).close();
+                }
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        for (FPublisherTransport transport : transports) {
+            transport.close();
+        }
+    }
+
+    @Override
+    public int getPublishSizeLimit() {
+        int limit = Integer.MAX_VALUE;
+        for (FPublisherTransport transport : transports) {
+            limit = Math.min(limit, transport.getPublishSizeLimit());
+        }
+        return limit;
+    }
+
+    @Override
+    public void publish(String topic, byte[] payload) throws TTransportException {
+        transports.get(pool.indexFor(topic)).publish(topic, payload);
+    }
+
+    @Override
+    public CompletableFuture<Void> publishAsync(String topic, byte[] payload) throws TTransportException {
+        return transports.get(pool.indexFor(topic)).publishAsync(topic, payload);
+    }
+
+    @Override
+    public void flush() throws TTransportException {
+        for (FPublisherTransport transport : transports) {
+            transport.flush();
+        }
+    }
+}
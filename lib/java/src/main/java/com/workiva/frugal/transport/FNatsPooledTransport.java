@@ -0,0 +1,158 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.FContext;
+import io.nats.client.Connection;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * FNatsPooledTransport spreads requests across the connections of an {@link FNatsConnectionPool}, using one
+ * {@link FNatsTransport} per connection. Requests are assigned round-robin, unless an ordering header is configured
+ * with {@link #withOrderingHeader(String)}: requests carrying the header are assigned a connection by its value, so
+ * requests with the same value are sent in order over the same connection.
+ */
+public class FNatsPooledTransport extends FTransport {
+
+    private final FNatsConnectionPool pool;
+    private final Function<Connection, FNatsTransport> factory;
+    private final List<FNatsTransport> transports;
+    private final String orderingHeader;
+
+    private FNatsPooledTransport(FNatsConnectionPool pool, Function<Connection, FNatsTransport> factory,
+                                 String orderingHeader) {
+        this.pool = pool;
+        this.factory = factory;
+        this.orderingHeader = orderingHeader;
+        this.transports = new ArrayList<>(pool.size());
+        for (Connection conn : pool.getConnections()) {
+            transports.add(factory.apply(conn));
+        }
+    }
+
+    /**
+     * Creates a new FTransport which publishes requests to the subject over the connections of the pool.
+     *
+     * @param pool    NATS connection pool
+     * @param subject subject to publish requests on
+     * @return FNatsPooledTransport for communicating via NATS.
+     */
+    public static FNatsPooledTransport of(FNatsConnectionPool pool, String subject) {
+        return of(pool, conn -> FNatsTransport.of(conn, subject));
+    }
+
+    /**
+     * Creates a new FTransport which sends requests through the transports created for each pool connection, e.g.
+     * <code>conn -&gt; FNatsTransport.of(conn, subject).withFragmentation()</code>.
+     *
+     * @param pool    NATS connection pool
+     * @param factory creates the transport of a connection
+     * @return FNatsPooledTransport for communicating via NATS.
+     */
+    public static FNatsPooledTransport of(FNatsConnectionPool pool, Function<Connection, FNatsTransport> factory) {
+        return new FNatsPooledTransport(pool, factory, null);
+    }
+
+    /**
+     * Returns a new FTransport which assigns requests carrying the given request header a connection by the header
+     * value.
+     *
+     * @param header request header holding the ordering key
+     * @return FNatsPooledTransport for communicating via NATS.
+     */
+    public FNatsPooledTransport withOrderingHeader(String header) {
+        return new FNatsPooledTransport(pool, factory, header);
+    }
+
+    /**
+     * Query transport open state.
+     *
+     * @return true if the transport of every pool connection is open.
+     */
+    @Override
+    public boolean isOpen() {
+        for (FNatsTransport transport : transports) {
+            if (!transport.isOpen()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Opens the transport of every pool connection.
+     *
+     * @throws TTransportException if unable to open a transport, in which case the others are closed again
+     */
+    @Override
+    public synchronized void open() throws TTransportException {
+        for (int i = 0; i < transports.size(); i++) {
+            try {
+                transports.get(i).open();
+            } catch (TTransportException e) {
+                for (int j = 0; j < i; j++) {
+                    transports.get(j).close();
+                }
+                throw e;
+            }
+        }
+        super.open();
+    }
+
+    /**
+     * Closes the transport of every pool connection.
+     */
+    @Override
+    public void close() {
+        for (FNatsTransport transport : transports) {
+            transport.close();
+        }
+        super.close();
+    }
+
+    @Override
+    public void oneway(FContext context, byte[] payload) throws TTransportException {
+        select(context).oneway(context, payload);
+    }
+
+    @Override
+    public TTransport request(FContext context, byte[] payload) throws TTransportException {
+        return select(context).request(context, payload);
+    }
+
+    /**
+     * Get the maximum request size permitted by the transport, the smallest limit of the pool transports.
+     *
+     * @return the request size limit
+     */
+    @Override
+    public int getRequestSizeLimit() {
+        int limit = Integer.MAX_VALUE;
+        for (FNatsTransport transport : transports) {
+            limit = Math.min(limit, transport.getRequestSizeLimit());
+        }
+        return limit;
+    }
+
+    private FNatsTransport select(FContext context) {
+        String key = orderingHeader == null ? null : context.getRequestHeader(orderingHeader);
+        return transports.get(key == null ? pool.nextIndex() : pool.indexFor(key));
+    }
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.exception.TTransportExceptionType;
+import io.nats.client.Connection;
+import io.nats.client.Nats;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * FNatsPublishSpool stores messages published while the NATS connection is down in a memory-mapped ring buffer file
+ * and publishes them in order once the connection is back. Spooling only copies the message into the mapping, so
+ * publish latency stays constant while disconnected. Messages are spooled while any spooled messages remain, so
+ * messages are never published out of order.
+ * <p>
+ * The file survives restarts: a spool opened on an existing file publishes the messages left in it. Writes are
+ * forced to disk when the spool is closed, so messages spooled just before a crash of the host may be lost. A message
+ * is removed from the spool only after it has been handed to the NATS client, so a crash while draining may publish
+ * it twice.
+ * <p>
+ * When the spool is full, the {@link OverflowPolicy} decides which messages are lost. A spool may be shared by all
+ * the publisher transports of a NATS connection.
+ */
+public class FNatsPublishSpool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FNatsPublishSpool.class);
+
+    /**
+     * Policies for handling a message which does not fit in a full spool.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Fail the publish with a {@link TTransportExceptionType#REQUEST_TOO_LARGE} exception.
+         */
+        FAIL,
+        /**
+         * Drop the new message.
+         */
+        DROP_NEWEST,
+        /**
+         * Drop the oldest spooled messages until the new message fits.
+         */
+        DROP_OLDEST
+    }
+
+    // The file starts with a magic number, the offset of the oldest record in the ring and the number of bytes used
+    // by records. The rest of the file is the ring, holding records made of the subject length, subject, payload
+    // length and payload, which wrap around its end.
+    private static final int MAGIC = 0x46535032;
+    private static final int READ_OFFSET = 4;
+    private static final int USED_BYTES = 8;
+    private static final int HEADER_SIZE = 12;
+
+    // How often the drainer checks whether the connection is back.
+    private static final long DRAIN_POLL_INTERVAL = 100;
+
+    private final Connection conn;
+    private final OverflowPolicy policy;
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int ringSize;
+
+    // Guarded by this.
+    private int readOffset;
+    private int usedBytes;
+    private int count;
+    // Number of records spooled and removed so far, so the drainer can tell whether the record it published was
+    // dropped, and flushes can tell when the records spooled before them are gone.
+    private long spooledCount;
+    private long removedCount;
+    private long droppedCount;
+    private boolean closed;
+    private Thread drainer;
+
+    /**
+     * Opens a spool backed by the given file, creating it if needed. Messages left in an existing file are published
+     * once the spool is started.
+     *
+     * @param conn     NATS connection to publish spooled messages on
+     * @param path     file backing the spool
+     * @param capacity size of the file in bytes, which bounds the spooled messages
+     * @param policy   how to handle messages which do not fit in a full spool
+     * @throws IOException if the file cannot be opened, or holds a spool of a different capacity
+     */
+    public FNatsPublishSpool(Connection conn, Path path, int capacity, OverflowPolicy policy) throws IOException {
+        if (capacity <= HEADER_SIZE) {
+            throw new IllegalArgumentException("capacity must be larger than " + HEADER_SIZE + " bytes");
+        }
+        this.conn = conn;
+        this.policy = policy;
+        this.capacity = capacity;
+        this.ringSize = capacity - HEADER_SIZE;
+        this.file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            long existing = file.length();
+            if (existing != 0 && existing != capacity) {
+                throw new IOException("spool file " + path + " has size " + existing + ", expected " + capacity);
+            }
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            if (existing == 0 || buffer.getInt(0) != MAGIC) {
+                buffer.putInt(0, MAGIC);
+                reset();
+            } else {
+                recover(path);
+            }
+            spooledCount = count;
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts publishing spooled messages whenever the connection is up, if not already started.
+     */
+    public synchronized void start() {
+        if (drainer != null || closed) {
+            return;
+        }
+        drainer = new Thread(this::drain, "frugal-nats-spool");
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    /**
+     * Stops publishing spooled messages, forces the spool to disk and closes its file. Messages left in the spool
+     * are published by the next spool opened on the file.
+     */
+    public void close() {
+        Thread stopping;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            stopping = drainer;
+            notifyAll();
+        }
+        if (stopping != null) {
+            try {
+                stopping.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            buffer.force();
+            try {
+                file.close();
+            } catch (IOException e) {
+                LOGGER.warn("could not close spool file. " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Spools the message if the connection is down or earlier messages are still spooled. Otherwise the caller must
+     * publish the message itself.
+     *
+     * @param subject NATS subject to publish on
+     * @param payload message data
+     * @return true if the message was spooled or dropped by the overflow policy
+     * @throws TTransportException if the spool is full and the overflow policy is {@link OverflowPolicy#FAIL}, or
+     *                             the message can never fit in the spool
+     */
+    public synchronized boolean offer(String subject, byte[] payload) throws TTransportException {
+        if (count == 0 && conn.getState() == Nats.ConnState.CONNECTED) {
+            return false;
+        }
+        if (closed) {
+            throw new TTransportException(TTransportExceptionType.NOT_OPEN, "publish: spool is closed");
+        }
+        byte[] encodedSubject = subject.getBytes(StandardCharsets.UTF_8);
+        int length = 8 + encodedSubject.length + payload.length;
+        if (length > ringSize) {
+            throw new TTransportException(TTransportExceptionType.REQUEST_TOO_LARGE,
+                    String.format("Message exceeds spool capacity of %d bytes, was %d bytes", ringSize, length));
+        }
+        if (length > ringSize - usedBytes) {
+            switch (policy) {
+                case FAIL:
+                    throw new TTransportException(TTransportExceptionType.REQUEST_TOO_LARGE,
+                            "publish: spool is full with " + count + " messages");
+                case DROP_NEWEST:
+                    droppedCount++;
+                    return true;
+                default:
+                    while (length > ringSize - usedBytes) {
+                        remove();
+                        droppedCount++;
+                    }
+            }
+        }
+
+        int offset = wrap(readOffset + usedBytes);
+        offset = putInt(offset, encodedSubject.length);
+        offset = put(offset, encodedSubject);
+        offset = putInt(offset, payload.length);
+        put(offset, payload);
+        // Only publish the record once it is fully written.
+        usedBytes += length;
+        buffer.putInt(USED_BYTES, usedBytes);
+        count++;
+        spooledCount++;
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Blocks until every message spooled before this call has been handed to the NATS client or dropped by the
+     * overflow policy. Gives up as soon as the connection is down, since spooled messages are only published while
+     * it is up.
+     *
+     * @return true if the messages are gone, false if the connection is down or the spool is not started or closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized boolean awaitDrained() throws InterruptedException {
+        long target = spooledCount;
+        while (removedCount < target) {
+            if (drainer == null || closed || conn.getState() != Nats.ConnState.CONNECTED) {
+                return false;
+            }
+            wait(DRAIN_POLL_INTERVAL);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of spooled messages.
+     *
+     * @return spooled message count
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Returns the number of messages dropped by the overflow policy.
+     *
+     * @return dropped message count
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    private void drain() {
+        while (true) {
+            String subject;
+            byte[] payload;
+            long removed;
+            synchronized (this) {
+                try {
+                    while (!closed && (count == 0 || conn.getState() != Nats.ConnState.CONNECTED)) {
+                        wait(DRAIN_POLL_INTERVAL);
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (closed) {
+                    return;
+                }
+                int offset = readOffset;
+                int subjectLength = getInt(offset);
+                subject = new String(get(wrap(offset + 4), subjectLength), StandardCharsets.UTF_8);
+                offset = wrap(offset + 4 + subjectLength);
+                payload = get(wrap(offset + 4), getInt(offset));
+                removed = removedCount;
+            }
+
+            // The record stays spooled while it is published outside the lock, so new messages keep being spooled
+            // behind it rather than overtaking it.
+            try {
+                conn.publish(subject, payload);
+            } catch (IOException | IllegalStateException e) {
+                LOGGER.warn("failed to publish spooled message to " + subject + ": " + e.getMessage());
+                synchronized (this) {
+                    try {
+                        wait(DRAIN_POLL_INTERVAL);
+                    } catch (InterruptedException ie) {
+                        return;
+                    }
+                }
+                continue;
+            }
+            synchronized (this) {
+                // Unless the overflow policy dropped it meanwhile, the published record is still the oldest.
+                if (removedCount == removed) {
+                    remove();
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    // Removes the oldest record.
+    private void remove() {
+        int subjectLength = getInt(readOffset);
+        int payloadOffset = wrap(readOffset + 4 + subjectLength);
+        int length = 8 + subjectLength + getInt(payloadOffset);
+        count--;
+        removedCount++;
+        if (count == 0) {
+            reset();
+            return;
+        }
+        readOffset = wrap(readOffset + length);
+        usedBytes -= length;
+        buffer.putInt(READ_OFFSET, readOffset);
+        buffer.putInt(USED_BYTES, usedBytes);
+    }
+
+    private void reset() {
+        readOffset = 0;
+        usedBytes = 0;
+        buffer.putInt(READ_OFFSET, readOffset);
+        buffer.putInt(USED_BYTES, usedBytes);
+    }
+
+    // Restores the positions from an existing file and counts its records.
+    private void recover(Path path) throws IOException {
+        readOffset = buffer.getInt(READ_OFFSET);
+        usedBytes = buffer.getInt(USED_BYTES);
+        if (readOffset < 0 || readOffset >= ringSize || usedBytes < 0 || usedBytes > ringSize) {
+            throw new IOException("spool file " + path + " is corrupt");
+        }
+        int position = 0;
+        while (position < usedBytes) {
+            position = skipField(position);
+            position = skipField(position);
+            count++;
+        }
+        if (position != usedBytes) {
+            throw new IOException("spool file " + path + " is corrupt");
+        }
+        if (count > 0) {
+            LOGGER.info("recovered {} spooled messages from {}", count, path);
+        }
+    }
+
+    // Returns the position, relative to the oldest record, after the length-prefixed field at the position, or past
+    // the used bytes if the field is invalid.
+    private int skipField(int position) {
+        if (position > usedBytes - 4) {
+            return usedBytes + 1;
+        }
+        int length = getInt(wrap(readOffset + position));
+        return length < 0 || length > usedBytes - position - 4 ? usedBytes + 1 : position + 4 + length;
+    }
+
+    // Maps a possibly wrapped offset into the ring.
+    private int wrap(int offset) {
+        return offset >= ringSize ? offset - ringSize : offset;
+    }
+
+    // Writes the bytes at the ring offset, wrapping around the end of the ring, and returns the offset after them.
+    private int put(int offset, byte[] bytes) {
+        int first = Math.min(bytes.length, ringSize - offset);
+        buffer.position(HEADER_SIZE + offset);
+        buffer.put(bytes, 0, first);
+        if (first < bytes.length) {
+            buffer.position(HEADER_SIZE);
+            buffer.put(bytes, first, bytes.length - first);
+        }
+        return wrap(offset + bytes.length);
+    }
+
+    private byte[] get(int offset, int length) {
+        byte[] bytes = new byte[length];
+        int first = Math.min(length, ringSize - offset);
+        buffer.position(HEADER_SIZE + offset);
+        buffer.get(bytes, 0, first);
+        if (first < length) {
+            buffer.position(HEADER_SIZE);
+            buffer.get(bytes, first, length - first);
+        }
+        return bytes;
+    }
+
+    private int putInt(int offset, int value) {
+        if (offset + 4 <= ringSize) {
+            buffer.putInt(HEADER_SIZE + offset, value);
+            return wrap(offset + 4);
+        }
+        return put(offset, new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8),
+            (byte) value});
+    }
+
+    private int getInt(int offset) {
+        if (offset + 4 <= ringSize) {
+            return buffer.getInt(HEADER_SIZE + offset);
+        }
+        byte[] bytes = get(offset, 4);
+        return (bytes[0] & 0xff) << 24 | (bytes[1] & 0xff) << 16 | (bytes[2] & 0xff) << 8 | bytes[3] & 0xff;
+    }
+}
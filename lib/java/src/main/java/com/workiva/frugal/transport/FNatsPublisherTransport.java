@@ -14,13 +14,22 @@
 package com.workiva.frugal.transport;
 
 import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.util.FrameFragmenter;
 import io.nats.client.Connection;
 import io.nats.client.Nats;
+import org.apache.thrift.TException;
 import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.workiva.frugal.transport.FNatsTransport.FRUGAL_PREFIX;
 import static com.workiva.frugal.transport.FNatsTransport.NATS_MAX_MESSAGE_SIZE;
@@ -28,12 +37,35 @@ import static com.workiva.frugal.transport.FNatsTransport.getClosedConditionExce
 
 /**
  * FNatsPublisherTransport implements FPublisherTransport by using NATS as the pub/sub message broker.
- * Messages are limited to 1MB in size.
+ * Messages are limited to 1MB in size unless fragmentation is enabled.
+ * <p>
+ * By default, messages are published on the calling thread. If asynchronous publishing is enabled, messages are
+ * placed on a bounded queue and published in batches by a background thread, so callers only block when the queue
+ * is full. The NATS connection is flushed once per batch, so a batch costs a single round trip to the server.
+ * <p>
+ * If a {@link FNatsLastValueCache} is configured, every published message is recorded as the last value of its topic
+ * so new subscribers can request a snapshot of the topic.
+ * <p>
+ * If a {@link FNatsPublishSpool} is configured, messages published while the NATS connection is down are spooled to
+ * disk instead of failing, and published in order once the connection is back.
  */
 public class FNatsPublisherTransport implements FPublisherTransport {
     private static final Logger LOGGER = LoggerFactory.getLogger(FNatsPublisherTransport.class);
 
+    // How often blocked publishers and an idle flusher check whether the transport was closed.
+    private static final long CLOSE_POLL_INTERVAL = 100;
+    private static final long CLOSE_TIMEOUT = 5000;
+
     private final Connection conn;
+    private final boolean fragmentation;
+    private final BlockingQueue<PendingPublish> queue;
+    private final int maxBatchSize;
+    private final long maxBatchDelay;
+    private final FNatsLastValueCache lastValueCache;
+    private final FNatsPublishSpool spool;
+
+    private volatile boolean flusherRunning;
+    private Thread flusher;
 
     /**
      * Creates a new FNatsPublisherTransport which is used for publishing.
@@ -41,7 +73,77 @@ public class FNatsPublisherTransport implements FPublisherTransport {
      * @param conn NATS connection
      */
     protected FNatsPublisherTransport(Connection conn) {
+        this(conn, false);
+    }
+
+    /**
+     * Creates a new FNatsPublisherTransport which is used for publishing. If fragmentation is enabled, messages
+     * larger than NATS_MAX_MESSAGE_SIZE are split into fragments which subscribers must reassemble.
+     *
+     * @param conn          NATS connection
+     * @param fragmentation whether to fragment large messages
+     */
+    protected FNatsPublisherTransport(Connection conn, boolean fragmentation) {
+        this(conn, fragmentation, 0, 0, 0);
+    }
+
+    /**
+     * Creates a new FNatsPublisherTransport which is used for publishing. If the queue capacity is positive,
+     * messages are published asynchronously in batches of at most <code>maxBatchSize</code> messages. A batch is
+     * sent once it is full or <code>maxBatchDelay</code> milliseconds after its first message was dequeued, and the
+     * connection is flushed after each batch.
+     *
+     * @param conn          NATS connection
+     * @param fragmentation whether to fragment large messages
+     * @param queueCapacity maximum number of queued messages, or non-positive to publish synchronously
+     * @param maxBatchSize  maximum number of messages sent per batch
+     * @param maxBatchDelay maximum milliseconds to wait for a batch to fill
+     */
+    protected FNatsPublisherTransport(Connection conn, boolean fragmentation, int queueCapacity, int maxBatchSize,
+                                      long maxBatchDelay) {
+        this(conn, fragmentation, queueCapacity, maxBatchSize, maxBatchDelay, null);
+    }
+
+    /**
+     * Creates a new FNatsPublisherTransport which is used for publishing. If a last-value cache is provided,
+     * published messages are stamped with a sequence number and recorded in the cache, which answers snapshot
+     * requests once the transport is opened.
+     *
+     * @param conn           NATS connection
+     * @param fragmentation  whether to fragment large messages
+     * @param queueCapacity  maximum number of queued messages, or non-positive to publish synchronously
+     * @param maxBatchSize   maximum number of messages sent per batch
+     * @param maxBatchDelay  maximum milliseconds to wait for a batch to fill
+     * @param lastValueCache cache to record published messages in, or null to not cache them
+     */
+    protected FNatsPublisherTransport(Connection conn, boolean fragmentation, int queueCapacity, int maxBatchSize,
+                                      long maxBatchDelay, FNatsLastValueCache lastValueCache) {
+        this(conn, fragmentation, queueCapacity, maxBatchSize, maxBatchDelay, lastValueCache, null);
+    }
+
+    /**
+     * Creates a new FNatsPublisherTransport which is used for publishing. If a spool is provided, the transport can
+     * be opened and published on while the NATS connection is reconnecting, and messages published meanwhile are
+     * spooled until the connection is back.
+     *
+     * @param conn           NATS connection
+     * @param fragmentation  whether to fragment large messages
+     * @param queueCapacity  maximum number of queued messages, or non-positive to publish synchronously
+     * @param maxBatchSize   maximum number of messages sent per batch
+     * @param maxBatchDelay  maximum milliseconds to wait for a batch to fill
+     * @param lastValueCache cache to record published messages in, or null to not cache them
+     * @param spool          spool for messages published while disconnected, or null to fail those publishes
+     */
+    protected FNatsPublisherTransport(Connection conn, boolean fragmentation, int queueCapacity, int maxBatchSize,
+                                      long maxBatchDelay, FNatsLastValueCache lastValueCache,
+                                      FNatsPublishSpool spool) {
         this.conn = conn;
+        this.fragmentation = fragmentation;
+        this.queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity) : null;
+        this.maxBatchSize = Math.max(maxBatchSize, 1);
+        this.maxBatchDelay = Math.max(maxBatchDelay, 0);
+        this.lastValueCache = lastValueCache;
+        this.spool = spool;
     }
 
     /**
@@ -50,6 +152,12 @@ public class FNatsPublisherTransport implements FPublisherTransport {
     public static class Factory implements FPublisherTransportFactory {
 
         private final Connection conn;
+        private final boolean fragmentation;
+        private final int queueCapacity;
+        private final int maxBatchSize;
+        private final long maxBatchDelay;
+        private final FNatsLastValueCache lastValueCache;
+        private final FNatsPublishSpool spool;
 
         /**
          * Creates a NATS FPublisherTransportFactory using the provided NATS connection.
@@ -57,7 +165,30 @@ public class FNatsPublisherTransport implements FPublisherTransport {
          * @param conn NATS connection
          */
         public Factory(Connection conn) {
+            this(conn, false);
+        }
+
+        /**
+         * Creates a NATS FPublisherTransportFactory using the provided NATS connection. If fragmentation is enabled,
+         * messages larger than NATS_MAX_MESSAGE_SIZE are split into fragments. Publishers cannot negotiate with their
+         * subscribers, so only enable this when every subscriber has fragmentation enabled.
+         *
+         * @param conn          NATS connection
+         * @param fragmentation whether to fragment large messages
+         */
+        public Factory(Connection conn, boolean fragmentation) {
+            this(conn, fragmentation, 0, 0, 0, null, null);
+        }
+
+        private Factory(Connection conn, boolean fragmentation, int queueCapacity, int maxBatchSize,
+                        long maxBatchDelay, FNatsLastValueCache lastValueCache, FNatsPublishSpool spool) {
             this.conn = conn;
+            this.fragmentation = fragmentation;
+            this.queueCapacity = queueCapacity;
+            this.maxBatchSize = maxBatchSize;
+            this.maxBatchDelay = maxBatchDelay;
+            this.lastValueCache = lastValueCache;
+            this.spool = spool;
         }
 
         /**
@@ -66,36 +197,252 @@ public class FNatsPublisherTransport implements FPublisherTransport {
          * @return A new FPublisherTransport instance.
          */
         public FPublisherTransport getTransport() {
-            return new FNatsPublisherTransport(this.conn);
+            return new FNatsPublisherTransport(this.conn, this.fragmentation, this.queueCapacity,
+                    this.maxBatchSize, this.maxBatchDelay, this.lastValueCache, this.spool);
+        }
+
+        /**
+         * Builder for configuring and constructing NATS FPublisherTransportFactory instances.
+         */
+        public static class Builder {
+
+            private final Connection conn;
+
+            private boolean fragmentation;
+            private int queueCapacity;
+            private int maxBatchSize;
+            private long maxBatchDelay;
+            private FNatsLastValueCache lastValueCache;
+            private FNatsPublishSpool spool;
+
+            /**
+             * Creates a new Builder which creates factories for FPublisherTransports using the given NATS
+             * connection.
+             *
+             * @param conn NATS connection
+             */
+            public Builder(Connection conn) {
+                this.conn = conn;
+            }
+
+            /**
+             * Enables fragmentation of messages larger than NATS_MAX_MESSAGE_SIZE (disabled by default). Publishers
+             * cannot negotiate with their subscribers, so only enable this when every subscriber has fragmentation
+             * enabled.
+             *
+             * @param fragmentation whether to fragment large messages
+             * @return Builder
+             */
+            public Builder withFragmentation(boolean fragmentation) {
+                this.fragmentation = fragmentation;
+                return this;
+            }
+
+            /**
+             * Enables asynchronous publishing (disabled by default). Published messages are placed on a queue of the
+             * given capacity, and a background thread publishes them in batches of at most
+             * <code>maxBatchSize</code> messages. A batch is sent once it is full or <code>maxBatchDelay</code>
+             * milliseconds after its first message was dequeued, and the connection is flushed after each batch, so
+             * the delay trades latency for fewer flushes. Publishing blocks while the queue is full.
+             * <p>
+             * Asynchronous transports must be opened before publishing, and closing them publishes any queued
+             * messages before stopping the background thread.
+             *
+             * @param queueCapacity maximum number of queued messages
+             * @param maxBatchSize  maximum number of messages sent per batch
+             * @param maxBatchDelay maximum milliseconds to wait for a batch to fill, 0 to send whatever is queued
+             * @return Builder
+             */
+            public Builder withAsyncPublishing(int queueCapacity, int maxBatchSize, long maxBatchDelay) {
+                this.queueCapacity = queueCapacity;
+                this.maxBatchSize = maxBatchSize;
+                this.maxBatchDelay = maxBatchDelay;
+                return this;
+            }
+
+            /**
+             * Records every published message in the given last-value cache, which may be shared by many
+             * factories (disabled by default). Opening a transport starts the cache answering snapshot requests.
+             * Messages are stamped with a sequence number header so subscribers can merge the snapshot with the
+             * live stream.
+             *
+             * @param lastValueCache cache to record published messages in
+             * @return Builder
+             */
+            public Builder withLastValueCache(FNatsLastValueCache lastValueCache) {
+                this.lastValueCache = lastValueCache;
+                return this;
+            }
+
+            /**
+             * Spools messages published while the NATS connection is down in the given spool, which may be shared
+             * by many factories using the same connection (disabled by default). Transports can then be opened and
+             * published on while the connection is reconnecting, and opening a transport starts the spool
+             * publishing spooled messages once the connection is back.
+             *
+             * @param spool spool for messages published while disconnected
+             * @return Builder
+             */
+            public Builder withSpool(FNatsPublishSpool spool) {
+                this.spool = spool;
+                return this;
+            }
+
+            /**
+             * Creates a new configured Factory.
+             *
+             * @return Factory
+             */
+            public Factory build() {
+                return new Factory(conn, fragmentation, queueCapacity, maxBatchSize, maxBatchDelay, lastValueCache,
+                        spool);
+            }
         }
     }
 
     @Override
-    public synchronized boolean isOpen() {
-        return conn.getState() == Nats.ConnState.CONNECTED;
+    public boolean isOpen() {
+        return isConnected() && (queue == null || flusherRunning);
     }
 
     @Override
     public synchronized void open() throws TTransportException {
-        // We only need to check that the NATS client is connected
-        if (conn.getState() != Nats.ConnState.CONNECTED) {
+        // We only need to check that the NATS client is connected, or reconnecting if messages can be spooled
+        if (!isConnected()) {
             throw new TTransportException(TTransportExceptionType.NOT_OPEN,
                     "NATS not connected, has status " + conn.getState());
         }
+        if (lastValueCache != null) {
+            lastValueCache.start();
+        }
+        if (spool != null) {
+            spool.start();
+        }
+        if (queue != null && !flusherRunning) {
+            flusherRunning = true;
+            flusher = new Thread(new Flusher(), "frugal-nats-publisher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
     }
 
     @Override
-    public synchronized void close() {
-        /* Do nothing */
+    public void close() {
+        Thread stopping;
+        synchronized (this) {
+            if (flusher == null) {
+                return;
+            }
+            // The flusher publishes anything still queued before exiting.
+            flusherRunning = false;
+            stopping = flusher;
+            flusher = null;
+        }
+        // Wait without holding the lock, so publishers checking whether the transport is open are not blocked.
+        try {
+            stopping.join(CLOSE_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (stopping.isAlive()) {
+            LOGGER.warn("NATS publisher did not finish publishing queued messages within {} ms", CLOSE_TIMEOUT);
+        }
+        synchronized (this) {
+            // Unless the transport was reopened meanwhile, nothing takes the remaining messages off the queue.
+            if (!flusherRunning) {
+                failQueued();
+            }
+        }
     }
 
     @Override
     public int getPublishSizeLimit() {
-        return NATS_MAX_MESSAGE_SIZE;
+        return fragmentation ? FrameFragmenter.MAX_FRAGMENTED_FRAME_SIZE : NATS_MAX_MESSAGE_SIZE;
     }
 
     @Override
     public void publish(String topic, byte[] payload) throws TTransportException {
+        checkPublish(topic, payload);
+        payload = record(topic, payload);
+        if (queue == null) {
+            send(getFormattedSubject(topic), payload);
+            return;
+        }
+        enqueue(new PendingPublish(getFormattedSubject(topic), payload));
+    }
+
+    /**
+     * Publish the given framed frugal payload. If asynchronous publishing is enabled, this only blocks while the
+     * queue is full, and the returned future completes once the payload has been handed to the NATS client and the
+     * connection flushed with the rest of its batch.
+     *
+     * @param topic   the topic on which to publish the payload
+     * @param payload framed frugal bytes
+     * @return future completing when the payload has been published
+     * @throws TTransportException if the payload cannot be published
+     */
+    @Override
+    public CompletableFuture<Void> publishAsync(String topic, byte[] payload) throws TTransportException {
+        checkPublish(topic, payload);
+        payload = record(topic, payload);
+        if (queue == null) {
+            send(getFormattedSubject(topic), payload);
+            return CompletableFuture.completedFuture(null);
+        }
+        PendingPublish pending = new PendingPublish(getFormattedSubject(topic), payload);
+        enqueue(pending);
+        return pending.future;
+    }
+
+    /**
+     * Blocks until every message published before this call has been handed to the NATS client, then flushes the
+     * NATS connection. If asynchronous publishing is enabled, the connection is flushed by the background thread
+     * with the batch holding the last message. If a spool is configured, this also waits for the messages spooled
+     * so far to be published, and fails if the connection is down while messages are spooled.
+     *
+     * @throws TTransportException if the transport is not open, spooled messages cannot be published or flushing
+     *                             the connection fails
+     */
+    @Override
+    public void flush() throws TTransportException {
+        if (queue != null) {
+            if (!flusherRunning) {
+                throw getClosedConditionException(conn.getState(), "flush:");
+            }
+            PendingPublish marker = new PendingPublish(null, null);
+            enqueue(marker);
+            try {
+                marker.future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new TTransportException("flush: interrupted");
+            } catch (ExecutionException e) {
+                throw new TTransportException("flush: " + e.getCause().getMessage());
+            }
+        }
+        // The background thread already flushed the connection, unless messages were spooled meanwhile.
+        if (awaitSpool() || queue == null) {
+            flushConnection();
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting to be published. This is always 0 unless asynchronous publishing is
+     * enabled.
+     *
+     * @return number of queued messages
+     */
+    public int getQueuedCount() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    // Returns whether messages can be published, possibly by spooling them.
+    private boolean isConnected() {
+        Nats.ConnState state = conn.getState();
+        return state == Nats.ConnState.CONNECTED || (spool != null && state != Nats.ConnState.CLOSED);
+    }
+
+    private void checkPublish(String topic, byte[] payload) throws TTransportException {
         if (!isOpen()) {
             throw getClosedConditionException(conn.getState(), "publish:");
         }
@@ -104,20 +451,215 @@ public class FNatsPublisherTransport implements FPublisherTransport {
             throw new TTransportException("Subject cannot be empty.");
         }
 
-        if (payload.length > NATS_MAX_MESSAGE_SIZE) {
+        if (payload.length > getPublishSizeLimit()) {
             throw new TTransportException(TTransportExceptionType.REQUEST_TOO_LARGE,
                     String.format("Message exceeds %d bytes, was %d bytes",
-                            NATS_MAX_MESSAGE_SIZE, payload.length));
+                            getPublishSizeLimit(), payload.length));
+        }
+    }
+
+    private byte[] record(String topic, byte[] payload) throws TTransportException {
+        if (lastValueCache == null) {
+            return payload;
+        }
+        try {
+            return lastValueCache.record(topic, payload);
+        } catch (TException e) {
+            throw new TTransportException("publish: unable to record last value: " + e.getMessage());
+        }
+    }
+
+    private void enqueue(PendingPublish pending) throws TTransportException {
+        try {
+            while (!queue.offer(pending, CLOSE_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                if (!flusherRunning) {
+                    throw getClosedConditionException(conn.getState(), "publish:");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TTransportException("publish: interrupted");
         }
+        // If the transport was closed meanwhile, nothing may be left to take the message off the queue. Whoever
+        // removes it first owns it: either this thread fails the publish, or a drain completes its future.
+        if (!flusherRunning && queue.remove(pending)) {
+            throw getClosedConditionException(conn.getState(), "publish:");
+        }
+    }
+
+    // Fails messages and flush markers which were queued but not published before the transport was closed.
+    private void failQueued() {
+        List<PendingPublish> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        if (pending.isEmpty()) {
+            return;
+        }
+        LOGGER.warn("NATS publisher closed with {} queued messages unpublished", pending.size());
+        TTransportException closed = getClosedConditionException(conn.getState(), "publish:");
+        for (PendingPublish p : pending) {
+            p.future.completeExceptionally(closed);
+        }
+    }
 
+    private void send(String subject, byte[] payload) throws TTransportException {
         try {
-            conn.publish(getFormattedSubject(topic), payload);
+            if (!fragmentation) {
+                publishOrSpool(subject, payload);
+                return;
+            }
+            for (byte[] fragment : FrameFragmenter.fragment(payload, NATS_MAX_MESSAGE_SIZE)) {
+                publishOrSpool(subject, fragment);
+            }
         } catch (IOException e) {
             throw new TTransportException("publish: unable to publish data: " + e.getMessage());
+        } catch (TTransportException e) {
+            throw e;
+        } catch (TException e) {
+            throw new TTransportException("publish: unable to fragment data: " + e.getMessage());
+        }
+    }
+
+    private void publishOrSpool(String subject, byte[] data) throws IOException, TTransportException {
+        if (spool == null || !spool.offer(subject, data)) {
+            conn.publish(subject, data);
+        }
+    }
+
+    // Waits for the messages spooled so far to be handed to the NATS client, returning whether there were any.
+    private boolean awaitSpool() throws TTransportException {
+        if (spool == null || spool.size() == 0) {
+            return false;
+        }
+        try {
+            if (!spool.awaitDrained()) {
+                throw new TTransportException(TTransportExceptionType.NOT_OPEN, "flush: " + spool.size()
+                        + " spooled messages not published, NATS has status " + conn.getState());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TTransportException("flush: interrupted");
+        }
+        return true;
+    }
+
+    private void flushConnection() throws TTransportException {
+        try {
+            conn.flush();
+        } catch (Exception e) {
+            throw new TTransportException("flush: unable to flush NATS connection: " + e.getMessage());
         }
     }
 
     private String getFormattedSubject(String topic) {
         return FRUGAL_PREFIX + topic;
     }
+
+    /**
+     * A queued message, or a flush marker if the subject is null.
+     */
+    private static class PendingPublish {
+        final String subject;
+        final byte[] payload;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        PendingPublish(String subject, byte[] payload) {
+            this.subject = subject;
+            this.payload = payload;
+        }
+    }
+
+    /**
+     * Publishes queued messages in batches until the transport is closed and the queue is empty.
+     */
+    private class Flusher implements Runnable {
+
+        @Override
+        public void run() {
+            List<PendingPublish> batch = new ArrayList<>(maxBatchSize);
+            while (true) {
+                PendingPublish first;
+                try {
+                    first = queue.poll(CLOSE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (first == null) {
+                    if (!flusherRunning) {
+                        break;
+                    }
+                    continue;
+                }
+
+                batch.add(first);
+                try {
+                    fill(batch);
+                } catch (InterruptedException e) {
+                    send(batch);
+                    break;
+                }
+                send(batch);
+            }
+            // Publish anything queued before the transport was closed.
+            queue.drainTo(batch);
+            send(batch);
+        }
+
+        // Adds queued messages to the batch until it is full, the batch delay elapses, a flush is requested, or the
+        // transport is closed.
+        private void fill(List<PendingPublish> batch) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxBatchDelay);
+            while (batch.size() < maxBatchSize && batch.get(batch.size() - 1).subject != null) {
+                long remaining = deadline - System.nanoTime();
+                boolean waiting = remaining > 0 && flusherRunning;
+                PendingPublish next = waiting
+                        ? queue.poll(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(CLOSE_POLL_INTERVAL)),
+                                TimeUnit.NANOSECONDS)
+                        : queue.poll();
+                if (next != null) {
+                    batch.add(next);
+                } else if (!waiting) {
+                    return;
+                }
+            }
+        }
+
+        // Publishes the batch, then flushes the connection once for the whole batch before completing its futures.
+        private void send(List<PendingPublish> batch) {
+            List<PendingPublish> sent = new ArrayList<>(batch.size());
+            for (PendingPublish pending : batch) {
+                if (pending.subject != null) {
+                    try {
+                        FNatsPublisherTransport.this.send(pending.subject, pending.payload);
+                    } catch (TTransportException e) {
+                        LOGGER.warn("failed to publish to " + pending.subject + ": " + e.getMessage());
+                        pending.future.completeExceptionally(e);
+                        continue;
+                    }
+                }
+                sent.add(pending);
+            }
+            batch.clear();
+            if (sent.isEmpty()) {
+                return;
+            }
+
+            TTransportException error = null;
+            // Messages spooled while the connection is down are flushed by the spool once it is back.
+            if (spool == null || conn.getState() == Nats.ConnState.CONNECTED) {
+                try {
+                    flushConnection();
+                } catch (TTransportException e) {
+                    LOGGER.warn(e.getMessage());
+                    error = e;
+                }
+            }
+            for (PendingPublish pending : sent) {
+                if (error == null) {
+                    pending.future.complete(null);
+                } else {
+                    pending.future.completeExceptionally(error);
+                }
+            }
+        }
+    }
 }
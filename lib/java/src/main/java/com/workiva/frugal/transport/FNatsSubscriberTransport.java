@@ -14,8 +14,16 @@
 package com.workiva.frugal.transport;
 
 import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.protocol.FAsyncBatchCallback;
 import com.workiva.frugal.protocol.FAsyncCallback;
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.BatchingCallback;
+import com.workiva.frugal.util.BoundedMessageBuffer;
+import com.workiva.frugal.util.FrameReassembler;
+import com.workiva.frugal.util.PartitionedExecutor;
+import com.workiva.frugal.util.SnapshotSequencer;
 import io.nats.client.Connection;
+import io.nats.client.Message;
 import io.nats.client.Nats;
 import io.nats.client.Subscription;
 import org.apache.thrift.TException;
@@ -26,21 +34,47 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 
 import static com.workiva.frugal.transport.FNatsTransport.FRUGAL_PREFIX;
 
 /**
  * FNatsSubscriberTransport implements FSubscriberTransport by using NATS as the pub/sub message broker.
- * Messages are limited to 1MB in size.
+ * Messages are limited to 1MB in size unless fragmentation is enabled.
+ * <p>
+ * By default, the subscription callback is invoked on the NATS dispatcher thread. If a worker pool is provided,
+ * messages are instead handed to the pool, partitioned by topic or by a frame header, so messages with the same
+ * partition key are delivered in order while others are delivered in parallel.
+ * <p>
+ * A bounded buffer with a {@link BoundedMessageBuffer.Policy} can be configured so a slow subscriber does not let
+ * messages pile up without limit. Buffered messages are delivered on a dedicated thread per subscription, and
+ * pending and dropped message counts are exposed.
+ * <p>
+ * If snapshots are enabled, subscribing requests the last message published on the topic from a
+ * {@link FNatsLastValueCache} and delivers it before the live stream, so subscribers learn the current state of the
+ * topic without waiting for the next publish. Delta keyframes are requested from the same caches.
  */
 public class FNatsSubscriberTransport implements FSubscriberTransport {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FNatsSubscriberTransport.class);
 
+    // Milliseconds to wait for a keyframe if snapshots, and so their timeout, are not configured.
+    private static final long KEYFRAME_TIMEOUT = 1000;
+
     private final Connection conn;
     protected String subject;
     protected final String queue;
+    protected final FrameReassembler reassembler;
+    protected final PartitionedExecutor workerPool;
+    protected final String partitionHeader;
+    protected final int bufferCapacity;
+    protected final BoundedMessageBuffer.Policy bufferPolicy;
+    protected final long snapshotTimeout;
     protected Subscription sub;
+    protected FAsyncCallback callback;
+    protected BatchingCallback batcher;
+    protected BoundedMessageBuffer<Message> buffer;
 
     /**
      * Creates a new FNatsScopeTransport which is used for subscribing. Subscribers using this transport will subscribe
@@ -51,8 +85,83 @@ public class FNatsSubscriberTransport implements FSubscriberTransport {
      * @param queue subscription queue
      */
     protected FNatsSubscriberTransport(Connection conn, String queue) {
+        this(conn, queue, false);
+    }
+
+    /**
+     * Creates a new FNatsScopeTransport which is used for subscribing. If fragmentation is enabled, fragmented
+     * messages are reassembled before being delivered to the subscriber.
+     *
+     * @param conn          NATS connection
+     * @param queue         subscription queue
+     * @param fragmentation whether to reassemble fragmented messages
+     */
+    protected FNatsSubscriberTransport(Connection conn, String queue, boolean fragmentation) {
+        this(conn, queue, fragmentation, null, null);
+    }
+
+    /**
+     * Creates a new FNatsScopeTransport which is used for subscribing. If a worker pool is provided, messages are
+     * delivered on the pool, using the value of the partition header as the partition key. Messages without the
+     * header, or all messages if the partition header is null, are partitioned by subject.
+     *
+     * @param conn            NATS connection
+     * @param queue           subscription queue
+     * @param fragmentation   whether to reassemble fragmented messages
+     * @param workerPool      pool to deliver messages on, or null to deliver on the NATS dispatcher thread
+     * @param partitionHeader frame header containing the partition key, or null to partition by subject
+     */
+    protected FNatsSubscriberTransport(Connection conn, String queue, boolean fragmentation,
+                                       PartitionedExecutor workerPool, String partitionHeader) {
+        this(conn, queue, fragmentation, workerPool, partitionHeader, 0, null);
+    }
+
+    /**
+     * Creates a new FNatsScopeTransport which is used for subscribing. If a buffer policy is provided, messages are
+     * buffered, up to the given capacity, and handed to the subscriber on a dedicated thread. With the
+     * {@link BoundedMessageBuffer.Policy#CONFLATE} policy, messages are conflated by their partition key.
+     *
+     * @param conn            NATS connection
+     * @param queue           subscription queue
+     * @param fragmentation   whether to reassemble fragmented messages
+     * @param workerPool      pool to deliver messages on, or null to deliver on the NATS dispatcher thread
+     * @param partitionHeader frame header containing the partition key, or null to partition by subject
+     * @param bufferCapacity  maximum number of buffered messages
+     * @param bufferPolicy    what to do when the buffer is full, or null to not buffer messages
+     */
+    protected FNatsSubscriberTransport(Connection conn, String queue, boolean fragmentation,
+                                       PartitionedExecutor workerPool, String partitionHeader,
+                                       int bufferCapacity, BoundedMessageBuffer.Policy bufferPolicy) {
+        this(conn, queue, fragmentation, workerPool, partitionHeader, bufferCapacity, bufferPolicy, 0);
+    }
+
+    /**
+     * Creates a new FNatsScopeTransport which is used for subscribing. If the snapshot timeout is positive,
+     * subscribing requests a snapshot of the topic from a last-value cache in the background, holding back live
+     * messages for up to that many milliseconds, and delivers it before any newer live message. Live messages
+     * already reflected in the snapshot are discarded.
+     *
+     * @param conn            NATS connection
+     * @param queue           subscription queue
+     * @param fragmentation   whether to reassemble fragmented messages
+     * @param workerPool      pool to deliver messages on, or null to deliver on the NATS dispatcher thread
+     * @param partitionHeader frame header containing the partition key, or null to partition by subject
+     * @param bufferCapacity  maximum number of buffered messages
+     * @param bufferPolicy    what to do when the buffer is full, or null to not buffer messages
+     * @param snapshotTimeout milliseconds to wait for a snapshot, or non-positive to not request snapshots
+     */
+    protected FNatsSubscriberTransport(Connection conn, String queue, boolean fragmentation,
+                                       PartitionedExecutor workerPool, String partitionHeader,
+                                       int bufferCapacity, BoundedMessageBuffer.Policy bufferPolicy,
+                                       long snapshotTimeout) {
         this.conn = conn;
         this.queue = queue;
+        this.reassembler = fragmentation ? new FrameReassembler() : null;
+        this.workerPool = workerPool;
+        this.partitionHeader = partitionHeader;
+        this.bufferCapacity = bufferCapacity;
+        this.bufferPolicy = bufferPolicy;
+        this.snapshotTimeout = snapshotTimeout;
     }
 
     /**
@@ -62,6 +171,12 @@ public class FNatsSubscriberTransport implements FSubscriberTransport {
 
         private final Connection conn;
         private final String queue;
+        private final boolean fragmentation;
+        private final PartitionedExecutor workerPool;
+        private final String partitionHeader;
+        private final int bufferCapacity;
+        private final BoundedMessageBuffer.Policy bufferPolicy;
+        private final long snapshotTimeout;
 
         /**
          * Creates a NATS FSubscriberTransportFactory using the provided NATS connection. Subscribers using this
@@ -82,8 +197,32 @@ public class FNatsSubscriberTransport implements FSubscriberTransport {
          * @param queue subscription queue
          */
         public Factory(Connection conn, String queue) {
+            this(conn, queue, false);
+        }
+
+        /**
+         * Creates a NATS FSubscriberTransportFactory using the provided NATS connection and queue. If fragmentation
+         * is enabled, messages fragmented by a publisher are reassembled before being delivered.
+         *
+         * @param conn          NATS connection
+         * @param queue         subscription queue, or null to not use a queue
+         * @param fragmentation whether to reassemble fragmented messages
+         */
+        public Factory(Connection conn, String queue, boolean fragmentation) {
+            this(conn, queue, fragmentation, null, null, 0, null, 0);
+        }
+
+        private Factory(Connection conn, String queue, boolean fragmentation, PartitionedExecutor workerPool,
+                        String partitionHeader, int bufferCapacity, BoundedMessageBuffer.Policy bufferPolicy,
+                        long snapshotTimeout) {
             this.conn = conn;
             this.queue = queue;
+            this.fragmentation = fragmentation;
+            this.workerPool = workerPool;
+            this.partitionHeader = partitionHeader;
+            this.bufferCapacity = bufferCapacity;
+            this.bufferPolicy = bufferPolicy;
+            this.snapshotTimeout = snapshotTimeout;
         }
 
         /**
@@ -92,7 +231,132 @@ public class FNatsSubscriberTransport implements FSubscriberTransport {
          * @return A new FSubscriberTransport instance.
          */
         public FNatsSubscriberTransport getTransport() {
-            return new FNatsSubscriberTransport(conn, queue);
+            return new FNatsSubscriberTransport(conn, queue, fragmentation, workerPool, partitionHeader,
+                    bufferCapacity, bufferPolicy, snapshotTimeout);
+        }
+
+        /**
+         * Builder for configuring and constructing NATS FSubscriberTransportFactory instances.
+         */
+        public static class Builder {
+
+            private final Connection conn;
+
+            private String queue;
+            private boolean fragmentation;
+            private PartitionedExecutor workerPool;
+            private String partitionHeader;
+            private int bufferCapacity;
+            private BoundedMessageBuffer.Policy bufferPolicy;
+            private long snapshotTimeout;
+
+            /**
+             * Creates a new Builder which creates factories for FSubscriberTransports using the given NATS
+             * connection.
+             *
+             * @param conn NATS connection
+             */
+            public Builder(Connection conn) {
+                this.conn = conn;
+            }
+
+            /**
+             * Adds a NATS queue group to subscribe with. When a queue group is formed, only one member receives
+             * each message.
+             *
+             * @param queue subscription queue
+             * @return Builder
+             */
+            public Builder withQueueGroup(String queue) {
+                this.queue = queue;
+                return this;
+            }
+
+            /**
+             * Enables reassembly of messages fragmented by a publisher (disabled by default).
+             *
+             * @param fragmentation whether to reassemble fragmented messages
+             * @return Builder
+             */
+            public Builder withFragmentation(boolean fragmentation) {
+                this.fragmentation = fragmentation;
+                return this;
+            }
+
+            /**
+             * Delivers messages on the given worker pool instead of the NATS dispatcher thread. Messages are
+             * partitioned by subject unless a partition header is set, so messages on a topic are delivered in order.
+             * The pool may be shared by many subscriptions, and its queue depth reflects messages waiting to be
+             * delivered. The NATS dispatcher blocks while a partition's queue is full.
+             *
+             * @param workerPool pool to deliver messages on
+             * @return Builder
+             */
+            public Builder withWorkerPool(PartitionedExecutor workerPool) {
+                this.workerPool = workerPool;
+                return this;
+            }
+
+            /**
+             * Partitions messages delivered on the worker pool by the value of the given frame header, e.g. a
+             * request header set by the publisher on its FContext. Messages with equal header values are delivered
+             * in order. Messages without the header are partitioned by subject.
+             *
+             * @param partitionHeader frame header containing the partition key
+             * @return Builder
+             */
+            public Builder withPartitionHeader(String partitionHeader) {
+                this.partitionHeader = partitionHeader;
+                return this;
+            }
+
+            /**
+             * Buffers up to the given number of messages per subscription, applying the policy once the buffer is
+             * full (unbuffered by default). Buffered messages are handed to the subscriber, or to the worker pool,
+             * on a dedicated thread per subscription. The {@link BoundedMessageBuffer.Policy#CONFLATE} policy keeps
+             * only the latest pending message per partition key, i.e. per partition header value or subject. The
+             * NATS client's pending message limit for the subscription is set to the same capacity.
+             *
+             * @param capacity maximum number of buffered messages per subscription
+             * @param policy   what to do when the buffer is full
+             * @return Builder
+             */
+            public Builder withBuffer(int capacity, BoundedMessageBuffer.Policy policy) {
+                if (capacity <= 0) {
+                    throw new IllegalArgumentException("capacity must be positive");
+                }
+                this.bufferCapacity = capacity;
+                this.bufferPolicy = policy;
+                return this;
+            }
+
+            /**
+             * Requests a snapshot of the topic from the publishers' last-value caches when subscribing (disabled by
+             * default). The snapshot is delivered before newer live messages, without gaps or duplicates, so
+             * subscribers start with the current state of the topic. The snapshot is requested in the background, and
+             * live messages are held back until a snapshot is received or the timeout elapses. Snapshots require exact
+             * topics, not wildcards.
+             *
+             * @param timeout milliseconds to wait for a snapshot
+             * @return Builder
+             */
+            public Builder withSnapshot(long timeout) {
+                if (timeout <= 0) {
+                    throw new IllegalArgumentException("timeout must be positive");
+                }
+                this.snapshotTimeout = timeout;
+                return this;
+            }
+
+            /**
+             * Creates a new configured Factory.
+             *
+             * @return Factory
+             */
+            public Factory build() {
+                return new Factory(conn, queue, fragmentation, workerPool, partitionHeader, bufferCapacity,
+                        bufferPolicy, snapshotTimeout);
+            }
         }
     }
 
@@ -102,7 +366,7 @@ public class FNatsSubscriberTransport implements FSubscriberTransport {
     }
 
     @Override
-    public void subscribe(String topic, FAsyncCallback callback) throws TException {
+    public synchronized void subscribe(String topic, FAsyncCallback callback) throws TException {
         if (conn.getState() != Nats.ConnState.CONNECTED) {
             throw new TTransportException(TTransportExceptionType.NOT_OPEN,
                     "NATS not connected, has status " + conn.getState());
@@ -113,18 +377,171 @@ public class FNatsSubscriberTransport implements FSubscriberTransport {
             throw new TTransportException("Subject cannot be empty.");
         }
 
-        sub = conn.subscribe(getFormattedSubject(), queue, msg -> {
-            if (msg.getData().length < 4) {
+        // Stop a previous subscription, so it does not keep delivering alongside the new one.
+        closeSubscription();
+        if (bufferPolicy != null) {
+            Consumer<Message> consumer = msg -> dispatch(callback, msg.getSubject(), msg.getData());
+            String name = "frugal-subscriber-buffer-" + topic;
+            buffer = new BoundedMessageBuffer<>(name, bufferCapacity, bufferPolicy, consumer);
+        }
+        final BoundedMessageBuffer<Message> subBuffer = buffer;
+        final String formattedSubject = getFormattedSubject();
+        this.callback = callback;
+        final SnapshotSequencer sequencer = snapshotTimeout > 0
+                ? new SnapshotSequencer(FNatsLastValueCache::getSequence,
+                      frame -> accept(callback, subBuffer, formattedSubject, frame))
+                : null;
+        sub = conn.subscribe(formattedSubject, queue, msg -> {
+            byte[] data = msg.getData();
+            if (data.length < 4) {
                 LOGGER.warn("discarding invalid scope message frame");
                 return;
             }
-            try {
-                callback.onMessage(
-                        new TMemoryInputTransport(Arrays.copyOfRange(msg.getData(), 4, msg.getData().length))
-                );
-            } catch (TException ignored) {
+            if (reassembler != null) {
+                try {
+                    data = reassembler.reassemble(msg.getSubject(), data);
+                } catch (TException e) {
+                    LOGGER.warn("discarding invalid scope message fragment: " + e.getMessage());
+                    return;
+                }
+                if (data == null) {
+                    return;
+                }
+            }
+            if (sequencer != null) {
+                sequencer.offer(data);
+                return;
             }
+            accept(callback, subBuffer, msg.getSubject(), data);
         });
+        if (subBuffer != null) {
+            // Bound the messages the NATS client queues ahead of the buffer to the buffer's own capacity, so a
+            // blocked buffer makes NATS drop messages rather than queue up to its much larger default limit.
+            sub.setPendingLimits(bufferCapacity, sub.getPendingBytesLimit());
+        }
+
+        if (sequencer != null) {
+            FNatsLastValueCache.requestSnapshotAsync(conn, topic, snapshotTimeout).whenComplete((snapshot, e) -> {
+                if (e != null) {
+                    LOGGER.warn("could not request snapshot of " + topic + ": " + e.getMessage());
+                }
+                sequencer.complete(snapshot);
+            });
+        }
+    }
+
+    /**
+     * Requests the last delta keyframe published on the topic from the publishers' {@link FNatsLastValueCache}s in
+     * the background, and delivers it like a live message. Nothing is delivered if no cache replies in time, i.e.
+     * within the snapshot timeout if snapshots are enabled, or a second otherwise.
+     */
+    @Override
+    public synchronized void requestKeyframe() {
+        if (sub == null) {
+            return;
+        }
+        final Subscription subscription = sub;
+        final String topic = subject;
+        final FAsyncCallback subCallback = callback;
+        final BoundedMessageBuffer<Message> subBuffer = buffer;
+        final String formattedSubject = getFormattedSubject();
+        long timeout = snapshotTimeout > 0 ? snapshotTimeout : KEYFRAME_TIMEOUT;
+        FNatsLastValueCache.requestKeyframeAsync(conn, topic, timeout).whenComplete((keyframe, e) -> {
+            if (e != null) {
+                LOGGER.warn("could not request keyframe of " + topic + ": " + e.getMessage());
+            } else if (keyframe != null && isSubscription(subscription)) {
+                accept(subCallback, subBuffer, formattedSubject, keyframe);
+            }
+        });
+    }
+
+    private synchronized boolean isSubscription(Subscription subscription) {
+        return sub == subscription;
+    }
+
+    private void accept(FAsyncCallback callback, BoundedMessageBuffer<Message> subBuffer, String subject,
+                        byte[] data) {
+        if (subBuffer == null) {
+            dispatch(callback, subject, data);
+            return;
+        }
+        try {
+            subBuffer.offer(getPartitionKey(subject, data), new Message(subject, null, data));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.warn("discarding scope message, interrupted while waiting for buffer space");
+        }
+    }
+
+    /**
+     * Returns the number of messages received but not yet handed to the subscriber, including messages pending in
+     * the NATS client.
+     *
+     * @return pending message count
+     */
+    public synchronized long getPendingCount() {
+        long count = buffer != null ? buffer.getPendingCount() : 0;
+        return sub != null ? count + sub.getPendingMsgs() : count;
+    }
+
+    /**
+     * Returns the number of messages discarded by the buffer policy or by the NATS client for the current
+     * subscription.
+     *
+     * @return dropped message count
+     */
+    public synchronized long getDroppedCount() {
+        long count = buffer != null ? buffer.getDroppedCount() : 0;
+        return sub != null ? count + sub.getDropped() : count;
+    }
+
+    private void dispatch(FAsyncCallback callback, String subject, byte[] frame) {
+        if (workerPool == null) {
+            deliver(callback, frame);
+            return;
+        }
+        try {
+            workerPool.execute(getPartitionKey(subject, frame), () -> deliver(callback, frame));
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("discarding scope message, worker pool rejected it: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Subscribes to the topic, delivering messages in batches. Messages still waiting in a batch are delivered
+     * when unsubscribing.
+     *
+     * @param topic         the pub/sub topic to subscribe to.
+     * @param maxBatchSize  maximum number of messages in a batch.
+     * @param maxBatchDelay maximum milliseconds to wait for a batch to fill.
+     * @param callback      method to invoke when a batch is ready.
+     * @throws TException if there was a problem subscribing.
+     */
+    @Override
+    public synchronized void subscribeBatch(String topic, int maxBatchSize, long maxBatchDelay,
+                                            FAsyncBatchCallback callback) throws TException {
+        BatchingCallback batchingCallback = new BatchingCallback(maxBatchSize, maxBatchDelay, callback);
+        subscribe(topic, batchingCallback);
+        batcher = batchingCallback;
+    }
+
+    private static void deliver(FAsyncCallback callback, byte[] data) {
+        try {
+            callback.onMessage(new TMemoryInputTransport(Arrays.copyOfRange(data, 4, data.length)));
+        } catch (TException ignored) {
+        }
+    }
+
+    private Object getPartitionKey(String subject, byte[] data) {
+        if (partitionHeader == null) {
+            return subject;
+        }
+        try {
+            String key = HeaderUtils.decodeFromFrame(data, 4).get(partitionHeader);
+            return key != null ? key : subject;
+        } catch (TException e) {
+            return subject;
+        }
     }
 
     @Override
@@ -134,12 +551,26 @@ public class FNatsSubscriberTransport implements FSubscriberTransport {
                     "subscription - possibly unsubscribing more than once - subject: " + subject);
             return;
         }
-        try {
-            sub.unsubscribe();
-        } catch (IOException e) {
-            LOGGER.warn("could not unsubscribe from subscription. " + e.getMessage());
+        closeSubscription();
+    }
+
+    private void closeSubscription() {
+        if (sub != null) {
+            try {
+                sub.unsubscribe();
+            } catch (IOException e) {
+                LOGGER.warn("could not unsubscribe from subscription. " + e.getMessage());
+            }
+            sub = null;
+        }
+        if (buffer != null) {
+            buffer.close();
+            buffer = null;
+        }
+        if (batcher != null) {
+            batcher.flush();
+            batcher = null;
         }
-        sub = null;
     }
 
     private String getFormattedSubject() {
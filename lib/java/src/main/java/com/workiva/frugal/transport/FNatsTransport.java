@@ -14,6 +14,10 @@
 package com.workiva.frugal.transport;
 
 import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.FrameCompressor;
+import com.workiva.frugal.util.FrameFragmenter;
+import com.workiva.frugal.util.FrameReassembler;
 import io.nats.client.Connection;
 import io.nats.client.Message;
 import io.nats.client.MessageHandler;
@@ -26,12 +30,16 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
 
 /**
  * FNatsTransport is an extension of FTransport. This is a "stateless" transport
  * in the sense that there is no connection with a server. A request is simply
  * published to a subject and responses are received on another subject. This
- * assumes requests/responses fit within a single NATS message.
+ * assumes requests/responses fit within a single NATS message unless fragmentation
+ * is enabled with {@link #withFragmentation()}. Frames may also be compressed by
+ * enabling compression with {@link #withCompression(FrameCompressor)}. Many transports on one connection may share
+ * a single inbox subscription with {@link #withInboxRouter(FNatsInboxRouter)}.
  */
 public class FNatsTransport extends FAsyncTransport {
 
@@ -43,14 +51,22 @@ public class FNatsTransport extends FAsyncTransport {
     private final Connection conn;
     private final String subject;
     private final String inbox;
+    private final FrameReassembler reassembler;
+    private final FNatsInboxRouter router;
 
     private Subscription sub;
+    private boolean routed;
+    private volatile boolean fragmentationNegotiated;
 
-    private FNatsTransport(Connection conn, String subject, String inbox) {
+    private FNatsTransport(Connection conn, String subject, String inbox, FrameReassembler reassembler,
+                           FrameCompressor compressor, FNatsInboxRouter router) {
         this.requestSizeLimit = NATS_MAX_MESSAGE_SIZE;
         this.conn = conn;
         this.subject = subject;
         this.inbox = inbox;
+        this.reassembler = reassembler;
+        this.compressor = compressor;
+        this.router = router;
     }
 
     /**
@@ -65,17 +81,69 @@ public class FNatsTransport extends FAsyncTransport {
      * @return FNatsTransport for communicating via NATS.
      */
     public static FNatsTransport of(Connection conn, String subject) {
-        return new FNatsTransport(conn, subject, conn.newInbox());
+        return new FNatsTransport(conn, subject, conn.newInbox(), null, null, null);
     }
 
     /**
-     * Returns a new FTransport configured with the specified inbox.
+     * Returns a new FTransport configured with the specified inbox. The transport subscribes to the inbox itself,
+     * even if this transport uses an inbox router.
      *
      * @param inbox NATS subject to receive responses on
      * @return FNatsTransport for communicating via NATS.
      */
     public FNatsTransport withInbox(String inbox) {
-        return new FNatsTransport(conn, subject, inbox);
+        return new FNatsTransport(conn, subject, inbox, reassembler, compressor, null);
+    }
+
+    /**
+     * Returns a new FTransport which receives responses on an inbox of the given router instead of subscribing to
+     * its own inbox. Sharing one router between the transports of a connection keeps a single inbox subscription
+     * regardless of the number of transports.
+     *
+     * @param router inbox router of the NATS connection
+     * @return FNatsTransport for communicating via NATS.
+     */
+    public FNatsTransport withInboxRouter(FNatsInboxRouter router) {
+        return new FNatsTransport(conn, subject, router.newInbox(), reassembler, compressor, router);
+    }
+
+    /**
+     * Returns a new FTransport which transparently fragments frames larger than NATS_MAX_MESSAGE_SIZE.
+     * <p>
+     * Every request advertises fragmentation support with a frame header, so a server with fragmentation enabled
+     * may fragment large responses. Requests are only fragmented once a response from the server has advertised
+     * support in return, so servers without fragmentation support are unaffected. Until then, the request size
+     * limit remains NATS_MAX_MESSAGE_SIZE.
+     *
+     * @return FNatsTransport for communicating via NATS with fragmentation enabled.
+     */
+    public FNatsTransport withFragmentation() {
+        return new FNatsTransport(conn, subject, inbox, new FrameReassembler(), compressor, router);
+    }
+
+    /**
+     * Returns a new FTransport which compresses frames using the given FrameCompressor.
+     * <p>
+     * Every request advertises compression support with a frame header, so a server with compression enabled may
+     * compress responses. Requests are only compressed once a response from the server has advertised support in
+     * return, so servers without compression support are unaffected. Size limits apply to uncompressed frames.
+     *
+     * @param compressor FrameCompressor used to compress requests and decompress responses
+     * @return FNatsTransport for communicating via NATS with compression enabled.
+     */
+    public FNatsTransport withCompression(FrameCompressor compressor) {
+        return new FNatsTransport(conn, subject, inbox, reassembler, compressor, router);
+    }
+
+    /**
+     * Get the maximum request size permitted by the transport. This is NATS_MAX_MESSAGE_SIZE unless fragmentation
+     * has been negotiated with the server.
+     *
+     * @return the request size limit
+     */
+    @Override
+    public int getRequestSizeLimit() {
+        return fragmentationNegotiated ? FrameFragmenter.MAX_FRAGMENTED_FRAME_SIZE : requestSizeLimit;
     }
 
 
@@ -86,11 +154,11 @@ public class FNatsTransport extends FAsyncTransport {
      */
     @Override
     public boolean isOpen() {
-        return sub != null && conn.getState() == Nats.ConnState.CONNECTED;
+        return (sub != null || routed) && conn.getState() == Nats.ConnState.CONNECTED;
     }
 
     /**
-     * Subscribes to the configured inbox subject.
+     * Subscribes to the configured inbox subject, or registers it with the inbox router.
      *
      * @throws TTransportException if unable to open the transport
      */
@@ -99,17 +167,28 @@ public class FNatsTransport extends FAsyncTransport {
         if (conn.getState() != Nats.ConnState.CONNECTED) {
             throw getClosedConditionException(conn.getState(), "open:");
         }
-        if (sub != null) {
+        if (sub != null || routed) {
             throw new TTransportException(TTransportExceptionType.ALREADY_OPEN, "NATS transport already open");
         }
+        if (router != null) {
+            router.register(inbox, new Handler());
+            routed = true;
+            return;
+        }
         sub = conn.subscribe(inbox, new Handler());
     }
 
     /**
-     * Unsubscribes from the inbox subject and closes the response buffer.
+     * Unsubscribes from the inbox subject, or unregisters it from the inbox router, and closes the response buffer.
      */
     @Override
     public void close() {
+        if (routed) {
+            router.unregister(inbox);
+            routed = false;
+            super.close();
+            return;
+        }
         if (sub == null) {
             return;
         }
@@ -127,6 +206,29 @@ public class FNatsTransport extends FAsyncTransport {
         if (!isOpen()) {
             throw getClosedConditionException(conn.getState(), "flush:");
         }
+        if (reassembler == null) {
+            publish(payload);
+            return;
+        }
+
+        try {
+            payload = HeaderUtils.addHeadersToFrame(payload, FrameFragmenter.FRAGMENTATION_HEADERS);
+            if (!fragmentationNegotiated) {
+                preflightRequestCheck(payload.length);
+                publish(payload);
+                return;
+            }
+            for (byte[] fragment : FrameFragmenter.fragment(payload, NATS_MAX_MESSAGE_SIZE)) {
+                publish(fragment);
+            }
+        } catch (TTransportException e) {
+            throw e;
+        } catch (TException e) {
+            throw new TTransportException("request: unable to fragment data: " + e.getMessage());
+        }
+    }
+
+    private void publish(byte[] payload) throws TTransportException {
         try {
             conn.publish(subject, inbox, payload);
         } catch (IOException e) {
@@ -141,6 +243,16 @@ public class FNatsTransport extends FAsyncTransport {
         public void onMessage(Message message) {
             try {
                 byte[] frame = message.getData();
+                if (reassembler != null) {
+                    Map<String, String> headers = HeaderUtils.decodeFromFrame(frame, 4);
+                    if (!fragmentationNegotiated && FrameFragmenter.supportsFragmentation(headers)) {
+                        fragmentationNegotiated = true;
+                    }
+                    frame = reassembler.reassemble(inbox, headers, frame);
+                    if (frame == null) {
+                        return;
+                    }
+                }
                 handleResponse(Arrays.copyOfRange(frame, 4, frame.length));
             } catch (TException e) {
                 LOGGER.warn("Could not handle frame", e);
@@ -0,0 +1,619 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.util.HttpTransferEncoding;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.base64.Base64;
+import io.netty.handler.codec.base64.Base64Dialect;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2Exception;
+import io.netty.handler.codec.http2.Http2FrameListenerDecorator;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandler;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapter;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FNettyHttpTransport extends FTransport. Like {@link FHttpTransport}, a request
+ * is an http request and a response is an http response, but requests are sent
+ * with non-blocking Netty I/O as streams multiplexed over a few HTTP/2
+ * connections. Connections are cleartext HTTP/2 with prior knowledge (h2c), so
+ * the server must accept HTTP/2 without an upgrade, as in-cluster servers and
+ * proxies typically do.
+ * <p>
+ * The frugal HTTP contract is unchanged: bodies are framed, base64 encoded
+ * unless binary transfer encoding is negotiated (see {@link HttpTransferEncoding}),
+ * and the response size limit is sent in the <code>x-frugal-payload-limit</code>
+ * header. Use {@link #requestAsync(FContext, byte[])} to send requests without
+ * blocking the calling thread.
+ */
+public class FNettyHttpTransport extends FTransport {
+    // Logger
+    private static final Logger LOGGER = LoggerFactory.getLogger(FNettyHttpTransport.class);
+
+    private static final String CONTENT_TYPE = "application/x-frugal";
+
+    // Immutable
+    private final URI uri;
+    private final String host;
+    private final int port;
+    private final String path;
+    private final EventLoopGroup eventLoopGroup;
+    private final int responseSizeLimit;
+    private final FHttpTransport.FHttpTransportHeaders requestHeaders;
+    private final boolean binary;
+    private final ChannelFuture[] channels;
+
+    // Mutable
+    private volatile boolean binaryNegotiated;
+    private EventLoopGroup group;
+    private Bootstrap bootstrap;
+    private int nextChannel;
+
+    private FNettyHttpTransport(URI uri, EventLoopGroup eventLoopGroup, int connections, int requestSizeLimit,
+                                int responseSizeLimit, FHttpTransport.FHttpTransportHeaders requestHeaders,
+                                boolean binary) {
+        super();
+        this.uri = uri;
+        this.host = uri.getHost();
+        this.port = uri.getPort() > 0 ? uri.getPort() : 80;
+        String rawPath = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        this.path = uri.getRawQuery() == null ? rawPath : rawPath + "?" + uri.getRawQuery();
+        this.eventLoopGroup = eventLoopGroup;
+        this.channels = new ChannelFuture[connections];
+        this.requestSizeLimit = requestSizeLimit;
+        this.responseSizeLimit = responseSizeLimit;
+        this.requestHeaders = requestHeaders;
+        this.binary = binary;
+    }
+
+    /**
+     * Builder for configuring and construction FNettyHttpTransport instances.
+     */
+    public static class Builder {
+        private final URI uri;
+        private EventLoopGroup eventLoopGroup;
+        private int connections = 1;
+        private int requestSizeLimit;
+        private int responseSizeLimit;
+        private FHttpTransport.FHttpTransportHeaders requestHeaders;
+        private boolean binary;
+
+        /**
+         * Create a new Builder which create FNettyHttpTransports that communicate with a server
+         * at the given url.
+         *
+         * @param url Server URL, which must use the http scheme
+         */
+        public Builder(String url) {
+            this.uri = URI.create(url);
+            if (!"http".equalsIgnoreCase(uri.getScheme()) || uri.getHost() == null) {
+                throw new IllegalArgumentException("url must be an absolute http url: " + url);
+            }
+        }
+
+        /**
+         * Sets the NIO event loop group which performs the I/O of the transport. By default,
+         * the transport creates a group with one thread per connection when opened and shuts
+         * it down when closed. A provided group is shared and not shut down by the transport.
+         *
+         * @param eventLoopGroup NIO event loop group
+         * @return Builder
+         */
+        public Builder withEventLoopGroup(EventLoopGroup eventLoopGroup) {
+            this.eventLoopGroup = eventLoopGroup;
+            return this;
+        }
+
+        /**
+         * Sets the number of HTTP/2 connections requests are spread across round-robin,
+         * one by default. Each connection multiplexes any number of concurrent requests,
+         * up to the stream limit advertised by the server.
+         *
+         * @param connections number of connections, at least one
+         * @return Builder
+         */
+        public Builder withConnections(int connections) {
+            if (connections < 1) {
+                throw new IllegalArgumentException("connections must be positive");
+            }
+            this.connections = connections;
+            return this;
+        }
+
+        /**
+         * Adds a request size limit to the Builder. If non-positive, there will
+         * be no request size limit (the default behavior).
+         *
+         * @param requestSizeLimit Size limit for outgoing requests.
+         * @return Builder
+         */
+        public Builder withRequestSizeLimit(int requestSizeLimit) {
+            this.requestSizeLimit = requestSizeLimit;
+            return this;
+        }
+
+        /**
+         * Adds a response size limit to the Builder. If non-positive, there will
+         * be no response size limit (the default behavior).
+         *
+         * @param responseSizeLimit Size limit for incoming responses.
+         * @return Builder
+         */
+        public Builder withResponseSizeLimit(int responseSizeLimit) {
+            this.responseSizeLimit = responseSizeLimit;
+            return this;
+        }
+
+        /**
+         * Adds HTTP request headers to the builder.
+         *
+         * @param requestHeaders Map of HTTP request headers to add to request.
+         * @return Builder
+         */
+        public Builder withRequestHeaders(FHttpTransport.FHttpTransportHeaders requestHeaders) {
+            this.requestHeaders = requestHeaders;
+            return this;
+        }
+
+        /**
+         * Enables raw binary request and response bodies instead of base64
+         * encoded ones, negotiated as in
+         * {@link FHttpTransport.Builder#withBinaryTransferEncoding()}.
+         *
+         * @return Builder
+         */
+        public Builder withBinaryTransferEncoding() {
+            this.binary = true;
+            return this;
+        }
+
+        /**
+         * Creates new configured FNettyHttpTransport.
+         *
+         * @return FNettyHttpTransport
+         */
+        public FNettyHttpTransport build() {
+            return new FNettyHttpTransport(this.uri, this.eventLoopGroup, this.connections,
+                    this.requestSizeLimit, this.responseSizeLimit, this.requestHeaders, this.binary);
+        }
+    }
+
+    /**
+     * Connects to the server.
+     *
+     * @throws TTransportException if the transport is already open or a connection could not be made
+     */
+    @Override
+    public synchronized void open() throws TTransportException {
+        if (isOpen()) {
+            throw new TTransportException(TTransportExceptionType.ALREADY_OPEN, "http transport already open");
+        }
+
+        group = eventLoopGroup != null ? eventLoopGroup : new NioEventLoopGroup(channels.length);
+        bootstrap = new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        Http2Connection connection = new DefaultHttp2Connection(false);
+                        StreamHandler streams = new StreamHandler();
+                        HttpToHttp2ConnectionHandler http2 = new HttpToHttp2ConnectionHandlerBuilder()
+                                .connection(connection)
+                                .frameListener(new ResetListener(new InboundHttp2ToHttpAdapterBuilder(connection)
+                                        .maxContentLength(Integer.MAX_VALUE)
+                                        .propagateSettings(false)
+                                        .build(), streams))
+                                .build();
+                        streams.http2 = http2;
+                        ch.pipeline().addLast(http2, streams);
+                    }
+                });
+
+        for (int i = 0; i < channels.length; i++) {
+            channels[i] = bootstrap.connect(host, port);
+        }
+        for (ChannelFuture channel : channels) {
+            if (!channel.awaitUninterruptibly().isSuccess()) {
+                closeChannels();
+                throw new TTransportException(TTransportExceptionType.NOT_OPEN,
+                        "could not connect to " + uri + ": " + channel.cause().getMessage());
+            }
+        }
+        super.open();
+    }
+
+    /**
+     * Closes the connections to the server, failing outstanding requests.
+     */
+    @Override
+    public synchronized void close() {
+        if (!isOpen()) {
+            return;
+        }
+        closeChannels();
+        super.close();
+    }
+
+    private void closeChannels() {
+        for (int i = 0; i < channels.length; i++) {
+            if (channels[i] != null) {
+                channels[i].channel().close();
+                channels[i] = null;
+            }
+        }
+        if (eventLoopGroup == null) {
+            group.shutdownGracefully();
+        }
+        group = null;
+        bootstrap = null;
+    }
+
+    /**
+     * Sends the framed frugal payload over HTTP and waits for the server to
+     * acknowledge it.
+     *
+     * @throws TTransportException if there was an error writing out data.
+     */
+    @Override
+    public void oneway(FContext context, byte[] payload) throws TTransportException {
+        await(requestAsync(context, payload));
+    }
+
+    /**
+     * Sends the framed frugal payload over HTTP and waits for the response.
+     *
+     * @throws TTransportException if there was an error writing out data.
+     */
+    @Override
+    public TTransport request(FContext context, byte[] payload) throws TTransportException {
+        return await(requestAsync(context, payload));
+    }
+
+    /**
+     * Sends the framed frugal payload over HTTP without blocking. The returned
+     * future completes with the response, or null for a oneway request, and
+     * completes exceptionally with a TTransportException if the request fails or
+     * times out. It is completed on a Netty event loop, so dependent stages which
+     * block must use an async variant with their own executor.
+     *
+     * @param context FContext associated with the request (used for timeout and headers)
+     * @param payload framed frugal bytes
+     * @return future response in TTransport form
+     * @throws TTransportException if the transport is not open or the request is too large
+     */
+    public CompletableFuture<TTransport> requestAsync(FContext context, byte[] payload) throws TTransportException {
+        preflightRequestCheck(payload.length);
+
+        Map<String, String> headers = requestHeaders != null ? requestHeaders.getRequestHeaders(context) : null;
+        long timeout = context.getTimeout();
+        CompletableFuture<TTransport> future = new CompletableFuture<>();
+        nextChannel().addListener((ChannelFuture connected) -> {
+            if (!connected.isSuccess()) {
+                future.completeExceptionally(new TTransportException(TTransportExceptionType.NOT_OPEN,
+                        "could not connect to " + uri + ": " + connected.cause().getMessage()));
+                return;
+            }
+            // Listeners of a new connection run before the connection preface is sent, so send on a later task.
+            Channel channel = connected.channel();
+            StreamHandler streams = channel.pipeline().get(StreamHandler.class);
+            channel.eventLoop().execute(() -> streams.send(headers, payload, timeout, future));
+        });
+        return future;
+    }
+
+    // Picks the next connection round-robin, replacing it if it has been closed.
+    private synchronized ChannelFuture nextChannel() throws TTransportException {
+        if (bootstrap == null) {
+            throw new TTransportException(TTransportExceptionType.NOT_OPEN);
+        }
+        int i = nextChannel;
+        nextChannel = (nextChannel + 1) % channels.length;
+        if (channels[i].isDone() && !channels[i].channel().isActive()) {
+            channels[i] = bootstrap.connect(host, port);
+        }
+        return channels[i];
+    }
+
+    private static TTransport await(CompletableFuture<TTransport> future) throws TTransportException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TTransportException("http request interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TTransportException) {
+                throw (TTransportException) e.getCause();
+            }
+            throw new TTransportException(e.getCause());
+        }
+    }
+
+    private FullHttpRequest newRequest(ChannelHandlerContext ctx, int streamId, Map<String, String> headers,
+                                       byte[] payload) {
+        // Encode request payload into a pooled buffer
+        boolean binaryRequest = binaryNegotiated;
+        ByteBuf content = binaryRequest
+                ? Unpooled.wrappedBuffer(payload)
+                : Base64.encode(Unpooled.wrappedBuffer(payload), 0, payload.length, false,
+                        Base64Dialect.STANDARD, ctx.alloc());
+        FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, path, content);
+        HttpHeaders httpHeaders = request.headers();
+
+        // add user supplied headers first, to avoid monkeying
+        // with the size limits headers below.
+        if (headers != null) {
+            for (Map.Entry<String, String> entry : headers.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    httpHeaders.set(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        httpHeaders.set(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text(), streamId);
+        httpHeaders.set(HttpConversionUtil.ExtensionHeaderNames.SCHEME.text(), "http");
+        httpHeaders.set(HttpHeaderNames.HOST, uri.getRawAuthority());
+        httpHeaders.set(HttpHeaderNames.CONTENT_TYPE, CONTENT_TYPE);
+        httpHeaders.set(HttpHeaderNames.ACCEPT, CONTENT_TYPE);
+        httpHeaders.set(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+        httpHeaders.set(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER,
+                binaryRequest ? HttpTransferEncoding.BINARY : HttpTransferEncoding.BASE64);
+        if (binary) {
+            httpHeaders.set(HttpTransferEncoding.ACCEPT_TRANSFER_ENCODING_HEADER, HttpTransferEncoding.BINARY);
+        }
+        if (responseSizeLimit > 0) {
+            httpHeaders.set("x-frugal-payload-limit", responseSizeLimit);
+        }
+        return request;
+    }
+
+    private TTransport readResponse(FullHttpResponse response) throws TTransportException {
+        // Response too large
+        int status = response.status().code();
+        if (status == HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE.code()) {
+            throw new TTransportException(
+                    TTransportExceptionType.RESPONSE_TOO_LARGE, "response was too large for the transport");
+        }
+
+        // Check bad status code
+        ByteBuf content = response.content();
+        if (status >= 300) {
+            throw new TTransportException("response errored with code " + status + " and message "
+                    + content.toString(StandardCharsets.UTF_8));
+        }
+
+        // Decode response body
+        byte[] frame;
+        if (HttpTransferEncoding.isBinary(
+                response.headers().get(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER))) {
+            if (binary && !binaryNegotiated) {
+                binaryNegotiated = true;
+            }
+            frame = ByteBufUtil.getBytes(content);
+        } else {
+            ByteBuf decoded;
+            try {
+                decoded = Base64.decode(content, content.readerIndex(), content.readableBytes(),
+                        Base64Dialect.STANDARD, content.alloc());
+            } catch (IllegalArgumentException e) {
+                throw new TTransportException("could not decode response body: " + e.getMessage());
+            }
+            try {
+                frame = ByteBufUtil.getBytes(decoded);
+            } finally {
+                decoded.release();
+            }
+        }
+
+        // All responses should be framed with 4 bytes
+        if (frame.length < 4) {
+            throw new TTransportException("invalid frame size");
+        }
+
+        // If there are only 4 bytes, this needs to be a one-way
+        // (i.e. frame size 0)
+        if (frame.length == 4) {
+            if (frame[0] != 0 || frame[1] != 0 || frame[2] != 0 || frame[3] != 0) {
+                throw new TTransportException("missing data");
+            }
+            return null;
+        }
+        return new TMemoryInputTransport(frame, 4, frame.length - 4);
+    }
+
+    /**
+     * An outstanding request on a stream.
+     */
+    private static class PendingRequest {
+        private final CompletableFuture<TTransport> future;
+        private ScheduledFuture<?> timeout;
+
+        PendingRequest(CompletableFuture<TTransport> future) {
+            this.future = future;
+        }
+
+        void complete(TTransport response) {
+            timeout.cancel(false);
+            future.complete(response);
+        }
+
+        void fail(TTransportException e) {
+            timeout.cancel(false);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Sends requests as HTTP/2 streams and completes them with the responses of
+     * the streams. All methods run on the event loop of the connection.
+     */
+    private class StreamHandler extends ChannelInboundHandlerAdapter {
+        private final IntObjectMap<PendingRequest> pending = new IntObjectHashMap<>();
+        private HttpToHttp2ConnectionHandler http2;
+        private ChannelHandlerContext ctx;
+
+        @Override
+        public void handlerAdded(ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+        }
+
+        void send(Map<String, String> headers, byte[] payload, long timeout, CompletableFuture<TTransport> future) {
+            if (!ctx.channel().isActive()) {
+                future.completeExceptionally(
+                        new TTransportException(TTransportExceptionType.NOT_OPEN, "http connection closed"));
+                return;
+            }
+            int streamId = http2.connection().local().incrementAndGetNextStreamId();
+            if (streamId < 0) {
+                // Stream ids are exhausted, the connection is replaced on the next request.
+                future.completeExceptionally(
+                        new TTransportException(TTransportExceptionType.NOT_OPEN, "http connection exhausted"));
+                ctx.close();
+                return;
+            }
+
+            PendingRequest request = new PendingRequest(future);
+            request.timeout = ctx.executor().schedule(() -> {
+                if (pending.remove(streamId) != null) {
+                    http2.resetStream(ctx, streamId, Http2Error.CANCEL.code(), ctx.newPromise());
+                    ctx.flush();
+                    future.completeExceptionally(new TTransportException(TTransportExceptionType.TIMED_OUT,
+                            "http request timed out after " + timeout + " ms"));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            pending.put(streamId, request);
+
+            ctx.writeAndFlush(newRequest(ctx, streamId, headers, payload)).addListener((ChannelFuture written) -> {
+                if (!written.isSuccess()) {
+                    PendingRequest failed = pending.remove(streamId);
+                    if (failed != null) {
+                        failed.fail(new TTransportException("http request failed: "
+                                + written.cause().getMessage()));
+                    }
+                }
+            });
+        }
+
+        void reset(int streamId, long errorCode) {
+            PendingRequest request = pending.remove(streamId);
+            if (request != null) {
+                request.fail(new TTransportException("http stream reset with error code " + errorCode));
+            }
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (!(msg instanceof FullHttpResponse)) {
+                ctx.fireChannelRead(msg);
+                return;
+            }
+            FullHttpResponse response = (FullHttpResponse) msg;
+            try {
+                Integer streamId = response.headers().getInt(HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text());
+                PendingRequest request = streamId != null ? pending.remove(streamId) : null;
+                if (request == null) {
+                    return;
+                }
+                try {
+                    request.complete(readResponse(response));
+                } catch (TTransportException e) {
+                    request.fail(e);
+                }
+            } finally {
+                response.release();
+            }
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) {
+            for (PendingRequest request : pending.values()) {
+                request.fail(new TTransportException(TTransportExceptionType.NOT_OPEN, "http connection closed"));
+            }
+            pending.clear();
+            ctx.fireChannelInactive();
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            LOGGER.warn("closing http connection to " + uri + ": " + cause.getMessage());
+            ctx.close();
+        }
+    }
+
+    /**
+     * Fails requests whose streams are reset by the server, which are otherwise
+     * dropped silently by the HTTP/2 to HTTP adapter.
+     */
+    private static class ResetListener extends Http2FrameListenerDecorator {
+        private final StreamHandler streams;
+
+        ResetListener(InboundHttp2ToHttpAdapter listener, StreamHandler streams) {
+            super(listener);
+            this.streams = streams;
+        }
+
+        @Override
+        public void onRstStreamRead(ChannelHandlerContext ctx, int streamId, long errorCode) throws Http2Exception {
+            super.onRstStreamRead(ctx, streamId, errorCode);
+            streams.reset(streamId, errorCode);
+        }
+    }
+}
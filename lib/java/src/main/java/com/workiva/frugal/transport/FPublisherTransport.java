@@ -15,6 +15,8 @@ package com.workiva.frugal.transport;
 
 import org.apache.thrift.transport.TTransportException;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * FPublisherTransport is used exclusively for scope publishers.
  */
@@ -56,4 +58,27 @@ public interface FPublisherTransport {
      * @throws TTransportException if publishing the payload failed
      */
     void publish(String topic, byte[] payload) throws TTransportException;
+
+    /**
+     * Publish the given framed frugal payload over the transport without waiting for it to be sent, if the
+     * transport supports it. The returned future completes once the payload has been sent, or completes
+     * exceptionally if sending fails. By default, this publishes synchronously.
+     *
+     * @param topic the topic on which to publish the payload
+     * @param payload framed frugal bytes
+     * @return future completing when the payload has been sent
+     * @throws TTransportException if the payload could not be published
+     */
+    default CompletableFuture<Void> publishAsync(String topic, byte[] payload) throws TTransportException {
+        publish(topic, payload);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Blocks until every payload published before this call has been sent. By default, this does nothing.
+     *
+     * @throws TTransportException if the payloads could not be sent
+     */
+    default void flush() throws TTransportException {
+    }
 }
@@ -13,7 +13,9 @@
 
 package com.workiva.frugal.transport;
 
+import com.workiva.frugal.protocol.FAsyncBatchCallback;
 import com.workiva.frugal.protocol.FAsyncCallback;
+import com.workiva.frugal.util.BatchingCallback;
 import org.apache.thrift.TException;
 
 /**
@@ -37,6 +39,31 @@ public interface FSubscriberTransport {
      */
     void subscribe(String topic, FAsyncCallback callback) throws TException;
 
+    /**
+     * Opens the Transport to receive messages on the subscription in batches. A batch is delivered once it contains
+     * <code>maxBatchSize</code> messages, or <code>maxBatchDelay</code> milliseconds after its first message was
+     * received, whichever comes first.
+     *
+     * @param topic         the pub/sub topic to subscribe to.
+     * @param maxBatchSize  maximum number of messages in a batch.
+     * @param maxBatchDelay maximum milliseconds to wait for a batch to fill.
+     * @param callback      method to invoke when a batch is ready.
+     * @throws TException if there was a problem subscribing.
+     */
+    default void subscribeBatch(String topic, int maxBatchSize, long maxBatchDelay, FAsyncBatchCallback callback)
+            throws TException {
+        subscribe(topic, new BatchingCallback(maxBatchSize, maxBatchDelay, callback));
+    }
+
+    /**
+     * Asks the publishers of the subscribed topic to send their last {@link com.workiva.frugal.util.DeltaEncoder}
+     * keyframe again, which is delivered to the subscription callback like a published message. Generated
+     * subscribers call this when they receive a delta relative to a keyframe they missed. This is a no-op by
+     * default, in which case subscribers resync on the publisher's next keyframe.
+     */
+    default void requestKeyframe() {
+    }
+
     /**
      * Closes the transport by unsubscribing from the set topic.
      */
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.transport;
+
+import io.netty.buffer.ByteBuf;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+/**
+ * A TTransport reading from and writing to a Netty {@link ByteBuf}, which lets protocols read frames from and write
+ * frames into pooled buffers without copying them into byte arrays. Reads consume the readable bytes of the buffer
+ * and writes append to it.
+ * <p>
+ * Unlike {@link org.apache.thrift.transport.TMemoryInputTransport}, the transport does not expose the buffer to
+ * protocols for direct access, since a pooled buffer is recycled once released and must not be referenced by
+ * deserialized binary fields.
+ */
+public class TByteBufTransport extends TTransport {
+
+    private final ByteBuf buffer;
+
+    /**
+     * Create a TByteBufTransport over the given buffer. The buffer is not released by the transport.
+     *
+     * @param buffer the buffer to read from and write to
+     */
+    public TByteBufTransport(ByteBuf buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns the underlying buffer.
+     *
+     * @return the buffer
+     */
+    public ByteBuf getByteBuf() {
+        return buffer;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void open() throws TTransportException {
+        /* Do nothing */
+    }
+
+    @Override
+    public void close() {
+        /* Do nothing */
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+        int n = Math.min(len, buffer.readableBytes());
+        buffer.readBytes(buf, off, n);
+        return n;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws TTransportException {
+        buffer.writeBytes(buf, off, len);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.util.ProtocolUtils;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A framed, write-only TTransport which buffers writes in a list of chunks
+ * rather than one contiguous array, so a large frame is never copied to grow
+ * the buffer and can be written out chunk by chunk without materializing it.
+ * <p>
+ * Every chunk but the last is filled completely and has a size which is a
+ * multiple of three, so chunks can be base64 encoded independently of each
+ * other.
+ * <p>
+ * The size of this buffer is optionally limited. If limited, writes which cause
+ * the buffer to exceed its size limit reset the buffer and throw a
+ * TTransportException with code TTransportExceptionType.REQUEST_TOO_LARGE.
+ */
+public class TChunkedOutputBuffer extends TTransport {
+
+    private static final int FIRST_CHUNK_SIZE = 3 * 1024;
+    private static final int MAX_CHUNK_SIZE = 3 * 64 * 1024;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private final int limit;
+    private byte[] current;
+    private int position;
+    private int size;
+    private boolean limitExceeded;
+
+    /**
+     * Create a TChunkedOutputBuffer with no buffer size limit.
+     */
+    public TChunkedOutputBuffer() {
+        this(0);
+    }
+
+    /**
+     * Create a TChunkedOutputBuffer with a buffer size limit.
+     *
+     * @param size the size limit of the buffer, including the frame size. Note: If
+     *             <code>size</code> is non-positive, no limit will be enforced on the buffer.
+     */
+    public TChunkedOutputBuffer(int size) {
+        limit = size;
+        reset();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void open() throws TTransportException {
+        /* Do nothing */
+    }
+
+    @Override
+    public void close() {
+        /* Do nothing */
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+        throw new UnsupportedOperationException("Cannot read from " + getClass().getCanonicalName());
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws TTransportException {
+        if (limit > 0 && size + len > limit) {
+            reset();
+            limitExceeded = true;
+            throw new TTransportException(
+                    TTransportExceptionType.REQUEST_TOO_LARGE, String.format("Buffer size reached (%d)", limit));
+        }
+
+        size += len;
+        while (len > 0) {
+            if (position == current.length) {
+                current = new byte[Math.min(current.length * 2, MAX_CHUNK_SIZE)];
+                chunks.add(current);
+                position = 0;
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(buf, off, current, position, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Query if data has been written to the transport.
+     *
+     * @return true if data written to transport.
+     */
+    public boolean hasWriteData() {
+        return size() > 4;
+    }
+
+    /**
+     * Return the number of bytes that have been written to the transport.
+     *
+     * @return the number of bytes written to the transport including the frame size.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Query if the frame exceeds the size limit of the buffer, or a write has
+     * been rejected for exceeding it.
+     *
+     * @return true if the size limit has been exceeded.
+     */
+    public boolean isLimitExceeded() {
+        return limitExceeded || (limit > 0 && size > limit);
+    }
+
+    /**
+     * Return the number of chunks holding the frame.
+     *
+     * @return the number of chunks.
+     */
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Get a chunk of the frame. The first chunk starts with the 4 frame size bytes.
+     *
+     * @param index the index of the chunk
+     * @return a buffer backed by the chunk.
+     */
+    public ByteBuffer getChunk(int index) {
+        byte[] chunk = chunks.get(index);
+        if (index == 0) {
+            ProtocolUtils.writeInt(size - 4, chunk, 0);
+        }
+        return ByteBuffer.wrap(chunk, 0, index == chunks.size() - 1 ? position : chunk.length);
+    }
+
+    /**
+     * Write the framed bytes that have been written to the transport to a stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if the stream cannot be written to
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        for (int i = 0; i < chunks.size(); i++) {
+            ByteBuffer chunk = getChunk(i);
+            out.write(chunk.array(), 0, chunk.limit());
+        }
+    }
+
+    /**
+     * Get the framed bytes that have been written to the transport.
+     *
+     * @return the bytes written to the transport prepended with 4 frame size bytes.
+     */
+    public byte[] getWriteBytes() {
+        byte[] framed = new byte[size];
+        int offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            ByteBuffer chunk = getChunk(i);
+            System.arraycopy(chunk.array(), 0, framed, offset, chunk.limit());
+            offset += chunk.limit();
+        }
+        return framed;
+    }
+
+    /**
+     * Clear the write buffer and initialize the frame size. The first chunk is
+     * kept for reuse.
+     */
+    public void reset() {
+        current = chunks.isEmpty() ? new byte[FIRST_CHUNK_SIZE] : chunks.get(0);
+        chunks.clear();
+        chunks.add(current);
+        position = 4;
+        size = 4;
+    }
+}
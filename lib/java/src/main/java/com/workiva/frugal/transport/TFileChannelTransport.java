@@ -0,0 +1,113 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.exception.TTransportExceptionType;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only TTransport over a region of a {@link FileChannel}, which lets protocols read frames spilled to files
+ * without reading them into the heap as a whole. The region is read with positional reads through a small buffer, so
+ * the position of the channel is left alone and nothing stays mapped once the channel is closed.
+ * <p>
+ * The transport does not own the channel: closing the transport does not close the channel.
+ */
+public class TFileChannelTransport extends TTransport {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final FileChannel channel;
+    private final long end;
+    private final ByteBuffer buffer;
+    private long position;
+
+    /**
+     * Create a TFileChannelTransport reading the given region of the channel.
+     *
+     * @param channel  the channel to read from
+     * @param position position of the first byte of the region
+     * @param length   length in bytes of the region
+     */
+    public TFileChannelTransport(FileChannel channel, long position, long length) {
+        this.channel = channel;
+        this.position = position;
+        this.end = position + length;
+        this.buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, length));
+        this.buffer.flip();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void open() throws TTransportException {
+        /* Do nothing */
+    }
+
+    @Override
+    public void close() {
+        /* Do nothing */
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws TTransportException {
+        if (!buffer.hasRemaining()) {
+            if (position >= end) {
+                return 0;
+            }
+            int limit = (int) Math.min(len, end - position);
+            if (limit >= buffer.capacity()) {
+                // Large reads bypass the buffer.
+                return readAt(ByteBuffer.wrap(buf, off, limit));
+            }
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            readAt(buffer);
+            buffer.flip();
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(buf, off, n);
+        return n;
+    }
+
+    private int readAt(ByteBuffer dst) throws TTransportException {
+        int read = 0;
+        try {
+            while (dst.hasRemaining()) {
+                int n = channel.read(dst, position);
+                if (n == -1) {
+                    throw new TTransportException(TTransportExceptionType.END_OF_FILE, "File ended before the frame");
+                }
+                position += n;
+                read += n;
+            }
+        } catch (IOException e) {
+            throw new TTransportException(e);
+        }
+        return read;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws TTransportException {
+        throw new TTransportException(TTransportException.NOT_OPEN, "TFileChannelTransport is read-only");
+    }
+}
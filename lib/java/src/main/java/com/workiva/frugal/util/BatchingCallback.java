@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.protocol.FAsyncBatchCallback;
+import com.workiva.frugal.protocol.FAsyncCallback;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An FAsyncCallback which collects messages into batches and delivers them to an FAsyncBatchCallback. A batch is
+ * delivered once it holds the maximum number of messages, or once the maximum delay has elapsed since its first
+ * message was received, whichever comes first. Batches are delivered one at a time, in order, and never while holding
+ * the lock messages are added under. A full batch is delivered on the thread adding the message which fills it, unless
+ * an earlier batch is still being delivered, in which case the thread delivering that batch delivers it as well. The
+ * shared timer only closes batches whose delay elapsed; they are delivered on a pooled delivery thread, so a slow
+ * callback does not hold up other callbacks' batches. This class is thread-safe.
+ */
+public class BatchingCallback implements FAsyncCallback {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchingCallback.class);
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "frugal-batch-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ExecutorService DELIVERY = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "frugal-batch-delivery");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int maxBatchSize;
+    private final long maxBatchDelay;
+    private final FAsyncBatchCallback callback;
+
+    private List<TTransport> batch;
+    // Incremented each time a batch is closed so stale timers can be ignored.
+    private long batchSeq;
+    // Closed batches waiting to be delivered, oldest first.
+    private final Queue<List<TTransport>> ready = new ArrayDeque<>();
+    private boolean delivering;
+
+    /**
+     * Creates a BatchingCallback.
+     *
+     * @param maxBatchSize  maximum number of messages in a batch
+     * @param maxBatchDelay maximum milliseconds to wait after the first message of a batch before delivering it
+     * @param callback      callback to deliver batches to
+     */
+    public BatchingCallback(int maxBatchSize, long maxBatchDelay, FAsyncBatchCallback callback) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        if (maxBatchDelay <= 0) {
+            throw new IllegalArgumentException("maxBatchDelay must be positive");
+        }
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchDelay = maxBatchDelay;
+        this.callback = callback;
+        this.batch = new ArrayList<>(maxBatchSize);
+    }
+
+    @Override
+    public void onMessage(TTransport transport) throws TException {
+        synchronized (this) {
+            if (batch.isEmpty()) {
+                final long seq = batchSeq;
+                TIMER.schedule(() -> expire(seq), maxBatchDelay, TimeUnit.MILLISECONDS);
+            }
+            batch.add(transport);
+            if (batch.size() < maxBatchSize) {
+                return;
+            }
+            close();
+        }
+        deliverReady();
+    }
+
+    /**
+     * Delivers the pending batch, if any, immediately, unless another thread is already delivering batches, in which
+     * case that thread delivers it.
+     */
+    public void flush() {
+        synchronized (this) {
+            if (batch.isEmpty() && ready.isEmpty()) {
+                return;
+            }
+            if (!batch.isEmpty()) {
+                close();
+            }
+        }
+        deliverReadyQuietly();
+    }
+
+    /**
+     * Returns the number of messages waiting to be delivered.
+     *
+     * @return pending message count
+     */
+    public synchronized int getPendingCount() {
+        int count = batch.size();
+        for (List<TTransport> closed : ready) {
+            count += closed.size();
+        }
+        return count;
+    }
+
+    // Runs on the timer thread, which only closes the batch and leaves delivering it to a delivery thread.
+    private void expire(long seq) {
+        synchronized (this) {
+            if (seq != batchSeq || batch.isEmpty()) {
+                return;
+            }
+            close();
+        }
+        DELIVERY.execute(this::deliverReadyQuietly);
+    }
+
+    // Moves the current batch to the ready queue. Must hold the lock.
+    private void close() {
+        ready.add(batch);
+        batch = new ArrayList<>(maxBatchSize);
+        batchSeq++;
+    }
+
+    private void deliverReadyQuietly() {
+        try {
+            deliverReady();
+        } catch (TException e) {
+            LOGGER.warn("batch callback failed: " + e.getMessage());
+        }
+    }
+
+    // Delivers ready batches in order without holding the lock. Only one thread delivers at a time; others return
+    // immediately and leave their batches to it.
+    private void deliverReady() throws TException {
+        synchronized (this) {
+            if (delivering) {
+                return;
+            }
+            delivering = true;
+        }
+        boolean drained = false;
+        try {
+            while (true) {
+                List<TTransport> next;
+                synchronized (this) {
+                    next = ready.poll();
+                    if (next == null) {
+                        delivering = false;
+                        drained = true;
+                        return;
+                    }
+                }
+                callback.onMessages(next);
+            }
+        } finally {
+            if (!drained) {
+                synchronized (this) {
+                    delivering = false;
+                }
+            }
+        }
+    }
+}
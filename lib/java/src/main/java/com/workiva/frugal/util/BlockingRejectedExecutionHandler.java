@@ -13,22 +13,37 @@
 
 package com.workiva.frugal.util;
 
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Thread-pool rejection policy that blocks incoming requests.
+ * Thread-pool rejection policy that blocks incoming requests. Tasks submitted to, or blocked on, an executor which has
+ * been shut down are rejected with a RejectedExecutionException.
  */
 public class BlockingRejectedExecutionHandler implements RejectedExecutionHandler {
 
+    // How often a blocked submitter checks whether the executor was shut down.
+    private static final long SHUTDOWN_POLL_INTERVAL = 100;
+
     @Override
     public final void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor) {
+        BlockingQueue<Runnable> queue = executor.getQueue();
         try {
-            executor.getQueue().put(r);
+            do {
+                if (executor.isShutdown()) {
+                    throw new RejectedExecutionException("Executor has been shut down");
+                }
+            } while (!queue.offer(r, SHUTDOWN_POLL_INTERVAL, TimeUnit.MILLISECONDS));
         } catch (InterruptedException e) {
             throw new RejectedExecutionException("Interrupted while waiting to put the element", e);
         }
+        // A shutdown racing the put may leave no worker to run the task.
+        if (executor.isShutdown() && queue.remove(r)) {
+            throw new RejectedExecutionException("Executor has been shut down");
+        }
     }
 
 }
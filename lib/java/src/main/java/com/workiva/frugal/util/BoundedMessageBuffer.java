@@ -0,0 +1,238 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * A bounded buffer between a message source and a slow consumer. Messages are delivered to the consumer, in order,
+ * on a dedicated daemon thread. When the buffer is full, the {@link Policy} decides what happens to new messages.
+ * Pending and dropped message counts are exposed so slow consumers can be monitored. This class is thread-safe.
+ *
+ * @param <T> message type
+ */
+public class BoundedMessageBuffer<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BoundedMessageBuffer.class);
+
+    /**
+     * What to do with a message offered to a full buffer.
+     */
+    public enum Policy {
+        /**
+         * Block the offering thread until there is room in the buffer.
+         */
+        BLOCK,
+        /**
+         * Discard the oldest pending message to make room.
+         */
+        DROP_OLDEST,
+        /**
+         * Discard the offered message.
+         */
+        DROP_NEWEST,
+        /**
+         * Keep only the latest pending message per key, replacing older messages in place. If the buffer is full of
+         * messages with other keys, the oldest pending message is discarded.
+         */
+        CONFLATE
+    }
+
+    private final int capacity;
+    private final Policy policy;
+    private final Consumer<T> consumer;
+    private final Thread deliveryThread;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // Guarded by lock.
+    private final Deque<Pending<T>> pending = new ArrayDeque<>();
+    private final Map<Object, Pending<T>> pendingByKey = new HashMap<>();
+    private long dropped;
+    private boolean closed;
+
+    private static class Pending<T> {
+        final Object key;
+        T message;
+
+        Pending(Object key, T message) {
+            this.key = key;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Creates a BoundedMessageBuffer and starts its delivery thread.
+     *
+     * @param name     name of the delivery thread
+     * @param capacity maximum number of pending messages
+     * @param policy   what to do when the buffer is full
+     * @param consumer consumer messages are delivered to
+     */
+    public BoundedMessageBuffer(String name, int capacity, Policy policy, Consumer<T> consumer) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("policy cannot be null");
+        }
+        this.capacity = capacity;
+        this.policy = policy;
+        this.consumer = consumer;
+        this.deliveryThread = new Thread(this::deliverLoop, name);
+        this.deliveryThread.setDaemon(true);
+        this.deliveryThread.start();
+    }
+
+    /**
+     * Adds a message to the buffer, applying the policy if the buffer is full. The key is only used by the
+     * {@link Policy#CONFLATE} policy.
+     *
+     * @param key     conflation key of the message
+     * @param message message to deliver
+     * @return true if the message was buffered, false if it was discarded
+     * @throws InterruptedException if interrupted while blocked on a full buffer
+     */
+    public boolean offer(Object key, T message) throws InterruptedException {
+        lock.lock();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (policy == Policy.CONFLATE) {
+                Pending<T> existing = pendingByKey.get(key);
+                if (existing != null) {
+                    existing.message = message;
+                    dropped++;
+                    return true;
+                }
+            }
+            if (pending.size() >= capacity) {
+                switch (policy) {
+                    case BLOCK:
+                        while (pending.size() >= capacity && !closed) {
+                            notFull.await();
+                        }
+                        if (closed) {
+                            return false;
+                        }
+                        break;
+                    case DROP_NEWEST:
+                        dropped++;
+                        return false;
+                    default:
+                        Pending<T> oldest = pending.poll();
+                        pendingByKey.remove(oldest.key, oldest);
+                        dropped++;
+                        break;
+                }
+            }
+            Pending<T> entry = new Pending<>(key, message);
+            pending.add(entry);
+            if (policy == Policy.CONFLATE) {
+                pendingByKey.put(key, entry);
+            }
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting to be delivered.
+     *
+     * @return pending message count
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages discarded or replaced by the policy since the buffer was created.
+     *
+     * @return dropped message count
+     */
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops delivering messages. Pending messages are discarded and threads blocked in {@link #offer} return.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            pending.clear();
+            pendingByKey.clear();
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private T take() throws InterruptedException {
+        lock.lock();
+        try {
+            while (pending.isEmpty() && !closed) {
+                notEmpty.await();
+            }
+            if (closed) {
+                return null;
+            }
+            Pending<T> next = pending.poll();
+            pendingByKey.remove(next.key, next);
+            notFull.signal();
+            return next.message;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deliverLoop() {
+        try {
+            T message;
+            while ((message = take()) != null) {
+                try {
+                    consumer.accept(message);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("buffered message consumer failed: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * DeltaDecoder rebuilds the full structs sent by a {@link DeltaEncoder}. Keyframes are remembered by id, and deltas
+ * are applied to a copy of the keyframe they are relative to. A delta relative to an unknown keyframe, e.g. when
+ * the subscription started after the keyframe was sent, cannot be rebuilt and is discarded. The decoder then runs
+ * its keyframe request, once per unknown keyframe, so the subscriber resyncs as soon as the keyframe is received
+ * again rather than on the publisher's next keyframe. Structs without delta request headers are passed through
+ * unchanged. This class is thread-safe and is used by generated subscribers, which request keyframes with
+ * {@code FSubscriberTransport.requestKeyframe()}.
+ *
+ * @param <T> struct type
+ * @param <FieldT> struct field type
+ */
+public class DeltaDecoder<T extends TBase<T, FieldT>, FieldT extends TFieldIdEnum> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeltaDecoder.class);
+
+    /**
+     * Default maximum number of keyframes kept, allowing for several publishers on a topic.
+     */
+    public static final int DEFAULT_MAX_KEYFRAMES = 16;
+
+    private final int maxKeyframes;
+    private final Runnable keyframeRequest;
+
+    // Guarded by this.
+    private final Map<String, T> keyframes = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<String> requestedKeyframes = new HashSet<>();
+    private long discardedCount;
+
+    /**
+     * Creates a DeltaDecoder keeping the default maximum number of keyframes, which does not request keyframes.
+     */
+    public DeltaDecoder() {
+        this(DEFAULT_MAX_KEYFRAMES);
+    }
+
+    /**
+     * Creates a DeltaDecoder keeping the default maximum number of keyframes.
+     *
+     * @param keyframeRequest run when a delta relative to an unknown keyframe is received, to have the keyframe
+     *                        sent again, or null to wait for the publisher's next keyframe
+     */
+    public DeltaDecoder(Runnable keyframeRequest) {
+        this(DEFAULT_MAX_KEYFRAMES, keyframeRequest);
+    }
+
+    /**
+     * Creates a DeltaDecoder which does not request keyframes.
+     *
+     * @param maxKeyframes maximum number of keyframes kept, evicting the least recently used
+     */
+    public DeltaDecoder(int maxKeyframes) {
+        this(maxKeyframes, null);
+    }
+
+    /**
+     * Creates a DeltaDecoder.
+     *
+     * @param maxKeyframes    maximum number of keyframes kept, evicting the least recently used
+     * @param keyframeRequest run when a delta relative to an unknown keyframe is received, to have the keyframe
+     *                        sent again, or null to wait for the publisher's next keyframe
+     */
+    public DeltaDecoder(int maxKeyframes, Runnable keyframeRequest) {
+        if (maxKeyframes <= 0) {
+            throw new IllegalArgumentException("maxKeyframes must be positive");
+        }
+        this.maxKeyframes = maxKeyframes;
+        this.keyframeRequest = keyframeRequest;
+    }
+
+    /**
+     * Decodes a received struct.
+     *
+     * @param ctx      context the struct was received with
+     * @param received received struct
+     * @return the full struct, or null if the struct is a delta relative to an unknown keyframe
+     */
+    public T decode(FContext ctx, T received) {
+        // Keyframes carry no base header.
+        String baseId = ctx.getRequestHeader(DeltaEncoder.BASE_HEADER);
+        synchronized (this) {
+            if (baseId == null || keyframes.containsKey(baseId)) {
+                return rebuild(ctx, received, baseId);
+            }
+            discardedCount++;
+            LOGGER.debug("discarding delta relative to unknown keyframe " + baseId);
+            // Request each missing keyframe once, forgetting old requests so they stay bounded.
+            if (requestedKeyframes.size() >= maxKeyframes) {
+                requestedKeyframes.clear();
+            }
+            if (keyframeRequest == null || !requestedKeyframes.add(baseId)) {
+                return null;
+            }
+        }
+        // Run outside the lock, since the request may take the lock of the subscription delivering to this decoder.
+        keyframeRequest.run();
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T rebuild(FContext ctx, T received, String baseId) {
+        if (baseId == null) {
+            String keyframeId = ctx.getRequestHeader(DeltaEncoder.KEYFRAME_HEADER);
+            if (keyframeId != null) {
+                requestedKeyframes.remove(keyframeId);
+                keyframes.put(keyframeId, (T) received.deepCopy());
+                if (keyframes.size() > maxKeyframes) {
+                    keyframes.remove(keyframes.keySet().iterator().next());
+                }
+            }
+            return received;
+        }
+
+        T keyframe = keyframes.get(baseId);
+        T rebuilt = (T) keyframe.deepCopy();
+        String fieldIds = ctx.getRequestHeader(DeltaEncoder.FIELDS_HEADER);
+        if (fieldIds == null || fieldIds.isEmpty()) {
+            return rebuilt;
+        }
+        try {
+            for (String fieldId : fieldIds.split(",")) {
+                FieldT field = rebuilt.fieldForId(Integer.parseInt(fieldId));
+                if (field != null) {
+                    rebuilt.setFieldValue(field, received.isSet(field) ? received.getFieldValue(field) : null);
+                }
+            }
+        } catch (NumberFormatException e) {
+            discardedCount++;
+            LOGGER.warn("discarding delta with invalid field ids " + fieldIds);
+            return null;
+        }
+        return rebuilt;
+    }
+
+    /**
+     * Returns the number of deltas discarded because their keyframe was unknown.
+     *
+     * @return discarded delta count
+     */
+    public synchronized long getDiscardedCount() {
+        return discardedCount;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * DeltaEncoder reduces the size of repeated publishes of similar structs by sending only the fields which changed.
+ * For each topic, the first message is sent in full as a keyframe. Following messages are sent as deltas holding
+ * only the fields which differ from the topic's last keyframe, so a lost delta never corrupts later ones. A new
+ * keyframe is sent once the keyframe interval or maximum keyframe age is reached, or when most fields changed.
+ * <p>
+ * The encoding is described by request headers: keyframes carry a unique id in {@link #KEYFRAME_HEADER}, and deltas
+ * carry the id of their keyframe in {@link #BASE_HEADER} and the ids of the changed fields in
+ * {@link #FIELDS_HEADER}. {@link DeltaDecoder} rebuilds the full structs. Required fields are always sent. This
+ * class is thread-safe and is used by generated publishers.
+ *
+ * @param <T> struct type
+ * @param <FieldT> struct field type
+ */
+public class DeltaEncoder<T extends TBase<T, FieldT>, FieldT extends Enum<FieldT> & TFieldIdEnum> {
+
+    /**
+     * Request header carrying the id of a keyframe.
+     */
+    public static final String KEYFRAME_HEADER = "_delta_key";
+
+    /**
+     * Request header carrying the id of the keyframe a delta is relative to.
+     */
+    public static final String BASE_HEADER = "_delta_base";
+
+    /**
+     * Request header carrying the comma-separated ids of the fields a delta holds.
+     */
+    public static final String FIELDS_HEADER = "_delta_fields";
+
+    /**
+     * Default maximum number of deltas sent between keyframes.
+     */
+    public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+
+    /**
+     * Default maximum milliseconds between keyframes.
+     */
+    public static final long DEFAULT_MAX_KEYFRAME_AGE = 10000;
+
+    /**
+     * Default maximum number of topics whose keyframes are kept.
+     */
+    public static final int DEFAULT_MAX_TOPICS = 1024;
+
+    private final FieldT[] fields;
+    private final Set<FieldT> requiredFields;
+    private final int keyframeInterval;
+    private final long maxKeyframeAge;
+    private final int maxTopics;
+    private final String idPrefix = UUID.randomUUID().toString() + "-";
+
+    // Guarded by this.
+    private final Map<String, Keyframe<T>> keyframes = new LinkedHashMap<>(16, 0.75f, true);
+    private long keyframeCount;
+    private long deltaCount;
+
+    private static class Keyframe<T> {
+        final String id;
+        final T value;
+        final long time;
+        int deltas;
+
+        Keyframe(String id, T value, long time) {
+            this.id = id;
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    /**
+     * Creates a DeltaEncoder with the default keyframe interval, maximum keyframe age and maximum topic count.
+     *
+     * @param fieldType      the struct's field enum
+     * @param requiredFields the struct's required fields, which are sent in every delta
+     */
+    @SafeVarargs
+    public DeltaEncoder(Class<FieldT> fieldType, FieldT... requiredFields) {
+        this(DEFAULT_KEYFRAME_INTERVAL, DEFAULT_MAX_KEYFRAME_AGE, DEFAULT_MAX_TOPICS, fieldType, requiredFields);
+    }
+
+    /**
+     * Creates a DeltaEncoder.
+     *
+     * @param keyframeInterval maximum number of deltas sent between keyframes
+     * @param maxKeyframeAge   maximum milliseconds between keyframes
+     * @param maxTopics        maximum number of topics whose keyframes are kept, evicting the least recently used
+     * @param fieldType        the struct's field enum
+     * @param requiredFields   the struct's required fields, which are sent in every delta
+     */
+    @SafeVarargs
+    public DeltaEncoder(int keyframeInterval, long maxKeyframeAge, int maxTopics, Class<FieldT> fieldType,
+                        FieldT... requiredFields) {
+        if (keyframeInterval < 0) {
+            throw new IllegalArgumentException("keyframeInterval must not be negative");
+        }
+        if (maxTopics <= 0) {
+            throw new IllegalArgumentException("maxTopics must be positive");
+        }
+        this.fields = fieldType.getEnumConstants();
+        this.requiredFields = EnumSet.noneOf(fieldType);
+        for (FieldT field : requiredFields) {
+            this.requiredFields.add(field);
+        }
+        this.keyframeInterval = keyframeInterval;
+        this.maxKeyframeAge = maxKeyframeAge;
+        this.maxTopics = maxTopics;
+    }
+
+    /**
+     * Encodes a struct published on the topic, setting the delta request headers on the context.
+     *
+     * @param topic topic the struct is published on
+     * @param ctx   context the struct is published with
+     * @param value struct to publish
+     * @return the struct to write, either the given struct or a delta holding only the changed fields
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T encode(String topic, FContext ctx, T value) {
+        long now = System.currentTimeMillis();
+        Keyframe<T> keyframe = keyframes.get(topic);
+        if (keyframe != null && keyframe.deltas < keyframeInterval && now - keyframe.time < maxKeyframeAge) {
+            List<FieldT> changed = new ArrayList<>();
+            for (FieldT field : fields) {
+                if (value.isSet(field) != keyframe.value.isSet(field)
+                        || !Objects.deepEquals(value.getFieldValue(field), keyframe.value.getFieldValue(field))) {
+                    changed.add(field);
+                }
+            }
+            // A delta holding most fields is barely smaller than a keyframe.
+            if (changed.size() * 2 <= fields.length) {
+                T delta = (T) value.deepCopy();
+                StringBuilder ids = new StringBuilder();
+                for (FieldT field : fields) {
+                    if (changed.contains(field)) {
+                        ids.append(ids.length() > 0 ? "," : "").append(field.getThriftFieldId());
+                    } else if (!requiredFields.contains(field)) {
+                        delta.setFieldValue(field, null);
+                    }
+                }
+                keyframe.deltas++;
+                deltaCount++;
+                ctx.removeRequestHeader(KEYFRAME_HEADER);
+                ctx.addRequestHeader(BASE_HEADER, keyframe.id);
+                ctx.addRequestHeader(FIELDS_HEADER, ids.toString());
+                return delta;
+            }
+        }
+
+        keyframeCount++;
+        keyframe = new Keyframe<>(idPrefix + keyframeCount, (T) value.deepCopy(), now);
+        keyframes.put(topic, keyframe);
+        if (keyframes.size() > maxTopics) {
+            keyframes.remove(keyframes.keySet().iterator().next());
+        }
+        removeHeaders(ctx);
+        ctx.addRequestHeader(KEYFRAME_HEADER, keyframe.id);
+        return value;
+    }
+
+    /**
+     * Returns the number of keyframes sent.
+     *
+     * @return keyframe count
+     */
+    public synchronized long getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    /**
+     * Returns the number of deltas sent.
+     *
+     * @return delta count
+     */
+    public synchronized long getDeltaCount() {
+        return deltaCount;
+    }
+
+    /**
+     * Removes the delta request headers from a context, so a struct published with it is treated as a plain full
+     * message.
+     *
+     * @param ctx context to remove the headers from
+     */
+    public static void removeHeaders(FContext ctx) {
+        ctx.removeRequestHeader(KEYFRAME_HEADER);
+        ctx.removeRequestHeader(BASE_HEADER);
+        ctx.removeRequestHeader(FIELDS_HEADER);
+    }
+}
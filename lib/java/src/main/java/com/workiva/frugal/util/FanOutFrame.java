@@ -0,0 +1,95 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.protocol.HeaderUtils;
+import org.apache.thrift.TException;
+
+import java.util.Map;
+
+/**
+ * A serialized frugal frame which is published to many topics, differing only in the values of a few headers, such
+ * as the <code>_topic_</code> headers of scope prefix variables. The message body and the remaining headers are
+ * serialized once; each call to {@link #toFrame(String...)} only encodes the patched header values and copies the
+ * shared bytes into a new frame. This class is thread-safe.
+ */
+public class FanOutFrame {
+
+    private final byte[][] patchedNames;
+    private final byte[] framedBytes;
+    private final byte[] fixedHeaders;
+    private final int bodyOffset;
+    private final int bodyLength;
+
+    /**
+     * Creates a FanOutFrame from a serialized frame.
+     *
+     * @param framedBytes    a frame prepended with its 4 byte frame size
+     * @param patchedHeaders names of the headers whose values differ for each frame
+     * @throws TException if the frame contains invalid header data
+     */
+    public FanOutFrame(byte[] framedBytes, String... patchedHeaders) throws TException {
+        Map<String, String> headers = HeaderUtils.decodeFromFrame(framedBytes, 4);
+        patchedNames = new byte[patchedHeaders.length][];
+        for (int i = 0; i < patchedHeaders.length; i++) {
+            headers.remove(patchedHeaders[i]);
+            patchedNames[i] = ProtocolUtils.encodeString(patchedHeaders[i]);
+        }
+        this.framedBytes = framedBytes;
+        this.fixedHeaders = HeaderUtils.encode(headers);
+        this.bodyOffset = HeaderUtils.getBodyOffset(framedBytes);
+        this.bodyLength = framedBytes.length - bodyOffset;
+    }
+
+    /**
+     * Builds a frame with the given values for the patched headers.
+     *
+     * @param values values of the patched headers, in the order their names were given
+     * @return a new frame prepended with its 4 byte frame size
+     */
+    public byte[] toFrame(String... values) {
+        if (values.length != patchedNames.length) {
+            throw new IllegalArgumentException(
+                    "expected " + patchedNames.length + " header values, got " + values.length);
+        }
+        byte[][] encodedValues = new byte[values.length][];
+        int headersSize = fixedHeaders.length - 5;
+        for (int i = 0; i < values.length; i++) {
+            encodedValues[i] = ProtocolUtils.encodeString(values[i]);
+            headersSize += 8 + patchedNames[i].length + encodedValues[i].length;
+        }
+
+        byte[] frame = new byte[4 + 5 + headersSize + bodyLength];
+        ProtocolUtils.writeInt(frame.length - 4, frame, 0);
+        frame[4] = HeaderUtils.V0;
+        ProtocolUtils.writeInt(headersSize, frame, 5);
+        int offset = 9;
+        System.arraycopy(fixedHeaders, 5, frame, offset, fixedHeaders.length - 5);
+        offset += fixedHeaders.length - 5;
+        for (int i = 0; i < values.length; i++) {
+            offset = writePair(patchedNames[i], encodedValues[i], frame, offset);
+        }
+        System.arraycopy(framedBytes, bodyOffset, frame, offset, bodyLength);
+        return frame;
+    }
+
+    private static int writePair(byte[] name, byte[] value, byte[] buff, int offset) {
+        ProtocolUtils.writeInt(name.length, buff, offset);
+        ProtocolUtils.writeStringBytes(name, buff, offset + 4);
+        offset += 4 + name.length;
+        ProtocolUtils.writeInt(value.length, buff, offset);
+        ProtocolUtils.writeStringBytes(value, buff, offset + 4);
+        return offset + 4 + value.length;
+    }
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.middleware.InvocationHandler;
+import com.workiva.frugal.middleware.ServiceMiddleware;
+import com.workiva.frugal.protocol.HeaderUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocolException;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the body of frugal frames with deflate, optionally using a preset dictionary.
+ * <p>
+ * Frame headers are never compressed. A compressed frame carries the {@link #COMPRESSION_HEADER} header naming the
+ * encoding of its body. Peers advertise which encoding they can decompress with the
+ * {@link #ACCEPT_COMPRESSION_HEADER} header, and a frame is only compressed for a peer which has advertised the
+ * encoding of this compressor, so peers without compression support interoperate unchanged. When a preset dictionary
+ * is used, its Adler-32 checksum is part of the encoding name, so frames are only compressed with a dictionary for
+ * peers configured with the same dictionary.
+ * <p>
+ * Bodies smaller than the threshold, or which deflate does not shrink, are sent uncompressed. Advertising support
+ * takes a copy of every frame which does not carry the advertisement yet. Adding the
+ * {@link #advertisingMiddleware()} to clients and servers sets it on the FContext before frames are serialized, so
+ * uncompressed frames are sent as they are. This class is thread-safe.
+ */
+public class FrameCompressor {
+
+    /**
+     * Header advertising the compression encoding the sender of a frame can decompress.
+     */
+    public static final String ACCEPT_COMPRESSION_HEADER = "_acc_cmp";
+
+    /**
+     * Header containing the compression encoding of a frame body.
+     */
+    public static final String COMPRESSION_HEADER = "_cmp";
+
+    /**
+     * Encoding of bodies compressed with deflate and no preset dictionary.
+     */
+    public static final String DEFLATE = "deflate";
+
+    public static final int DEFAULT_THRESHOLD = 1024;
+    public static final int DEFAULT_MAX_DECOMPRESSED_SIZE = 64 * 1024 * 1024;
+
+    private final int threshold;
+    private final byte[] dictionary;
+    private final String encoding;
+
+    /**
+     * Creates a FrameCompressor which compresses bodies of at least 1KB without a preset dictionary.
+     */
+    public FrameCompressor() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Creates a FrameCompressor which compresses bodies of at least the given size without a preset dictionary.
+     *
+     * @param threshold minimum body size in bytes to compress
+     */
+    public FrameCompressor(int threshold) {
+        this(threshold, null);
+    }
+
+    /**
+     * Creates a FrameCompressor which compresses bodies of at least the given size using a preset dictionary. Both
+     * peers must be configured with the same dictionary for it to be used.
+     *
+     * @param threshold  minimum body size in bytes to compress
+     * @param dictionary preset deflate dictionary, or null to not use one
+     */
+    public FrameCompressor(int threshold, byte[] dictionary) {
+        this.threshold = threshold;
+        this.dictionary = dictionary == null ? null : Arrays.copyOf(dictionary, dictionary.length);
+        if (dictionary == null) {
+            this.encoding = DEFLATE;
+        } else {
+            Adler32 adler = new Adler32();
+            adler.update(dictionary);
+            this.encoding = DEFLATE + "-" + Long.toHexString(adler.getValue());
+        }
+    }
+
+    /**
+     * Returns the encoding this compressor compresses with and advertises.
+     *
+     * @return encoding name
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Queries whether the sender of a frame with the given headers can decompress frames from this compressor.
+     *
+     * @param headers frame headers
+     * @return true if frames sent to the peer may be compressed
+     */
+    public boolean isAccepted(Map<String, String> headers) {
+        return encoding.equals(headers.get(ACCEPT_COMPRESSION_HEADER));
+    }
+
+    /**
+     * Returns middleware which advertises compression support on the FContext of every call, as a request header
+     * for clients and a response header for servers. The advertisement is then serialized with the other headers,
+     * and {@link #compress(byte[], boolean)} does not have to rewrite frames it leaves uncompressed.
+     *
+     * @return middleware for the FServiceProvider of clients or the processor of servers
+     */
+    public ServiceMiddleware advertisingMiddleware() {
+        return new ServiceMiddleware() {
+            @Override
+            public <T> InvocationHandler<T> apply(T next) {
+                return new InvocationHandler<T>(next) {
+                    @Override
+                    public Object invoke(Method method, T receiver, Object[] args) throws Throwable {
+                        FContext context = (FContext) args[0];
+                        context.addRequestHeader(ACCEPT_COMPRESSION_HEADER, encoding);
+                        context.addResponseHeader(ACCEPT_COMPRESSION_HEADER, encoding);
+                        return method.invoke(receiver, args);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Advertises compression support in the given frame and, if requested, compresses its body.
+     *
+     * @param framedBytes a frame prepended with its 4 byte frame size
+     * @param compress    whether to compress the body, i.e. the peer has advertised support
+     * @return the given frame if it already advertises support and its body is left uncompressed, otherwise a new
+     *         frame prepended with its 4 byte frame size
+     *
+     * @throws TException if the frame contains invalid header data
+     */
+    public byte[] compress(byte[] framedBytes, boolean compress) throws TException {
+        Map<String, String> headers = HeaderUtils.decodeFromFrame(framedBytes, 4);
+        int bodyOffset = HeaderUtils.getBodyOffset(framedBytes);
+        int bodyLength = framedBytes.length - bodyOffset;
+        byte[] deflated = compress && bodyLength >= threshold ? deflate(framedBytes, bodyOffset, bodyLength) : null;
+        if (deflated == null && encoding.equals(headers.get(ACCEPT_COMPRESSION_HEADER))) {
+            return framedBytes;
+        }
+
+        headers.put(ACCEPT_COMPRESSION_HEADER, encoding);
+        byte[] body = framedBytes;
+        if (deflated != null) {
+            headers.put(COMPRESSION_HEADER, encoding);
+            body = deflated;
+            bodyOffset = 0;
+            bodyLength = deflated.length;
+        }
+
+        byte[] encodedHeaders = HeaderUtils.encode(headers);
+        byte[] frame = new byte[4 + encodedHeaders.length + bodyLength];
+        ProtocolUtils.writeInt(frame.length - 4, frame, 0);
+        System.arraycopy(encodedHeaders, 0, frame, 4, encodedHeaders.length);
+        System.arraycopy(body, bodyOffset, frame, 4 + encodedHeaders.length, bodyLength);
+        return frame;
+    }
+
+    /**
+     * Decompresses the body of the given frame, limiting the decompressed body to 64MB. Frames which are not
+     * compressed are returned unchanged.
+     *
+     * @param headers the decoded headers of the frame
+     * @param frame   frugal frame, NOT prepended with its frame size
+     * @return the uncompressed frame, NOT prepended with its frame size
+     *
+     * @throws TException if the frame cannot be decompressed
+     */
+    public byte[] decompress(Map<String, String> headers, byte[] frame) throws TException {
+        return decompress(headers, frame, DEFAULT_MAX_DECOMPRESSED_SIZE);
+    }
+
+    /**
+     * Decompresses the body of the given frame. Frames which are not compressed are returned unchanged.
+     *
+     * @param headers the decoded headers of the frame
+     * @param frame   frugal frame, NOT prepended with its frame size
+     * @param maxSize maximum size of the decompressed body
+     * @return the uncompressed frame, NOT prepended with its frame size
+     *
+     * @throws TException if the frame cannot be decompressed, or a TProtocolException with type
+     *                    <code>SIZE_LIMIT</code> if the decompressed body exceeds <code>maxSize</code>
+     */
+    public byte[] decompress(Map<String, String> headers, byte[] frame, int maxSize) throws TException {
+        String frameEncoding = headers.get(COMPRESSION_HEADER);
+        if (frameEncoding == null) {
+            return frame;
+        }
+        if (!DEFLATE.equals(frameEncoding) && !encoding.equals(frameEncoding)) {
+            throw new TProtocolException(TProtocolException.INVALID_DATA,
+                    "unsupported compression encoding " + frameEncoding);
+        }
+
+        Map<String, String> uncompressedHeaders = new HashMap<>(headers);
+        uncompressedHeaders.remove(COMPRESSION_HEADER);
+        byte[] encodedHeaders = HeaderUtils.encode(uncompressedHeaders);
+
+        int bodyOffset = ProtocolUtils.readInt(frame, 1) + 5;
+        byte[] uncompressed = inflate(frame, bodyOffset, frame.length - bodyOffset, encodedHeaders.length, maxSize);
+        System.arraycopy(encodedHeaders, 0, uncompressed, 0, encodedHeaders.length);
+        return uncompressed;
+    }
+
+    // Returns the deflated bytes, or null if deflating does not make them smaller.
+    private byte[] deflate(byte[] bytes, int offset, int length) {
+        Deflater deflater = new Deflater();
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(bytes, offset, length);
+            deflater.finish();
+            byte[] buff = new byte[length];
+            int size = 0;
+            while (!deflater.finished()) {
+                if (size == buff.length) {
+                    return null;
+                }
+                size += deflater.deflate(buff, size, buff.length - size);
+            }
+            return Arrays.copyOf(buff, size);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    // Returns the inflated bytes, preceded by prefixLength bytes of space for the caller to fill in.
+    private byte[] inflate(byte[] bytes, int offset, int length, int prefixLength, int maxSize)
+            throws TProtocolException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, length);
+            // Allow one byte past the limit so overflowing the limit can be detected.
+            long limit = Math.min((long) prefixLength + maxSize + 1, Integer.MAX_VALUE - 8);
+            byte[] buff = new byte[(int) Math.min(prefixLength + Math.max(length * 4L, 64), limit)];
+            int size = prefixLength;
+            while (!inflater.finished()) {
+                if (size == buff.length) {
+                    buff = Arrays.copyOf(buff, (int) Math.min(buff.length * 2L, limit));
+                }
+                int n = inflater.inflate(buff, size, buff.length - size);
+                if (n == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null) {
+                            throw new TProtocolException(TProtocolException.INVALID_DATA,
+                                    "compressed frame requires a preset dictionary");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new TProtocolException(TProtocolException.INVALID_DATA, "truncated compressed frame");
+                    }
+                }
+                size += n;
+                if (size - prefixLength > maxSize) {
+                    throw new TProtocolException(TProtocolException.SIZE_LIMIT,
+                            "decompressed frame exceeds " + maxSize + " bytes");
+                }
+            }
+            return size == buff.length ? buff : Arrays.copyOf(buff, size);
+        } catch (DataFormatException | IllegalArgumentException e) {
+            throw new TProtocolException(TProtocolException.INVALID_DATA, "invalid compressed frame", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.protocol.HeaderUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits frames which are too large for a message broker into a sequence of smaller fragments.
+ * <p>
+ * Each fragment is itself a valid frugal frame. Its headers carry the op id and correlation id of the original
+ * frame along with the fragment sequence number and count, and its body is the next slice of the original frame
+ * (headers and body, excluding the frame size). Use {@link FrameReassembler} to put the original frame back together.
+ * <p>
+ * Peers advertise that they can reassemble fragments by sending the {@link #FRAGMENTATION_HEADER} header.
+ */
+public class FrameFragmenter {
+
+    /**
+     * Header advertising that the sender can reassemble fragmented frames.
+     */
+    public static final String FRAGMENTATION_HEADER = "_frag";
+
+    /**
+     * Header containing the zero-based position of a fragment in its frame.
+     */
+    public static final String FRAGMENT_SEQ_HEADER = "_frag_seq";
+
+    /**
+     * Header containing the total number of fragments in a frame.
+     */
+    public static final String FRAGMENT_COUNT_HEADER = "_frag_count";
+
+    /**
+     * Largest frame that will be fragmented or reassembled.
+     */
+    public static final int MAX_FRAGMENTED_FRAME_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * Headers to add to a frame in order to advertise fragmentation support.
+     */
+    public static final Map<String, String> FRAGMENTATION_HEADERS =
+            Collections.singletonMap(FRAGMENTATION_HEADER, "1");
+
+    /**
+     * Splits the given framed bytes into fragments no larger than <code>maxMessageSize</code>. If the frame already
+     * fits, it is returned unchanged as the only fragment.
+     *
+     * @param framedBytes    a frame prepended with its 4 byte frame size
+     * @param maxMessageSize maximum size of each fragment, including its frame size
+     * @return framed fragments, in order
+     *
+     * @throws TException if the frame is invalid or too large to fragment
+     */
+    public static List<byte[]> fragment(byte[] framedBytes, int maxMessageSize) throws TException {
+        if (framedBytes.length <= maxMessageSize) {
+            return Collections.singletonList(framedBytes);
+        }
+        if (framedBytes.length > MAX_FRAGMENTED_FRAME_SIZE) {
+            throw new TTransportException(TTransportExceptionType.REQUEST_TOO_LARGE,
+                    String.format("Message exceeds %d bytes, was %d bytes",
+                            MAX_FRAGMENTED_FRAME_SIZE, framedBytes.length));
+        }
+
+        Map<String, String> original = HeaderUtils.decodeFromFrame(framedBytes, 4);
+        Map<String, String> headers = new HashMap<>();
+        if (original.containsKey(FContext.OPID_HEADER)) {
+            headers.put(FContext.OPID_HEADER, original.get(FContext.OPID_HEADER));
+        }
+        if (original.containsKey(FContext.CID_HEADER)) {
+            headers.put(FContext.CID_HEADER, original.get(FContext.CID_HEADER));
+        }
+
+        // Size the fragment headers using values at least as wide as any real sequence number or count.
+        int frameLength = framedBytes.length - 4;
+        headers.put(FRAGMENT_SEQ_HEADER, Integer.toString(frameLength));
+        headers.put(FRAGMENT_COUNT_HEADER, Integer.toString(frameLength));
+        int chunkSize = maxMessageSize - 4 - HeaderUtils.encode(headers).length;
+        if (chunkSize <= 0) {
+            throw new TTransportException(TTransportExceptionType.REQUEST_TOO_LARGE,
+                    "Message size limit too small to fragment frame");
+        }
+
+        int count = (frameLength + chunkSize - 1) / chunkSize;
+        headers.put(FRAGMENT_COUNT_HEADER, Integer.toString(count));
+        List<byte[]> fragments = new ArrayList<>(count);
+        for (int seq = 0; seq < count; seq++) {
+            headers.put(FRAGMENT_SEQ_HEADER, Integer.toString(seq));
+            byte[] encodedHeaders = HeaderUtils.encode(headers);
+            int offset = 4 + seq * chunkSize;
+            int length = Math.min(chunkSize, framedBytes.length - offset);
+
+            byte[] fragment = new byte[4 + encodedHeaders.length + length];
+            ProtocolUtils.writeInt(fragment.length - 4, fragment, 0);
+            System.arraycopy(encodedHeaders, 0, fragment, 4, encodedHeaders.length);
+            System.arraycopy(framedBytes, offset, fragment, 4 + encodedHeaders.length, length);
+            fragments.add(fragment);
+        }
+        return fragments;
+    }
+
+    /**
+     * Queries whether the given headers belong to a fragment or advertise fragmentation support.
+     *
+     * @param headers frame headers
+     * @return true if the sender of the frame supports fragmentation
+     */
+    public static boolean supportsFragmentation(Map<String, String> headers) {
+        return headers.containsKey(FRAGMENTATION_HEADER) || headers.containsKey(FRAGMENT_COUNT_HEADER);
+    }
+}
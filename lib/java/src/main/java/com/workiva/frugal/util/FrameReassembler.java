@@ -0,0 +1,268 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.protocol.HeaderUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocolException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.workiva.frugal.util.FrameFragmenter.FRAGMENT_COUNT_HEADER;
+import static com.workiva.frugal.util.FrameFragmenter.FRAGMENT_SEQ_HEADER;
+
+/**
+ * Reassembles frames split by {@link FrameFragmenter}.
+ * <p>
+ * Partial frames are keyed by source (e.g. a reply subject), correlation id, and op id. The total number of buffered
+ * fragment bytes and the number of partial frames are bounded; when either bound is reached the oldest partial frames
+ * are evicted. Partial frames which are not completed within the timeout are evicted as well. Fragments claiming more
+ * than the maximum fragment count are rejected before anything is allocated for them. This class is thread-safe.
+ */
+public class FrameReassembler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FrameReassembler.class);
+
+    public static final long DEFAULT_MAX_BUFFERED_BYTES = 64 * 1024 * 1024;
+    public static final long DEFAULT_TIMEOUT = 30 * 1000;
+    public static final int DEFAULT_MAX_FRAGMENTS = 64 * 1024;
+    public static final int DEFAULT_MAX_PARTIAL_FRAMES = 1024;
+
+    private final long maxBufferedBytes;
+    private final long timeout;
+    private final int maxFragments;
+    private final int maxPartialFrames;
+
+    // Insertion ordered so the eldest partial frames are evicted first.
+    private final Map<String, PartialFrame> partials = new LinkedHashMap<>();
+    private long bufferedBytes;
+
+    /**
+     * Creates a FrameReassembler buffering at most 64MB of fragments in at most 1024 partial frames of at most 65536
+     * fragments each, and evicting partial frames after 30 seconds.
+     */
+    public FrameReassembler() {
+        this(DEFAULT_MAX_BUFFERED_BYTES, DEFAULT_TIMEOUT);
+    }
+
+    /**
+     * Creates a FrameReassembler.
+     *
+     * @param maxBufferedBytes maximum number of fragment bytes buffered across all partial frames
+     * @param timeout          milliseconds after which an incomplete frame is evicted
+     */
+    public FrameReassembler(long maxBufferedBytes, long timeout) {
+        this(maxBufferedBytes, timeout, DEFAULT_MAX_FRAGMENTS, DEFAULT_MAX_PARTIAL_FRAMES);
+    }
+
+    /**
+     * Creates a FrameReassembler.
+     *
+     * @param maxBufferedBytes maximum number of fragment bytes buffered across all partial frames
+     * @param timeout          milliseconds after which an incomplete frame is evicted
+     * @param maxFragments     maximum number of fragments a single frame may be split into
+     * @param maxPartialFrames maximum number of frames waiting on more fragments at once
+     */
+    public FrameReassembler(long maxBufferedBytes, long timeout, int maxFragments, int maxPartialFrames) {
+        if (maxFragments <= 0 || maxPartialFrames <= 0) {
+            throw new IllegalArgumentException("maxFragments and maxPartialFrames must be positive");
+        }
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.timeout = timeout;
+        this.maxFragments = maxFragments;
+        this.maxPartialFrames = maxPartialFrames;
+    }
+
+    /**
+     * Adds a message to the reassembler. Messages which are not fragments are returned unchanged.
+     *
+     * @param source      identifies the sender of the message, used to separate op ids from different peers
+     * @param framedBytes the message, prepended with its 4 byte frame size
+     * @return the complete frame prepended with its 4 byte frame size, or null if more fragments are needed
+     *
+     * @throws TException if the message is not a valid frame
+     */
+    public byte[] reassemble(String source, byte[] framedBytes) throws TException {
+        return reassemble(source, HeaderUtils.decodeFromFrame(framedBytes, 4), framedBytes);
+    }
+
+    /**
+     * Adds a message with already decoded headers to the reassembler. Messages which are not fragments are returned
+     * unchanged.
+     *
+     * @param source      identifies the sender of the message, used to separate op ids from different peers
+     * @param headers     the decoded headers of the message
+     * @param framedBytes the message, prepended with its 4 byte frame size
+     * @return the complete frame prepended with its 4 byte frame size, or null if more fragments are needed
+     *
+     * @throws TException if the message is not a valid fragment
+     */
+    public synchronized byte[] reassemble(String source, Map<String, String> headers, byte[] framedBytes)
+            throws TException {
+        String countHeader = headers.get(FRAGMENT_COUNT_HEADER);
+        if (countHeader == null) {
+            return framedBytes;
+        }
+
+        int count;
+        int seq;
+        try {
+            count = Integer.parseInt(countHeader);
+            seq = Integer.parseInt(headers.get(FRAGMENT_SEQ_HEADER));
+        } catch (NumberFormatException e) {
+            throw new TProtocolException(TProtocolException.INVALID_DATA, "invalid fragment headers", e);
+        }
+        if (count <= 0 || seq < 0 || seq >= count) {
+            throw new TProtocolException(TProtocolException.INVALID_DATA,
+                    String.format("invalid fragment %d of %d", seq, count));
+        }
+        if (count > maxFragments) {
+            throw new TProtocolException(TProtocolException.SIZE_LIMIT,
+                    String.format("fragment count %d exceeds limit of %d", count, maxFragments));
+        }
+
+        long now = System.currentTimeMillis();
+        evictExpired(now);
+
+        String key = source + ":" + headers.get(FContext.CID_HEADER) + ":" + headers.get(FContext.OPID_HEADER);
+        int chunkOffset = HeaderUtils.getBodyOffset(framedBytes);
+        int chunkLength = framedBytes.length - chunkOffset;
+
+        PartialFrame partial = partials.get(key);
+        if (partial == null) {
+            evictEldest(maxPartialFrames - 1);
+            partial = new PartialFrame(count, now);
+            partials.put(key, partial);
+        } else if (partial.chunks.length != count) {
+            evict(key);
+            throw new TProtocolException(TProtocolException.INVALID_DATA, "fragment count changed for frame " + key);
+        }
+        if (partial.chunks[seq] != null) {
+            // Duplicate fragment, already buffered.
+            return null;
+        }
+
+        if (!reserve(key, chunkLength)) {
+            LOGGER.warn("discarding fragmented frame {}, reassembly buffer full", key);
+            return null;
+        }
+
+        byte[] chunk = new byte[chunkLength];
+        System.arraycopy(framedBytes, chunkOffset, chunk, 0, chunkLength);
+        partial.chunks[seq] = chunk;
+        partial.received++;
+        partial.size += chunkLength;
+        if (partial.received < count) {
+            return null;
+        }
+
+        evict(key);
+        byte[] frame = new byte[4 + partial.size];
+        ProtocolUtils.writeInt(partial.size, frame, 0);
+        int offset = 4;
+        for (byte[] c : partial.chunks) {
+            System.arraycopy(c, 0, frame, offset, c.length);
+            offset += c.length;
+        }
+        return frame;
+    }
+
+    /**
+     * Returns the number of frames waiting on more fragments.
+     *
+     * @return number of partial frames
+     */
+    public synchronized int getPartialFrameCount() {
+        return partials.size();
+    }
+
+    /**
+     * Returns the number of fragment bytes currently buffered.
+     *
+     * @return buffered bytes
+     */
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    // Make room for length bytes by evicting the eldest partial frames other than the one being added to. Returns
+    // false, after evicting the frame being added to, if it cannot fit at all.
+    private boolean reserve(String key, int length) {
+        Iterator<Map.Entry<String, PartialFrame>> it = partials.entrySet().iterator();
+        while (bufferedBytes + length > maxBufferedBytes && it.hasNext()) {
+            Map.Entry<String, PartialFrame> entry = it.next();
+            if (entry.getKey().equals(key)) {
+                continue;
+            }
+            LOGGER.warn("evicting partial frame {} to make room for new fragments", entry.getKey());
+            bufferedBytes -= entry.getValue().size;
+            it.remove();
+        }
+        if (bufferedBytes + length > maxBufferedBytes) {
+            evict(key);
+            return false;
+        }
+        bufferedBytes += length;
+        return true;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Map.Entry<String, PartialFrame>> it = partials.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, PartialFrame> entry = it.next();
+            if (now - entry.getValue().created < timeout) {
+                // Entries are in insertion order, so the remaining entries are newer.
+                return;
+            }
+            LOGGER.warn("evicting partial frame {} after {} ms", entry.getKey(), timeout);
+            bufferedBytes -= entry.getValue().size;
+            it.remove();
+        }
+    }
+
+    // Evict the eldest partial frames until at most max remain.
+    private void evictEldest(int max) {
+        Iterator<Map.Entry<String, PartialFrame>> it = partials.entrySet().iterator();
+        while (partials.size() > max && it.hasNext()) {
+            Map.Entry<String, PartialFrame> entry = it.next();
+            LOGGER.warn("evicting partial frame {}, too many partial frames", entry.getKey());
+            bufferedBytes -= entry.getValue().size;
+            it.remove();
+        }
+    }
+
+    private void evict(String key) {
+        PartialFrame partial = partials.remove(key);
+        if (partial != null) {
+            bufferedBytes -= partial.size;
+        }
+    }
+
+    private static class PartialFrame {
+        final byte[][] chunks;
+        final long created;
+        int received;
+        int size;
+
+        PartialFrame(int count, long created) {
+            this.chunks = new byte[count][];
+            this.created = created;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.protocol.HeaderUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocolException;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Batches several Frugal frames into one HTTP request. A client sends a batch
+ * with the {@link #BATCH_HEADER} header set to <code>true</code>, and a body of
+ * concatenated frames, each prepended with its 4 byte frame size. The body is
+ * transfer encoded as a whole, see {@link HttpTransferEncoding}.
+ * <p>
+ * The response body concatenates the response frames in the same way. Requests
+ * without a response, such as oneway requests, have no frame in the response,
+ * and frames may come in any order, so clients match response frames to
+ * requests by their op id.
+ * <p>
+ * If a frame of the batch fails, the other frames are answered as usual, and the
+ * {@link #FRAME_STATUS_HEADER} header of the response lists the op id of the
+ * frame with the HTTP status a single request with the frame would get. Only if
+ * the failed frame has no op id is the whole batch answered with that status.
+ * The payload limit of the client applies to the response frames of the batch
+ * together, and frames which would take them over the limit fail with a 413
+ * status.
+ */
+public final class HttpBatch {
+
+    /**
+     * HTTP header marking a request as a batch.
+     */
+    public static final String BATCH_HEADER = "x-frugal-batch";
+
+    /**
+     * HTTP response header listing the failed frames of a batch as
+     * comma-separated <code>opid=status</code> pairs.
+     */
+    public static final String FRAME_STATUS_HEADER = "x-frugal-batch-status";
+
+    private HttpBatch() {
+    }
+
+    /**
+     * Returns whether a request with the given {@link #BATCH_HEADER} header is a batch.
+     *
+     * @param batchHeader {@link #BATCH_HEADER} value of the request, or null
+     * @return true if the request is a batch
+     */
+    public static boolean isBatch(String batchHeader) {
+        return batchHeader != null && "true".equalsIgnoreCase(batchHeader.trim());
+    }
+
+    /**
+     * Concatenates frames into a batch body.
+     *
+     * @param frames frames prepended with their 4 byte frame size
+     * @return the batch body
+     */
+    public static byte[] join(List<byte[]> frames) {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        for (byte[] frame : frames) {
+            body.write(frame, 0, frame.length);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Splits a batch body into its frames.
+     *
+     * @param body the batch body
+     * @return frames prepended with their 4 byte frame size
+     * @throws TProtocolException if the body is not a sequence of frames
+     */
+    public static List<byte[]> split(byte[] body) throws TProtocolException {
+        List<byte[]> frames = new ArrayList<>();
+        int offset = 0;
+        while (offset < body.length) {
+            if (body.length - offset < 4) {
+                throw new TProtocolException("truncated frame size in batch");
+            }
+            long size = ProtocolUtils.readInt(body, offset) & 0xffff_ffffL;
+            if (size > body.length - offset - 4) {
+                throw new TProtocolException("truncated frame in batch");
+            }
+            byte[] frame = new byte[4 + (int) size];
+            System.arraycopy(body, offset, frame, 0, frame.length);
+            frames.add(frame);
+            offset += frame.length;
+        }
+        return frames;
+    }
+
+    /**
+     * Formats the HTTP statuses of failed frames as a {@link #FRAME_STATUS_HEADER} value.
+     *
+     * @param statuses HTTP status of each failed frame by op id
+     * @return the header value
+     */
+    public static String formatStatuses(Map<String, Integer> statuses) {
+        StringBuilder header = new StringBuilder();
+        for (Map.Entry<String, Integer> status : statuses.entrySet()) {
+            if (header.length() > 0) {
+                header.append(", ");
+            }
+            header.append(status.getKey()).append('=').append(status.getValue());
+        }
+        return header.toString();
+    }
+
+    /**
+     * Parses the HTTP statuses of failed frames from a {@link #FRAME_STATUS_HEADER} value.
+     *
+     * @param header {@link #FRAME_STATUS_HEADER} value of the response, or null
+     * @return HTTP status of each failed frame by op id
+     * @throws TProtocolException if the header is malformed
+     */
+    public static Map<String, Integer> parseStatuses(String header) throws TProtocolException {
+        Map<String, Integer> statuses = new LinkedHashMap<>();
+        if (header == null || header.trim().isEmpty()) {
+            return statuses;
+        }
+        for (String entry : header.split(",")) {
+            int separator = entry.indexOf('=');
+            if (separator < 0) {
+                throw new TProtocolException("malformed batch frame status: " + entry.trim());
+            }
+            try {
+                statuses.put(entry.substring(0, separator).trim(),
+                        Integer.parseInt(entry.substring(separator + 1).trim()));
+            } catch (NumberFormatException e) {
+                throw new TProtocolException("malformed batch frame status: " + entry.trim());
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * Returns the op id of a frame.
+     *
+     * @param frame frame prepended with its 4 byte frame size
+     * @return the op id, or null if the frame has none
+     * @throws TException if the frame headers are invalid
+     */
+    public static String getOpId(byte[] frame) throws TException {
+        return HeaderUtils.decodeFromFrame(frame, 4).get(FContext.OPID_HEADER);
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.util;
+
+import org.apache.thrift.protocol.TProtocolException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Negotiates the standard HTTP content encoding of Frugal HTTP bodies. Clients advertise the encodings they can
+ * decode with the <code>Accept-Encoding</code> header, and servers compress responses with one of them once the
+ * response body reaches a size threshold. Servers which decode compressed requests advertise it with the
+ * <code>Accept-Encoding</code> header on responses, and clients only compress requests once a server has done so.
+ * <p>
+ * Content encoding applies to the transfer encoded body, see {@link HttpTransferEncoding}. Clients compress raw
+ * binary request bodies, and advertise binary support so that servers compress raw binary responses, since base64
+ * only makes compression slower and less effective. Size limits, such as the <code>X-Frugal-Payload-Limit</code>
+ * header, always apply to Frugal frames before compression.
+ */
+public final class HttpContentEncoding {
+
+    /**
+     * HTTP header listing the content encodings a peer can decode.
+     */
+    public static final String ACCEPT_ENCODING_HEADER = "accept-encoding";
+
+    /**
+     * HTTP header naming the content encoding of a body.
+     */
+    public static final String CONTENT_ENCODING_HEADER = "content-encoding";
+
+    /**
+     * Content encoding of gzip compressed bodies.
+     */
+    public static final String GZIP = "gzip";
+
+    /**
+     * Content encoding of zlib compressed bodies.
+     */
+    public static final String DEFLATE = "deflate";
+
+    /**
+     * Content encoding of bodies which are not compressed.
+     */
+    public static final String IDENTITY = "identity";
+
+    /**
+     * <code>Accept-Encoding</code> header value listing the supported content encodings.
+     */
+    public static final String SUPPORTED_ENCODINGS = GZIP + ", " + DEFLATE;
+
+    private HttpContentEncoding() {
+    }
+
+    /**
+     * Returns the supported content encoding to compress a body with for a peer sending the given
+     * <code>Accept-Encoding</code> header, preferring gzip.
+     *
+     * @param acceptEncoding <code>Accept-Encoding</code> header value, or null
+     * @return the content encoding, or null if the peer accepts no supported encoding
+     */
+    public static String select(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        String selected = null;
+        for (String token : acceptEncoding.split(",")) {
+            String[] params = token.split(";");
+            String encoding = params[0].trim().toLowerCase(Locale.ROOT);
+            if ((!GZIP.equals(encoding) && !DEFLATE.equals(encoding)) || isRefused(params)) {
+                continue;
+            }
+            if (GZIP.equals(encoding)) {
+                return GZIP;
+            }
+            selected = DEFLATE;
+        }
+        return selected;
+    }
+
+    // Returns whether the parameters of an Accept-Encoding entry give it a quality of zero.
+    private static boolean isRefused(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) == 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether a body with the given <code>Content-Encoding</code> header is not compressed.
+     *
+     * @param contentEncoding <code>Content-Encoding</code> header value, or null
+     * @return true if the body is not compressed
+     */
+    public static boolean isIdentity(String contentEncoding) {
+        return contentEncoding == null || contentEncoding.trim().isEmpty()
+                || IDENTITY.equalsIgnoreCase(contentEncoding.trim());
+    }
+
+    /**
+     * Returns whether a body with the given <code>Content-Encoding</code> header can be decoded.
+     *
+     * @param contentEncoding <code>Content-Encoding</code> header value, or null
+     * @return true if the body can be decoded
+     */
+    public static boolean isSupported(String contentEncoding) {
+        if (isIdentity(contentEncoding)) {
+            return true;
+        }
+        String encoding = contentEncoding.trim().toLowerCase(Locale.ROOT);
+        return GZIP.equals(encoding) || DEFLATE.equals(encoding);
+    }
+
+    /**
+     * Wraps a stream to compress what is written to it with the given content encoding. Closing the returned stream
+     * finishes the compressed body and closes the given stream.
+     *
+     * @param out             stream to write the compressed body to
+     * @param contentEncoding supported content encoding
+     * @return the compressing stream
+     * @throws IOException if the stream cannot be written to
+     */
+    public static OutputStream encode(OutputStream out, String contentEncoding) throws IOException {
+        if (isIdentity(contentEncoding)) {
+            return out;
+        }
+        switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+            case GZIP:
+                return new GZIPOutputStream(out);
+            case DEFLATE:
+                return new DeflaterOutputStream(out);
+            default:
+                throw new IOException("unsupported content encoding " + contentEncoding);
+        }
+    }
+
+    /**
+     * Wraps a stream to decode a body with the given content encoding.
+     *
+     * @param in              stream to read the body from
+     * @param contentEncoding <code>Content-Encoding</code> header value, or null
+     * @return the decoding stream
+     * @throws IOException if the content encoding is unsupported, or the body is not validly encoded
+     */
+    public static InputStream decode(InputStream in, String contentEncoding) throws IOException {
+        if (isIdentity(contentEncoding)) {
+            return in;
+        }
+        switch (contentEncoding.trim().toLowerCase(Locale.ROOT)) {
+            case GZIP:
+                return new GZIPInputStream(in);
+            case DEFLATE:
+                return new InflaterInputStream(in);
+            default:
+                throw new IOException("unsupported content encoding " + contentEncoding);
+        }
+    }
+
+    /**
+     * Compresses a body with the given content encoding.
+     *
+     * @param body            the body
+     * @param contentEncoding supported content encoding
+     * @return the compressed body
+     */
+    public static byte[] encode(byte[] body, String contentEncoding) {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try (OutputStream out = encode(encoded, contentEncoding)) {
+            out.write(body);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+        return encoded.toByteArray();
+    }
+
+    /**
+     * Decodes a body with the given content encoding.
+     *
+     * @param body            the body
+     * @param contentEncoding <code>Content-Encoding</code> header value, or null
+     * @param maxSize         maximum size of the decoded body
+     * @return the decoded body
+     * @throws TProtocolException if the body cannot be decoded, or with type <code>SIZE_LIMIT</code> if the
+     *                            decoded body exceeds <code>maxSize</code>
+     */
+    public static byte[] decode(byte[] body, String contentEncoding, int maxSize) throws TProtocolException {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        byte[] buff = new byte[8192];
+        try (InputStream in = decode(new ByteArrayInputStream(body), contentEncoding)) {
+            int n;
+            while ((n = in.read(buff)) != -1) {
+                decoded.write(buff, 0, n);
+                if (decoded.size() > maxSize) {
+                    throw new TProtocolException(TProtocolException.SIZE_LIMIT,
+                            "decoded body exceeds " + maxSize + " bytes");
+                }
+            }
+        } catch (IOException e) {
+            throw new TProtocolException(TProtocolException.INVALID_DATA,
+                    "invalid " + contentEncoding + " body: " + e.getMessage(), e);
+        }
+        return decoded.toByteArray();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.workiva.frugal.util;
+
+/**
+ * Negotiates the transfer encoding of Frugal HTTP bodies. Bodies are base64 encoded by default, which browsers and
+ * legacy peers expect. Clients which can read raw binary bodies advertise it with the
+ * {@link #ACCEPT_TRANSFER_ENCODING_HEADER} header, and servers answering with a binary body say so in the
+ * <code>Content-Transfer-Encoding</code> header. A client only sends binary request bodies once a server has answered
+ * with a binary body, so servers without binary support interoperate unchanged.
+ */
+public final class HttpTransferEncoding {
+
+    /**
+     * HTTP header advertising the transfer encodings a client can read.
+     */
+    public static final String ACCEPT_TRANSFER_ENCODING_HEADER = "x-frugal-accept-transfer-encoding";
+
+    /**
+     * HTTP header naming the transfer encoding of a body.
+     */
+    public static final String CONTENT_TRANSFER_ENCODING_HEADER = "content-transfer-encoding";
+
+    /**
+     * Transfer encoding of raw binary bodies.
+     */
+    public static final String BINARY = "binary";
+
+    /**
+     * Transfer encoding of base64 encoded bodies, the default.
+     */
+    public static final String BASE64 = "base64";
+
+    private HttpTransferEncoding() {
+    }
+
+    /**
+     * Returns whether a body with the given Content-Transfer-Encoding header is raw binary. Bodies without the header
+     * are base64 encoded.
+     *
+     * @param contentTransferEncoding Content-Transfer-Encoding header value, or null
+     * @return true if the body is raw binary
+     */
+    public static boolean isBinary(String contentTransferEncoding) {
+        return contentTransferEncoding != null && BINARY.equalsIgnoreCase(contentTransferEncoding.trim());
+    }
+
+    /**
+     * Returns whether a response to a request with the given headers may have a binary body, i.e. the request body
+     * was binary or the client advertised binary support.
+     *
+     * @param contentTransferEncoding Content-Transfer-Encoding header value of the request, or null
+     * @param acceptTransferEncoding  {@link #ACCEPT_TRANSFER_ENCODING_HEADER} value of the request, or null
+     * @return true if the response body may be binary
+     */
+    public static boolean acceptsBinary(String contentTransferEncoding, String acceptTransferEncoding) {
+        if (isBinary(contentTransferEncoding)) {
+            return true;
+        }
+        if (acceptTransferEncoding == null) {
+            return false;
+        }
+        for (String encoding : acceptTransferEncoding.split(",")) {
+            if (isBinary(encoding)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes tasks on a fixed number of partitions, each backed by a single thread and a bounded queue. Tasks
+ * submitted with the same key run on the same partition, so they run one at a time in submission order, while tasks
+ * with different keys may run in parallel. Submitting a task blocks while its partition's queue is full.
+ * <p>
+ * Idle partition threads exit after 30 seconds and are restarted when needed.
+ */
+public class PartitionedExecutor {
+
+    private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+    private final ThreadPoolExecutor[] partitions;
+
+    /**
+     * Creates a PartitionedExecutor.
+     *
+     * @param partitionCount number of partitions, i.e. the maximum number of tasks running in parallel
+     * @param queueCapacity  maximum number of tasks queued per partition
+     */
+    public PartitionedExecutor(int partitionCount, int queueCapacity) {
+        if (partitionCount <= 0) {
+            throw new IllegalArgumentException("partitionCount must be positive");
+        }
+        ThreadFactory threadFactory = newThreadFactory("frugal-partition-" + POOL_COUNT.incrementAndGet() + "-");
+        partitions = new ThreadPoolExecutor[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new ThreadPoolExecutor(
+                    1, 1, 30, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    threadFactory,
+                    new BlockingRejectedExecutionHandler());
+            partitions[i].allowCoreThreadTimeOut(true);
+        }
+    }
+
+    /**
+     * Executes the task on the partition for the given key, blocking while the partition's queue is full.
+     *
+     * @param key  partition key, tasks with equal keys are executed in order
+     * @param task task to execute
+     * @throws RejectedExecutionException if the executor has been shut down or the caller is interrupted
+     */
+    public void execute(Object key, Runnable task) {
+        ThreadPoolExecutor partition = partitions[getPartition(key)];
+        if (partition.isShutdown()) {
+            throw new RejectedExecutionException("executor has been shut down");
+        }
+        partition.execute(task);
+    }
+
+    /**
+     * Returns the partition tasks with the given key are executed on.
+     *
+     * @param key partition key
+     * @return partition index
+     */
+    public int getPartition(Object key) {
+        return key == null ? 0 : Math.floorMod(key.hashCode(), partitions.length);
+    }
+
+    /**
+     * Returns the number of partitions.
+     *
+     * @return partition count
+     */
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * Returns the number of tasks waiting to execute across all partitions.
+     *
+     * @return queued task count
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ThreadPoolExecutor partition : partitions) {
+            depth += partition.getQueue().size();
+        }
+        return depth;
+    }
+
+    /**
+     * Returns the number of tasks waiting to execute on the given partition.
+     *
+     * @param partition partition index
+     * @return queued task count
+     */
+    public int getQueueDepth(int partition) {
+        return partitions[partition].getQueue().size();
+    }
+
+    /**
+     * Stops accepting tasks. Queued tasks are still executed.
+     */
+    public void shutdown() {
+        for (ThreadPoolExecutor partition : partitions) {
+            partition.shutdown();
+        }
+    }
+
+    /**
+     * Blocks until all tasks have completed after a shutdown, or the timeout elapses.
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of the timeout
+     * @return true if all partitions terminated, false if the timeout elapsed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ThreadPoolExecutor partition : partitions) {
+            if (!partition.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ThreadFactory newThreadFactory(String prefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
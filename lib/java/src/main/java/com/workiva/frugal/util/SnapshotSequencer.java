@@ -0,0 +1,120 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * SnapshotSequencer merges a snapshot of a topic with the messages received live while the snapshot was requested.
+ * Live frames are held back until the snapshot is complete. The snapshot is then delivered, followed by the held
+ * back frames with a higher sequence number than the snapshot, and later frames are passed straight through.
+ * Frames without a sequence number are never discarded. At most a maximum number of frames are held back; once more
+ * arrive before the snapshot, the snapshot is abandoned and the held back frames are delivered without it. This class
+ * is thread-safe, and frames are delivered to the consumer one at a time, in order.
+ */
+public class SnapshotSequencer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotSequencer.class);
+
+    public static final int DEFAULT_MAX_HELD = 1024;
+
+    private final ToLongFunction<byte[]> sequenceOf;
+    private final Consumer<byte[]> consumer;
+    private final int maxHeld;
+
+    // Frames received before the snapshot completed, or null once it has. Guarded by this.
+    private List<byte[]> held = new ArrayList<>();
+
+    /**
+     * Creates a new SnapshotSequencer holding back at most 1024 frames.
+     *
+     * @param sequenceOf returns the sequence number of a frame, or a negative number if it has none
+     * @param consumer   consumer frames are delivered to
+     */
+    public SnapshotSequencer(ToLongFunction<byte[]> sequenceOf, Consumer<byte[]> consumer) {
+        this(sequenceOf, consumer, DEFAULT_MAX_HELD);
+    }
+
+    /**
+     * Creates a new SnapshotSequencer.
+     *
+     * @param sequenceOf returns the sequence number of a frame, or a negative number if it has none
+     * @param consumer   consumer frames are delivered to
+     * @param maxHeld    maximum number of frames held back before the snapshot is abandoned
+     */
+    public SnapshotSequencer(ToLongFunction<byte[]> sequenceOf, Consumer<byte[]> consumer, int maxHeld) {
+        if (maxHeld <= 0) {
+            throw new IllegalArgumentException("maxHeld must be positive");
+        }
+        this.sequenceOf = sequenceOf;
+        this.consumer = consumer;
+        this.maxHeld = maxHeld;
+    }
+
+    /**
+     * Delivers a live frame, or holds it back if the snapshot is not complete yet. If the maximum number of frames is
+     * already held back, the snapshot is abandoned and the held back frames are delivered, followed by this one.
+     *
+     * @param frame live frame
+     */
+    public synchronized void offer(byte[] frame) {
+        if (held != null && held.size() >= maxHeld) {
+            LOGGER.warn("abandoning snapshot, more than {} frames received while waiting for it", maxHeld);
+            complete(null);
+        }
+        if (held != null) {
+            held.add(frame);
+            return;
+        }
+        consumer.accept(frame);
+    }
+
+    /**
+     * Completes the snapshot, delivering it and the held back frames newer than it. Subsequent calls do nothing.
+     *
+     * @param snapshot snapshot frame, or null if no snapshot is available
+     */
+    public synchronized void complete(byte[] snapshot) {
+        if (held == null) {
+            return;
+        }
+        long snapshotSequence = -1;
+        if (snapshot != null) {
+            snapshotSequence = sequenceOf.applyAsLong(snapshot);
+            consumer.accept(snapshot);
+        }
+        for (byte[] frame : held) {
+            long sequence = sequenceOf.applyAsLong(frame);
+            if (sequence < 0 || sequence > snapshotSequence) {
+                consumer.accept(frame);
+            }
+        }
+        held = null;
+    }
+
+    /**
+     * Returns whether the snapshot is complete.
+     *
+     * @return true if live frames are passed straight through
+     */
+    public synchronized boolean isComplete() {
+        return held == null;
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A precompiled pub/sub topic consisting of literal segments separated by variables, used by generated code to build
+ * topics without parsing a format string on every publish. Topics without variables are built once. Topics with a
+ * single variable are cached for the most recently used values, since publishers typically publish repeatedly to a
+ * small set of prefix values; the least recently used topic is evicted once the cache is full. This class is
+ * thread-safe.
+ */
+public class TopicTemplate {
+
+    public static final int DEFAULT_CACHE_SIZE = 256;
+
+    private final String[] segments;
+    private final int literalLength;
+    private final String constant;
+    // Access-ordered, so the eldest entry is the least recently used. Guarded by itself.
+    private final Map<String, String> cache;
+
+    /**
+     * Creates a TopicTemplate with the default cache size.
+     *
+     * @param segments literal segments of the topic, one more than the number of variables
+     */
+    public TopicTemplate(String... segments) {
+        this(DEFAULT_CACHE_SIZE, segments);
+    }
+
+    /**
+     * Creates a TopicTemplate.
+     *
+     * @param cacheSize maximum number of topics cached for single-variable templates, 0 to disable caching
+     * @param segments  literal segments of the topic, one more than the number of variables
+     */
+    public TopicTemplate(int cacheSize, String... segments) {
+        if (segments.length == 0) {
+            throw new IllegalArgumentException("topic template requires at least one segment");
+        }
+        this.segments = segments.clone();
+        int length = 0;
+        for (String segment : segments) {
+            length += segment.length();
+        }
+        this.literalLength = length;
+        this.constant = segments.length == 1 ? segments[0] : null;
+        this.cache = segments.length == 2 && cacheSize > 0 ? new LruCache(cacheSize) : null;
+    }
+
+    /**
+     * Returns the number of variables in the topic.
+     *
+     * @return variable count
+     */
+    public int getVariableCount() {
+        return segments.length - 1;
+    }
+
+    /**
+     * Builds the topic of a template without variables.
+     *
+     * @return topic
+     */
+    public String format() {
+        if (constant == null) {
+            throw new IllegalArgumentException("expected " + getVariableCount() + " topic variables, got 0");
+        }
+        return constant;
+    }
+
+    /**
+     * Builds the topic of a template with a single variable.
+     *
+     * @param value variable value
+     * @return topic
+     */
+    public String format(String value) {
+        if (segments.length != 2) {
+            throw new IllegalArgumentException("expected " + getVariableCount() + " topic variables, got 1");
+        }
+        if (cache == null || value == null) {
+            return build(value);
+        }
+        synchronized (cache) {
+            String topic = cache.get(value);
+            if (topic == null) {
+                topic = build(value);
+                cache.put(value, topic);
+            }
+            return topic;
+        }
+    }
+
+    /**
+     * Builds the topic from the given variable values.
+     *
+     * @param values variable values, in order
+     * @return topic
+     */
+    public String format(String... values) {
+        if (values.length != segments.length - 1) {
+            throw new IllegalArgumentException(
+                    "expected " + getVariableCount() + " topic variables, got " + values.length);
+        }
+        switch (values.length) {
+            case 0:
+                return constant;
+            case 1:
+                return format(values[0]);
+            default:
+                return build(values);
+        }
+    }
+
+    private String build(String... values) {
+        int length = literalLength;
+        for (String value : values) {
+            length += value == null ? 4 : value.length();
+        }
+        StringBuilder topic = new StringBuilder(length).append(segments[0]);
+        for (int i = 0; i < values.length; i++) {
+            topic.append(values[i]).append(segments[i + 1]);
+        }
+        return topic.toString();
+    }
+
+    private static class LruCache extends LinkedHashMap<String, String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxSize;
+
+        LruCache(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxSize;
+        }
+    }
+}
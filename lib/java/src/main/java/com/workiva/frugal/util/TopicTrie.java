@@ -0,0 +1,144 @@
+/*
+ * Copyright 2017 Workiva
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.workiva.frugal.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A trie of dot-separated topic patterns, used to find the values registered for patterns matching a topic. Patterns
+ * use NATS wildcard syntax: a <code>*</code> token matches any single token, and a trailing <code>&gt;</code> token
+ * matches one or more tokens. Matching a topic costs time proportional to its number of tokens rather than the
+ * number of registered patterns. This class is not thread-safe.
+ *
+ * @param <V> type of the registered values
+ */
+public class TopicTrie<V> {
+
+    private static final String SINGLE_WILDCARD = "*";
+    private static final String MULTI_WILDCARD = ">";
+
+    private final Node<V> root = new Node<>();
+    private int size;
+
+    /**
+     * Registers a value for the given pattern. A value may be registered more than once.
+     *
+     * @param pattern topic pattern
+     * @param value   value to register
+     */
+    public void add(String pattern, V value) {
+        String[] tokens = tokenize(pattern);
+        for (int i = 0; i < tokens.length - 1; i++) {
+            if (MULTI_WILDCARD.equals(tokens[i])) {
+                throw new IllegalArgumentException("'>' must be the last token of pattern " + pattern);
+            }
+        }
+        Node<V> node = root;
+        for (String token : tokens) {
+            node = node.children.computeIfAbsent(token, t -> new Node<>());
+        }
+        node.values.add(value);
+        size++;
+    }
+
+    /**
+     * Removes one registration of a value for the given pattern.
+     *
+     * @param pattern topic pattern
+     * @param value   value to remove
+     * @return true if the value was registered for the pattern
+     */
+    public boolean remove(String pattern, V value) {
+        String[] tokens = tokenize(pattern);
+        List<Node<V>> path = new ArrayList<>(tokens.length + 1);
+        Node<V> node = root;
+        path.add(node);
+        for (String token : tokens) {
+            node = node.children.get(token);
+            if (node == null) {
+                return false;
+            }
+            path.add(node);
+        }
+        if (!node.values.remove(value)) {
+            return false;
+        }
+        size--;
+        // Prune nodes left without values or children.
+        for (int i = tokens.length; i > 0 && path.get(i).isEmpty(); i--) {
+            path.get(i - 1).children.remove(tokens[i - 1]);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the values registered for every pattern matching the given topic.
+     *
+     * @param topic topic, without wildcards
+     * @return matching values, empty if none match
+     */
+    public List<V> match(String topic) {
+        List<V> matches = new ArrayList<>();
+        match(root, tokenize(topic), 0, matches);
+        return matches;
+    }
+
+    /**
+     * Returns the number of registered values.
+     *
+     * @return registration count
+     */
+    public int size() {
+        return size;
+    }
+
+    private void match(Node<V> node, String[] tokens, int index, List<V> matches) {
+        if (index == tokens.length) {
+            matches.addAll(node.values);
+            return;
+        }
+        String token = tokens[index];
+        Node<V> child = node.children.get(token);
+        if (child != null) {
+            match(child, tokens, index + 1, matches);
+        }
+        child = SINGLE_WILDCARD.equals(token) ? null : node.children.get(SINGLE_WILDCARD);
+        if (child != null) {
+            match(child, tokens, index + 1, matches);
+        }
+        child = MULTI_WILDCARD.equals(token) ? null : node.children.get(MULTI_WILDCARD);
+        if (child != null) {
+            matches.addAll(child.values);
+        }
+    }
+
+    private static String[] tokenize(String topic) {
+        if (topic == null || topic.isEmpty()) {
+            throw new IllegalArgumentException("topic cannot be empty");
+        }
+        return topic.split("\\.", -1);
+    }
+
+    private static class Node<V> {
+        final Map<String, Node<V>> children = new HashMap<>();
+        final List<V> values = new ArrayList<>(1);
+
+        boolean isEmpty() {
+            return children.isEmpty() && values.isEmpty();
+        }
+    }
+}
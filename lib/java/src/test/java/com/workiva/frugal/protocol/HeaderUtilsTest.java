@@ -1,5 +1,6 @@
 package com.workiva.frugal.protocol;
 
+import com.workiva.frugal.util.ProtocolUtils;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TProtocolException;
 import org.apache.thrift.transport.TMemoryInputTransport;
@@ -10,9 +11,11 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -118,4 +121,33 @@ public class HeaderUtilsTest {
         HeaderUtils.decodeFromFrame(new byte[]{1, 0, 0, 0, 0});
     }
 
+    @Test
+    public void testAddHeadersToFrame() throws TException {
+        byte[] body = new byte[]{1, 2, 3};
+        byte[] encoded = HeaderUtils.encode(HEADERS);
+        byte[] framed = new byte[4 + encoded.length + body.length];
+        ProtocolUtils.writeInt(framed.length - 4, framed, 0);
+        System.arraycopy(encoded, 0, framed, 4, encoded.length);
+        System.arraycopy(body, 0, framed, 4 + encoded.length, body.length);
+
+        Map<String, String> added = new HashMap<>();
+        added.put("foo", "qux");
+        added.put("new", "header");
+        byte[] patched = HeaderUtils.addHeadersToFrame(framed, added);
+
+        Map<String, String> expected = new HashMap<>(HEADERS);
+        expected.putAll(added);
+        assertEquals(expected, HeaderUtils.decodeFromFrame(patched, 4));
+        assertEquals(patched.length - 4, ProtocolUtils.readInt(patched, 0));
+        int bodyOffset = HeaderUtils.getBodyOffset(patched);
+        assertArrayEquals(body, Arrays.copyOfRange(patched, bodyOffset, patched.length));
+    }
+
+    @Test
+    public void testDecodeFromFrameWithOffset() throws TException {
+        byte[] framed = new byte[LIST.length + 4];
+        System.arraycopy(LIST, 0, framed, 4, LIST.length);
+
+        assertEquals(HEADERS, HeaderUtils.decodeFromFrame(framed, 4));
+    }
 }
@@ -0,0 +1,325 @@
+package com.workiva.frugal.server;
+
+import com.workiva.frugal.processor.FProcessor;
+import com.workiva.frugal.protocol.FProtocol;
+import com.workiva.frugal.protocol.FProtocolFactory;
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.HttpContentEncoding;
+import com.workiva.frugal.util.HttpTransferEncoding;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link FAsyncServlet}.
+ */
+@RunWith(JUnit4.class)
+public class FAsyncServletTest {
+
+    /**
+     * Delivers the whole body to the read listener, a few bytes at a time.
+     */
+    private static class AsyncServletInputStream extends ServletInputStream {
+        private final ByteArrayInputStream in;
+        private boolean ready;
+
+        AsyncServletInputStream(byte[] body) {
+            this.in = new ByteArrayInputStream(body);
+        }
+
+        @Override
+        public int read() throws IOException {
+            return in.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // Run dry after each read, like a slow client.
+            ready = false;
+            return in.read(b, off, Math.min(len, 3));
+        }
+
+        @Override
+        public boolean isFinished() {
+            return in.available() == 0;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            try {
+                while (!isFinished()) {
+                    ready = true;
+                    readListener.onDataAvailable();
+                    if (ready) {
+                        // The listener stopped reading.
+                        return;
+                    }
+                }
+                readListener.onAllDataRead();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Accepts one write at a time from the write listener, until it stops writing.
+     */
+    private static class AsyncServletOutputStream extends ServletOutputStream {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private boolean ready;
+        private int writes;
+
+        @Override
+        public void write(int b) {
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ready = false;
+            writes++;
+            out.write(b, off, len);
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            try {
+                do {
+                    ready = true;
+                    writeListener.onWritePossible();
+                } while (!ready);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private final FProcessor mockProcessor = mock(FProcessor.class);
+    private final FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final Executor queue = tasks::add;
+
+    private final HttpServletRequest mockRequest = mock(HttpServletRequest.class);
+    private final HttpServletResponse mockResponse = mock(HttpServletResponse.class);
+    private final AsyncContext mockAsync = mock(AsyncContext.class);
+    private final AsyncServletOutputStream out = new AsyncServletOutputStream();
+
+    @Before
+    public void before() throws Exception {
+        doReturn(mockAsync).when(mockRequest).startAsync();
+        doReturn(out).when(mockResponse).getOutputStream();
+
+        // Echo the request.
+        doAnswer(invocation -> {
+            FProtocol inProtocol = invocation.getArgument(0);
+            FProtocol outProtocol = invocation.getArgument(1);
+            outProtocol.getTransport().write(((TMemoryInputTransport) inProtocol.getTransport()).getBuffer());
+            return null;
+        }).when(mockProcessor).process(any(), any());
+    }
+
+    private void post(byte[] body) throws Exception {
+        doReturn(new AsyncServletInputStream(body)).when(mockRequest).getInputStream();
+        doReturn("POST").when(mockRequest).getMethod();
+        doReturn("HTTP/1.1").when(mockRequest).getProtocol();
+        new FAsyncServlet(mockProcessor, protocolFactory, Runnable::run).service(mockRequest, mockResponse);
+    }
+
+    private static byte[] withLength(byte[] b) {
+        return ByteBuffer.allocate(4 + b.length)
+                .putInt(b.length)
+                .put(b)
+                .array();
+    }
+
+    @Test
+    public void testOk() throws Exception {
+        byte[] request = withLength(new byte[100000]);
+        post(Base64.getEncoder().encode(request));
+
+        verify(mockAsync).setTimeout(0);
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "base64");
+        verify(mockResponse, never()).setStatus(any(Integer.class));
+        verify(mockAsync).complete();
+        assertThat(Base64.getDecoder().decode(out.out.toByteArray()), equalTo(request));
+        assertThat(out.writes > 1, equalTo(true));
+    }
+
+    @Test
+    public void testBinaryTransferEncoding() throws Exception {
+        byte[] request = withLength(new byte[]{1, 2, 3});
+        doReturn(HttpTransferEncoding.BINARY).when(mockRequest)
+                .getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER);
+        post(request);
+
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "binary");
+        verify(mockResponse).setContentLength(request.length);
+        verify(mockAsync).complete();
+        assertThat(out.out.toByteArray(), equalTo(request));
+    }
+
+    @Test
+    public void testContentEncoding() throws Exception {
+        byte[] request = withLength(new byte[100000]);
+        doReturn("gzip").when(mockRequest).getHeader("content-encoding");
+        doReturn("gzip").when(mockRequest).getHeader("accept-encoding");
+        doReturn(new AsyncServletInputStream(HttpContentEncoding.encode(Base64.getEncoder().encode(request), "gzip")))
+                .when(mockRequest).getInputStream();
+        FAsyncServlet servlet = new FAsyncServlet(mockProcessor, protocolFactory, Runnable::run);
+        servlet.setContentEncodingThreshold(0);
+        servlet.doPost(mockRequest, mockResponse);
+
+        verify(mockResponse).setHeader("Content-Encoding", "gzip");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "base64");
+        verify(mockResponse, never()).setStatus(any(Integer.class));
+        verify(mockAsync).complete();
+        byte[] body = HttpContentEncoding.decode(out.out.toByteArray(), "gzip", 200000);
+        assertThat(Base64.getDecoder().decode(body), equalTo(request));
+    }
+
+    @Test
+    public void testInputTooLong() throws Exception {
+        post(Base64.getEncoder().encode(new byte[5]));
+
+        verify(mockResponse).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        verify(mockAsync).complete();
+        verify(mockProcessor, never()).process(any(), any());
+    }
+
+    @Test
+    public void testBodyTooLarge() throws Exception {
+        doReturn(new AsyncServletInputStream(new byte[100])).when(mockRequest).getInputStream();
+        FAsyncServlet servlet = new FAsyncServlet(
+                mockProcessor, protocolFactory, protocolFactory, 1, null, Runnable::run);
+        servlet.doPost(mockRequest, mockResponse);
+
+        verify(mockResponse).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        verify(mockAsync).complete();
+        verify(mockProcessor, never()).process(any(), any());
+    }
+
+    @Test
+    public void testFrameSizeTooLarge() throws Exception {
+        // Only the frame size is sent, which is rejected before the frame is read.
+        doReturn(HttpTransferEncoding.BINARY).when(mockRequest)
+                .getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER);
+        doReturn(new AsyncServletInputStream(ByteBuffer.allocate(4).putInt(10).array()))
+                .when(mockRequest).getInputStream();
+        FAsyncServlet servlet = new FAsyncServlet(
+                mockProcessor, protocolFactory, protocolFactory, 9, null, Runnable::run);
+        servlet.doPost(mockRequest, mockResponse);
+
+        verify(mockResponse).setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+        verify(mockAsync).complete();
+        verify(mockProcessor, never()).process(any(), any());
+    }
+
+    @Test
+    public void testBinaryInputTooShort() throws Exception {
+        doReturn(HttpTransferEncoding.BINARY).when(mockRequest)
+                .getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER);
+        post(Arrays.copyOf(withLength(new byte[10]), 10));
+
+        verify(mockResponse).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        verify(mockAsync).complete();
+        verify(mockProcessor, never()).process(any(), any());
+    }
+
+    @Test
+    public void testProcessOnExecutor() throws Exception {
+        byte[] request = withLength(new byte[]{1});
+        doReturn(new AsyncServletInputStream(Base64.getEncoder().encode(request))).when(mockRequest).getInputStream();
+        new FAsyncServlet(mockProcessor, protocolFactory, queue).doPost(mockRequest, mockResponse);
+
+        verify(mockProcessor, never()).process(any(), any());
+        verify(mockAsync, never()).complete();
+
+        tasks.remove(0).run();
+        verify(mockAsync).complete();
+        assertThat(Base64.getDecoder().decode(out.out.toByteArray()), equalTo(request));
+    }
+
+    @Test
+    public void testDeadlineExpired() throws Exception {
+        byte[] request = withLength(HeaderUtils.encode(Collections.singletonMap("_timeout", "1")));
+        doReturn(new AsyncServletInputStream(Base64.getEncoder().encode(request))).when(mockRequest).getInputStream();
+        new FAsyncServlet(mockProcessor, protocolFactory, queue).doPost(mockRequest, mockResponse);
+
+        Thread.sleep(10);
+        tasks.remove(0).run();
+        verify(mockResponse).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        verify(mockAsync).complete();
+        verify(mockProcessor, never()).process(any(), any());
+    }
+
+    @Test
+    public void testRequestSpillingIgnored() throws Exception {
+        byte[] request = withLength(new byte[]{1, 2, 3});
+        doReturn(new AsyncServletInputStream(Base64.getEncoder().encode(request))).when(mockRequest).getInputStream();
+        FServlet servlet = new FAsyncServlet(mockProcessor, protocolFactory, Runnable::run);
+        servlet.setRequestSpilling(0, 0, 0, null);
+        servlet.doPost(mockRequest, mockResponse);
+
+        verify(mockResponse, never()).setStatus(any(Integer.class));
+        verify(mockAsync).complete();
+        assertThat(Base64.getDecoder().decode(out.out.toByteArray()), equalTo(request));
+    }
+
+    @Test
+    public void testExecutorRejected() throws Exception {
+        byte[] request = withLength(new byte[]{1});
+        doReturn(new AsyncServletInputStream(Base64.getEncoder().encode(request))).when(mockRequest).getInputStream();
+        Executor rejecting = task -> {
+            throw new RejectedExecutionException("full");
+        };
+        new FAsyncServlet(mockProcessor, protocolFactory, rejecting).doPost(mockRequest, mockResponse);
+
+        verify(mockResponse).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        verify(mockAsync).complete();
+    }
+}
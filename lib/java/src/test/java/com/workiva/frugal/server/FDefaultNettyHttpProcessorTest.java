@@ -1,8 +1,16 @@
 package com.workiva.frugal.server;
 
+import com.workiva.frugal.FContext;
 import com.workiva.frugal.processor.FProcessor;
+import com.workiva.frugal.protocol.FProtocol;
 import com.workiva.frugal.protocol.FProtocolFactory;
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.HttpBatch;
+import com.workiva.frugal.util.HttpContentEncoding;
+import com.workiva.frugal.util.HttpTransferEncoding;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
@@ -10,6 +18,7 @@ import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpUtil;
 import org.apache.commons.codec.binary.Base64;
 import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -17,16 +26,28 @@ import org.junit.rules.ExpectedException;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
-
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static io.netty.handler.codec.http.HttpHeaderNames.ACCEPT_ENCODING;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_ENCODING;
+import static io.netty.handler.codec.http.HttpHeaderNames.CONTENT_TRANSFER_ENCODING;
+import static io.netty.handler.codec.http.HttpHeaderNames.VARY;
 import static io.netty.handler.codec.http.HttpResponseStatus.BAD_REQUEST;
 import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
 import static io.netty.handler.codec.http.HttpResponseStatus.OK;
 import static io.netty.handler.codec.http.HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+import static io.netty.handler.codec.http.HttpResponseStatus.UNSUPPORTED_MEDIA_TYPE;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -180,4 +201,222 @@ public class FDefaultNettyHttpProcessorTest {
         FullHttpResponse response = spyProcessor.process(mockRequest);
         assertThat(response.status(), equalTo(OK));
     }
+
+    @Test
+    public final void testBinaryTransferEncoding() throws IOException, TException {
+        byte[] requestBody = "request_body".getBytes();
+        byte[] bytes = ByteBuffer.allocate(4 + requestBody.length)
+                .putInt(requestBody.length)
+                .put(requestBody)
+                .array();
+        doReturn(Unpooled.copiedBuffer(bytes)).when(mockRequest).content();
+        doReturn(HttpTransferEncoding.BINARY).when(mockRequestHeaders).get(CONTENT_TRANSFER_ENCODING);
+
+        FDefaultNettyHttpProcessor spyProcessor = spy(httpProcessor);
+        ByteBuf outputBytes = Unpooled.copiedBuffer("response_body".getBytes());
+        doReturn(outputBytes).when(spyProcessor).processFrame(any(ByteBuf.class), eq(true), eq(true));
+
+        FullHttpResponse response = spyProcessor.process(mockRequest);
+        assertThat(response.status(), equalTo(OK));
+        assertThat(response.headers().get(CONTENT_TRANSFER_ENCODING), equalTo(HttpTransferEncoding.BINARY));
+        assertThat(response.content(), equalTo(outputBytes));
+    }
+
+    @Test
+    public final void testContentEncoding() throws IOException, TException {
+        byte[] requestBody = "request_body".getBytes();
+        byte[] bytes = ByteBuffer.allocate(4 + requestBody.length)
+                .putInt(requestBody.length)
+                .put(requestBody)
+                .array();
+        doReturn(Unpooled.wrappedBuffer(HttpContentEncoding.encode(bytes, "gzip"))).when(mockRequest).content();
+        doReturn(HttpTransferEncoding.BINARY).when(mockRequestHeaders).get(CONTENT_TRANSFER_ENCODING);
+        doReturn("gzip").when(mockRequestHeaders).get(CONTENT_ENCODING);
+        doReturn("deflate").when(mockRequestHeaders).get(ACCEPT_ENCODING);
+
+        // The processor receives the decompressed frame.
+        FDefaultNettyHttpProcessor spyProcessor = spy(httpProcessor);
+        byte[] responseBody = "response_body".getBytes();
+        doAnswer(invocation -> {
+            assertThat(ByteBufUtil.getBytes(invocation.getArgument(0)), equalTo(bytes));
+            return Unpooled.wrappedBuffer(responseBody);
+        }).when(spyProcessor).processFrame(any(ByteBuf.class), eq(true), eq(true));
+        spyProcessor.setContentEncodingThreshold(responseBody.length);
+
+        FullHttpResponse response = spyProcessor.process(mockRequest);
+        assertThat(response.status(), equalTo(OK));
+        assertThat(response.headers().get(VARY), equalTo("accept-encoding"));
+        assertThat(response.headers().get(ACCEPT_ENCODING), equalTo("gzip, deflate"));
+        assertThat(response.headers().get(CONTENT_ENCODING), equalTo("deflate"));
+        byte[] content = ByteBufUtil.getBytes(response.content());
+        assertThat(HttpUtil.getContentLength(response), equalTo((long) content.length));
+        assertThat(HttpContentEncoding.decode(content, "deflate", 1024), equalTo(responseBody));
+    }
+
+    @Test
+    public final void testUnsupportedContentEncoding() {
+        doReturn(Unpooled.copiedBuffer("request_body".getBytes())).when(mockRequest).content();
+        doReturn("br").when(mockRequestHeaders).get(CONTENT_ENCODING);
+
+        FullHttpResponse response = httpProcessor.process(mockRequest);
+        assertThat(response.status(), equalTo(UNSUPPORTED_MEDIA_TYPE));
+    }
+
+    @Test
+    public final void testInvalidContentEncoding() {
+        doReturn(Unpooled.copiedBuffer("request_body".getBytes())).when(mockRequest).content();
+        doReturn("gzip").when(mockRequestHeaders).get(CONTENT_ENCODING);
+
+        FullHttpResponse response = httpProcessor.process(mockRequest);
+        assertThat(response.status(), equalTo(BAD_REQUEST));
+    }
+
+    @Test
+    public final void testProcessBinaryFrame() throws TException, IOException {
+        byte[] requestBody = "request_body".getBytes();
+        byte[] bytes = ByteBuffer.allocate(4 + requestBody.length)
+                .putInt(requestBody.length)
+                .put(requestBody)
+                .array();
+
+        // The output is an empty frame, not base64 encoded.
+        ByteBuf outputBytes = httpProcessor.processFrame(Unpooled.copiedBuffer(bytes), true, true);
+        assertThat(outputBytes, equalTo(Unpooled.wrappedBuffer(new byte[4])));
+
+        thrown.expect(IOException.class);
+        httpProcessor.processFrame(Unpooled.copiedBuffer(Base64.encodeBase64(bytes)), true, true);
+    }
+
+    @Test
+    public final void testProcessFramePooled() throws TException, IOException {
+        FProcessor echo = mock(FProcessor.class);
+        doAnswer(invocation -> {
+            FProtocol in = invocation.getArgument(0);
+            FProtocol out = invocation.getArgument(1);
+            byte[] body = new byte[5];
+            in.getTransport().readAll(body, 0, body.length);
+            out.getTransport().write(body);
+            return null;
+        }).when(echo).process(any(), any());
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        FDefaultNettyHttpProcessor echoProcessor = FDefaultNettyHttpProcessor.of(echo, protocolFactory);
+        byte[] frame = new byte[]{0, 0, 0, 5, 1, 2, 3, 4, 5};
+
+        ByteBuf input = PooledByteBufAllocator.DEFAULT.buffer().writeBytes(Base64.encodeBase64(frame));
+        ByteBuf output = echoProcessor.processFrame(input);
+        assertThat(output.alloc(), equalTo(PooledByteBufAllocator.DEFAULT));
+        assertThat(Base64.decodeBase64(ByteBufUtil.getBytes(output)), equalTo(frame));
+        assertThat(output.release(), equalTo(true));
+        assertThat(input.refCnt(), equalTo(1));
+        input.release();
+
+        input = PooledByteBufAllocator.DEFAULT.buffer().writeBytes(frame);
+        output = echoProcessor.processFrame(input, true, true);
+        assertThat(ByteBufUtil.getBytes(output), equalTo(frame));
+        assertThat(output.release(), equalTo(true));
+        assertThat(input.release(), equalTo(true));
+    }
+
+    private static FDefaultNettyHttpProcessor doublingProcessor() throws TException {
+        // Read one byte and write it twice, nothing for a zero byte.
+        FProcessor doubling = mock(FProcessor.class);
+        doAnswer(invocation -> {
+            FProtocol in = invocation.getArgument(0);
+            FProtocol out = invocation.getArgument(1);
+            byte[] body = new byte[1];
+            in.getTransport().readAll(body, 0, 1);
+            if (body[0] != 0) {
+                out.getTransport().write(new byte[]{body[0], body[0]});
+            }
+            return null;
+        }).when(doubling).process(any(), any());
+        return FDefaultNettyHttpProcessor.of(doubling, new FProtocolFactory(new TBinaryProtocol.Factory()));
+    }
+
+    @Test
+    public void testProcessBatch() throws Exception {
+        FDefaultNettyHttpProcessor batchProcessor = doublingProcessor();
+        byte[] batch = new byte[]{0, 0, 0, 1, 7, 0, 0, 0, 1, 0, 0, 0, 0, 1, 9};
+        byte[] expected = new byte[]{0, 0, 0, 2, 7, 7, 0, 0, 0, 2, 9, 9};
+
+        ByteBuf input = PooledByteBufAllocator.DEFAULT.buffer().writeBytes(batch);
+        ByteBuf output = batchProcessor.processBatch(input, true, true, 0, new HashMap<>());
+        assertThat(ByteBufUtil.getBytes(output), equalTo(expected));
+        assertThat(output.release(), equalTo(true));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            batchProcessor.setBatchExecutor(executor);
+            output = batchProcessor.processBatch(input, true, false, 0, new HashMap<>());
+            assertThat(Base64.decodeBase64(ByteBufUtil.getBytes(output)), equalTo(expected));
+            assertThat(output.release(), equalTo(true));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(input.release(), equalTo(true));
+    }
+
+    @Test
+    public void testProcessBatchTooLarge() throws Exception {
+        FDefaultNettyHttpProcessor batchProcessor = doublingProcessor();
+        ByteBuf body = Unpooled.copiedBuffer(Base64.encodeBase64(new byte[]{0, 0, 0, 1, 7, 0, 0, 0, 1, 9}));
+        doReturn(body).when(mockRequest).content();
+        doReturn("true").when(mockRequestHeaders).get(HttpBatch.BATCH_HEADER);
+        doReturn("5").when(mockRequestHeaders).get("x-frugal-payload-limit");
+
+        FullHttpResponse response = batchProcessor.process(mockRequest);
+        assertThat(response.status(), equalTo(REQUEST_ENTITY_TOO_LARGE));
+    }
+
+    // The response headers of the frame are the same size as its request headers.
+    private static byte[] opIdFrame(String opId) throws TException {
+        Map<String, String> requestHeaders = new HashMap<>();
+        requestHeaders.put(FContext.OPID_HEADER, opId);
+        requestHeaders.put(FContext.CID_HEADER, "cid");
+        byte[] headers = HeaderUtils.encode(requestHeaders);
+        return ByteBuffer.allocate(4 + headers.length).putInt(headers.length).put(headers).array();
+    }
+
+    @Test
+    public void testProcessBatchFrameFailed() throws Exception {
+        // Answer with the response headers, except for op id 2, which fails.
+        FProcessor failing = mock(FProcessor.class);
+        doAnswer(invocation -> {
+            FProtocol in = invocation.getArgument(0);
+            FProtocol out = invocation.getArgument(1);
+            FContext context = in.readRequestHeader();
+            if ("2".equals(context.getResponseHeader(FContext.OPID_HEADER))) {
+                throw new TException("failed");
+            }
+            out.writeResponseHeader(context);
+            return null;
+        }).when(failing).process(any(), any());
+        FDefaultNettyHttpProcessor batchProcessor =
+                FDefaultNettyHttpProcessor.of(failing, new FProtocolFactory(new TBinaryProtocol.Factory()));
+        ByteBuf input = Unpooled.copiedBuffer(opIdFrame("1"), opIdFrame("2"), opIdFrame("3"));
+
+        Map<String, Integer> statuses = new HashMap<>();
+        ByteBuf output = batchProcessor.processBatch(input, true, true, 0, statuses);
+        assertThat(statuses, equalTo(Collections.singletonMap("2", INTERNAL_SERVER_ERROR.code())));
+        assertThat(HttpBatch.split(ByteBufUtil.getBytes(output)).size(), equalTo(2));
+        output.release();
+
+        // The second response would take the batch over the limit.
+        statuses.clear();
+        output = batchProcessor.processBatch(input, true, true, opIdFrame("1").length + 1, statuses);
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("2", INTERNAL_SERVER_ERROR.code());
+        expected.put("3", REQUEST_ENTITY_TOO_LARGE.code());
+        assertThat(statuses, equalTo(expected));
+        assertThat(HttpBatch.split(ByteBufUtil.getBytes(output)).size(), equalTo(1));
+        output.release();
+        input.release();
+    }
+
+    @Test
+    public void testProcessBatchTruncated() throws Exception {
+        thrown.expect(IOException.class);
+        ByteBuf input = Unpooled.copiedBuffer(new byte[]{0, 0, 0, 2, 7});
+        doublingProcessor().processBatch(input, true, true, 0, new HashMap<>());
+    }
 }
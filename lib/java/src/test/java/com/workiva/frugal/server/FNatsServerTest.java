@@ -4,6 +4,10 @@ import com.workiva.frugal.middleware.ServiceMiddleware;
 import com.workiva.frugal.processor.FProcessor;
 import com.workiva.frugal.protocol.FProtocol;
 import com.workiva.frugal.protocol.FProtocolFactory;
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.FrameCompressor;
+import com.workiva.frugal.util.FrameFragmenter;
+import com.workiva.frugal.util.ProtocolUtils;
 import io.nats.client.AsyncSubscription;
 import io.nats.client.Connection;
 import io.nats.client.Message;
@@ -19,17 +23,22 @@ import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 
+import static com.workiva.frugal.transport.FNatsTransport.NATS_MAX_MESSAGE_SIZE;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -131,6 +140,30 @@ public class FNatsServerTest {
         assertEquals(mockConn, request.conn);
     }
 
+    @Test
+    public void testRequestHandlerFragmented() throws TException {
+        ExecutorService executor = mock(ExecutorService.class);
+        FNatsServer server =
+                new FNatsServer.Builder(mockConn, mockProcessor, mockProtocolFactory, new String[]{subject})
+                        .withExecutorService(executor).withFragmentation(true).build();
+        MessageHandler handler = server.newRequestHandler();
+        String reply = "reply";
+        byte[] data = new byte[NATS_MAX_MESSAGE_SIZE + 100];
+        ProtocolUtils.writeInt(data.length - 4, data, 0);
+        List<byte[]> fragments = FrameFragmenter.fragment(data, NATS_MAX_MESSAGE_SIZE);
+        assertEquals(2, fragments.size());
+
+        handler.onMessage(new Message(subject, reply, fragments.get(0)));
+        verifyNoMoreInteractions(executor);
+        handler.onMessage(new Message(subject, reply, fragments.get(1)));
+
+        ArgumentCaptor<Runnable> captor = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).execute(captor.capture());
+        FNatsServer.Request request = (FNatsServer.Request) captor.getValue();
+        assertArrayEquals(data, request.frameBytes);
+        assertTrue(request.fragmentation);
+    }
+
     @Test
     public void testRequestHandler_noReply() {
         ExecutorService executor = mock(ExecutorService.class);
@@ -163,6 +196,37 @@ public class FNatsServerTest {
         verify(mockConn).publish(reply, expected);
     }
 
+    @Test
+    public void testRequestProcessCompressed() throws TException, IOException {
+        FrameCompressor compressor = new FrameCompressor(0);
+        byte[] headers = HeaderUtils.encode(Collections.emptyMap());
+        byte[] frame = new byte[4 + headers.length + 2048];
+        ProtocolUtils.writeInt(frame.length - 4, frame, 0);
+        System.arraycopy(headers, 0, frame, 4, headers.length);
+        byte[] data = compressor.compress(frame, true);
+
+        // Echo the decompressed request.
+        doAnswer(invocation -> {
+            FProtocol in = invocation.getArgument(0);
+            FProtocol out = invocation.getArgument(1);
+            out.getTransport().write(((TMemoryInputTransport) in.getTransport()).getBuffer());
+            return null;
+        }).when(mockProcessor).process(any(FProtocol.class), any(FProtocol.class));
+        mockProtocolFactory = new FProtocolFactory(new TJSONProtocol.Factory());
+        FNatsServer.Request request = new FNatsServer.Request(data, System.currentTimeMillis(), "reply", 5000,
+                mockProtocolFactory, mockProtocolFactory, mockProcessor, mockConn, false, compressor);
+
+        request.run();
+
+        ArgumentCaptor<byte[]> captor = ArgumentCaptor.forClass(byte[].class);
+        verify(mockConn).publish(eq("reply"), captor.capture());
+        byte[] response = Arrays.copyOfRange(captor.getValue(), 4, captor.getValue().length);
+        Map<String, String> responseHeaders = HeaderUtils.decodeFromFrame(response);
+        assertEquals(FrameCompressor.DEFLATE, responseHeaders.get(FrameCompressor.COMPRESSION_HEADER));
+        response = compressor.decompress(responseHeaders, response);
+        assertArrayEquals(new byte[2048], Arrays.copyOfRange(response, response.length - 2048, response.length));
+    }
+
     @Test
     public void testRequestProcessRuntimeException() throws TException, IOException {
         byte[] data = "xxxxhello".getBytes();
@@ -0,0 +1,216 @@
+package com.workiva.frugal.server;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.transport.FNettyHttpTransport;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link FNettyHttp2ServerInitializer}.
+ */
+@RunWith(JUnit4.class)
+public class FNettyHttp2ServerInitializerTest {
+
+    private static final String STREAM_ID = HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text().toString();
+
+    private final BlockingQueue<HttpHeaders> received = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> threads = new LinkedBlockingQueue<>();
+    private EventLoopGroup serverGroup;
+    private Channel server;
+    private int port;
+    private FNettyHttpTransport transport;
+
+    // Echoes request bodies, which are valid frames in the default base64 encoding.
+    private final FNettyHttpProcessor echo = request -> {
+        received.add(new DefaultHttpHeaders().add(request.headers()));
+        threads.add(Thread.currentThread().getName());
+        FullHttpResponse response = new DefaultFullHttpResponse(
+                HttpVersion.HTTP_1_1, HttpResponseStatus.OK, request.content().retain());
+        HttpUtil.setContentLength(response, response.content().readableBytes());
+        request.release();
+        return response;
+    };
+
+    @Before
+    public void setUp() {
+        serverGroup = new NioEventLoopGroup(1);
+    }
+
+    @After
+    public void tearDown() {
+        if (transport != null) {
+            transport.close();
+        }
+        if (server != null) {
+            server.close().syncUninterruptibly();
+        }
+        serverGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    private void start(FNettyHttp2ServerInitializer initializer) throws InterruptedException, TTransportException {
+        server = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(initializer)
+                .bind(0).sync().channel();
+        port = ((InetSocketAddress) server.localAddress()).getPort();
+        transport = new FNettyHttpTransport.Builder("http://localhost:" + port + "/frugal").build();
+    }
+
+    private static byte[] frame(int... body) {
+        byte[] frame = new byte[4 + body.length];
+        frame[3] = (byte) body.length;
+        for (int i = 0; i < body.length; i++) {
+            frame[4 + i] = (byte) body[i];
+        }
+        return frame;
+    }
+
+    private static byte[] read(TTransport response) throws TTransportException {
+        byte[] buff = new byte[response.getBytesRemainingInBuffer()];
+        response.readAll(buff, 0, buff.length);
+        return buff;
+    }
+
+    // Sends a raw HTTP/1.1 request and returns the response status line.
+    private String sendHttp1(String headers) throws Exception {
+        String body = "AAAAAQc=";
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(10000);
+            OutputStream out = socket.getOutputStream();
+            out.write(("POST /frugal HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/x-frugal\r\n"
+                    + "Content-Length: " + body.length() + "\r\n" + headers + "\r\n" + body)
+                    .getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            StringBuilder status = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1 && c != '\r') {
+                status.append((char) c);
+            }
+            return status.toString();
+        }
+    }
+
+    @Test
+    public void testPriorKnowledge() throws Exception {
+        start(new FNettyHttp2ServerInitializer.Builder(echo).build());
+        transport.open();
+
+        List<CompletableFuture<TTransport>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(transport.requestAsync(new FContext(), frame(i)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertArrayEquals(new byte[]{(byte) i}, read(futures.get(i).get(10, TimeUnit.SECONDS)));
+        }
+        assertTrue(received.take().contains(STREAM_ID));
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2, r -> new Thread(r, "frugal-worker"));
+        try {
+            start(new FNettyHttp2ServerInitializer.Builder(echo).withExecutor(executor, 16).build());
+            transport.open();
+            assertArrayEquals(new byte[]{1, 2}, read(transport.request(new FContext(), frame(1, 2))));
+            assertEquals("frugal-worker", threads.take());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMaxPending() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Reading pauses at each request and resumes as it is answered.
+            start(new FNettyHttp2ServerInitializer.Builder(echo).withExecutor(executor, 1).build());
+            transport.open();
+
+            List<CompletableFuture<TTransport>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                futures.add(transport.requestAsync(new FContext(), frame(i)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertArrayEquals(new byte[]{(byte) i}, read(futures.get(i).get(10, TimeUnit.SECONDS)));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testExecutorRejected() throws Exception {
+        start(new FNettyHttp2ServerInitializer.Builder(echo).withExecutor(command -> {
+            throw new RejectedExecutionException("full");
+        }, 16).build());
+        transport.open();
+        try {
+            transport.request(new FContext(), frame(1));
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertTrue(e.getMessage().contains("503"));
+        }
+    }
+
+    @Test
+    public void testHttp1() throws Exception {
+        start(new FNettyHttp2ServerInitializer.Builder(echo).build());
+        assertEquals("HTTP/1.1 200 OK", sendHttp1(""));
+        assertFalse(received.take().contains(STREAM_ID));
+    }
+
+    @Test
+    public void testUpgrade() throws Exception {
+        start(new FNettyHttp2ServerInitializer.Builder(echo).build());
+        assertEquals("HTTP/1.1 101 Switching Protocols",
+                sendHttp1("Connection: Upgrade, HTTP2-Settings\r\nUpgrade: h2c\r\nHTTP2-Settings: AAMAAABk\r\n"));
+        assertEquals("1", received.poll(10, TimeUnit.SECONDS).get(STREAM_ID));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxConcurrentStreams() {
+        new FNettyHttp2ServerInitializer.Builder(echo).withMaxConcurrentStreams(0);
+    }
+}
@@ -0,0 +1,159 @@
+package com.workiva.frugal.server;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.INTERNAL_SERVER_ERROR;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.SERVICE_UNAVAILABLE;
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link FNettyHttpHandler}.
+ */
+@RunWith(JUnit4.class)
+public class FNettyHttpHandlerTest {
+
+    private final FNettyHttpProcessor processor = mock(FNettyHttpProcessor.class);
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final Executor queue = tasks::add;
+
+    @Before
+    public void setUp() {
+        // Respond with the request uri.
+        doAnswer(invocation -> {
+            FullHttpRequest request = invocation.getArgument(0);
+            request.release();
+            return new DefaultFullHttpResponse(HTTP_1_1, OK, Unpooled.copiedBuffer(request.uri().getBytes()));
+        }).when(processor).process(any());
+    }
+
+    private static FullHttpRequest newRequest(String uri) {
+        return new DefaultFullHttpRequest(HTTP_1_1, HttpMethod.POST, uri);
+    }
+
+    private static String uri(FullHttpResponse response) {
+        String uri = new String(response.content().array(), response.content().arrayOffset(),
+                response.content().readableBytes());
+        response.release();
+        return uri;
+    }
+
+    // Runs the next offloaded request, then the event loop task writing its response.
+    private void runNext(EmbeddedChannel channel) {
+        tasks.remove().run();
+        channel.runPendingTasks();
+    }
+
+    @Test
+    public void testProcessInline() {
+        EmbeddedChannel channel = new EmbeddedChannel(FNettyHttpHandler.of(processor));
+        channel.writeInbound(newRequest("/a"));
+
+        FullHttpResponse response = channel.readOutbound();
+        assertEquals("keep-alive", response.headers().get("connection"));
+        assertEquals("/a", uri(response));
+    }
+
+    @Test
+    public void testProcessOnExecutor() {
+        EmbeddedChannel channel = new EmbeddedChannel(FNettyHttpHandler.of(processor, queue, 10));
+        channel.writeInbound(newRequest("/a"), newRequest("/b"));
+
+        // Requests of a connection are processed one at a time, in order.
+        verify(processor, never()).process(any());
+        assertEquals(1, tasks.size());
+        assertNull(channel.readOutbound());
+
+        runNext(channel);
+        assertEquals("/a", uri(channel.readOutbound()));
+        assertEquals(1, tasks.size());
+        runNext(channel);
+        assertEquals("/b", uri(channel.readOutbound()));
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testBackpressure() {
+        FNettyHttpHandler handler = FNettyHttpHandler.of(processor, queue, 2);
+        EmbeddedChannel first = new EmbeddedChannel(handler);
+        EmbeddedChannel second = new EmbeddedChannel(handler);
+
+        first.writeInbound(newRequest("/a"));
+        assertTrue(first.config().isAutoRead());
+        second.writeInbound(newRequest("/b"));
+        assertFalse(second.config().isAutoRead());
+
+        runNext(first);
+        assertEquals("/a", uri(first.readOutbound()));
+        assertTrue(second.config().isAutoRead());
+        runNext(second);
+        assertEquals("/b", uri(second.readOutbound()));
+    }
+
+    @Test
+    public void testExecutorRejected() {
+        Executor rejecting = task -> {
+            throw new RejectedExecutionException("full");
+        };
+        EmbeddedChannel channel = new EmbeddedChannel(FNettyHttpHandler.of(processor, rejecting, 10));
+        channel.writeInbound(newRequest("/a"));
+
+        FullHttpResponse response = channel.readOutbound();
+        assertEquals(SERVICE_UNAVAILABLE, response.status());
+        verify(processor, never()).process(any());
+    }
+
+    @Test
+    public void testProcessorException() {
+        doThrow(new IllegalStateException("test")).when(processor).process(any());
+        EmbeddedChannel channel = new EmbeddedChannel(FNettyHttpHandler.of(processor, queue, 10));
+        channel.writeInbound(newRequest("/a"));
+
+        runNext(channel);
+        FullHttpResponse response = channel.readOutbound();
+        assertEquals(INTERNAL_SERVER_ERROR, response.status());
+    }
+
+    @Test
+    public void testCloseReleasesQueuedRequests() {
+        EmbeddedChannel channel = new EmbeddedChannel(FNettyHttpHandler.of(processor, queue, 10));
+        FullHttpRequest queued = newRequest("/b");
+        channel.writeInbound(newRequest("/a"), queued);
+        channel.close();
+        assertEquals(0, queued.refCnt());
+
+        // The in-flight request completes without a connection to answer on.
+        runNext(channel);
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxPending() {
+        FNettyHttpHandler.of(processor, queue, 0);
+    }
+}
@@ -1,11 +1,25 @@
 package com.workiva.frugal.server;
 
+import com.workiva.frugal.FContext;
 import com.workiva.frugal.processor.FProcessor;
+import com.workiva.frugal.protocol.FProtocol;
 import com.workiva.frugal.protocol.FProtocolFactory;
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.transport.TFileChannelTransport;
+import com.workiva.frugal.util.FrameCompressor;
+import com.workiva.frugal.util.HttpBatch;
+import com.workiva.frugal.util.HttpContentEncoding;
+import com.workiva.frugal.util.HttpTransferEncoding;
 import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import javax.servlet.ReadListener;
 import javax.servlet.ServletInputStream;
@@ -20,15 +34,29 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
@@ -37,6 +65,9 @@ import static org.mockito.Mockito.verifyNoMoreInteractions;
  */
 public class FServletTest {
 
+    @Rule
+    public TemporaryFolder spillDirectory = new TemporaryFolder();
+
     private static class ProxyServletInputStream extends ServletInputStream {
         private final InputStream in;
 
@@ -246,6 +277,57 @@ public class FServletTest {
         verify(mockResponse).setStatus(eq(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE));
     }
 
+    @Test
+    public void testResponseTooLongWhileWriting() throws Exception {
+        byte[] bytes = Base64.getEncoder().encode(withLength(new byte[2]));
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        doReturn(new ProxyServletInputStream(in)).when(mockRequest).getInputStream();
+        doReturn("100").when(mockRequest).getHeader("x-frugal-payload-limit");
+
+        // Swallow the write error, as generated processors do.
+        doAnswer(invocation -> {
+            FProtocol outProtocol = invocation.getArgument(1);
+            try {
+                outProtocol.getTransport().write(new byte[1000]);
+            } catch (TTransportException e) {
+                outProtocol.getTransport().write(new byte[10]);
+            }
+            return null;
+        }).when(mockProcessor).process(any(), any());
+
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory);
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setStatus(eq(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE));
+    }
+
+    @Test
+    public void testLargeResponse() throws Exception {
+        byte[] bytes = Base64.getEncoder().encode(withLength(new byte[0]));
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        doReturn(new ProxyServletInputStream(in)).when(mockRequest).getInputStream();
+
+        byte[] body = new byte[1024 * 1024 + 1];
+        new Random(0).nextBytes(body);
+        doAnswer(invocation -> {
+            FProtocol outProtocol = invocation.getArgument(1);
+            for (int i = 0; i < body.length; i += 1000) {
+                outProtocol.getTransport().write(body, i, Math.min(1000, body.length - i));
+            }
+            return null;
+        }).when(mockProcessor).process(any(), any());
+
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory);
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "base64");
+        verify(mockResponse).getOutputStream();
+        assertThat(out.toByteArray(), equalTo(Base64.getEncoder().encode(withLength(body))));
+    }
+
     @Test
     public void testOk() throws Exception {
         byte[] bytes = Base64.getEncoder().encode(withLength(new byte[0]));
@@ -273,4 +355,444 @@ public class FServletTest {
         verify(mockResponse).setHeader("Content-Transfer-Encoding", "base64");
         verify(mockResponse).getOutputStream();
     }
+
+    @Test
+    public void testBinaryTransferEncoding() throws Exception {
+        byte[] request = withLength(new byte[]{1, 2, 3});
+        doReturn(new ProxyServletInputStream(new ByteArrayInputStream(request))).when(mockRequest).getInputStream();
+        doReturn(HttpTransferEncoding.BINARY).when(mockRequest)
+                .getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER);
+
+        // Echo the request.
+        doAnswer(invocation -> {
+            FProtocol inProtocol = invocation.getArgument(0);
+            FProtocol outProtocol = invocation.getArgument(1);
+            outProtocol.getTransport().write(((TMemoryInputTransport) inProtocol.getTransport()).getBuffer());
+            return null;
+        }).when(mockProcessor).process(any(), any());
+
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory);
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "binary");
+        verify(mockResponse).setContentLength(request.length);
+        verify(mockResponse).getOutputStream();
+        assertThat(out.toByteArray(), equalTo(request));
+    }
+
+    @Test
+    public void testAcceptBinaryTransferEncoding() throws Exception {
+        byte[] request = withLength(new byte[]{1, 2, 3});
+        ByteArrayInputStream in = new ByteArrayInputStream(Base64.getEncoder().encode(request));
+        doReturn(new ProxyServletInputStream(in)).when(mockRequest).getInputStream();
+        doReturn("base64, binary").when(mockRequest).getHeader(HttpTransferEncoding.ACCEPT_TRANSFER_ENCODING_HEADER);
+
+        doAnswer(invocation -> {
+            FProtocol outProtocol = invocation.getArgument(1);
+            outProtocol.getTransport().write(new byte[]{4, 5});
+            return null;
+        }).when(mockProcessor).process(any(), any());
+
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory);
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "binary");
+        verify(mockResponse).setContentLength(6);
+        verify(mockResponse).getOutputStream();
+        assertThat(out.toByteArray(), equalTo(withLength(new byte[]{4, 5})));
+    }
+
+    @Test
+    public void testContentEncoding() throws Exception {
+        byte[] request = withLength(new byte[100]);
+        byte[] compressed = HttpContentEncoding.encode(request, "gzip");
+        doReturn(new ProxyServletInputStream(new ByteArrayInputStream(compressed))).when(mockRequest).getInputStream();
+        doReturn("gzip").when(mockRequest).getHeader("content-encoding");
+        doReturn("deflate").when(mockRequest).getHeader("accept-encoding");
+        doReturn(HttpTransferEncoding.BINARY).when(mockRequest)
+                .getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER);
+
+        // Echo the decompressed request.
+        doAnswer(invocation -> {
+            FProtocol inProtocol = invocation.getArgument(0);
+            FProtocol outProtocol = invocation.getArgument(1);
+            outProtocol.getTransport().write(((TMemoryInputTransport) inProtocol.getTransport()).getBuffer());
+            return null;
+        }).when(mockProcessor).process(any(), any());
+
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory);
+        servlet.setContentEncodingThreshold(request.length);
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Vary", "Accept-Encoding");
+        verify(mockResponse).setHeader("Accept-Encoding", "gzip, deflate");
+        verify(mockResponse).setHeader("Content-Encoding", "deflate");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "binary");
+        verify(mockResponse).getOutputStream();
+        assertThat(HttpContentEncoding.decode(out.toByteArray(), "deflate", 1024), equalTo(request));
+    }
+
+    @Test
+    public void testContentEncodingBelowThreshold() throws Exception {
+        byte[] request = withLength(new byte[]{1, 2, 3});
+        ByteArrayInputStream in = new ByteArrayInputStream(Base64.getEncoder().encode(request));
+        doReturn(new ProxyServletInputStream(in)).when(mockRequest).getInputStream();
+        doReturn("gzip").when(mockRequest).getHeader("accept-encoding");
+
+        doAnswer(invocation -> {
+            FProtocol outProtocol = invocation.getArgument(1);
+            outProtocol.getTransport().write(new byte[]{4, 5});
+            return null;
+        }).when(mockProcessor).process(any(), any());
+
+        // The base64 encoded response of 8 bytes stays below the threshold.
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory);
+        servlet.setContentEncodingThreshold(9);
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Vary", "Accept-Encoding");
+        verify(mockResponse).setHeader("Accept-Encoding", "gzip, deflate");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "base64");
+        verify(mockResponse).getOutputStream();
+        assertThat(out.toByteArray(), equalTo(Base64.getEncoder().encode(withLength(new byte[]{4, 5}))));
+    }
+
+    @Test
+    public void testUnsupportedContentEncoding() throws Exception {
+        byte[] request = withLength(new byte[]{1, 2, 3});
+        doReturn(new ProxyServletInputStream(new ByteArrayInputStream(request))).when(mockRequest).getInputStream();
+        doReturn("br").when(mockRequest).getHeader("content-encoding");
+
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setStatus(HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE);
+    }
+
+    @Test
+    public void testInvalidContentEncoding() throws Exception {
+        byte[] request = withLength(new byte[]{1, 2, 3});
+        doReturn(new ProxyServletInputStream(new ByteArrayInputStream(request))).when(mockRequest).getInputStream();
+        doReturn("deflate").when(mockRequest).getHeader("content-encoding");
+
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+    }
+
+    // Echoes the request read through any transport, recording the transport.
+    private void echoThroughTransport(List<TTransport> transports) throws TException {
+        doAnswer(invocation -> {
+            FProtocol inProtocol = invocation.getArgument(0);
+            FProtocol outProtocol = invocation.getArgument(1);
+            TTransport transport = inProtocol.getTransport();
+            transports.add(transport);
+            byte[] buff = new byte[1024];
+            int n = transport.read(buff, 0, buff.length);
+            outProtocol.getTransport().write(buff, 0, n);
+            return null;
+        }).when(mockProcessor).process(any(), any());
+    }
+
+    private void postBinary(byte[] request) throws Exception {
+        doReturn(new ProxyServletInputStream(new ByteArrayInputStream(request))).when(mockRequest).getInputStream();
+        doReturn(HttpTransferEncoding.BINARY).when(mockRequest)
+                .getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER);
+        out.reset();
+        servlet.service(mockRequest, mockResponse);
+    }
+
+    @Test
+    public void testRequestSpilling() throws Exception {
+        List<TTransport> transports = new ArrayList<>();
+        echoThroughTransport(transports);
+
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory);
+        servlet.setRequestSpilling(2, Long.MAX_VALUE, Long.MAX_VALUE, spillDirectory.getRoot().toPath());
+        byte[] request = withLength(new byte[]{1, 2, 3});
+        postBinary(request);
+
+        // The frame is read from the spilled file, which is deleted once processed.
+        assertThat(transports.get(0), instanceOf(TFileChannelTransport.class));
+        assertThat(spillDirectory.getRoot().list().length, equalTo(0));
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "binary");
+        verify(mockResponse).setContentLength(request.length);
+        verify(mockResponse).getOutputStream();
+        assertThat(out.toByteArray(), equalTo(request));
+    }
+
+    @Test
+    public void testRequestSpillingBufferedBytes() throws Exception {
+        List<TTransport> transports = new ArrayList<>();
+        echoThroughTransport(transports);
+
+        // Only one frame of 3 bytes fits in the heap at a time, and each request
+        // returns its share once processed.
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory);
+        servlet.setRequestSpilling(1024, 3, Long.MAX_VALUE, spillDirectory.getRoot().toPath());
+        byte[] request = withLength(new byte[]{1, 2, 3});
+        postBinary(request);
+        postBinary(request);
+        assertThat(out.toByteArray(), equalTo(request));
+        byte[] largerRequest = withLength(new byte[]{1, 2, 3, 4});
+        postBinary(largerRequest);
+        assertThat(out.toByteArray(), equalTo(largerRequest));
+
+        assertThat(transports.get(0), instanceOf(TMemoryInputTransport.class));
+        assertThat(transports.get(1), instanceOf(TMemoryInputTransport.class));
+        assertThat(transports.get(2), instanceOf(TFileChannelTransport.class));
+        verify(mockResponse, times(3)).setContentType("application/x-frugal");
+        verify(mockResponse, times(3)).setHeader("Content-Transfer-Encoding", "binary");
+        verify(mockResponse, times(2)).setContentLength(request.length);
+        verify(mockResponse).setContentLength(largerRequest.length);
+        verify(mockResponse, times(3)).getOutputStream();
+    }
+
+    @Test
+    public void testRequestSpillingLimit() throws Exception {
+        servlet.setRequestSpilling(0, 0, 2, spillDirectory.getRoot().toPath());
+        postBinary(withLength(new byte[]{1, 2, 3}));
+
+        verify(mockResponse).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        verify(mockProcessor, never()).process(any(), any());
+        assertThat(spillDirectory.getRoot().list().length, equalTo(0));
+    }
+
+    @Test
+    public void testRequestSpillingTooShort() throws Exception {
+        servlet.setRequestSpilling(0, 0, Long.MAX_VALUE, spillDirectory.getRoot().toPath());
+        postBinary(Arrays.copyOf(withLength(new byte[]{1, 2, 3}), 6));
+
+        verify(mockResponse).setStatus(HttpServletResponse.SC_BAD_REQUEST);
+        assertThat(spillDirectory.getRoot().list().length, equalTo(0));
+    }
+
+    @Test
+    public void testCompression() throws Exception {
+        byte[] headers = HeaderUtils.encode(Collections.emptyMap());
+        byte[] body = new byte[2048];
+        FrameCompressor compressor = new FrameCompressor(0);
+        byte[] request = compressor.compress(withLength(ByteBuffer.allocate(headers.length + body.length)
+                .put(headers).put(body).array()), true);
+        assertThat(HeaderUtils.decodeFromFrame(request, 4).get(FrameCompressor.COMPRESSION_HEADER),
+                equalTo(FrameCompressor.DEFLATE));
+        ByteArrayInputStream in = new ByteArrayInputStream(Base64.getEncoder().encode(request));
+        doReturn(new ProxyServletInputStream(in)).when(mockRequest).getInputStream();
+
+        // Echo the decompressed request.
+        doAnswer(invocation -> {
+            FProtocol inProtocol = invocation.getArgument(0);
+            FProtocol outProtocol = invocation.getArgument(1);
+            byte[] frame = ((TMemoryInputTransport) inProtocol.getTransport()).getBuffer();
+            outProtocol.getTransport().write(frame);
+            return null;
+        }).when(mockProcessor).process(any(), any());
+
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory, protocolFactory, 1024 * 1024, compressor);
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "base64");
+        verify(mockResponse).getOutputStream();
+
+        byte[] response = Base64.getDecoder().decode(out.toByteArray());
+        byte[] frame = Arrays.copyOfRange(response, 4, response.length);
+        Map<String, String> responseHeaders = HeaderUtils.decodeFromFrame(frame);
+        assertThat(responseHeaders.get(FrameCompressor.COMPRESSION_HEADER), equalTo(FrameCompressor.DEFLATE));
+        frame = compressor.decompress(responseHeaders, frame);
+        assertThat(Arrays.copyOfRange(frame, frame.length - body.length, frame.length), equalTo(body));
+    }
+
+    @Test
+    public void testCompressedSpill() throws Exception {
+        byte[] headers = HeaderUtils.encode(Collections.emptyMap());
+        FrameCompressor compressor = new FrameCompressor(0);
+        byte[] request = compressor.compress(withLength(ByteBuffer.allocate(headers.length + 2048)
+                .put(headers).array()), true);
+        doReturn(new ProxyServletInputStream(new ByteArrayInputStream(Base64.getEncoder().encode(request))))
+                .when(mockRequest).getInputStream();
+
+        // The heap holds the spilled frame along with its decompressed copy at the maximum request size.
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory, protocolFactory, 1024 * 1024, compressor);
+        servlet.setRequestSpilling(0, request.length - 4 + 1024 * 1024, Long.MAX_VALUE,
+                spillDirectory.getRoot().toPath());
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "base64");
+        verify(mockResponse).getOutputStream();
+        verify(mockProcessor).process(any(), any());
+        assertThat(spillDirectory.getRoot().list().length, equalTo(0));
+    }
+
+    @Test
+    public void testCompressedSpillBufferedBytes() throws Exception {
+        byte[] headers = HeaderUtils.encode(Collections.emptyMap());
+        FrameCompressor compressor = new FrameCompressor(0);
+        byte[] request = compressor.compress(withLength(ByteBuffer.allocate(headers.length + 2048)
+                .put(headers).array()), true);
+        doReturn(new ProxyServletInputStream(new ByteArrayInputStream(Base64.getEncoder().encode(request))))
+                .when(mockRequest).getInputStream();
+
+        // The spilled frame has to be decompressed in the heap, where it fits, but its decompressed copy does not.
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory, protocolFactory, 1024 * 1024, compressor);
+        servlet.setRequestSpilling(0, request.length - 4 + 1024 * 1024 - 1, Long.MAX_VALUE,
+                spillDirectory.getRoot().toPath());
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        verify(mockProcessor, never()).process(any(), any());
+        assertThat(spillDirectory.getRoot().list().length, equalTo(0));
+    }
+
+    private void doubleFrames() throws TException {
+        // Write each byte of the frame twice, nothing for empty frames.
+        doAnswer(invocation -> {
+            FProtocol inProtocol = invocation.getArgument(0);
+            FProtocol outProtocol = invocation.getArgument(1);
+            byte[] frame = ((TMemoryInputTransport) inProtocol.getTransport()).getBuffer();
+            for (byte b : frame) {
+                outProtocol.getTransport().write(new byte[]{b, b});
+            }
+            return null;
+        }).when(mockProcessor).process(any(), any());
+    }
+
+    private void testBatch(Executor executor) throws Exception {
+        byte[] request = HttpBatch.join(Arrays.asList(
+                withLength(new byte[]{1}), withLength(new byte[0]), withLength(new byte[]{2, 3})));
+        doReturn(new ProxyServletInputStream(new ByteArrayInputStream(request))).when(mockRequest).getInputStream();
+        doReturn(HttpTransferEncoding.BINARY).when(mockRequest)
+                .getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER);
+        doReturn("true").when(mockRequest).getHeader(HttpBatch.BATCH_HEADER);
+        doubleFrames();
+
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory);
+        servlet.setBatchExecutor(executor);
+        servlet.service(mockRequest, mockResponse);
+
+        byte[] response = HttpBatch.join(Arrays.asList(
+                withLength(new byte[]{1, 1}), withLength(new byte[]{2, 2, 3, 3})));
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "binary");
+        verify(mockResponse).setContentLength(response.length);
+        verify(mockResponse).getOutputStream();
+        assertThat(out.toByteArray(), equalTo(response));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        testBatch(null);
+    }
+
+    @Test
+    public void testBatchExecutor() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            testBatch(executor);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchBase64() throws Exception {
+        byte[] request = HttpBatch.join(Arrays.asList(withLength(new byte[]{1}), withLength(new byte[]{2})));
+        ByteArrayInputStream in = new ByteArrayInputStream(Base64.getEncoder().encode(request));
+        doReturn(new ProxyServletInputStream(in)).when(mockRequest).getInputStream();
+        doReturn("true").when(mockRequest).getHeader(HttpBatch.BATCH_HEADER);
+        doubleFrames();
+
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory);
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "base64");
+        verify(mockResponse).getOutputStream();
+        assertThat(Base64.getDecoder().decode(out.toByteArray()), equalTo(HttpBatch.join(Arrays.asList(
+                withLength(new byte[]{1, 1}), withLength(new byte[]{2, 2})))));
+    }
+
+    @Test
+    public void testBatchFrameFailed() throws Exception {
+        byte[] request = HttpBatch.join(Arrays.asList(withLength(new byte[]{1}), withLength(new byte[]{2})));
+        ByteArrayInputStream in = new ByteArrayInputStream(Base64.getEncoder().encode(request));
+        doReturn(new ProxyServletInputStream(in)).when(mockRequest).getInputStream();
+        doReturn("true").when(mockRequest).getHeader(HttpBatch.BATCH_HEADER);
+        doThrow(new RuntimeException()).when(mockProcessor).process(any(), any());
+
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setStatus(eq(HttpServletResponse.SC_INTERNAL_SERVER_ERROR));
+    }
+
+    @Test
+    public void testBatchFrameStatus() throws Exception {
+        List<byte[]> frames = new ArrayList<>();
+        for (String opId : Arrays.asList("1", "2", "3")) {
+            // The response headers are the same size as the request headers.
+            Map<String, String> headers = new HashMap<>();
+            headers.put(FContext.OPID_HEADER, opId);
+            headers.put(FContext.CID_HEADER, "cid");
+            frames.add(withLength(HeaderUtils.encode(headers)));
+        }
+        doReturn(new ProxyServletInputStream(new ByteArrayInputStream(HttpBatch.join(frames))))
+                .when(mockRequest).getInputStream();
+        doReturn(HttpTransferEncoding.BINARY).when(mockRequest)
+                .getHeader(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER);
+        doReturn("true").when(mockRequest).getHeader(HttpBatch.BATCH_HEADER);
+        doReturn(Integer.toString(frames.get(0).length + 1)).when(mockRequest).getHeader("x-frugal-payload-limit");
+
+        // Answer with the response headers, except for op id 2, which fails.
+        doAnswer(invocation -> {
+            FProtocol inProtocol = invocation.getArgument(0);
+            FProtocol outProtocol = invocation.getArgument(1);
+            FContext context = inProtocol.readRequestHeader();
+            if ("2".equals(context.getResponseHeader(FContext.OPID_HEADER))) {
+                throw new RuntimeException("failed");
+            }
+            outProtocol.writeResponseHeader(context);
+            return null;
+        }).when(mockProcessor).process(any(), any());
+
+        FProtocolFactory protocolFactory = new FProtocolFactory(new TBinaryProtocol.Factory());
+        servlet = new FServlet(mockProcessor, protocolFactory);
+        servlet.service(mockRequest, mockResponse);
+
+        // The third response would take the batch over the payload limit.
+        verify(mockResponse, never()).setStatus(any(Integer.class));
+        verify(mockResponse).setHeader(HttpBatch.FRAME_STATUS_HEADER, "2=500, 3=413");
+        verify(mockResponse).setContentType("application/x-frugal");
+        verify(mockResponse).setHeader("Content-Transfer-Encoding", "binary");
+        verify(mockResponse).setContentLength(frames.get(0).length);
+        verify(mockResponse).getOutputStream();
+        assertThat(HttpBatch.split(out.toByteArray()).size(), equalTo(1));
+    }
+
+    @Test
+    public void testBatchTruncated() throws Exception {
+        byte[] request = Arrays.copyOf(withLength(new byte[]{1, 2}), 5);
+        ByteArrayInputStream in = new ByteArrayInputStream(Base64.getEncoder().encode(request));
+        doReturn(new ProxyServletInputStream(in)).when(mockRequest).getInputStream();
+        doReturn("true").when(mockRequest).getHeader(HttpBatch.BATCH_HEADER);
+
+        servlet.service(mockRequest, mockResponse);
+
+        verify(mockResponse).setStatus(eq(HttpServletResponse.SC_BAD_REQUEST));
+    }
 }
@@ -3,6 +3,7 @@ package com.workiva.frugal.transport;
 import com.workiva.frugal.FContext;
 import com.workiva.frugal.exception.TTransportExceptionType;
 import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.FrameCompressor;
 import com.workiva.frugal.util.ProtocolUtils;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TProtocolException;
@@ -14,6 +15,7 @@ import org.mockito.invocation.InvocationOnMock;
 
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
@@ -27,6 +29,7 @@ import java.util.stream.IntStream;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
@@ -151,6 +154,57 @@ public class FAsyncTransportTest {
         transport.request(context, "crap".getBytes());
     }
 
+    /**
+     * Ensures requests advertise compression support, are only compressed once the server has advertised support,
+     * and compressed responses are decompressed.
+     */
+    @Test
+    public void testCompressionNegotiation() throws TException {
+        FrameCompressor serverCompressor = new FrameCompressor(0);
+        FAsyncTransportPayloadCapture tr = new FAsyncTransportPayloadCapture() {
+            @Override
+            protected void flush(byte[] payload) throws TTransportException {
+                super.flush(payload);
+                try {
+                    // Echo the request, compressed if the client advertised support.
+                    byte[] frame = Arrays.copyOfRange(payload, 4, payload.length);
+                    Map<String, String> headers = HeaderUtils.decodeFromFrame(frame);
+                    frame = serverCompressor.decompress(headers, frame);
+                    byte[] response = new byte[frame.length + 4];
+                    ProtocolUtils.writeInt(frame.length, response, 0);
+                    System.arraycopy(frame, 0, response, 4, frame.length);
+                    response = serverCompressor.compress(response, serverCompressor.isAccepted(headers));
+                    handleResponse(Arrays.copyOfRange(response, 4, response.length));
+                } catch (TException e) {
+                    throw new TTransportException(e);
+                }
+            }
+        };
+        tr.compressor = new FrameCompressor(0);
+        tr.open();
+
+        byte[] body = new byte[2048];
+        for (int i = 0; i < 2; i++) {
+            FContext context = new FContext();
+            byte[] headers = HeaderUtils.encode(context.getRequestHeaders());
+            byte[] request = new byte[4 + headers.length + body.length];
+            ProtocolUtils.writeInt(request.length - 4, request, 0);
+            System.arraycopy(headers, 0, request, 4, headers.length);
+
+            byte[] response = tr.request(context, request).getBuffer();
+            assertEquals(context.getRequestHeader(FContext.OPID_HEADER),
+                    HeaderUtils.decodeFromFrame(response).get(FContext.OPID_HEADER));
+            assertArrayEquals(body, Arrays.copyOfRange(response, response.length - body.length, response.length));
+        }
+
+        Map<String, String> first = HeaderUtils.decodeFromFrame(tr.payloads.get(0), 4);
+        assertEquals(FrameCompressor.DEFLATE, first.get(FrameCompressor.ACCEPT_COMPRESSION_HEADER));
+        assertNull(first.get(FrameCompressor.COMPRESSION_HEADER));
+        Map<String, String> second = HeaderUtils.decodeFromFrame(tr.payloads.get(1), 4);
+        assertEquals(FrameCompressor.DEFLATE, second.get(FrameCompressor.COMPRESSION_HEADER));
+        tr.close();
+    }
+
     @Test
     public void testCloseKillsInFlightRequests() throws Exception {
         // given
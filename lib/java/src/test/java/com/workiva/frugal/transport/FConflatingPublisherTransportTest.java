@@ -0,0 +1,211 @@
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.ProtocolUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.InOrder;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link FConflatingPublisherTransport}.
+ */
+@RunWith(JUnit4.class)
+public class FConflatingPublisherTransportTest {
+
+    private FPublisherTransport mockTransport;
+    private FPublisherTransportFactory mockFactory;
+
+    @Before
+    public void setUp() {
+        mockTransport = mock(FPublisherTransport.class);
+        mockFactory = mock(FPublisherTransportFactory.class);
+        when(mockFactory.getTransport()).thenReturn(mockTransport);
+    }
+
+    @Test
+    public void testConflatePerTopic() throws Exception {
+        FConflatingPublisherTransport transport = new FConflatingPublisherTransport.Factory(mockFactory, 100)
+                .getTransport();
+        byte[] first = new byte[]{1};
+        byte[] second = new byte[]{2};
+        byte[] third = new byte[]{3};
+        byte[] other = new byte[]{4};
+
+        transport.publish("topic", first);
+        transport.publish("topic", second);
+        transport.publish("topic", third);
+        transport.publish("other", other);
+        verify(mockTransport).publish("topic", first);
+        verify(mockTransport).publish("other", other);
+        verify(mockTransport, never()).publish("topic", second);
+        verify(mockTransport, never()).publish("topic", third);
+        assertEquals(1, transport.getConflatedCount());
+
+        // The newest message is published when the window ends.
+        verify(mockTransport, timeout(5000)).publish("topic", third);
+        verify(mockTransport, never()).publish("topic", second);
+    }
+
+    @Test
+    public void testConflatePerKeyHeader() throws Exception {
+        FConflatingPublisherTransport transport = new FConflatingPublisherTransport.Factory(mockFactory, 60000, "key")
+                .getTransport();
+        byte[] a1 = newFrame("a", 1);
+        byte[] a2 = newFrame("a", 2);
+        byte[] b1 = newFrame("b", 1);
+
+        transport.publish("topic", a1);
+        transport.publish("topic", b1);
+        transport.publish("topic", a2);
+        verify(mockTransport).publish("topic", a1);
+        verify(mockTransport).publish("topic", b1);
+        verify(mockTransport, never()).publish("topic", a2);
+
+        // Flushing publishes pending messages without waiting for the window.
+        transport.flush();
+        verify(mockTransport).publish("topic", a2);
+        verify(mockTransport).flush();
+
+        // Flushing starts new windows.
+        transport.publish("topic", a1);
+        verify(mockTransport, times(2)).publish("topic", a1);
+    }
+
+    @Test
+    public void testClosePublishesPending() throws Exception {
+        FConflatingPublisherTransport transport = new FConflatingPublisherTransport.Factory(mockFactory, 60000)
+                .getTransport();
+        transport.publish("topic", new byte[]{1});
+        transport.publish("topic", new byte[]{2});
+        transport.close();
+        verify(mockTransport).publish(eq("topic"), eq(new byte[]{2}));
+        verify(mockTransport).close();
+        verify(mockTransport, times(2)).publish(eq("topic"), any(byte[].class));
+    }
+
+    @Test
+    public void testFailedPublishStaysPending() throws Exception {
+        FConflatingPublisherTransport transport = new FConflatingPublisherTransport.Factory(mockFactory, 50)
+                .getTransport();
+        byte[] first = new byte[]{1};
+        byte[] latest = new byte[]{2};
+        doThrow(new TTransportException("down")).doNothing().when(mockTransport).publish("topic", latest);
+
+        transport.publish("topic", first);
+        transport.publish("topic", latest);
+
+        // The first attempt at the end of the window fails, and the message is retried when the next window ends.
+        verify(mockTransport, timeout(5000).times(2)).publish("topic", latest);
+        transport.close();
+    }
+
+    @Test
+    public void testFailedFlushStaysPending() throws Exception {
+        FConflatingPublisherTransport transport = new FConflatingPublisherTransport.Factory(mockFactory, 60000)
+                .getTransport();
+        byte[] latest = new byte[]{2};
+        doThrow(new TTransportException("down")).doNothing().when(mockTransport).publish("topic", latest);
+        transport.publish("topic", new byte[]{1});
+        transport.publish("topic", latest);
+
+        try {
+            transport.flush();
+            fail("Expected TTransportException");
+        } catch (TTransportException expected) {
+        }
+        transport.flush();
+        verify(mockTransport, times(2)).publish("topic", latest);
+    }
+
+    @Test
+    public void testFlushDoesNotOvertakePublish() throws Exception {
+        FConflatingPublisherTransport transport = new FConflatingPublisherTransport.Factory(mockFactory, 60000)
+                .getTransport();
+        byte[] first = new byte[]{1};
+        byte[] latest = new byte[]{2};
+        CountDownLatch publishing = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            publishing.countDown();
+            unblock.await();
+            return null;
+        }).when(mockTransport).publish("topic", first);
+
+        Thread publisher = new Thread(() -> {
+            try {
+                transport.publish("topic", first);
+            } catch (TTransportException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        publisher.start();
+        publishing.await();
+        transport.publish("topic", latest);
+        Thread flusher = new Thread(() -> {
+            try {
+                transport.flush();
+            } catch (TTransportException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        flusher.start();
+
+        // The flush waits for the first message to be sent before sending the newer one.
+        verify(mockTransport, after(100).never()).publish("topic", latest);
+        unblock.countDown();
+        publisher.join();
+        flusher.join();
+        InOrder inOrder = inOrder(mockTransport);
+        inOrder.verify(mockTransport).publish("topic", first);
+        inOrder.verify(mockTransport).publish("topic", latest);
+    }
+
+    @Test
+    public void testDelegates() throws Exception {
+        FConflatingPublisherTransport transport = new FConflatingPublisherTransport.Factory(mockFactory, 100)
+                .getTransport();
+        when(mockTransport.isOpen()).thenReturn(true);
+        when(mockTransport.getPublishSizeLimit()).thenReturn(42);
+        transport.open();
+        verify(mockTransport).open();
+        assertTrue(transport.isOpen());
+        assertEquals(42, transport.getPublishSizeLimit());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindow() {
+        new FConflatingPublisherTransport.Factory(mockFactory, 0);
+    }
+
+    private static byte[] newFrame(String key, int body) throws TException {
+        byte[] headers = HeaderUtils.encode(Collections.singletonMap("key", key));
+        byte[] frame = new byte[4 + headers.length + 1];
+        ProtocolUtils.writeInt(frame.length - 4, frame, 0);
+        System.arraycopy(headers, 0, frame, 4, headers.length);
+        frame[frame.length - 1] = (byte) body;
+        return frame;
+    }
+}
@@ -1,7 +1,12 @@
 package com.workiva.frugal.transport;
 
 import com.workiva.frugal.FContext;
+import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.protocol.HeaderUtils;
 import com.workiva.frugal.transport.FHttpTransport.FHttpTransportHeaders;
+import com.workiva.frugal.util.HttpBatch;
+import com.workiva.frugal.util.HttpContentEncoding;
+import com.workiva.frugal.util.ProtocolUtils;
 
 import org.apache.commons.codec.binary.Base64;
 import org.apache.http.Header;
@@ -9,8 +14,10 @@ import org.apache.http.HttpStatus;
 import org.apache.http.HttpVersion;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
+import org.apache.http.client.entity.GzipDecompressingEntity;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
@@ -26,13 +33,24 @@ import org.mockito.ArgumentCaptor;
 
 import java.io.IOException;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -396,6 +414,310 @@ public class FHttpTransportTest {
         assertNull(transport.request(context, buff));
     }
 
+    @Test
+    public void testBinaryTransferEncoding() throws TException, IOException {
+        transport = new FHttpTransport.Builder(client, url).withBinaryTransferEncoding().build();
+
+        StatusLine statusLine = new StatusLineImpl(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null);
+        byte[] framedResponsePayload = new byte[]{0, 0, 0, 4, 4, 5, 6, 7};
+        byte[] responsePayload = new byte[]{4, 5, 6, 7};
+        CloseableHttpResponse first = new BasicClosableHttpResponse(statusLine);
+        first.setHeader("Content-Transfer-Encoding", "binary");
+        first.setEntity(new ByteArrayEntity(framedResponsePayload));
+        CloseableHttpResponse second = new BasicClosableHttpResponse(statusLine);
+        second.setHeader("Content-Transfer-Encoding", "binary");
+        second.setEntity(new ByteArrayEntity(framedResponsePayload));
+
+        ArgumentCaptor<HttpPost> topicCaptor = ArgumentCaptor.forClass(HttpPost.class);
+        when(client.execute(topicCaptor.capture())).thenReturn(first, second);
+
+        // The first request is base64 encoded and advertises binary support.
+        byte[] buff = "helloserver".getBytes();
+        assertArrayEquals(responsePayload, transport.request(context, buff).getBuffer());
+        HttpPost actual = topicCaptor.getValue();
+        assertEquals("binary", actual.getFirstHeader("x-frugal-accept-transfer-encoding").getValue());
+        assertEquals("base64", actual.getFirstHeader("content-transfer-encoding").getValue());
+        assertEquals(Base64.encodeBase64String(buff), EntityUtils.toString(actual.getEntity()));
+
+        // Once the server answered in binary, requests are binary too.
+        assertArrayEquals(responsePayload, transport.request(context, buff).getBuffer());
+        actual = topicCaptor.getValue();
+        assertEquals("binary", actual.getFirstHeader("content-transfer-encoding").getValue());
+        assertArrayEquals(buff, EntityUtils.toByteArray(actual.getEntity()));
+    }
+
+    @Test
+    public void testBinaryTransferEncodingLegacyServer() throws TException, IOException {
+        transport = new FHttpTransport.Builder(client, url).withBinaryTransferEncoding().build();
+
+        StatusLine statusLine = new StatusLineImpl(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null);
+        byte[] framedResponsePayload = new byte[]{0, 0, 0, 4, 4, 5, 6, 7};
+        CloseableHttpResponse first = new BasicClosableHttpResponse(statusLine);
+        first.setEntity(new StringEntity(Base64.encodeBase64String(framedResponsePayload)));
+        CloseableHttpResponse second = new BasicClosableHttpResponse(statusLine);
+        second.setEntity(new StringEntity(Base64.encodeBase64String(framedResponsePayload)));
+
+        ArgumentCaptor<HttpPost> topicCaptor = ArgumentCaptor.forClass(HttpPost.class);
+        when(client.execute(topicCaptor.capture())).thenReturn(first, second);
+
+        byte[] buff = "helloserver".getBytes();
+        transport.request(context, buff);
+        assertArrayEquals(new byte[]{4, 5, 6, 7}, transport.request(context, buff).getBuffer());
+        assertEquals("base64", topicCaptor.getValue().getFirstHeader("content-transfer-encoding").getValue());
+    }
+
+    @Test
+    public void testContentEncoding() throws TException, IOException {
+        transport = new FHttpTransport.Builder(client, url).withContentEncoding(16).build();
+
+        StatusLine statusLine = new StatusLineImpl(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null);
+        byte[] framedResponsePayload = new byte[]{0, 0, 0, 4, 4, 5, 6, 7};
+        byte[] compressedResponse = HttpContentEncoding.encode(
+                Base64.encodeBase64(framedResponsePayload), HttpContentEncoding.GZIP);
+        CloseableHttpResponse first = new BasicClosableHttpResponse(statusLine);
+        first.setHeader("Content-Encoding", "gzip");
+        first.setHeader("Accept-Encoding", "gzip, deflate");
+        first.setEntity(new ByteArrayEntity(compressedResponse));
+        CloseableHttpResponse second = new BasicClosableHttpResponse(statusLine);
+        second.setEntity(new StringEntity(Base64.encodeBase64String(framedResponsePayload)));
+        CloseableHttpResponse third = new BasicClosableHttpResponse(statusLine);
+        third.setEntity(new StringEntity(Base64.encodeBase64String(framedResponsePayload)));
+
+        ArgumentCaptor<HttpPost> topicCaptor = ArgumentCaptor.forClass(HttpPost.class);
+        when(client.execute(topicCaptor.capture())).thenReturn(first, second, third);
+
+        // The first request advertises compression support without being compressed.
+        byte[] buff = "helloserver".getBytes();
+        assertArrayEquals(new byte[]{4, 5, 6, 7}, transport.request(context, buff).getBuffer());
+        HttpPost actual = topicCaptor.getValue();
+        assertEquals("gzip, deflate", actual.getFirstHeader("accept-encoding").getValue());
+        assertEquals("binary", actual.getFirstHeader("x-frugal-accept-transfer-encoding").getValue());
+        assertNull(actual.getFirstHeader("content-encoding"));
+
+        // Once the server accepted compressed requests, bodies reaching the threshold are compressed raw binary.
+        assertArrayEquals(new byte[]{4, 5, 6, 7}, transport.request(context, buff).getBuffer());
+        actual = topicCaptor.getValue();
+        assertEquals("gzip", actual.getFirstHeader("content-encoding").getValue());
+        assertEquals("binary", actual.getFirstHeader("content-transfer-encoding").getValue());
+        assertArrayEquals(buff, HttpContentEncoding.decode(EntityUtils.toByteArray(actual.getEntity()), "gzip", 1024));
+
+        transport.request(context, "hi".getBytes());
+        assertNull(topicCaptor.getValue().getFirstHeader("content-encoding"));
+        assertEquals("base64", topicCaptor.getValue().getFirstHeader("content-transfer-encoding").getValue());
+    }
+
+    @Test
+    public void testClientDecompressedResponseTooLarge() throws TException, IOException {
+        transport = new FHttpTransport.Builder(client, url).withResponseSizeLimit(8).build();
+
+        // An HTTP client with content compression enabled hands over the body decompressed.
+        StatusLine statusLine = new StatusLineImpl(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null);
+        CloseableHttpResponse response = new BasicClosableHttpResponse(statusLine);
+        response.setEntity(new GzipDecompressingEntity(new ByteArrayEntity(
+                HttpContentEncoding.encode(new byte[1 << 20], HttpContentEncoding.GZIP))));
+        when(client.execute(any(HttpPost.class))).thenReturn(response);
+
+        try {
+            transport.request(context, "helloserver".getBytes());
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.RESPONSE_TOO_LARGE, e.getType());
+        }
+    }
+
+    @Test
+    public void testContentEncodingResponseTooLarge() throws TException, IOException {
+        transport = new FHttpTransport.Builder(client, url).withResponseSizeLimit(8).build();
+
+        // The compressed body is small, but the response frame exceeds the limit.
+        StatusLine statusLine = new StatusLineImpl(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null);
+        byte[] framedResponsePayload = new byte[1004];
+        framedResponsePayload[2] = 0x03;
+        framedResponsePayload[3] = (byte) 0xe8;
+        CloseableHttpResponse response = new BasicClosableHttpResponse(statusLine);
+        response.setHeader("Content-Encoding", "deflate");
+        response.setEntity(new ByteArrayEntity(HttpContentEncoding.encode(
+                Base64.encodeBase64(framedResponsePayload), HttpContentEncoding.DEFLATE)));
+        when(client.execute(any(HttpPost.class))).thenReturn(response);
+
+        try {
+            transport.request(context, "helloserver".getBytes());
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.RESPONSE_TOO_LARGE, e.getType());
+        }
+    }
+
+    private static byte[] frameWithOpId(String opId, byte... body) throws TException {
+        byte[] headers = HeaderUtils.encode(Collections.singletonMap(FContext.OPID_HEADER, opId));
+        byte[] frame = new byte[4 + headers.length + body.length];
+        ProtocolUtils.writeInt(frame.length - 4, frame, 0);
+        System.arraycopy(headers, 0, frame, 4, headers.length);
+        System.arraycopy(body, 0, frame, 4 + headers.length, body.length);
+        return frame;
+    }
+
+    @Test
+    public void testBatching() throws Exception {
+        transport = new FHttpTransport.Builder(client, url).withBatching(10000, 3).build();
+
+        // Answer each batch with its request frames in reverse order, except oneway ones.
+        ArgumentCaptor<HttpPost> topicCaptor = ArgumentCaptor.forClass(HttpPost.class);
+        when(client.execute(topicCaptor.capture())).thenAnswer(invocation -> {
+            HttpPost request = invocation.getArgument(0);
+            List<byte[]> frames = new ArrayList<>();
+            for (byte[] frame : HttpBatch.split(Base64.decodeBase64(EntityUtils.toByteArray(request.getEntity())))) {
+                if (!"oneway".equals(HttpBatch.getOpId(frame))) {
+                    frames.add(0, frame);
+                }
+            }
+            CloseableHttpResponse response = new BasicClosableHttpResponse(
+                    new StatusLineImpl(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null));
+            response.setEntity(new StringEntity(Base64.encodeBase64String(HttpBatch.join(frames))));
+            return response;
+        });
+
+        ExecutorService callers = Executors.newFixedThreadPool(3);
+        try {
+            byte[] first = frameWithOpId("1", (byte) 1);
+            byte[] second = frameWithOpId("2", (byte) 2);
+            Future<TTransport> firstResponse = callers.submit(() -> transport.request(context, first));
+            Future<TTransport> secondResponse = callers.submit(() -> transport.request(context, second));
+            callers.submit(() -> {
+                transport.oneway(context, frameWithOpId("oneway", (byte) 3));
+                return null;
+            }).get(10, TimeUnit.SECONDS);
+
+            assertArrayEquals(Arrays.copyOfRange(first, 4, first.length),
+                    firstResponse.get(10, TimeUnit.SECONDS).getBuffer());
+            assertArrayEquals(Arrays.copyOfRange(second, 4, second.length),
+                    secondResponse.get(10, TimeUnit.SECONDS).getBuffer());
+        } finally {
+            callers.shutdownNow();
+        }
+
+        HttpPost actual = topicCaptor.getValue();
+        assertEquals(1, topicCaptor.getAllValues().size());
+        assertEquals("true", actual.getFirstHeader(HttpBatch.BATCH_HEADER).getValue());
+    }
+
+    @Test
+    public void testBatchingSingleCall() throws Exception {
+        transport = new FHttpTransport.Builder(client, url).withBatching(0, 10).build();
+
+        CloseableHttpResponse response = new BasicClosableHttpResponse(
+                new StatusLineImpl(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null));
+        response.setEntity(new StringEntity(Base64.encodeBase64String(new byte[]{0, 0, 0, 1, 9})));
+        ArgumentCaptor<HttpPost> topicCaptor = ArgumentCaptor.forClass(HttpPost.class);
+        when(client.execute(topicCaptor.capture())).thenReturn(response);
+
+        assertArrayEquals(new byte[]{9}, transport.request(context, frameWithOpId("1")).getBuffer());
+        assertNull(topicCaptor.getValue().getFirstHeader(HttpBatch.BATCH_HEADER));
+    }
+
+    @Test
+    public void testBatchingAfterClose() throws Exception {
+        transport = new FHttpTransport.Builder(client, url).withBatching(0, 10).build();
+        transport.close();
+
+        try {
+            transport.request(context, frameWithOpId("1"));
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.NOT_OPEN, e.getType());
+        }
+    }
+
+    @Test
+    public void testBatchingMissingResponse() throws Exception {
+        transport = new FHttpTransport.Builder(client, url).withBatching(10000, 2).build();
+
+        byte[] firstFrame = frameWithOpId("1", (byte) 1);
+        CloseableHttpResponse response = new BasicClosableHttpResponse(
+                new StatusLineImpl(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null));
+        response.setEntity(new StringEntity(Base64.encodeBase64String(firstFrame)));
+        when(client.execute(any(HttpPost.class))).thenReturn(response);
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<TTransport> first = callers.submit(() -> transport.request(context, frameWithOpId("1")));
+            Future<TTransport> second = callers.submit(() -> transport.request(context, frameWithOpId("2")));
+            assertArrayEquals(Arrays.copyOfRange(firstFrame, 4, firstFrame.length),
+                    first.get(10, TimeUnit.SECONDS).getBuffer());
+            try {
+                second.get(10, TimeUnit.SECONDS);
+                fail("Expected TTransportException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TTransportException);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchingFrameStatus() throws Exception {
+        transport = new FHttpTransport.Builder(client, url).withBatching(10000, 2).build();
+
+        byte[] firstFrame = frameWithOpId("1", (byte) 1);
+        CloseableHttpResponse response = new BasicClosableHttpResponse(
+                new StatusLineImpl(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null));
+        response.setHeader(HttpBatch.FRAME_STATUS_HEADER, "2=500");
+        response.setEntity(new StringEntity(Base64.encodeBase64String(firstFrame)));
+        when(client.execute(any(HttpPost.class))).thenReturn(response);
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<TTransport> first = callers.submit(() -> transport.request(context, frameWithOpId("1")));
+            Future<TTransport> second = callers.submit(() -> transport.request(context, frameWithOpId("2")));
+            assertArrayEquals(Arrays.copyOfRange(firstFrame, 4, firstFrame.length),
+                    first.get(10, TimeUnit.SECONDS).getBuffer());
+            try {
+                second.get(10, TimeUnit.SECONDS);
+                fail("Expected TTransportException");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause().getMessage().contains("500"));
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testBatchingCallTimeout() throws Exception {
+        transport = new FHttpTransport.Builder(client, url).withBatching(10000, 2).build();
+
+        // The server answers only after the short call has timed out.
+        byte[] secondFrame = frameWithOpId("2", (byte) 2);
+        CountDownLatch answer = new CountDownLatch(1);
+        when(client.execute(any(HttpPost.class))).thenAnswer(invocation -> {
+            answer.await(10, TimeUnit.SECONDS);
+            CloseableHttpResponse response = new BasicClosableHttpResponse(
+                    new StatusLineImpl(HttpVersion.HTTP_1_1, HttpStatus.SC_OK, null));
+            response.setEntity(new StringEntity(Base64.encodeBase64String(secondFrame)));
+            return response;
+        });
+
+        FContext shortContext = new FContext();
+        shortContext.setTimeout(50);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            Future<TTransport> first = callers.submit(() -> transport.request(shortContext, frameWithOpId("1")));
+            Future<TTransport> second = callers.submit(() -> transport.request(context, frameWithOpId("2")));
+            try {
+                first.get(10, TimeUnit.SECONDS);
+                fail("Expected TTransportException");
+            } catch (ExecutionException e) {
+                assertEquals(TTransportExceptionType.TIMED_OUT, ((TTransportException) e.getCause()).getType());
+            }
+            answer.countDown();
+            assertArrayEquals(Arrays.copyOfRange(secondFrame, 4, secondFrame.length),
+                    second.get(10, TimeUnit.SECONDS).getBuffer());
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
     private HttpPost validRequest(byte[] payload, int responseSizeLimit) {
         // Encode request payload
         String encoded = Base64.encodeBase64String(payload);
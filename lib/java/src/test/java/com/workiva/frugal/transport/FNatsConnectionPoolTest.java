@@ -0,0 +1,80 @@
+package com.workiva.frugal.transport;
+
+import io.nats.client.Connection;
+import io.nats.client.Statistics;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link FNatsConnectionPool}.
+ */
+@RunWith(JUnit4.class)
+public class FNatsConnectionPoolTest {
+
+    @Test
+    public void testIndexFor() {
+        FNatsConnectionPool pool = new FNatsConnectionPool(
+                Arrays.asList(mock(Connection.class), mock(Connection.class), mock(Connection.class)));
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < 100; i++) {
+            int index = pool.indexFor("topic" + i);
+            assertEquals(index, pool.indexFor("topic" + i));
+            used.add(index);
+        }
+        assertEquals(3, used.size());
+    }
+
+    @Test
+    public void testNextIndex() {
+        FNatsConnectionPool pool = new FNatsConnectionPool(Arrays.asList(mock(Connection.class),
+                mock(Connection.class)));
+        assertEquals(0, pool.nextIndex());
+        assertEquals(1, pool.nextIndex());
+        assertEquals(0, pool.nextIndex());
+    }
+
+    @Test
+    public void testGetStats() {
+        Connection conn = mock(Connection.class);
+        Statistics stats = new Statistics();
+        when(conn.getStats()).thenReturn(stats);
+        FNatsConnectionPool pool = new FNatsConnectionPool(Collections.singletonList(conn));
+        assertEquals(1, pool.size());
+        assertSame(stats, pool.getStats().get(0));
+    }
+
+    @Test
+    public void testGetThroughput() throws InterruptedException {
+        Connection conn = mock(Connection.class);
+        Statistics stats = mock(Statistics.class);
+        when(conn.getStats()).thenReturn(stats);
+        when(stats.getOutMsgs()).thenReturn(100L, 300L);
+        when(stats.getOutBytes()).thenReturn(1000L, 1000L);
+        FNatsConnectionPool pool = new FNatsConnectionPool(Collections.singletonList(conn));
+
+        Thread.sleep(10);
+        FNatsConnectionPool.Throughput throughput = pool.getThroughput().get(0);
+        // Only the messages sent since the pool was created count.
+        assertTrue(throughput.getOutMsgsPerSecond() > 0);
+        assertTrue(throughput.getOutMsgsPerSecond() <= 200 / 0.01);
+        assertEquals(0, throughput.getOutBytesPerSecond(), 0);
+        assertEquals(0, throughput.getInMsgsPerSecond(), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmpty() {
+        new FNatsConnectionPool(Collections.emptyList());
+    }
+}
@@ -0,0 +1,99 @@
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.exception.TTransportExceptionType;
+import io.nats.client.AsyncSubscription;
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.MessageHandler;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link FNatsInboxRouter}.
+ */
+@RunWith(JUnit4.class)
+public class FNatsInboxRouterTest {
+
+    private Connection conn;
+    private AsyncSubscription sub;
+    private FNatsInboxRouter router;
+
+    @Before
+    public void setUp() {
+        conn = mock(Connection.class);
+        sub = mock(AsyncSubscription.class);
+        when(conn.newInbox()).thenReturn("_INBOX.abc");
+        when(conn.subscribe(anyString(), any(MessageHandler.class))).thenReturn(sub);
+        router = new FNatsInboxRouter(conn);
+    }
+
+    @Test
+    public void testRoute() throws Exception {
+        String inbox1 = router.newInbox();
+        String inbox2 = router.newInbox();
+        assertTrue(inbox1.startsWith("_INBOX.abc."));
+        assertNotEquals(inbox1, inbox2);
+
+        MessageHandler handler1 = mock(MessageHandler.class);
+        MessageHandler handler2 = mock(MessageHandler.class);
+        router.register(inbox1, handler1);
+        router.register(inbox2, handler2);
+        assertEquals(2, router.getInboxCount());
+
+        // A single wildcard subscription serves every inbox.
+        ArgumentCaptor<MessageHandler> captor = ArgumentCaptor.forClass(MessageHandler.class);
+        verify(conn, times(1)).subscribe(eq("_INBOX.abc.*"), captor.capture());
+
+        Message message1 = new Message(inbox1, null, new byte[]{1});
+        Message message2 = new Message(inbox2, null, new byte[]{2});
+        captor.getValue().onMessage(message1);
+        captor.getValue().onMessage(message2);
+        captor.getValue().onMessage(new Message("_INBOX.abc.unknown", null, new byte[]{3}));
+        verify(handler1).onMessage(message1);
+        verify(handler2).onMessage(message2);
+
+        router.unregister(inbox1);
+        verify(sub, never()).unsubscribe();
+        router.unregister(inbox2);
+        verify(sub).unsubscribe();
+        assertEquals(0, router.getInboxCount());
+
+        // Registering again resubscribes.
+        router.register(inbox1, handler1);
+        verify(conn, times(2)).subscribe(eq("_INBOX.abc.*"), any(MessageHandler.class));
+    }
+
+    @Test
+    public void testRegisterTwice() throws Exception {
+        String inbox = router.newInbox();
+        router.register(inbox, mock(MessageHandler.class));
+        try {
+            router.register(inbox, mock(MessageHandler.class));
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.ALREADY_OPEN, e.getType());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRegisterForeignInbox() throws Exception {
+        router.register("_INBOX.other", mock(MessageHandler.class));
+    }
+}
@@ -0,0 +1,152 @@
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.DeltaEncoder;
+import com.workiva.frugal.util.ProtocolUtils;
+import io.nats.client.AsyncSubscription;
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.MessageHandler;
+import org.apache.thrift.TException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link FNatsLastValueCache}.
+ */
+@RunWith(JUnit4.class)
+public class FNatsLastValueCacheTest {
+
+    private Connection conn;
+    private AsyncSubscription mockSub;
+
+    @Before
+    public void setUp() {
+        conn = mock(Connection.class);
+        mockSub = mock(AsyncSubscription.class);
+    }
+
+    @Test
+    public void testRecord() throws TException {
+        FNatsLastValueCache cache = new FNatsLastValueCache(conn, 10);
+        byte[] frame = newFrame(1);
+
+        byte[] first = cache.record("topic", frame);
+        byte[] second = cache.record("topic", frame);
+        assertEquals(1, FNatsLastValueCache.getSequence(first));
+        assertEquals(2, FNatsLastValueCache.getSequence(second));
+        assertEquals(-1, FNatsLastValueCache.getSequence(frame));
+        assertArrayEquals(second, cache.get("topic"));
+        assertEquals(1, cache.size());
+
+        // The body is unchanged.
+        assertArrayEquals(Arrays.copyOfRange(frame, HeaderUtils.getBodyOffset(frame), frame.length),
+                Arrays.copyOfRange(second, HeaderUtils.getBodyOffset(second), second.length));
+    }
+
+    @Test
+    public void testEvictLeastRecentlyPublished() throws TException {
+        FNatsLastValueCache cache = new FNatsLastValueCache(conn, 2);
+        cache.record("a", newFrame(1));
+        cache.record("b", newFrame(2));
+        cache.record("a", newFrame(3));
+        cache.record("c", newFrame(4));
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("b"));
+        assertEquals(2, FNatsLastValueCache.getSequence(cache.get("a")));
+
+        // Sequence numbers restart for evicted topics.
+        assertEquals(1, FNatsLastValueCache.getSequence(cache.record("b", newFrame(5))));
+    }
+
+    @Test
+    public void testServeSnapshots() throws Exception {
+        ArgumentCaptor<MessageHandler> handlerCaptor = ArgumentCaptor.forClass(MessageHandler.class);
+        when(conn.subscribe(eq(FNatsLastValueCache.SNAPSHOT_PREFIX + ">"), handlerCaptor.capture()))
+                .thenReturn(mockSub);
+        FNatsLastValueCache cache = new FNatsLastValueCache(conn, 10);
+        cache.start();
+        cache.start();
+        verify(conn, times(1)).subscribe(anyString(), any(MessageHandler.class));
+
+        byte[] stamped = cache.record("foo.bar", newFrame(1));
+        MessageHandler handler = handlerCaptor.getValue();
+        handler.onMessage(new Message(FNatsLastValueCache.SNAPSHOT_PREFIX + "foo.bar", "inbox", new byte[0]));
+        verify(conn).publish("inbox", stamped);
+
+        // Unknown topics are not answered, leaving the request to other caches.
+        handler.onMessage(new Message(FNatsLastValueCache.SNAPSHOT_PREFIX + "foo.baz", "inbox2", new byte[0]));
+        verify(conn, never()).publish(eq("inbox2"), any(byte[].class));
+
+        cache.stop();
+        verify(mockSub).unsubscribe();
+    }
+
+    @Test
+    public void testServeKeyframes() throws Exception {
+        ArgumentCaptor<MessageHandler> handlerCaptor = ArgumentCaptor.forClass(MessageHandler.class);
+        when(conn.subscribe(eq(FNatsLastValueCache.SNAPSHOT_PREFIX + ">"), handlerCaptor.capture()))
+                .thenReturn(mockSub);
+        FNatsLastValueCache cache = new FNatsLastValueCache(conn, 10);
+        cache.start();
+
+        byte[] keyframe = cache.record("topic", newFrame(1, DeltaEncoder.KEYFRAME_HEADER));
+        byte[] delta = cache.record("topic", newFrame(2, DeltaEncoder.BASE_HEADER));
+        assertArrayEquals(keyframe, cache.getKeyframe("topic"));
+        assertArrayEquals(delta, cache.get("topic"));
+
+        MessageHandler handler = handlerCaptor.getValue();
+        handler.onMessage(new Message(FNatsLastValueCache.SNAPSHOT_PREFIX + "topic", "inbox",
+                FNatsLastValueCache.KEYFRAME_REQUEST));
+        verify(conn).publish("inbox", keyframe);
+        handler.onMessage(new Message(FNatsLastValueCache.SNAPSHOT_PREFIX + "topic", "inbox2", new byte[0]));
+        verify(conn).publish("inbox2", delta);
+    }
+
+    @Test
+    public void testRequestSnapshot() throws Exception {
+        byte[] frame = newFrame(1);
+        when(conn.request(FNatsLastValueCache.SNAPSHOT_PREFIX + "topic", new byte[0], 50, TimeUnit.MILLISECONDS))
+                .thenReturn(new Message("inbox", null, frame));
+        assertArrayEquals(frame, FNatsLastValueCache.requestSnapshot(conn, "topic", 50));
+        assertNull(FNatsLastValueCache.requestSnapshot(conn, "other", 50));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxTopics() {
+        new FNatsLastValueCache(conn, 0);
+    }
+
+    static byte[] newFrame(int body) throws TException {
+        return newFrame(body, "_opid");
+    }
+
+    private static byte[] newFrame(int body, String header) throws TException {
+        byte[] headers = HeaderUtils.encode(Collections.singletonMap(header, "0"));
+        byte[] frame = new byte[4 + headers.length + 1];
+        ProtocolUtils.writeInt(frame.length - 4, frame, 0);
+        System.arraycopy(headers, 0, frame, 4, headers.length);
+        frame[frame.length - 1] = (byte) body;
+        return frame;
+    }
+}
@@ -0,0 +1,174 @@
+package com.workiva.frugal.transport;
+
+import io.nats.client.AsyncSubscription;
+import io.nats.client.Connection;
+import io.nats.client.Message;
+import io.nats.client.MessageHandler;
+import io.nats.client.Nats;
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.workiva.frugal.transport.FNatsTransport.FRUGAL_PREFIX;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link FNatsMultiplexedSubscriberTransport}.
+ */
+@RunWith(JUnit4.class)
+public class FNatsMultiplexedSubscriberTransportTest {
+
+    private static final byte[] FRAME = new byte[]{0, 0, 0, 1, 7};
+
+    private Connection conn;
+    private AsyncSubscription wildcardSub;
+    private ArgumentCaptor<MessageHandler> wildcardHandler;
+    private FNatsMultiplexedSubscriberTransport.Factory factory;
+
+    @Before
+    public void setUp() {
+        conn = mock(Connection.class);
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        wildcardSub = mock(AsyncSubscription.class);
+        when(wildcardSub.isValid()).thenReturn(true);
+        wildcardHandler = ArgumentCaptor.forClass(MessageHandler.class);
+        when(conn.subscribe(eq(FRUGAL_PREFIX + "foo.*.Events.*"), isNull(), wildcardHandler.capture()))
+                .thenReturn(wildcardSub);
+        factory = new FNatsMultiplexedSubscriberTransport.Factory.Builder(conn)
+                .withWildcard("foo.*.Events.*")
+                .build();
+    }
+
+    @Test
+    public void testSharedSubscription() throws Exception {
+        List<TTransport> aliceMessages = new ArrayList<>();
+        List<TTransport> bobMessages = new ArrayList<>();
+        FNatsMultiplexedSubscriberTransport alice = factory.getTransport();
+        FNatsMultiplexedSubscriberTransport bob = factory.getTransport();
+        alice.subscribe("foo.alice.Events.Created", aliceMessages::add);
+        bob.subscribe("foo.bob.Events.Created", bobMessages::add);
+
+        verify(conn, times(1)).subscribe(eq(FRUGAL_PREFIX + "foo.*.Events.*"), isNull(), any());
+        assertEquals(1, factory.getNatsSubscriptionCount());
+        assertEquals(2, factory.getSubscriptionCount());
+        assertTrue(alice.isSubscribed());
+        assertTrue(bob.isSubscribed());
+
+        MessageHandler handler = wildcardHandler.getValue();
+        handler.onMessage(new Message(FRUGAL_PREFIX + "foo.alice.Events.Created", null, FRAME));
+        handler.onMessage(new Message(FRUGAL_PREFIX + "foo.bob.Events.Created", null, FRAME));
+        handler.onMessage(new Message(FRUGAL_PREFIX + "foo.bob.Events.Created", null, FRAME));
+        // Unsubscribed topics matching the wildcard are discarded.
+        handler.onMessage(new Message(FRUGAL_PREFIX + "foo.carol.Events.Created", null, FRAME));
+        assertEquals(1, aliceMessages.size());
+        assertEquals(2, bobMessages.size());
+        byte[] payload = new byte[1];
+        aliceMessages.get(0).read(payload, 0, 1);
+        assertEquals(7, payload[0]);
+
+        alice.unsubscribe();
+        assertFalse(alice.isSubscribed());
+        assertTrue(bob.isSubscribed());
+        verify(wildcardSub, never()).unsubscribe();
+        handler.onMessage(new Message(FRUGAL_PREFIX + "foo.alice.Events.Created", null, FRAME));
+        assertEquals(1, aliceMessages.size());
+
+        bob.unsubscribe();
+        verify(wildcardSub).unsubscribe();
+        assertEquals(0, factory.getNatsSubscriptionCount());
+        assertEquals(0, factory.getSubscriptionCount());
+
+        // Unsubscribing again is a no-op.
+        bob.unsubscribe();
+        verify(wildcardSub, times(1)).unsubscribe();
+    }
+
+    @Test
+    public void testUnmatchedTopic() throws Exception {
+        AsyncSubscription sub = mock(AsyncSubscription.class);
+        ArgumentCaptor<MessageHandler> handler = ArgumentCaptor.forClass(MessageHandler.class);
+        when(conn.subscribe(eq(FRUGAL_PREFIX + "other"), isNull(), handler.capture())).thenReturn(sub);
+
+        List<TTransport> first = new ArrayList<>();
+        List<TTransport> second = new ArrayList<>();
+        FNatsMultiplexedSubscriberTransport one = factory.getTransport();
+        FNatsMultiplexedSubscriberTransport two = factory.getTransport();
+        one.subscribe("other", first::add);
+        two.subscribe("other", second::add);
+        verify(conn, times(1)).subscribe(eq(FRUGAL_PREFIX + "other"), isNull(), any());
+        verify(conn, never()).subscribe(eq(FRUGAL_PREFIX + "foo.*.Events.*"), isNull(), any());
+
+        handler.getValue().onMessage(new Message(FRUGAL_PREFIX + "other", null, FRAME));
+        assertEquals(1, first.size());
+        assertEquals(1, second.size());
+
+        one.unsubscribe();
+        verify(sub, never()).unsubscribe();
+        two.unsubscribe();
+        verify(sub).unsubscribe();
+    }
+
+    @Test
+    public void testOverlappingWildcards() throws Exception {
+        AsyncSubscription sub = mock(AsyncSubscription.class);
+        when(conn.subscribe(eq(FRUGAL_PREFIX + "a.>"), isNull(), any())).thenReturn(sub);
+        FNatsMultiplexedSubscriberTransport.Factory overlapping =
+                new FNatsMultiplexedSubscriberTransport.Factory.Builder(conn)
+                        .withWildcard("a.>")
+                        .withWildcard("a.*")
+                        .build();
+
+        // The more general pattern was added first, so it serves the topic.
+        overlapping.getTransport().subscribe("a.b", tr -> { });
+        verify(conn).subscribe(eq(FRUGAL_PREFIX + "a.>"), isNull(), any());
+        verify(conn, never()).subscribe(eq(FRUGAL_PREFIX + "a.*"), isNull(), any());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testQueueGroupWithWildcard() {
+        new FNatsMultiplexedSubscriberTransport.Factory.Builder(conn)
+                .withWildcard("foo.*.Events.*")
+                .withQueueGroup("workers")
+                .build();
+    }
+
+    @Test
+    public void testIsSubscribedDisconnected() throws TException {
+        FNatsMultiplexedSubscriberTransport transport = factory.getTransport();
+        assertFalse(transport.isSubscribed());
+        transport.subscribe("foo.a.Events.b", tr -> { });
+        when(conn.getState()).thenReturn(Nats.ConnState.RECONNECTING);
+        assertFalse(transport.isSubscribed());
+    }
+
+    @Test(expected = TTransportException.class)
+    public void testSubscribeNotConnected() throws TException {
+        when(conn.getState()).thenReturn(Nats.ConnState.CLOSED);
+        factory.getTransport().subscribe("foo.a.Events.b", tr -> { });
+    }
+
+    @Test(expected = TTransportException.class)
+    public void testSubscribeTwice() throws TException {
+        FNatsMultiplexedSubscriberTransport transport = factory.getTransport();
+        transport.subscribe("foo.a.Events.b", tr -> { });
+        transport.subscribe("foo.a.Events.c", tr -> { });
+    }
+}
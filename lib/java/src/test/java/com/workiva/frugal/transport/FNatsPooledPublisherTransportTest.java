@@ -0,0 +1,97 @@
+package com.workiva.frugal.transport;
+
+import io.nats.client.Connection;
+import io.nats.client.Nats;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static com.workiva.frugal.transport.FNatsTransport.FRUGAL_PREFIX;
+import static com.workiva.frugal.transport.FNatsTransport.NATS_MAX_MESSAGE_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link FNatsPooledPublisherTransport}.
+ */
+@RunWith(JUnit4.class)
+public class FNatsPooledPublisherTransportTest {
+
+    private Connection conn1;
+    private Connection conn2;
+    private FNatsConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        conn1 = mock(Connection.class);
+        conn2 = mock(Connection.class);
+        when(conn1.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        when(conn2.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        pool = new FNatsConnectionPool(Arrays.asList(conn1, conn2));
+    }
+
+    @Test
+    public void testPublishByTopic() throws Exception {
+        FPublisherTransport transport = new FNatsPooledPublisherTransport.Factory(pool).getTransport();
+        transport.open();
+        assertTrue(transport.isOpen());
+        assertEquals(NATS_MAX_MESSAGE_SIZE, transport.getPublishSizeLimit());
+
+        // Messages of a topic always use the connection assigned to the topic.
+        for (int i = 0; i < 10; i++) {
+            String topic = "topic" + i;
+            byte[] payload = new byte[]{0, 0, 0, (byte) i};
+            transport.publish(topic, payload);
+            transport.publish(topic, payload);
+            Connection assigned = pool.indexFor(topic) == 0 ? conn1 : conn2;
+            Connection other = assigned == conn1 ? conn2 : conn1;
+            verify(assigned, times(2)).publish(FRUGAL_PREFIX + topic, payload);
+            verify(other, never()).publish(FRUGAL_PREFIX + topic, payload);
+        }
+
+        transport.flush();
+        verify(conn1).flush();
+        verify(conn2).flush();
+    }
+
+    @Test
+    public void testNotOpenIfAnyConnectionDown() throws Exception {
+        Function<Connection, FPublisherTransportFactory> factory =
+              conn -> new FNatsPublisherTransport.Factory.Builder(conn).withFragmentation(true).build();
+        FPublisherTransport transport = new FNatsPooledPublisherTransport.Factory(pool, factory).getTransport();
+        when(conn2.getState()).thenReturn(Nats.ConnState.RECONNECTING);
+        assertFalse(transport.isOpen());
+        verify(conn1, never()).publish(anyString(), any(byte[].class));
+    }
+
+    @Test
+    public void testOpenFailureClosesOpenedTransports() throws Exception {
+        FPublisherTransport first = mock(FPublisherTransport.class);
+        FPublisherTransport second = mock(FPublisherTransport.class);
+        doThrow(new TTransportException("down")).when(second).open();
+        FPublisherTransport transport = new FNatsPooledPublisherTransport(pool, Arrays.asList(first, second));
+
+        try {
+            transport.open();
+            fail("Expected TTransportException");
+        } catch (TTransportException expected) {
+        }
+        verify(first).close();
+        verify(second, never()).close();
+    }
+}
@@ -0,0 +1,100 @@
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.FContext;
+import io.nats.client.AsyncSubscription;
+import io.nats.client.Connection;
+import io.nats.client.MessageHandler;
+import io.nats.client.Nats;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link FNatsPooledTransport}.
+ */
+@RunWith(JUnit4.class)
+public class FNatsPooledTransportTest {
+
+    private Connection conn1;
+    private Connection conn2;
+    private AsyncSubscription sub1;
+    private FNatsConnectionPool pool;
+
+    @Before
+    public void setUp() {
+        conn1 = mock(Connection.class);
+        conn2 = mock(Connection.class);
+        sub1 = mock(AsyncSubscription.class);
+        for (Connection conn : Arrays.asList(conn1, conn2)) {
+            when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+            when(conn.newInbox()).thenReturn("_INBOX");
+        }
+        when(conn1.subscribe(anyString(), any(MessageHandler.class))).thenReturn(sub1);
+        when(conn2.subscribe(anyString(), any(MessageHandler.class))).thenReturn(mock(AsyncSubscription.class));
+        pool = new FNatsConnectionPool(Arrays.asList(conn1, conn2));
+    }
+
+    @Test
+    public void testOnewayRoundRobin() throws Exception {
+        FNatsPooledTransport transport = FNatsPooledTransport.of(pool, "foo");
+        assertFalse(transport.isOpen());
+        transport.open();
+        assertTrue(transport.isOpen());
+
+        byte[] payload = new byte[]{0, 0, 0, 0};
+        for (int i = 0; i < 4; i++) {
+            transport.oneway(new FContext(), payload);
+        }
+        verify(conn1, times(2)).publish("foo", "_INBOX", payload);
+        verify(conn2, times(2)).publish("foo", "_INBOX", payload);
+
+        transport.close();
+        assertFalse(transport.isOpen());
+        verify(sub1).unsubscribe();
+    }
+
+    @Test
+    public void testOnewayOrderingHeader() throws Exception {
+        FNatsPooledTransport transport = FNatsPooledTransport.of(pool, "foo").withOrderingHeader("account");
+        transport.open();
+
+        byte[] payload = new byte[]{0, 0, 0, 0};
+        FContext context = new FContext();
+        context.addRequestHeader("account", "a");
+        for (int i = 0; i < 4; i++) {
+            transport.oneway(context, payload);
+        }
+        Connection assigned = pool.indexFor("a") == 0 ? conn1 : conn2;
+        Connection other = assigned == conn1 ? conn2 : conn1;
+        verify(assigned, times(4)).publish("foo", "_INBOX", payload);
+        verify(other, never()).publish(eq("foo"), anyString(), any(byte[].class));
+    }
+
+    @Test
+    public void testOpenFailureClosesOpened() throws Exception {
+        when(conn2.getState()).thenReturn(Nats.ConnState.RECONNECTING);
+        FNatsPooledTransport transport = FNatsPooledTransport.of(pool, "foo");
+        try {
+            transport.open();
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            verify(sub1).unsubscribe();
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.exception.TTransportExceptionType;
+import io.nats.client.Connection;
+import io.nats.client.Nats;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.InOrder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link FNatsPublishSpool}.
+ */
+@RunWith(JUnit4.class)
+public class FNatsPublishSpoolTest {
+
+    // Fits two records with a one byte subject and a ten byte payload.
+    private static final int SMALL_CAPACITY = 12 + 2 * (8 + 1 + 10);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Connection conn;
+    private Path path;
+
+    @Before
+    public void setUp() throws IOException {
+        conn = mock(Connection.class);
+        when(conn.getState()).thenReturn(Nats.ConnState.DISCONNECTED);
+        path = folder.getRoot().toPath().resolve("spool");
+    }
+
+    private static byte[] payload(int i) {
+        return new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, (byte) i};
+    }
+
+    private static void awaitDrained(FNatsPublishSpool spool) throws InterruptedException {
+        for (int i = 0; i < 500 && spool.size() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, spool.size());
+    }
+
+    @Test
+    public void testDrainInOrder() throws Exception {
+        FNatsPublishSpool spool = new FNatsPublishSpool(conn, path, 1024, FNatsPublishSpool.OverflowPolicy.FAIL);
+        spool.start();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(spool.offer("subject" + i, payload(i)));
+        }
+        assertEquals(3, spool.size());
+        Thread.sleep(150);
+        verify(conn, never()).publish(anyString(), any(byte[].class));
+
+        // Messages are spooled until the spool is drained, even once connected.
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        awaitDrained(spool);
+        InOrder inOrder = inOrder(conn);
+        for (int i = 0; i < 3; i++) {
+            inOrder.verify(conn).publish("subject" + i, payload(i));
+        }
+        assertFalse(spool.offer("subject", payload(4)));
+        spool.close();
+    }
+
+    @Test
+    public void testAwaitDrained() throws Exception {
+        FNatsPublishSpool spool = new FNatsPublishSpool(conn, path, 1024, FNatsPublishSpool.OverflowPolicy.FAIL);
+        spool.offer("subject", payload(1));
+        // Nothing drains the spool before it is started or while disconnected.
+        assertFalse(spool.awaitDrained());
+        spool.start();
+        assertFalse(spool.awaitDrained());
+
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        assertTrue(spool.awaitDrained());
+        verify(conn).publish("subject", payload(1));
+        assertEquals(0, spool.size());
+        spool.close();
+    }
+
+    @Test
+    public void testRecover() throws Exception {
+        FNatsPublishSpool spool = new FNatsPublishSpool(conn, path, 1024, FNatsPublishSpool.OverflowPolicy.FAIL);
+        spool.offer("a", payload(1));
+        spool.offer("b", payload(2));
+        spool.close();
+
+        spool = new FNatsPublishSpool(conn, path, 1024, FNatsPublishSpool.OverflowPolicy.FAIL);
+        assertEquals(2, spool.size());
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        spool.start();
+        awaitDrained(spool);
+        InOrder inOrder = inOrder(conn);
+        inOrder.verify(conn).publish("a", payload(1));
+        inOrder.verify(conn).publish("b", payload(2));
+        spool.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testRecoverWrongCapacity() throws Exception {
+        new FNatsPublishSpool(conn, path, 1024, FNatsPublishSpool.OverflowPolicy.FAIL).close();
+        new FNatsPublishSpool(conn, path, 2048, FNatsPublishSpool.OverflowPolicy.FAIL);
+    }
+
+    @Test
+    public void testOverflowFail() throws Exception {
+        FNatsPublishSpool spool = new FNatsPublishSpool(conn, path, SMALL_CAPACITY,
+                FNatsPublishSpool.OverflowPolicy.FAIL);
+        spool.offer("a", payload(1));
+        spool.offer("b", payload(2));
+        try {
+            spool.offer("c", payload(3));
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.REQUEST_TOO_LARGE, e.getType());
+        }
+        assertEquals(2, spool.size());
+        spool.close();
+    }
+
+    @Test
+    public void testOverflowDropNewest() throws Exception {
+        FNatsPublishSpool spool = new FNatsPublishSpool(conn, path, SMALL_CAPACITY,
+                FNatsPublishSpool.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(spool.offer("s", payload(i)));
+        }
+        assertEquals(2, spool.size());
+        assertEquals(1, spool.getDroppedCount());
+
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        spool.start();
+        awaitDrained(spool);
+        verify(conn).publish("s", payload(0));
+        verify(conn).publish("s", payload(1));
+        verify(conn, never()).publish("s", payload(2));
+        spool.close();
+    }
+
+    @Test
+    public void testOverflowDropOldest() throws Exception {
+        FNatsPublishSpool spool = new FNatsPublishSpool(conn, path, SMALL_CAPACITY,
+                FNatsPublishSpool.OverflowPolicy.DROP_OLDEST);
+        // Dropping the oldest records frees space at the start of the ring, which later records wrap around into.
+        for (int i = 0; i < 5; i++) {
+            assertTrue(spool.offer("s", payload(i)));
+        }
+        assertEquals(2, spool.size());
+        assertEquals(3, spool.getDroppedCount());
+        spool.close();
+
+        // The wrapped records survive a restart.
+        spool = new FNatsPublishSpool(conn, path, SMALL_CAPACITY, FNatsPublishSpool.OverflowPolicy.DROP_OLDEST);
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        spool.start();
+        awaitDrained(spool);
+        InOrder inOrder = inOrder(conn);
+        inOrder.verify(conn).publish("s", payload(3));
+        inOrder.verify(conn).publish("s", payload(4));
+        verify(conn, never()).publish("s", payload(2));
+        spool.close();
+    }
+
+    @Test
+    public void testRecordsWrapAroundRing() throws Exception {
+        // Records of 19 bytes in a 45 byte ring hold two records, and most records wrap around the end of the ring at
+        // a different point, splitting their subject, payload or length prefixes.
+        int capacity = 12 + 45;
+        FNatsPublishSpool spool = new FNatsPublishSpool(conn, path, capacity,
+                FNatsPublishSpool.OverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 20; i++) {
+            assertTrue(spool.offer("s", payload(i)));
+        }
+        assertEquals(2, spool.size());
+        spool.close();
+
+        spool = new FNatsPublishSpool(conn, path, capacity, FNatsPublishSpool.OverflowPolicy.DROP_OLDEST);
+        assertEquals(2, spool.size());
+        for (int i = 20; i < 30; i++) {
+            assertTrue(spool.offer("s", payload(i)));
+        }
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        spool.start();
+        awaitDrained(spool);
+        InOrder inOrder = inOrder(conn);
+        inOrder.verify(conn).publish("s", payload(28));
+        inOrder.verify(conn).publish("s", payload(29));
+        verify(conn, times(2)).publish(anyString(), any(byte[].class));
+        spool.close();
+    }
+
+    @Test
+    public void testMessageLargerThanSpool() throws Exception {
+        FNatsPublishSpool spool = new FNatsPublishSpool(conn, path, SMALL_CAPACITY,
+                FNatsPublishSpool.OverflowPolicy.DROP_OLDEST);
+        try {
+            spool.offer("s", new byte[SMALL_CAPACITY]);
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.REQUEST_TOO_LARGE, e.getType());
+        }
+        assertTrue(Files.size(path) == SMALL_CAPACITY);
+        spool.close();
+    }
+}
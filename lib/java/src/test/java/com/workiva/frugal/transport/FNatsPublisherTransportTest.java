@@ -1,20 +1,39 @@
 package com.workiva.frugal.transport;
 
+import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.util.FrameFragmenter;
+import com.workiva.frugal.util.ProtocolUtils;
 import io.nats.client.Connection;
+import io.nats.client.MessageHandler;
 import io.nats.client.Nats;
 import org.apache.thrift.transport.TTransportException;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static com.workiva.frugal.transport.FNatsTransport.FRUGAL_PREFIX;
 import static com.workiva.frugal.transport.FNatsTransport.NATS_MAX_MESSAGE_SIZE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -108,4 +127,230 @@ public class FNatsPublisherTransportTest {
         verify(conn).publish(formattedSubject, payload);
     }
 
+    @Test
+    public void testPublishFragmented() throws Exception {
+        transport = (FNatsPublisherTransport) new FNatsPublisherTransport.Factory(conn, true).getTransport();
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        byte[] payload = new byte[NATS_MAX_MESSAGE_SIZE * 2];
+        ProtocolUtils.writeInt(payload.length - 4, payload, 0);
+
+        assertEquals(FrameFragmenter.MAX_FRAGMENTED_FRAME_SIZE, transport.getPublishSizeLimit());
+        transport.publish(topic, payload);
+
+        verify(conn, times(3)).publish(eq(formattedSubject), any(byte[].class));
+    }
+
+    private FNatsPublisherTransport newAsyncTransport(int maxBatchSize, long maxBatchDelay) {
+        return (FNatsPublisherTransport) new FNatsPublisherTransport.Factory.Builder(conn)
+                .withAsyncPublishing(16, maxBatchSize, maxBatchDelay).build().getTransport();
+    }
+
+    @Test
+    public void testPublishLastValueCache() throws Exception {
+        FNatsLastValueCache cache = new FNatsLastValueCache(conn, 10);
+        transport = (FNatsPublisherTransport) new FNatsPublisherTransport.Factory.Builder(conn)
+                .withLastValueCache(cache)
+                .build()
+                .getTransport();
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        transport.open();
+        verify(conn).subscribe(eq(FNatsLastValueCache.SNAPSHOT_PREFIX + ">"), any(MessageHandler.class));
+
+        transport.publish(topic, FNatsLastValueCacheTest.newFrame(1));
+        transport.publish(topic, FNatsLastValueCacheTest.newFrame(2));
+        byte[] cached = cache.get(topic);
+        assertEquals(2, FNatsLastValueCache.getSequence(cached));
+        verify(conn).publish(formattedSubject, cached);
+    }
+
+    @Test
+    public void testPublishSpool() throws Exception {
+        Path path = Files.createTempFile("frugal", "spool");
+        Files.delete(path);
+        FNatsPublishSpool spool = new FNatsPublishSpool(conn, path, 1024, FNatsPublishSpool.OverflowPolicy.FAIL);
+        transport = (FNatsPublisherTransport) new FNatsPublisherTransport.Factory.Builder(conn)
+                .withSpool(spool)
+                .build()
+                .getTransport();
+        when(conn.getState()).thenReturn(Nats.ConnState.RECONNECTING);
+        assertTrue(transport.isOpen());
+        transport.open();
+
+        byte[] payload = new byte[]{0, 0, 0, 1};
+        transport.publish(topic, payload);
+        assertEquals(1, spool.size());
+        verify(conn, never()).publish(formattedSubject, payload);
+        // Spooled messages cannot be flushed while disconnected.
+        try {
+            transport.flush();
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.NOT_OPEN, e.getType());
+        }
+
+        // Flushing waits for the spooled messages to be published.
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        transport.flush();
+        verify(conn).publish(formattedSubject, payload);
+        verify(conn).flush();
+
+        // A closed connection is not reconnecting, so nothing is spooled.
+        when(conn.getState()).thenReturn(Nats.ConnState.CLOSED);
+        assertFalse(transport.isOpen());
+        spool.close();
+        Files.delete(path);
+    }
+
+    @Test
+    public void testPublishAsync() throws Exception {
+        transport = newAsyncTransport(4, 0);
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        assertFalse(transport.isOpen());
+        transport.open();
+        assertTrue(transport.isOpen());
+
+        List<byte[]> payloads = new ArrayList<>();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            byte[] payload = new byte[]{0, 0, 0, (byte) i};
+            payloads.add(payload);
+            futures.add(transport.publishAsync(topic, payload));
+        }
+        for (CompletableFuture<Void> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+
+        InOrder inOrder = inOrder(conn);
+        for (byte[] payload : payloads) {
+            inOrder.verify(conn).publish(formattedSubject, payload);
+        }
+        transport.close();
+        assertFalse(transport.isOpen());
+    }
+
+    @Test(expected = TTransportException.class)
+    public void testPublishAsyncNotOpen() throws TTransportException {
+        transport = newAsyncTransport(4, 0);
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+
+        transport.publish(topic, new byte[]{1, 2, 3, 4});
+    }
+
+    @Test
+    public void testPublishAsyncFailure() throws Exception {
+        transport = newAsyncTransport(4, 0);
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        byte[] payload = new byte[]{1, 2, 3, 4};
+        Mockito.doThrow(new IOException()).when(conn).publish(formattedSubject, payload);
+        transport.open();
+
+        try {
+            transport.publishAsync(topic, payload).get(5, TimeUnit.SECONDS);
+            fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TTransportException);
+        }
+        transport.close();
+    }
+
+    @Test
+    public void testFlushSendsPartialBatch() throws Exception {
+        // The batch delay is long enough that only a flush or close sends the messages.
+        transport = newAsyncTransport(100, 60000);
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        transport.open();
+        byte[] payload = new byte[]{1, 2, 3, 4};
+
+        transport.publish(topic, payload);
+        transport.publish(topic, payload);
+        transport.flush();
+
+        verify(conn, times(2)).publish(formattedSubject, payload);
+        verify(conn).flush();
+        assertEquals(0, transport.getQueuedCount());
+        transport.close();
+    }
+
+    @Test
+    public void testBatchFlushFailure() throws Exception {
+        transport = newAsyncTransport(100, 60000);
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        Mockito.doThrow(new IOException("timeout")).when(conn).flush();
+        transport.open();
+        byte[] payload = new byte[]{1, 2, 3, 4};
+
+        // Every message of the batch fails with the flush.
+        CompletableFuture<Void> first = transport.publishAsync(topic, payload);
+        CompletableFuture<Void> second = transport.publishAsync(topic, payload);
+        try {
+            transport.flush();
+            fail("Expected TTransportException");
+        } catch (TTransportException expected) {
+        }
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        verify(conn, times(2)).publish(formattedSubject, payload);
+        verify(conn).flush();
+        transport.close();
+    }
+
+    @Test
+    public void testCloseDoesNotBlockIsOpen() throws Exception {
+        transport = newAsyncTransport(100, 60000);
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        transport.open();
+        CountDownLatch flushing = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        Mockito.doAnswer(invocation -> {
+            flushing.countDown();
+            unblock.await();
+            return null;
+        }).when(conn).flush();
+        transport.publish(topic, new byte[]{1, 2, 3, 4});
+
+        Thread closer = new Thread(transport::close);
+        closer.start();
+        assertTrue(flushing.await(5, TimeUnit.SECONDS));
+        // Close is waiting for the background thread, which must not stop publishers from checking the transport.
+        assertFalse(CompletableFuture.supplyAsync(transport::isOpen).get(5, TimeUnit.SECONDS));
+        unblock.countDown();
+        closer.join();
+    }
+
+    @Test
+    public void testClosePublishesQueuedMessages() throws Exception {
+        transport = newAsyncTransport(100, 60000);
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        transport.open();
+        byte[] payload = new byte[]{1, 2, 3, 4};
+
+        CompletableFuture<Void> future = transport.publishAsync(topic, payload);
+        transport.close();
+
+        assertTrue(future.isDone());
+        verify(conn).publish(formattedSubject, payload);
+    }
+
+    @Test
+    public void testFlushNotOpen() throws Exception {
+        transport = newAsyncTransport(100, 60000);
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+
+        try {
+            transport.flush();
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.NOT_OPEN, e.getType());
+        }
+
+        transport.open();
+        transport.close();
+        try {
+            transport.flush();
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.NOT_OPEN, e.getType());
+        }
+        verify(conn, never()).flush();
+    }
 }
@@ -1,6 +1,10 @@
 package com.workiva.frugal.transport;
 
 import com.workiva.frugal.protocol.FAsyncCallback;
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.BoundedMessageBuffer;
+import com.workiva.frugal.util.PartitionedExecutor;
+import com.workiva.frugal.util.ProtocolUtils;
 import io.nats.client.AsyncSubscription;
 import io.nats.client.Connection;
 import io.nats.client.Message;
@@ -15,6 +19,12 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static com.workiva.frugal.transport.FNatsTransport.FRUGAL_PREFIX;
 import static org.junit.Assert.assertArrayEquals;
@@ -24,8 +34,12 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -107,6 +121,23 @@ public class FNatsSubscriberTransportTest {
         assertArrayEquals(expectedPayload, actualPayload);
     }
 
+    @Test
+    public void testResubscribe() throws Exception {
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        AsyncSubscription secondSub = mock(AsyncSubscription.class);
+        when(conn.subscribe(any(String.class), isNull(), any(MessageHandler.class)))
+                .thenReturn(mockSub, secondSub);
+
+        transport.subscribe(topic, new Handler());
+        transport.subscribe(topic, new Handler());
+
+        // The previous NATS subscription is stopped rather than left delivering.
+        verify(mockSub).unsubscribe();
+        assertEquals(secondSub, transport.sub);
+        transport.unsubscribe();
+        verify(secondSub).unsubscribe();
+    }
+
     @Test
     public void testSubscribeQueue() throws Exception {
         transport = new FNatsSubscriberTransport.Factory(conn, "foo").getTransport();
@@ -127,6 +158,219 @@ public class FNatsSubscriberTransportTest {
         assertEquals(formattedSubject, topicCaptor.getValue());
     }
 
+    @Test
+    public void testSubscribeWorkerPool() throws Exception {
+        PartitionedExecutor pool = new PartitionedExecutor(4, 16);
+        transport = new FNatsSubscriberTransport.Factory.Builder(conn)
+                .withWorkerPool(pool)
+                .withPartitionHeader("key")
+                .build()
+                .getTransport();
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        ArgumentCaptor<MessageHandler> handlerCaptor = ArgumentCaptor.forClass(MessageHandler.class);
+        when(conn.subscribe(any(String.class), isNull(), handlerCaptor.capture())).thenReturn(mockSub);
+
+        int count = 100;
+        CountDownLatch delivered = new CountDownLatch(count);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        List<String> threads = Collections.synchronizedList(new ArrayList<>());
+        transport.subscribe(topic, tr -> {
+            byte[] frame = new byte[tr.getBytesRemainingInBuffer()];
+            tr.read(frame, 0, frame.length);
+            received.add((int) frame[frame.length - 1]);
+            threads.add(Thread.currentThread().getName());
+            delivered.countDown();
+        });
+
+        MessageHandler messageHandler = handlerCaptor.getValue();
+        for (int i = 0; i < count; i++) {
+            messageHandler.onMessage(new Message(formattedSubject, null, newFrame("partition", i)));
+        }
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+
+        // All messages share a partition key, so they are delivered in order on a single worker.
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (int) received.get(i));
+        }
+        assertEquals(1, threads.stream().distinct().count());
+        assertTrue(threads.get(0).startsWith("frugal-partition-"));
+        assertEquals(0, pool.getQueueDepth());
+
+        // Messages are discarded once the pool is shut down.
+        pool.shutdown();
+        messageHandler.onMessage(new Message(formattedSubject, null, newFrame("partition", 0)));
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(count, received.size());
+    }
+
+    private static byte[] newFrame(String key, int body) throws TException {
+        byte[] headers = HeaderUtils.encode(Collections.singletonMap("key", key));
+        byte[] frame = new byte[4 + headers.length + 1];
+        ProtocolUtils.writeInt(frame.length - 4, frame, 0);
+        System.arraycopy(headers, 0, frame, 4, headers.length);
+        frame[frame.length - 1] = (byte) body;
+        return frame;
+    }
+
+    @Test
+    public void testSubscribeBatch() throws Exception {
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        ArgumentCaptor<MessageHandler> handlerCaptor = ArgumentCaptor.forClass(MessageHandler.class);
+        when(conn.subscribe(any(String.class), isNull(), handlerCaptor.capture())).thenReturn(mockSub);
+
+        List<List<TTransport>> batches = new ArrayList<>();
+        transport.subscribeBatch(topic, 2, 60000, batches::add);
+
+        MessageHandler messageHandler = handlerCaptor.getValue();
+        byte[] frame = new byte[]{0, 0, 0, 4, 1, 2, 3, 4};
+        for (int i = 0; i < 3; i++) {
+            messageHandler.onMessage(new Message(formattedSubject, null, frame));
+        }
+        assertEquals(1, batches.size());
+        assertEquals(2, batches.get(0).size());
+
+        // Unsubscribing delivers the partial batch.
+        transport.unsubscribe();
+        assertEquals(2, batches.size());
+        assertEquals(1, batches.get(1).size());
+        byte[] payload = new byte[4];
+        batches.get(1).get(0).read(payload, 0, 4);
+        assertArrayEquals(new byte[]{1, 2, 3, 4}, payload);
+    }
+
+    @Test
+    public void testSubscribeBuffer() throws Exception {
+        transport = new FNatsSubscriberTransport.Factory.Builder(conn)
+                .withPartitionHeader("key")
+                .withBuffer(2, BoundedMessageBuffer.Policy.CONFLATE)
+                .build()
+                .getTransport();
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        ArgumentCaptor<MessageHandler> handlerCaptor = ArgumentCaptor.forClass(MessageHandler.class);
+        when(conn.subscribe(any(String.class), isNull(), handlerCaptor.capture())).thenReturn(mockSub);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch delivered = new CountDownLatch(3);
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        transport.subscribe(topic, tr -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {
+            }
+            byte[] frame = new byte[tr.getBytesRemainingInBuffer()];
+            tr.read(frame, 0, frame.length);
+            received.add((int) frame[frame.length - 1]);
+            delivered.countDown();
+        });
+
+        MessageHandler messageHandler = handlerCaptor.getValue();
+        messageHandler.onMessage(new Message(formattedSubject, null, newFrame("a", 0)));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // While the subscriber is busy, only the latest message per key is kept.
+        messageHandler.onMessage(new Message(formattedSubject, null, newFrame("a", 1)));
+        messageHandler.onMessage(new Message(formattedSubject, null, newFrame("b", 2)));
+        messageHandler.onMessage(new Message(formattedSubject, null, newFrame("a", 3)));
+        assertEquals(2, transport.getPendingCount());
+        assertEquals(1, transport.getDroppedCount());
+        verify(mockSub).setPendingLimits(eq(2), anyInt());
+
+        release.countDown();
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(0, 3, 2), received);
+
+        transport.unsubscribe();
+        assertEquals(0, transport.getPendingCount());
+        assertNull(transport.buffer);
+    }
+
+    @Test
+    public void testResubscribeClosesBuffer() throws Exception {
+        transport = new FNatsSubscriberTransport.Factory.Builder(conn)
+                .withBuffer(2, BoundedMessageBuffer.Policy.DROP_OLDEST)
+                .build()
+                .getTransport();
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        when(conn.subscribe(any(String.class), isNull(), any(MessageHandler.class))).thenReturn(mockSub);
+
+        transport.subscribe(topic, tr -> { });
+        BoundedMessageBuffer<Message> first = transport.buffer;
+        transport.subscribe(topic, tr -> { });
+
+        assertFalse(first.offer("key", new Message(formattedSubject, null, new byte[4])));
+        transport.unsubscribe();
+    }
+
+    @Test
+    public void testSubscribeSnapshot() throws Exception {
+        transport = new FNatsSubscriberTransport.Factory.Builder(conn)
+                .withSnapshot(50)
+                .build()
+                .getTransport();
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        ArgumentCaptor<MessageHandler> handlerCaptor = ArgumentCaptor.forClass(MessageHandler.class);
+        when(conn.subscribe(any(String.class), isNull(), handlerCaptor.capture())).thenReturn(mockSub);
+
+        FNatsLastValueCache cache = new FNatsLastValueCache(conn, 10);
+        byte[] first = cache.record(topic, FNatsLastValueCacheTest.newFrame(1));
+        byte[] second = cache.record(topic, FNatsLastValueCacheTest.newFrame(2));
+        byte[] third = cache.record(topic, FNatsLastValueCacheTest.newFrame(3));
+
+        // Messages received while the snapshot is requested are merged with it.
+        when(conn.request(FNatsLastValueCache.SNAPSHOT_PREFIX + topic, new byte[0], 50, TimeUnit.MILLISECONDS))
+                .thenAnswer(invocation -> {
+                    MessageHandler messageHandler = handlerCaptor.getValue();
+                    messageHandler.onMessage(new Message(formattedSubject, null, first));
+                    messageHandler.onMessage(new Message(formattedSubject, null, second));
+                    messageHandler.onMessage(new Message(formattedSubject, null, third));
+                    return new Message("inbox", null, second);
+                });
+
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch merged = new CountDownLatch(2);
+        transport.subscribe(topic, tr -> {
+            byte[] frame = new byte[tr.getBytesRemainingInBuffer()];
+            tr.read(frame, 0, frame.length);
+            received.add((int) frame[frame.length - 1]);
+            merged.countDown();
+        });
+        // The snapshot is requested without blocking subscribe.
+        assertTrue(merged.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList(2, 3), received);
+
+        handlerCaptor.getValue().onMessage(new Message(formattedSubject, null,
+                cache.record(topic, FNatsLastValueCacheTest.newFrame(4))));
+        assertEquals(Arrays.asList(2, 3, 4), received);
+    }
+
+    @Test
+    public void testRequestKeyframe() throws Exception {
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        when(conn.subscribe(any(String.class), isNull(), any(MessageHandler.class))).thenReturn(mockSub);
+        byte[] keyframe = FNatsLastValueCacheTest.newFrame(7);
+        when(conn.request(FNatsLastValueCache.SNAPSHOT_PREFIX + topic, FNatsLastValueCache.KEYFRAME_REQUEST, 1000,
+                TimeUnit.MILLISECONDS)).thenReturn(new Message("inbox", null, keyframe));
+
+        // Requesting a keyframe before subscribing does nothing.
+        transport.requestKeyframe();
+
+        List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch delivered = new CountDownLatch(1);
+        transport.subscribe(topic, tr -> {
+            byte[] frame = new byte[tr.getBytesRemainingInBuffer()];
+            tr.read(frame, 0, frame.length);
+            received.add((int) frame[frame.length - 1]);
+            delivered.countDown();
+        });
+        transport.requestKeyframe();
+
+        assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        assertEquals(Collections.singletonList(7), received);
+        verify(conn, times(1)).request(any(String.class), any(byte[].class), anyLong(), any(TimeUnit.class));
+    }
+
     @Test
     public void testSubscribeEmptySubjectThrowsException() throws Exception {
         when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
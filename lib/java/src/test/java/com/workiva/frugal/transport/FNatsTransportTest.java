@@ -2,6 +2,9 @@ package com.workiva.frugal.transport;
 
 import com.workiva.frugal.FContext;
 import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.protocol.HeaderUtils;
+import com.workiva.frugal.util.FrameFragmenter;
+import com.workiva.frugal.util.ProtocolUtils;
 import io.nats.client.AsyncSubscription;
 import io.nats.client.Connection;
 import io.nats.client.Message;
@@ -20,8 +23,10 @@ import static com.workiva.frugal.transport.FAsyncTransportTest.mockFrame;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -90,6 +95,39 @@ public class FNatsTransportTest {
         verify(mockQueue).put(mockFrame);
     }
 
+    @Test
+    public void testInboxRouter() throws TException, IOException, InterruptedException {
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        when(conn.newInbox()).thenReturn("_INBOX.abc");
+        ArgumentCaptor<MessageHandler> handlerCaptor = ArgumentCaptor.forClass(MessageHandler.class);
+        AsyncSubscription sub = mock(AsyncSubscription.class);
+        when(conn.subscribe(eq("_INBOX.abc.*"), handlerCaptor.capture())).thenReturn(sub);
+        FNatsInboxRouter router = new FNatsInboxRouter(conn);
+        FNatsTransport transport1 = FNatsTransport.of(conn, "foo").withInboxRouter(router);
+        FNatsTransport transport2 = FNatsTransport.of(conn, "baz").withInboxRouter(router);
+        transport1.open();
+        transport2.open();
+        verify(conn).subscribe(eq("_INBOX.abc.*"), any(MessageHandler.class));
+
+        transport2.flush("helloworld".getBytes());
+        ArgumentCaptor<String> replyCaptor = ArgumentCaptor.forClass(String.class);
+        verify(conn).publish(eq("baz"), replyCaptor.capture(), eq("helloworld".getBytes()));
+
+        FContext context = new FContext();
+        BlockingQueue<byte[]> mockQueue = mock(BlockingQueue.class);
+        transport2.queueMap.put(FAsyncTransport.getOpId(context), mockQueue);
+        byte[] mockFrame = mockFrame(context);
+        byte[] framedPayload = new byte[mockFrame.length + 4];
+        System.arraycopy(mockFrame, 0, framedPayload, 4, mockFrame.length);
+        handlerCaptor.getValue().onMessage(new Message(replyCaptor.getValue(), null, framedPayload));
+        verify(mockQueue).put(mockFrame);
+
+        transport1.close();
+        verify(sub, never()).unsubscribe();
+        transport2.close();
+        verify(sub).unsubscribe();
+    }
+
     @Test
     public void testFlush() throws TTransportException, IOException, InterruptedException {
         when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
@@ -107,4 +145,31 @@ public class FNatsTransportTest {
         when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
         transport.request(new FContext(), "helloworld".getBytes());
     }
+
+    @Test
+    public void testFragmentationNegotiation() throws TException, IOException {
+        transport = FNatsTransport.of(conn, subject).withInbox(inbox).withFragmentation();
+        when(conn.getState()).thenReturn(Nats.ConnState.CONNECTED);
+        ArgumentCaptor<MessageHandler> handlerCaptor = ArgumentCaptor.forClass(MessageHandler.class);
+        when(conn.subscribe(any(String.class), handlerCaptor.capture())).thenReturn(mock(AsyncSubscription.class));
+        transport.open();
+        assertEquals(FNatsTransport.NATS_MAX_MESSAGE_SIZE, transport.getRequestSizeLimit());
+
+        // Requests advertise fragmentation support.
+        FContext context = new FContext();
+        byte[] frame = mockFrame(context);
+        byte[] framedPayload = new byte[frame.length + 4];
+        ProtocolUtils.writeInt(frame.length, framedPayload, 0);
+        System.arraycopy(frame, 0, framedPayload, 4, frame.length);
+        transport.flush(framedPayload);
+        ArgumentCaptor<byte[]> payloadCaptor = ArgumentCaptor.forClass(byte[].class);
+        verify(conn).publish(eq(subject), eq(inbox), payloadCaptor.capture());
+        assertEquals("1", HeaderUtils.decodeFromFrame(payloadCaptor.getValue(), 4)
+                .get(FrameFragmenter.FRAGMENTATION_HEADER));
+
+        // A response advertising support raises the request size limit.
+        byte[] response = HeaderUtils.addHeadersToFrame(framedPayload, FrameFragmenter.FRAGMENTATION_HEADERS);
+        handlerCaptor.getValue().onMessage(new Message(inbox, null, response));
+        assertEquals(FrameFragmenter.MAX_FRAGMENTED_FRAME_SIZE, transport.getRequestSizeLimit());
+    }
 }
@@ -0,0 +1,351 @@
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.exception.TTransportExceptionType;
+import com.workiva.frugal.util.HttpTransferEncoding;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.base64.Base64;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.DefaultHttp2Connection;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import io.netty.handler.codec.http2.HttpToHttp2ConnectionHandlerBuilder;
+import io.netty.handler.codec.http2.InboundHttp2ToHttpAdapterBuilder;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link FNettyHttpTransport}.
+ */
+@RunWith(JUnit4.class)
+public class FNettyHttpTransportTest {
+
+    private static final String MODE_HEADER = "x-test-mode";
+    private static final String PATH = "x-test-path";
+
+    private final BlockingQueue<HttpHeaders> received = new LinkedBlockingQueue<>();
+    private final Set<Channel> connections = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private EventLoopGroup serverGroup;
+    private Channel server;
+    private String url;
+    private FNettyHttpTransport transport;
+
+    // Sends the mode request header of a context to the server.
+    private final FHttpTransport.FHttpTransportHeaders modeHeaders = new FHttpTransport.FHttpTransportHeaders() {
+        @Override
+        public Map<String, String> getRequestHeaders() {
+            return Collections.emptyMap();
+        }
+
+        @Override
+        public Map<String, String> getRequestHeaders(FContext context) {
+            String mode = context.getRequestHeader(MODE_HEADER);
+            return mode != null ? Collections.singletonMap(MODE_HEADER, mode) : getRequestHeaders();
+        }
+    };
+
+    @Before
+    public void setUp() throws Exception {
+        serverGroup = new NioEventLoopGroup(1);
+        server = new ServerBootstrap()
+                .group(serverGroup)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        connections.add(ch);
+                        Http2Connection connection = new DefaultHttp2Connection(true);
+                        ch.pipeline().addLast(new HttpToHttp2ConnectionHandlerBuilder()
+                                .connection(connection)
+                                .frameListener(new InboundHttp2ToHttpAdapterBuilder(connection)
+                                        .maxContentLength(1024 * 1024)
+                                        .propagateSettings(false)
+                                        .build())
+                                .build(), new Responder());
+                    }
+                })
+                .bind(0).sync().channel();
+        url = "http://localhost:" + ((InetSocketAddress) server.localAddress()).getPort() + "/frugal";
+        transport = new FNettyHttpTransport.Builder(url)
+                .withResponseSizeLimit(1024)
+                .withRequestHeaders(modeHeaders)
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        transport.close();
+        server.close().syncUninterruptibly();
+        serverGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Echoes request frames, or misbehaves as asked by the mode header.
+     */
+    private class Responder extends SimpleChannelInboundHandler<FullHttpRequest> {
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            received.add(new DefaultHttpHeaders().add(request.headers()).set(PATH, request.uri()));
+            String mode = request.headers().get(MODE_HEADER, "echo");
+            if (mode.equals("silent")) {
+                return;
+            }
+
+            boolean binary = HttpTransferEncoding.acceptsBinary(
+                    request.headers().get(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER),
+                    request.headers().get(HttpTransferEncoding.ACCEPT_TRANSFER_ENCODING_HEADER));
+            ByteBuf frame = HttpTransferEncoding.isBinary(
+                    request.headers().get(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER))
+                    ? request.content().retain() : Base64.decode(request.content());
+            HttpResponseStatus status = HttpResponseStatus.OK;
+            if (mode.equals("oneway")) {
+                frame.release();
+                frame = Unpooled.wrappedBuffer(new byte[4]);
+            } else if (mode.equals("too-large")) {
+                status = HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+            }
+
+            ByteBuf body = binary ? frame : Base64.encode(frame, false);
+            if (!binary) {
+                frame.release();
+            }
+            FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, body);
+            String streamId = HttpConversionUtil.ExtensionHeaderNames.STREAM_ID.text().toString();
+            response.headers().set(streamId, request.headers().get(streamId));
+            if (binary) {
+                response.headers().set(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER,
+                        HttpTransferEncoding.BINARY);
+            }
+            ctx.writeAndFlush(response);
+        }
+    }
+
+    private static byte[] frame(int... body) {
+        byte[] frame = new byte[4 + body.length];
+        frame[3] = (byte) body.length;
+        for (int i = 0; i < body.length; i++) {
+            frame[4 + i] = (byte) body[i];
+        }
+        return frame;
+    }
+
+    private static byte[] read(TTransport response) throws TTransportException {
+        byte[] buff = new byte[response.getBytesRemainingInBuffer()];
+        response.readAll(buff, 0, buff.length);
+        return buff;
+    }
+
+    @Test
+    public void testRequest() throws Exception {
+        transport.open();
+        assertTrue(transport.isOpen());
+
+        FContext context = new FContext();
+        assertArrayEquals(new byte[]{1, 2, 3}, read(transport.request(context, frame(1, 2, 3))));
+
+        HttpHeaders headers = received.take();
+        assertEquals("/frugal", headers.get(PATH));
+        assertEquals("1024", headers.get("x-frugal-payload-limit"));
+        assertEquals(HttpTransferEncoding.BASE64, headers.get(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER));
+        assertEquals("application/x-frugal", headers.get("content-type"));
+    }
+
+    @Test
+    public void testRequestMultiplexed() throws Exception {
+        transport.open();
+
+        List<CompletableFuture<TTransport>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(transport.requestAsync(new FContext(), frame(i)));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertArrayEquals(new byte[]{(byte) i}, read(futures.get(i).get(10, TimeUnit.SECONDS)));
+        }
+        assertEquals(1, connections.size());
+    }
+
+    @Test
+    public void testConnections() throws Exception {
+        transport = new FNettyHttpTransport.Builder(url).withConnections(3).build();
+        transport.open();
+        for (int i = 0; i < 6; i++) {
+            assertArrayEquals(new byte[]{(byte) i}, read(transport.request(new FContext(), frame(i))));
+        }
+        assertEquals(3, connections.size());
+    }
+
+    @Test
+    public void testReconnect() throws Exception {
+        transport.open();
+        assertArrayEquals(new byte[]{1}, read(transport.request(new FContext(), frame(1))));
+        for (Channel connection : connections) {
+            connection.close().sync();
+        }
+
+        // The closed connection is replaced once its closure has been noticed.
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            try {
+                assertArrayEquals(new byte[]{2}, read(transport.request(new FContext(), frame(2))));
+                break;
+            } catch (TTransportException e) {
+                assertTrue(System.currentTimeMillis() < deadline);
+            }
+        }
+        assertEquals(2, connections.size());
+    }
+
+    @Test
+    public void testOneway() throws Exception {
+        transport.open();
+        FContext context = new FContext();
+        context.addRequestHeader(MODE_HEADER, "oneway");
+        transport.oneway(context, frame(1, 2, 3));
+        assertNull(transport.request(context, frame(1, 2, 3)));
+    }
+
+    @Test
+    public void testBinaryTransferEncoding() throws Exception {
+        transport = new FNettyHttpTransport.Builder(url).withBinaryTransferEncoding().build();
+        transport.open();
+
+        assertArrayEquals(new byte[]{1}, read(transport.request(new FContext(), frame(1))));
+        HttpHeaders headers = received.take();
+        assertEquals(HttpTransferEncoding.BASE64, headers.get(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER));
+        assertEquals(HttpTransferEncoding.BINARY, headers.get(HttpTransferEncoding.ACCEPT_TRANSFER_ENCODING_HEADER));
+
+        // The binary response negotiates binary requests.
+        assertArrayEquals(new byte[]{2}, read(transport.request(new FContext(), frame(2))));
+        headers = received.take();
+        assertEquals(HttpTransferEncoding.BINARY, headers.get(HttpTransferEncoding.CONTENT_TRANSFER_ENCODING_HEADER));
+    }
+
+    @Test
+    public void testRequestHeaders() throws Exception {
+        transport = new FNettyHttpTransport.Builder(url)
+                .withRequestHeaders(() -> Collections.singletonMap("x-custom", "value"))
+                .build();
+        transport.open();
+        transport.request(new FContext(), frame(1));
+        assertEquals("value", received.take().get("x-custom"));
+    }
+
+    @Test
+    public void testResponseTooLarge() throws Exception {
+        transport.open();
+        FContext context = new FContext();
+        context.addRequestHeader(MODE_HEADER, "too-large");
+        try {
+            transport.request(context, frame(1));
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.RESPONSE_TOO_LARGE, e.getType());
+        }
+    }
+
+    @Test
+    public void testRequestTimeout() throws Exception {
+        transport.open();
+        FContext context = new FContext();
+        context.setTimeout(100);
+        context.addRequestHeader(MODE_HEADER, "silent");
+        try {
+            transport.request(context, frame(1));
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.TIMED_OUT, e.getType());
+        }
+
+        // The connection keeps serving other streams.
+        assertArrayEquals(new byte[]{2}, read(transport.request(new FContext(), frame(2))));
+    }
+
+    @Test
+    public void testRequestSizeLimit() throws Exception {
+        transport = new FNettyHttpTransport.Builder(url).withRequestSizeLimit(4).build();
+        transport.open();
+        try {
+            transport.request(new FContext(), frame(1));
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.REQUEST_TOO_LARGE, e.getType());
+        }
+    }
+
+    @Test
+    public void testNotOpen() throws Exception {
+        try {
+            transport.request(new FContext(), frame(1));
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.NOT_OPEN, e.getType());
+        }
+
+        transport.open();
+        transport.close();
+        assertFalse(transport.isOpen());
+        try {
+            transport.request(new FContext(), frame(1));
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.NOT_OPEN, e.getType());
+        }
+    }
+
+    @Test
+    public void testOpenConnectionRefused() throws Exception {
+        server.close().sync();
+        try {
+            transport.open();
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(TTransportExceptionType.NOT_OPEN, e.getType());
+        }
+        assertFalse(transport.isOpen());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testHttpsUnsupported() {
+        new FNettyHttpTransport.Builder("https://localhost/frugal");
+    }
+}
@@ -0,0 +1,51 @@
+package com.workiva.frugal.transport;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link TByteBufTransport}.
+ */
+@RunWith(JUnit4.class)
+public class TByteBufTransportTest {
+
+    @Test
+    public void testReadWrite() throws TTransportException {
+        ByteBuf buffer = Unpooled.buffer();
+        TByteBufTransport transport = new TByteBufTransport(buffer);
+        transport.write(new byte[]{1, 2, 3, 4, 5}, 1, 3);
+        assertEquals(3, buffer.readableBytes());
+
+        byte[] read = new byte[4];
+        assertEquals(2, transport.read(read, 1, 2));
+        assertArrayEquals(new byte[]{0, 2, 3, 0}, read);
+        assertEquals(1, transport.read(read, 0, 4));
+        assertEquals(4, read[0]);
+        assertEquals(0, transport.read(read, 0, 4));
+    }
+
+    @Test(expected = TTransportException.class)
+    public void testReadAllUnderflow() throws TTransportException {
+        new TByteBufTransport(Unpooled.wrappedBuffer(new byte[2])).readAll(new byte[3], 0, 3);
+    }
+
+    @Test
+    public void testProtocol() throws Exception {
+        ByteBuf buffer = Unpooled.directBuffer();
+        TProtocol protocol = new TBinaryProtocol(new TByteBufTransport(buffer));
+        protocol.writeString("foo");
+        protocol.writeI64(42);
+        assertEquals("foo", protocol.readString());
+        assertEquals(42, protocol.readI64());
+        assertEquals(0, buffer.readableBytes());
+    }
+}
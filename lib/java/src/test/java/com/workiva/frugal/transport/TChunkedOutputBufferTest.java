@@ -0,0 +1,92 @@
+package com.workiva.frugal.transport;
+
+import com.workiva.frugal.util.ProtocolUtils;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link TChunkedOutputBuffer}.
+ */
+@RunWith(JUnit4.class)
+public class TChunkedOutputBufferTest {
+
+    private static byte[] framed(byte[] data) {
+        byte[] framed = new byte[4 + data.length];
+        ProtocolUtils.writeInt(data.length, framed, 0);
+        System.arraycopy(data, 0, framed, 4, data.length);
+        return framed;
+    }
+
+    @Test
+    public void testWrite() throws TTransportException {
+        TChunkedOutputBuffer buffer = new TChunkedOutputBuffer();
+        assertFalse(buffer.hasWriteData());
+        assertArrayEquals(new byte[4], buffer.getWriteBytes());
+
+        buffer.write("foooooooo".getBytes(), 0, 3);
+        assertTrue(buffer.hasWriteData());
+        assertEquals(7, buffer.size());
+        assertArrayEquals(framed("foo".getBytes()), buffer.getWriteBytes());
+
+        buffer.reset();
+        assertEquals(4, buffer.size());
+        assertArrayEquals(new byte[4], buffer.getWriteBytes());
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+        byte[] data = new byte[1024 * 1024];
+        new Random(0).nextBytes(data);
+        TChunkedOutputBuffer buffer = new TChunkedOutputBuffer();
+        for (int i = 0; i < data.length; i += 1000) {
+            buffer.write(data, i, Math.min(1000, data.length - i));
+        }
+        assertTrue(buffer.getChunkCount() > 1);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        buffer.writeTo(out);
+        assertArrayEquals(framed(data), out.toByteArray());
+        assertArrayEquals(framed(data), buffer.getWriteBytes());
+
+        // Chunks can be base64 encoded one at a time.
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        for (int i = 0; i < buffer.getChunkCount(); i++) {
+            ByteBuffer chunk = Base64.getEncoder().encode(buffer.getChunk(i));
+            encoded.write(chunk.array(), 0, chunk.limit());
+        }
+        assertArrayEquals(Base64.getEncoder().encode(framed(data)), encoded.toByteArray());
+    }
+
+    @Test
+    public void testLimit() throws TTransportException {
+        TChunkedOutputBuffer buffer = new TChunkedOutputBuffer(10);
+        buffer.write(new byte[6]);
+        assertFalse(buffer.isLimitExceeded());
+        try {
+            buffer.write(new byte[1]);
+            fail("Expected TTransportException");
+        } catch (TTransportException e) {
+            assertEquals(4, buffer.size());
+            assertTrue(buffer.isLimitExceeded());
+        }
+    }
+
+    @Test
+    public void testLimitSmallerThanFrameSize() {
+        assertTrue(new TChunkedOutputBuffer(1).isLimitExceeded());
+        assertFalse(new TChunkedOutputBuffer(0).isLimitExceeded());
+    }
+}
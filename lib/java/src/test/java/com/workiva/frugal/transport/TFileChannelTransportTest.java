@@ -0,0 +1,102 @@
+package com.workiva.frugal.transport;
+
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TMemoryBuffer;
+import org.apache.thrift.transport.TTransportException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link TFileChannelTransport}.
+ */
+@RunWith(JUnit4.class)
+public class TFileChannelTransportTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private FileChannel open(byte[] content) throws IOException {
+        Path file = folder.newFile().toPath();
+        Files.write(file, content);
+        return FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        try (FileChannel channel = open(new byte[]{9, 1, 2, 3, 9})) {
+            TFileChannelTransport transport = new TFileChannelTransport(channel, 1, 3);
+
+            byte[] read = new byte[4];
+            assertEquals(2, transport.read(read, 1, 2));
+            assertArrayEquals(new byte[]{0, 1, 2, 0}, read);
+            assertEquals(1, transport.read(read, 0, 4));
+            assertEquals(3, read[0]);
+            assertEquals(0, transport.read(read, 0, 4));
+            assertEquals(0, channel.position());
+        }
+    }
+
+    @Test
+    public void testReadLarge() throws Exception {
+        byte[] content = new byte[20000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        try (FileChannel channel = open(content)) {
+            TFileChannelTransport transport = new TFileChannelTransport(channel, 0, content.length);
+
+            byte[] read = new byte[content.length];
+            transport.readAll(read, 0, 10);
+            transport.readAll(read, 10, read.length - 10);
+            assertArrayEquals(content, read);
+        }
+    }
+
+    @Test(expected = TTransportException.class)
+    public void testReadAllUnderflow() throws Exception {
+        try (FileChannel channel = open(new byte[2])) {
+            new TFileChannelTransport(channel, 0, 2).readAll(new byte[3], 0, 3);
+        }
+    }
+
+    @Test(expected = TTransportException.class)
+    public void testFileTooShort() throws Exception {
+        try (FileChannel channel = open(new byte[2])) {
+            new TFileChannelTransport(channel, 0, 3).readAll(new byte[3], 0, 3);
+        }
+    }
+
+    @Test(expected = TTransportException.class)
+    public void testWrite() throws Exception {
+        try (FileChannel channel = open(new byte[2])) {
+            new TFileChannelTransport(channel, 0, 2).write(new byte[1], 0, 1);
+        }
+    }
+
+    @Test
+    public void testProtocol() throws Exception {
+        TMemoryBuffer written = new TMemoryBuffer(16);
+        TProtocol out = new TBinaryProtocol(written);
+        out.writeString("foo");
+        out.writeI64(42);
+
+        try (FileChannel channel = open(written.getArray())) {
+            TProtocol in = new TBinaryProtocol(new TFileChannelTransport(channel, 0, written.length()));
+            assertEquals("foo", in.readString());
+            assertEquals(42, in.readI64());
+        }
+    }
+}
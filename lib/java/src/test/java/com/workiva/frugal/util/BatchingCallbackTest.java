@@ -0,0 +1,113 @@
+package com.workiva.frugal.util;
+
+import org.apache.thrift.TException;
+import org.apache.thrift.transport.TMemoryInputTransport;
+import org.apache.thrift.transport.TTransport;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BatchingCallback}.
+ */
+@RunWith(JUnit4.class)
+public class BatchingCallbackTest {
+
+    private final BlockingQueue<List<TTransport>> batches = new LinkedBlockingQueue<>();
+
+    @Test
+    public void testDeliverFullBatch() throws TException {
+        BatchingCallback callback = new BatchingCallback(3, 60000, batches::add);
+        TTransport[] transports = new TTransport[7];
+        for (int i = 0; i < transports.length; i++) {
+            transports[i] = new TMemoryInputTransport(new byte[]{(byte) i});
+            callback.onMessage(transports[i]);
+        }
+
+        assertEquals(2, batches.size());
+        List<TTransport> first = batches.poll();
+        assertEquals(3, first.size());
+        assertSame(transports[0], first.get(0));
+        assertSame(transports[2], first.get(2));
+        assertSame(transports[3], batches.poll().get(0));
+        assertEquals(1, callback.getPendingCount());
+
+        callback.flush();
+        assertSame(transports[6], batches.poll().get(0));
+        assertEquals(0, callback.getPendingCount());
+
+        // Flushing with nothing pending delivers nothing.
+        callback.flush();
+        assertNull(batches.poll());
+    }
+
+    @Test
+    public void testDeliverAfterDelay() throws TException, InterruptedException {
+        BatchingCallback callback = new BatchingCallback(100, 50, batches::add);
+        callback.onMessage(new TMemoryInputTransport(new byte[0]));
+        callback.onMessage(new TMemoryInputTransport(new byte[0]));
+
+        List<TTransport> batch = batches.poll(5, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertEquals(2, batch.size());
+        assertEquals(0, callback.getPendingCount());
+    }
+
+    @Test
+    public void testStaleTimerIgnored() throws TException, InterruptedException {
+        BatchingCallback callback = new BatchingCallback(1, 50, batches::add);
+        callback.onMessage(new TMemoryInputTransport(new byte[0]));
+        assertEquals(1, batches.take().size());
+
+        // The timer for the delivered batch must not deliver an empty batch.
+        assertNull(batches.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testSlowCallbackDoesNotBlockMessages() throws Exception {
+        CountDownLatch delivering = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BatchingCallback callback = new BatchingCallback(100, 10, messages -> {
+            delivering.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            batches.add(messages);
+        });
+        callback.onMessage(new TMemoryInputTransport(new byte[0]));
+        assertTrue(delivering.await(5, TimeUnit.SECONDS));
+
+        // The timed out batch is being delivered on another thread, which must not hold up new messages.
+        callback.onMessage(new TMemoryInputTransport(new byte[0]));
+        callback.onMessage(new TMemoryInputTransport(new byte[0]));
+        assertEquals(2, callback.getPendingCount());
+        release.countDown();
+
+        assertEquals(1, batches.poll(5, TimeUnit.SECONDS).size());
+        assertEquals(2, batches.poll(5, TimeUnit.SECONDS).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBatchSize() {
+        new BatchingCallback(0, 50, batches::add);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBatchDelay() {
+        new BatchingCallback(1, 0, batches::add);
+    }
+}
@@ -5,11 +5,13 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
 
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -69,4 +71,39 @@ public class BlockingRejectedExecutionHandlerTest {
         }
     }
 
+    /**
+     * Ensure that a runnable submitted to a full queue is rejected, rather than blocking forever, once the executor is
+     * shut down.
+     */
+    @Test(timeout = 5000)
+    public void testRejectedExecutionAfterShutdown() throws InterruptedException {
+        ThreadPoolExecutor executor =
+                new ThreadPoolExecutor(1, 1, 1, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(1),
+                        new BlockingRejectedExecutionHandler());
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        executor.execute(() -> { });
+
+        new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ignored) {
+            }
+            executor.shutdown();
+        }).start();
+
+        try {
+            executor.execute(() -> { });
+            fail("Expected RejectedExecutionException");
+        } catch (RejectedExecutionException expected) {
+        } finally {
+            latch.countDown();
+        }
+    }
+
 }
@@ -0,0 +1,150 @@
+package com.workiva.frugal.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BoundedMessageBuffer}.
+ */
+@RunWith(JUnit4.class)
+public class BoundedMessageBufferTest {
+
+    private final List<String> delivered = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    // Blocks the delivery thread on the first message so the buffer can be filled.
+    private final Consumer<String> blockingConsumer = message -> {
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException ignored) {
+        }
+        delivered.add(message);
+    };
+
+    private BoundedMessageBuffer<String> newBlockedBuffer(BoundedMessageBuffer.Policy policy)
+            throws InterruptedException {
+        BoundedMessageBuffer<String> buffer = new BoundedMessageBuffer<>("test", 2, policy, blockingConsumer);
+        buffer.offer("first", "first");
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return buffer;
+    }
+
+    private void awaitDelivered(int count) throws InterruptedException {
+        release.countDown();
+        for (int i = 0; i < 500 && delivered.size() < count; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, delivered.size());
+    }
+
+    @Test
+    public void testDropNewest() throws InterruptedException {
+        BoundedMessageBuffer<String> buffer = newBlockedBuffer(BoundedMessageBuffer.Policy.DROP_NEWEST);
+        assertTrue(buffer.offer("a", "a"));
+        assertTrue(buffer.offer("b", "b"));
+        assertFalse(buffer.offer("c", "c"));
+        assertEquals(2, buffer.getPendingCount());
+        assertEquals(1, buffer.getDroppedCount());
+
+        awaitDelivered(3);
+        assertEquals(Arrays.asList("first", "a", "b"), delivered);
+        assertEquals(0, buffer.getPendingCount());
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        BoundedMessageBuffer<String> buffer = newBlockedBuffer(BoundedMessageBuffer.Policy.DROP_OLDEST);
+        assertTrue(buffer.offer("a", "a"));
+        assertTrue(buffer.offer("b", "b"));
+        assertTrue(buffer.offer("c", "c"));
+        assertEquals(2, buffer.getPendingCount());
+        assertEquals(1, buffer.getDroppedCount());
+
+        awaitDelivered(3);
+        assertEquals(Arrays.asList("first", "b", "c"), delivered);
+    }
+
+    @Test
+    public void testConflate() throws InterruptedException {
+        BoundedMessageBuffer<String> buffer = newBlockedBuffer(BoundedMessageBuffer.Policy.CONFLATE);
+        assertTrue(buffer.offer("x", "x1"));
+        assertTrue(buffer.offer("y", "y1"));
+        assertTrue(buffer.offer("x", "x2"));
+        assertTrue(buffer.offer("x", "x3"));
+        assertEquals(2, buffer.getPendingCount());
+        assertEquals(2, buffer.getDroppedCount());
+
+        // A new key in a full buffer evicts the oldest entry.
+        assertTrue(buffer.offer("z", "z1"));
+        assertEquals(3, buffer.getDroppedCount());
+
+        awaitDelivered(3);
+        assertEquals(Arrays.asList("first", "y1", "z1"), delivered);
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        BoundedMessageBuffer<String> buffer = newBlockedBuffer(BoundedMessageBuffer.Policy.BLOCK);
+        buffer.offer("a", "a");
+        buffer.offer("b", "b");
+
+        CountDownLatch offered = new CountDownLatch(1);
+        Thread producer = new Thread(() -> {
+            try {
+                buffer.offer("c", "c");
+                offered.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        producer.start();
+        assertFalse(offered.await(100, TimeUnit.MILLISECONDS));
+
+        awaitDelivered(4);
+        assertTrue(offered.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("first", "a", "b", "c"), delivered);
+        assertEquals(0, buffer.getDroppedCount());
+    }
+
+    @Test
+    public void testClose() throws InterruptedException {
+        BoundedMessageBuffer<String> buffer = newBlockedBuffer(BoundedMessageBuffer.Policy.BLOCK);
+        buffer.offer("a", "a");
+        buffer.offer("b", "b");
+
+        CountDownLatch returned = new CountDownLatch(1);
+        new Thread(() -> {
+            try {
+                buffer.offer("c", "c");
+                returned.countDown();
+            } catch (InterruptedException ignored) {
+            }
+        }).start();
+
+        buffer.close();
+        assertTrue(returned.await(5, TimeUnit.SECONDS));
+        assertEquals(0, buffer.getPendingCount());
+        assertFalse(buffer.offer("d", "d"));
+
+        awaitDelivered(1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new BoundedMessageBuffer<String>("test", 0, BoundedMessageBuffer.Policy.BLOCK, delivered::add);
+    }
+}
@@ -0,0 +1,98 @@
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.util.DeltaEncoderTest.Struct;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link DeltaDecoder}.
+ */
+@RunWith(JUnit4.class)
+public class DeltaDecoderTest {
+
+    private final DeltaEncoder<Struct, Struct.Fields> encoder =
+            new DeltaEncoder<>(Struct.Fields.class, Struct.Fields.ID);
+    private final DeltaDecoder<Struct, Struct.Fields> decoder = new DeltaDecoder<>();
+
+    // Encodes a struct and decodes it with a copy of the request headers, as if sent over a transport.
+    private Struct roundTrip(Struct value) {
+        FContext ctx = new FContext();
+        Struct encoded = encoder.encode("topic", ctx, value).deepCopy();
+        return decoder.decode(FContext.withRequestHeaders(ctx.getRequestHeaders()), encoded);
+    }
+
+    @Test
+    public void testRebuild() {
+        Struct[] values = new Struct[]{
+            new Struct(1L, "a", 1, "x"),
+            new Struct(1L, "b", 1, "x"),
+            new Struct(1L, "b", 2, "x"),
+            new Struct(1L, "a", 1, null),
+            new Struct(2L, "c", 3, "y"),
+            new Struct(2L, "c", 4, "y"),
+        };
+        for (Struct value : values) {
+            assertEquals(value, roundTrip(value));
+        }
+        assertEquals(0, decoder.getDiscardedCount());
+    }
+
+    @Test
+    public void testUnknownKeyframe() {
+        FContext ctx = new FContext();
+        encoder.encode("topic", ctx, new Struct(1L, "a", 1, "x"));
+        Struct delta = encoder.encode("topic", ctx, new Struct(1L, "b", 1, "x"));
+
+        // The subscriber missed the keyframe, so the delta is discarded until the next keyframe.
+        assertNull(decoder.decode(ctx, delta));
+        assertEquals(1, decoder.getDiscardedCount());
+
+        Struct keyframe = new Struct(5L, "z", 9, "q");
+        assertEquals(keyframe, roundTrip(keyframe));
+    }
+
+    @Test
+    public void testRequestKeyframe() {
+        AtomicInteger requests = new AtomicInteger();
+        DeltaDecoder<Struct, Struct.Fields> requesting = new DeltaDecoder<>(requests::incrementAndGet);
+        FContext keyframeCtx = new FContext();
+        Struct keyframe = encoder.encode("topic", keyframeCtx, new Struct(1L, "a", 1, "x")).deepCopy();
+        FContext deltaCtx = new FContext();
+        Struct delta = encoder.encode("topic", deltaCtx, new Struct(1L, "b", 1, "x")).deepCopy();
+
+        // The missing keyframe is requested once, however many deltas relative to it arrive before it.
+        assertNull(requesting.decode(deltaCtx, delta));
+        assertNull(requesting.decode(deltaCtx, delta));
+        assertEquals(1, requests.get());
+
+        assertEquals(keyframe, requesting.decode(keyframeCtx, keyframe));
+        assertEquals(new Struct(1L, "b", 1, "x"), requesting.decode(deltaCtx, delta));
+        assertEquals(1, requests.get());
+        assertEquals(2, requesting.getDiscardedCount());
+    }
+
+    @Test
+    public void testPlainMessage() {
+        Struct value = new Struct(1L, "a", 1, "x");
+        assertSame(value, decoder.decode(new FContext(), value));
+    }
+
+    @Test
+    public void testInvalidFieldIds() {
+        FContext ctx = new FContext();
+        encoder.encode("topic", ctx, new Struct(1L, "a", 1, "x"));
+        decoder.decode(ctx, new Struct(1L, "a", 1, "x"));
+
+        ctx.removeRequestHeader(DeltaEncoder.KEYFRAME_HEADER);
+        ctx.addRequestHeader(DeltaEncoder.BASE_HEADER, "unused");
+        assertNull(decoder.decode(ctx, new Struct(1L, null, null, null)));
+    }
+}
@@ -0,0 +1,201 @@
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import org.apache.thrift.TBase;
+import org.apache.thrift.TFieldIdEnum;
+import org.apache.thrift.protocol.TProtocol;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link DeltaEncoder}.
+ */
+@RunWith(JUnit4.class)
+public class DeltaEncoderTest {
+
+    @Test
+    public void testKeyframeThenDelta() {
+        DeltaEncoder<Struct, Struct.Fields> encoder = new DeltaEncoder<>(Struct.Fields.class, Struct.Fields.ID);
+        FContext ctx = new FContext();
+
+        Struct first = new Struct(1L, "a", 10, "x");
+        assertSame(first, encoder.encode("topic", ctx, first));
+        String keyframeId = ctx.getRequestHeader(DeltaEncoder.KEYFRAME_HEADER);
+        assertTrue(keyframeId != null);
+        assertNull(ctx.getRequestHeader(DeltaEncoder.BASE_HEADER));
+
+        Struct second = new Struct(1L, "b", 10, "x");
+        Struct delta = encoder.encode("topic", ctx, second);
+        assertNull(ctx.getRequestHeader(DeltaEncoder.KEYFRAME_HEADER));
+        assertEquals(keyframeId, ctx.getRequestHeader(DeltaEncoder.BASE_HEADER));
+        assertEquals("2", ctx.getRequestHeader(DeltaEncoder.FIELDS_HEADER));
+        // Only the changed and required fields are set.
+        assertEquals(new Struct(1L, "b", null, null), delta);
+
+        // Deltas are relative to the keyframe, not the previous delta.
+        Struct third = new Struct(1L, "b", 11, "x");
+        assertEquals(new Struct(1L, "b", 11, null), encoder.encode("topic", ctx, third));
+        assertEquals("2,3", ctx.getRequestHeader(DeltaEncoder.FIELDS_HEADER));
+
+        // Unset fields are sent as changed.
+        Struct fourth = new Struct(1L, "a", 10, null);
+        assertEquals(new Struct(1L, null, null, null), encoder.encode("topic", ctx, fourth));
+        assertEquals("4", ctx.getRequestHeader(DeltaEncoder.FIELDS_HEADER));
+
+        assertEquals(1, encoder.getKeyframeCount());
+        assertEquals(3, encoder.getDeltaCount());
+    }
+
+    @Test
+    public void testKeyframeWhenMostFieldsChange() {
+        DeltaEncoder<Struct, Struct.Fields> encoder = new DeltaEncoder<>(Struct.Fields.class);
+        FContext ctx = new FContext();
+        encoder.encode("topic", ctx, new Struct(1L, "a", 1, "x"));
+        String keyframeId = ctx.getRequestHeader(DeltaEncoder.KEYFRAME_HEADER);
+
+        Struct changed = new Struct(2L, "b", 2, "x");
+        assertSame(changed, encoder.encode("topic", ctx, changed));
+        assertNotEquals(keyframeId, ctx.getRequestHeader(DeltaEncoder.KEYFRAME_HEADER));
+        assertNull(ctx.getRequestHeader(DeltaEncoder.BASE_HEADER));
+        assertNull(ctx.getRequestHeader(DeltaEncoder.FIELDS_HEADER));
+    }
+
+    @Test
+    public void testKeyframeInterval() {
+        DeltaEncoder<Struct, Struct.Fields> encoder = new DeltaEncoder<>(2, 60000, 10, Struct.Fields.class);
+        FContext ctx = new FContext();
+        for (int i = 0; i < 7; i++) {
+            encoder.encode("topic", ctx, new Struct(1L, "a", i, "x"));
+        }
+        // A keyframe followed by two deltas, repeated.
+        assertEquals(3, encoder.getKeyframeCount());
+        assertEquals(4, encoder.getDeltaCount());
+    }
+
+    @Test
+    public void testTopicsAreIndependent() {
+        DeltaEncoder<Struct, Struct.Fields> encoder = new DeltaEncoder<>(100, 60000, 1, Struct.Fields.class);
+        FContext ctx = new FContext();
+        encoder.encode("a", ctx, new Struct(1L, "a", 1, "x"));
+        encoder.encode("b", ctx, new Struct(1L, "a", 1, "x"));
+        // Topic a was evicted, so it needs a new keyframe.
+        encoder.encode("a", ctx, new Struct(1L, "a", 2, "x"));
+        assertEquals(3, encoder.getKeyframeCount());
+        assertFalse(ctx.getRequestHeaders().containsKey(DeltaEncoder.BASE_HEADER));
+    }
+
+    @Test
+    public void testRemoveHeaders() {
+        FContext ctx = new FContext();
+        ctx.addRequestHeader(DeltaEncoder.BASE_HEADER, "base");
+        ctx.addRequestHeader(DeltaEncoder.FIELDS_HEADER, "1");
+        DeltaEncoder.removeHeaders(ctx);
+        assertNull(ctx.getRequestHeader(DeltaEncoder.BASE_HEADER));
+        assertNull(ctx.getRequestHeader(DeltaEncoder.FIELDS_HEADER));
+    }
+
+    /**
+     * A minimal struct with a required id and three optional fields.
+     */
+    static class Struct implements TBase<Struct, Struct.Fields> {
+
+        enum Fields implements TFieldIdEnum {
+            ID((short) 1), NAME((short) 2), COUNT((short) 3), TAG((short) 4);
+
+            private final short id;
+
+            Fields(short id) {
+                this.id = id;
+            }
+
+            @Override
+            public short getThriftFieldId() {
+                return id;
+            }
+
+            @Override
+            public String getFieldName() {
+                return name().toLowerCase();
+            }
+        }
+
+        private final Object[] values = new Object[4];
+
+        Struct(Long id, String name, Integer count, String tag) {
+            values[0] = id;
+            values[1] = name;
+            values[2] = count;
+            values[3] = tag;
+        }
+
+        @Override
+        public Fields fieldForId(int fieldId) {
+            return fieldId >= 1 && fieldId <= 4 ? Fields.values()[fieldId - 1] : null;
+        }
+
+        @Override
+        public boolean isSet(Fields field) {
+            return values[field.ordinal()] != null;
+        }
+
+        @Override
+        public Object getFieldValue(Fields field) {
+            return values[field.ordinal()];
+        }
+
+        @Override
+        public void setFieldValue(Fields field, Object value) {
+            values[field.ordinal()] = value;
+        }
+
+        @Override
+        public Struct deepCopy() {
+            return new Struct((Long) values[0], (String) values[1], (Integer) values[2], (String) values[3]);
+        }
+
+        @Override
+        public void clear() {
+            Arrays.fill(values, null);
+        }
+
+        @Override
+        public void read(TProtocol iprot) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void write(TProtocol oprot) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int compareTo(Struct other) {
+            return toString().compareTo(other.toString());
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Struct && Arrays.equals(values, ((Struct) other).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(values);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.toString(values);
+        }
+    }
+}
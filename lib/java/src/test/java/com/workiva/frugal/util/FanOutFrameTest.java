@@ -0,0 +1,69 @@
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.protocol.HeaderUtils;
+import org.apache.thrift.TException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link FanOutFrame}.
+ */
+@RunWith(JUnit4.class)
+public class FanOutFrameTest {
+
+    private static byte[] newFrame(Map<String, String> headers, byte[] body) throws TException {
+        byte[] encoded = HeaderUtils.encode(headers);
+        byte[] framed = new byte[4 + encoded.length + body.length];
+        ProtocolUtils.writeInt(framed.length - 4, framed, 0);
+        System.arraycopy(encoded, 0, framed, 4, encoded.length);
+        System.arraycopy(body, 0, framed, 4 + encoded.length, body.length);
+        return framed;
+    }
+
+    @Test
+    public void testToFrame() throws TException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(FContext.OPID_HEADER, "1");
+        headers.put(FContext.CID_HEADER, "cid");
+        headers.put("_topic_user", "original");
+        byte[] body = new byte[]{1, 2, 3, 4, 5};
+        FanOutFrame fanOut = new FanOutFrame(newFrame(headers, body), "_topic_user");
+
+        for (String user : Arrays.asList("alice", "bob", "\u00e9l\u00e8ve")) {
+            byte[] frame = fanOut.toFrame(user);
+            assertEquals(frame.length - 4, ProtocolUtils.readInt(frame, 0));
+
+            Map<String, String> expected = new HashMap<>(headers);
+            expected.put("_topic_user", user);
+            assertEquals(expected, HeaderUtils.decodeFromFrame(frame, 4));
+            assertArrayEquals(body, Arrays.copyOfRange(frame, HeaderUtils.getBodyOffset(frame), frame.length));
+        }
+    }
+
+    @Test
+    public void testToFrameMultipleHeaders() throws TException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(FContext.OPID_HEADER, "1");
+        byte[] body = new byte[]{9};
+        FanOutFrame fanOut = new FanOutFrame(newFrame(headers, body), "_topic_a", "_topic_b");
+
+        Map<String, String> decoded = HeaderUtils.decodeFromFrame(fanOut.toFrame("x", "y"), 4);
+        assertEquals("1", decoded.get(FContext.OPID_HEADER));
+        assertEquals("x", decoded.get("_topic_a"));
+        assertEquals("y", decoded.get("_topic_b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testToFrameWrongValueCount() throws TException {
+        new FanOutFrame(newFrame(new HashMap<>(), new byte[0]), "_topic_user").toFrame("a", "b");
+    }
+}
@@ -0,0 +1,210 @@
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.middleware.InvocationHandler;
+import com.workiva.frugal.middleware.ServiceMiddleware;
+import com.workiva.frugal.protocol.HeaderUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocolException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link FrameCompressor}.
+ */
+@RunWith(JUnit4.class)
+public class FrameCompressorTest {
+
+    private static byte[] newFrame(byte[] body) throws TException {
+        byte[] encoded = HeaderUtils.encode(Collections.singletonMap(FContext.OPID_HEADER, "1"));
+        byte[] framed = new byte[4 + encoded.length + body.length];
+        ProtocolUtils.writeInt(framed.length - 4, framed, 0);
+        System.arraycopy(encoded, 0, framed, 4, encoded.length);
+        System.arraycopy(body, 0, framed, 4 + encoded.length, body.length);
+        return framed;
+    }
+
+    private static byte[] compressibleBody(int size) {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++) {
+            body[i] = (byte) ('a' + i % 7);
+        }
+        return body;
+    }
+
+    private static byte[] body(byte[] frame) {
+        return Arrays.copyOfRange(frame, ProtocolUtils.readInt(frame, 1) + 5, frame.length);
+    }
+
+    private static byte[] unframe(byte[] framedBytes) {
+        return Arrays.copyOfRange(framedBytes, 4, framedBytes.length);
+    }
+
+    @Test
+    public void testCompressAndDecompress() throws TException {
+        FrameCompressor compressor = new FrameCompressor();
+        byte[] body = compressibleBody(4096);
+        byte[] compressed = compressor.compress(newFrame(body), true);
+
+        assertTrue(compressed.length < 1024);
+        assertEquals(compressed.length - 4, ProtocolUtils.readInt(compressed, 0));
+        Map<String, String> headers = HeaderUtils.decodeFromFrame(compressed, 4);
+        assertEquals("1", headers.get(FContext.OPID_HEADER));
+        assertEquals(FrameCompressor.DEFLATE, headers.get(FrameCompressor.COMPRESSION_HEADER));
+        assertTrue(compressor.isAccepted(headers));
+
+        byte[] decompressed = compressor.decompress(headers, unframe(compressed));
+        Map<String, String> decompressedHeaders = HeaderUtils.decodeFromFrame(decompressed);
+        assertEquals("1", decompressedHeaders.get(FContext.OPID_HEADER));
+        assertEquals(FrameCompressor.DEFLATE, decompressedHeaders.get(FrameCompressor.ACCEPT_COMPRESSION_HEADER));
+        assertNull(decompressedHeaders.get(FrameCompressor.COMPRESSION_HEADER));
+        assertArrayEquals(body, body(decompressed));
+    }
+
+    @Test
+    public void testCompressNotNegotiated() throws TException {
+        FrameCompressor compressor = new FrameCompressor();
+        byte[] body = compressibleBody(4096);
+        byte[] frame = compressor.compress(newFrame(body), false);
+
+        Map<String, String> headers = HeaderUtils.decodeFromFrame(frame, 4);
+        assertTrue(compressor.isAccepted(headers));
+        assertNull(headers.get(FrameCompressor.COMPRESSION_HEADER));
+        assertArrayEquals(body, body(unframe(frame)));
+    }
+
+    @Test
+    public void testCompressBelowThreshold() throws TException {
+        FrameCompressor compressor = new FrameCompressor(8192);
+        byte[] body = compressibleBody(4096);
+        byte[] frame = compressor.compress(newFrame(body), true);
+
+        assertNull(HeaderUtils.decodeFromFrame(frame, 4).get(FrameCompressor.COMPRESSION_HEADER));
+        assertArrayEquals(body, body(unframe(frame)));
+    }
+
+    @Test
+    public void testCompressAlreadyAdvertised() throws TException {
+        FrameCompressor compressor = new FrameCompressor(8192);
+        byte[] encoded = HeaderUtils.encode(
+                Collections.singletonMap(FrameCompressor.ACCEPT_COMPRESSION_HEADER, FrameCompressor.DEFLATE));
+        byte[] frame = new byte[4 + encoded.length + 16];
+        ProtocolUtils.writeInt(frame.length - 4, frame, 0);
+        System.arraycopy(encoded, 0, frame, 4, encoded.length);
+
+        // Frames left uncompressed which already advertise support are not copied.
+        assertSame(frame, compressor.compress(frame, true));
+        assertSame(frame, compressor.compress(frame, false));
+    }
+
+    @Test
+    public void testAdvertisingMiddleware() {
+        FrameCompressor compressor = new FrameCompressor();
+        FContext[] called = new FContext[1];
+        Handler handler = InvocationHandler.composeMiddleware((Handler) ctx -> called[0] = ctx, Handler.class,
+                new ServiceMiddleware[]{compressor.advertisingMiddleware()});
+
+        FContext context = new FContext();
+        handler.call(context);
+        assertSame(context, called[0]);
+        assertEquals(FrameCompressor.DEFLATE, context.getRequestHeader(FrameCompressor.ACCEPT_COMPRESSION_HEADER));
+        assertEquals(FrameCompressor.DEFLATE, context.getResponseHeader(FrameCompressor.ACCEPT_COMPRESSION_HEADER));
+    }
+
+    /**
+     * Test handler for middleware.
+     */
+    public interface Handler {
+        void call(FContext ctx);
+    }
+
+    @Test
+    public void testCompressIncompressibleBody() throws TException {
+        FrameCompressor compressor = new FrameCompressor(0);
+        byte[] body = new byte[4096];
+        new Random(4096).nextBytes(body);
+        byte[] frame = compressor.compress(newFrame(body), true);
+
+        assertNull(HeaderUtils.decodeFromFrame(frame, 4).get(FrameCompressor.COMPRESSION_HEADER));
+        assertArrayEquals(body, body(unframe(frame)));
+    }
+
+    @Test
+    public void testDecompressUncompressedFrame() throws TException {
+        FrameCompressor compressor = new FrameCompressor();
+        byte[] frame = unframe(newFrame(compressibleBody(4096)));
+
+        assertSame(frame, compressor.decompress(HeaderUtils.decodeFromFrame(frame), frame));
+    }
+
+    @Test
+    public void testDictionary() throws TException {
+        byte[] dictionary = "abcdefg".getBytes();
+        FrameCompressor compressor = new FrameCompressor(0, dictionary);
+        FrameCompressor other = new FrameCompressor(0, "gfedcba".getBytes());
+        FrameCompressor plain = new FrameCompressor(0);
+        assertNotEquals(compressor.getEncoding(), other.getEncoding());
+        assertTrue(compressor.getEncoding().startsWith(FrameCompressor.DEFLATE + "-"));
+
+        byte[] body = compressibleBody(4096);
+        byte[] compressed = compressor.compress(newFrame(body), true);
+        Map<String, String> headers = HeaderUtils.decodeFromFrame(compressed, 4);
+        assertEquals(compressor.getEncoding(), headers.get(FrameCompressor.COMPRESSION_HEADER));
+        assertTrue(compressor.isAccepted(headers));
+        assertFalse(other.isAccepted(headers));
+        assertFalse(plain.isAccepted(headers));
+
+        assertArrayEquals(body, body(new FrameCompressor(0, dictionary).decompress(headers, unframe(compressed))));
+        try {
+            other.decompress(headers, unframe(compressed));
+            fail("Expected TProtocolException");
+        } catch (TProtocolException e) {
+            assertEquals(TProtocolException.INVALID_DATA, e.getType());
+        }
+
+        // Frames compressed without a dictionary can be decompressed by any peer.
+        byte[] plainCompressed = plain.compress(newFrame(body), true);
+        Map<String, String> plainHeaders = HeaderUtils.decodeFromFrame(plainCompressed, 4);
+        assertArrayEquals(body, body(compressor.decompress(plainHeaders, unframe(plainCompressed))));
+    }
+
+    @Test
+    public void testDecompressSizeLimit() throws TException {
+        FrameCompressor compressor = new FrameCompressor();
+        byte[] compressed = compressor.compress(newFrame(compressibleBody(4096)), true);
+        Map<String, String> headers = HeaderUtils.decodeFromFrame(compressed, 4);
+
+        try {
+            compressor.decompress(headers, unframe(compressed), 4095);
+            fail("Expected TProtocolException");
+        } catch (TProtocolException e) {
+            assertEquals(TProtocolException.SIZE_LIMIT, e.getType());
+        }
+        assertEquals(4096, body(compressor.decompress(headers, unframe(compressed), 4096)).length);
+    }
+
+    @Test(expected = TProtocolException.class)
+    public void testDecompressCorruptFrame() throws TException {
+        FrameCompressor compressor = new FrameCompressor();
+        byte[] compressed = compressor.compress(newFrame(compressibleBody(4096)), true);
+        Map<String, String> headers = HeaderUtils.decodeFromFrame(compressed, 4);
+        compressed[compressed.length - 10] ^= 0xff;
+
+        compressor.decompress(headers, unframe(compressed));
+    }
+}
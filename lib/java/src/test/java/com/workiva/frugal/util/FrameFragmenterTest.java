@@ -0,0 +1,149 @@
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.protocol.HeaderUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocolException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link FrameFragmenter} and {@link FrameReassembler}.
+ */
+@RunWith(JUnit4.class)
+public class FrameFragmenterTest {
+
+    static byte[] newFrame(String opId, int bodySize) throws TException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(FContext.OPID_HEADER, opId);
+        headers.put(FContext.CID_HEADER, "cid");
+        byte[] encoded = HeaderUtils.encode(headers);
+        byte[] body = new byte[bodySize];
+        new Random(bodySize).nextBytes(body);
+
+        byte[] framed = new byte[4 + encoded.length + bodySize];
+        ProtocolUtils.writeInt(framed.length - 4, framed, 0);
+        System.arraycopy(encoded, 0, framed, 4, encoded.length);
+        System.arraycopy(body, 0, framed, 4 + encoded.length, bodySize);
+        return framed;
+    }
+
+    @Test
+    public void testFragmentSmallFrameUnchanged() throws TException {
+        byte[] frame = newFrame("1", 10);
+        List<byte[]> fragments = FrameFragmenter.fragment(frame, 1024);
+
+        assertEquals(1, fragments.size());
+        assertSame(frame, fragments.get(0));
+    }
+
+    @Test
+    public void testFragmentAndReassemble() throws TException {
+        byte[] frame = newFrame("1", 5000);
+        List<byte[]> fragments = FrameFragmenter.fragment(frame, 1024);
+
+        assertEquals(6, fragments.size());
+        FrameReassembler reassembler = new FrameReassembler();
+        for (int i = 0; i < fragments.size(); i++) {
+            byte[] fragment = fragments.get(i);
+            assertTrue(fragment.length <= 1024);
+            Map<String, String> headers = HeaderUtils.decodeFromFrame(fragment, 4);
+            assertEquals("1", headers.get(FContext.OPID_HEADER));
+            assertEquals(Integer.toString(i), headers.get(FrameFragmenter.FRAGMENT_SEQ_HEADER));
+            assertTrue(FrameFragmenter.supportsFragmentation(headers));
+
+            byte[] result = reassembler.reassemble("source", fragment);
+            if (i < fragments.size() - 1) {
+                assertNull(result);
+            } else {
+                assertArrayEquals(frame, result);
+            }
+        }
+        assertEquals(0, reassembler.getPartialFrameCount());
+        assertEquals(0, reassembler.getBufferedBytes());
+    }
+
+    @Test
+    public void testReassembleOutOfOrderAndInterleaved() throws TException {
+        byte[] frame1 = newFrame("1", 3000);
+        byte[] frame2 = newFrame("2", 3000);
+        List<byte[]> fragments1 = FrameFragmenter.fragment(frame1, 1024);
+        List<byte[]> fragments2 = FrameFragmenter.fragment(frame2, 1024);
+        FrameReassembler reassembler = new FrameReassembler();
+
+        for (int i = fragments1.size() - 1; i > 0; i--) {
+            assertNull(reassembler.reassemble("source", fragments1.get(i)));
+            assertNull(reassembler.reassemble("source", fragments2.get(i)));
+        }
+        assertEquals(2, reassembler.getPartialFrameCount());
+        assertArrayEquals(frame2, reassembler.reassemble("source", fragments2.get(0)));
+        assertArrayEquals(frame1, reassembler.reassemble("source", fragments1.get(0)));
+    }
+
+    @Test
+    public void testReassembleEvictsWhenFull() throws TException {
+        List<byte[]> fragments1 = FrameFragmenter.fragment(newFrame("1", 3000), 1024);
+        List<byte[]> fragments2 = FrameFragmenter.fragment(newFrame("2", 3000), 1024);
+        FrameReassembler reassembler = new FrameReassembler(2048, FrameReassembler.DEFAULT_TIMEOUT);
+
+        assertNull(reassembler.reassemble("source", fragments1.get(0)));
+        assertNull(reassembler.reassemble("source", fragments2.get(0)));
+        assertNull(reassembler.reassemble("source", fragments2.get(1)));
+
+        // The first frame is evicted to make room for the second.
+        assertEquals(1, reassembler.getPartialFrameCount());
+        assertTrue(reassembler.getBufferedBytes() <= 2048);
+    }
+
+    @Test
+    public void testReassembleEvictsExpired() throws TException, InterruptedException {
+        List<byte[]> fragments = FrameFragmenter.fragment(newFrame("1", 3000), 1024);
+        FrameReassembler reassembler = new FrameReassembler(FrameReassembler.DEFAULT_MAX_BUFFERED_BYTES, 1);
+
+        assertNull(reassembler.reassemble("source", fragments.get(0)));
+        Thread.sleep(5);
+        assertNull(reassembler.reassemble("other", newFrameFragment()));
+
+        assertEquals(1, reassembler.getPartialFrameCount());
+    }
+
+    @Test
+    public void testReassembleEvictsWhenTooManyPartialFrames() throws TException {
+        List<byte[]> fragments1 = FrameFragmenter.fragment(newFrame("1", 3000), 1024);
+        List<byte[]> fragments2 = FrameFragmenter.fragment(newFrame("2", 3000), 1024);
+        FrameReassembler reassembler = new FrameReassembler(FrameReassembler.DEFAULT_MAX_BUFFERED_BYTES,
+                FrameReassembler.DEFAULT_TIMEOUT, FrameReassembler.DEFAULT_MAX_FRAGMENTS, 1);
+
+        assertNull(reassembler.reassemble("source", fragments1.get(0)));
+        assertNull(reassembler.reassemble("source", fragments2.get(0)));
+
+        assertEquals(1, reassembler.getPartialFrameCount());
+        assertEquals(fragments2.get(0).length - HeaderUtils.getBodyOffset(fragments2.get(0)),
+                reassembler.getBufferedBytes());
+    }
+
+    @Test(expected = TProtocolException.class)
+    public void testReassembleRejectsTooManyFragments() throws TException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(FrameFragmenter.FRAGMENT_SEQ_HEADER, "0");
+        headers.put(FrameFragmenter.FRAGMENT_COUNT_HEADER, Integer.toString(Integer.MAX_VALUE));
+        new FrameReassembler(FrameReassembler.DEFAULT_MAX_BUFFERED_BYTES, FrameReassembler.DEFAULT_TIMEOUT,
+                16, FrameReassembler.DEFAULT_MAX_PARTIAL_FRAMES).reassemble("source", headers, new byte[8]);
+    }
+
+    private static byte[] newFrameFragment() throws TException {
+        return FrameFragmenter.fragment(newFrame("2", 3000), 1024).get(0);
+    }
+}
@@ -0,0 +1,92 @@
+package com.workiva.frugal.util;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.protocol.HeaderUtils;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TProtocolException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link HttpBatch}.
+ */
+@RunWith(JUnit4.class)
+public class HttpBatchTest {
+
+    @Test
+    public void testIsBatch() {
+        assertTrue(HttpBatch.isBatch("true"));
+        assertTrue(HttpBatch.isBatch(" TRUE "));
+        assertFalse(HttpBatch.isBatch("false"));
+        assertFalse(HttpBatch.isBatch(null));
+    }
+
+    @Test
+    public void testJoinSplit() throws TProtocolException {
+        byte[] first = new byte[]{0, 0, 0, 2, 1, 2};
+        byte[] second = new byte[]{0, 0, 0, 0};
+        byte[] third = new byte[]{0, 0, 0, 1, 3};
+        byte[] body = HttpBatch.join(Arrays.asList(first, second, third));
+        assertArrayEquals(new byte[]{0, 0, 0, 2, 1, 2, 0, 0, 0, 0, 0, 0, 0, 1, 3}, body);
+
+        List<byte[]> frames = HttpBatch.split(body);
+        assertEquals(3, frames.size());
+        assertArrayEquals(first, frames.get(0));
+        assertArrayEquals(second, frames.get(1));
+        assertArrayEquals(third, frames.get(2));
+        assertTrue(HttpBatch.split(new byte[0]).isEmpty());
+    }
+
+    @Test(expected = TProtocolException.class)
+    public void testSplitTruncatedFrame() throws TProtocolException {
+        HttpBatch.split(new byte[]{0, 0, 0, 2, 1});
+    }
+
+    @Test(expected = TProtocolException.class)
+    public void testSplitTruncatedFrameSize() throws TProtocolException {
+        HttpBatch.split(new byte[]{0, 0, 0, 1, 1, 0, 0});
+    }
+
+    @Test
+    public void testFormatParseStatuses() throws TProtocolException {
+        Map<String, Integer> statuses = new LinkedHashMap<>();
+        statuses.put("1", 500);
+        statuses.put("7", 413);
+        assertEquals("1=500, 7=413", HttpBatch.formatStatuses(statuses));
+        assertEquals(statuses, HttpBatch.parseStatuses("1=500, 7=413"));
+        assertTrue(HttpBatch.parseStatuses(null).isEmpty());
+    }
+
+    @Test(expected = TProtocolException.class)
+    public void testParseMalformedStatuses() throws TProtocolException {
+        HttpBatch.parseStatuses("1=500, 7");
+    }
+
+    @Test
+    public void testGetOpId() throws TException {
+        byte[] headers = HeaderUtils.encode(Collections.singletonMap(FContext.OPID_HEADER, "42"));
+        byte[] frame = new byte[4 + headers.length];
+        ProtocolUtils.writeInt(headers.length, frame, 0);
+        System.arraycopy(headers, 0, frame, 4, headers.length);
+        assertEquals("42", HttpBatch.getOpId(frame));
+
+        headers = HeaderUtils.encode(Collections.emptyMap());
+        frame = new byte[4 + headers.length];
+        ProtocolUtils.writeInt(headers.length, frame, 0);
+        System.arraycopy(headers, 0, frame, 4, headers.length);
+        assertNull(HttpBatch.getOpId(frame));
+    }
+}
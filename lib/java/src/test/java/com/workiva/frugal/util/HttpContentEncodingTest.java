@@ -0,0 +1,83 @@
+package com.workiva.frugal.util;
+
+import org.apache.thrift.protocol.TProtocolException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link HttpContentEncoding}.
+ */
+@RunWith(JUnit4.class)
+public class HttpContentEncodingTest {
+
+    @Test
+    public void testSelect() {
+        assertEquals("gzip", HttpContentEncoding.select("deflate, gzip"));
+        assertEquals("gzip", HttpContentEncoding.select(" GZIP;q=0.5 "));
+        assertEquals("deflate", HttpContentEncoding.select("br, deflate"));
+        assertEquals("deflate", HttpContentEncoding.select("gzip;q=0, deflate"));
+        assertNull(HttpContentEncoding.select("identity, br"));
+        assertNull(HttpContentEncoding.select(""));
+        assertNull(HttpContentEncoding.select(null));
+    }
+
+    @Test
+    public void testIsSupported() {
+        assertTrue(HttpContentEncoding.isIdentity(null));
+        assertTrue(HttpContentEncoding.isIdentity(" Identity "));
+        assertFalse(HttpContentEncoding.isIdentity("gzip"));
+        assertTrue(HttpContentEncoding.isSupported(null));
+        assertTrue(HttpContentEncoding.isSupported("GZIP"));
+        assertTrue(HttpContentEncoding.isSupported("deflate"));
+        assertFalse(HttpContentEncoding.isSupported("br"));
+    }
+
+    @Test
+    public void testEncodeDecode() throws TProtocolException {
+        byte[] body = new byte[1000];
+        for (String contentEncoding : new String[]{"gzip", "deflate", null}) {
+            byte[] encoded = HttpContentEncoding.encode(body, contentEncoding);
+            if (contentEncoding != null) {
+                assertTrue(encoded.length < body.length);
+            }
+            assertArrayEquals(body, HttpContentEncoding.decode(encoded, contentEncoding, body.length));
+        }
+    }
+
+    @Test
+    public void testDecodeSizeLimit() {
+        byte[] encoded = HttpContentEncoding.encode(new byte[1000], "gzip");
+        try {
+            HttpContentEncoding.decode(encoded, "gzip", 999);
+            fail("Expected TProtocolException");
+        } catch (TProtocolException e) {
+            assertEquals(TProtocolException.SIZE_LIMIT, e.getType());
+        }
+    }
+
+    @Test
+    public void testDecodeInvalid() {
+        try {
+            HttpContentEncoding.decode(new byte[]{1, 2, 3}, "gzip", 1000);
+            fail("Expected TProtocolException");
+        } catch (TProtocolException e) {
+            assertEquals(TProtocolException.INVALID_DATA, e.getType());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeUnsupported() throws IOException {
+        HttpContentEncoding.decode(new ByteArrayInputStream(new byte[0]), "br");
+    }
+}
@@ -0,0 +1,92 @@
+package com.workiva.frugal.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PartitionedExecutor}.
+ */
+@RunWith(JUnit4.class)
+public class PartitionedExecutorTest {
+
+    @Test
+    public void testOrderedPerKey() throws InterruptedException {
+        PartitionedExecutor executor = new PartitionedExecutor(4, 1000);
+        List<List<Integer>> results = new ArrayList<>();
+        for (int k = 0; k < 8; k++) {
+            results.add(Collections.synchronizedList(new ArrayList<>()));
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            for (int k = 0; k < 8; k++) {
+                final int key = k;
+                final int value = i;
+                executor.execute(key, () -> results.get(key).add(value));
+            }
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+
+        for (List<Integer> result : results) {
+            assertEquals(1000, result.size());
+            for (int i = 0; i < 1000; i++) {
+                assertEquals(i, (int) result.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testQueueDepth() throws InterruptedException {
+        PartitionedExecutor executor = new PartitionedExecutor(2, 10);
+        assertEquals(2, executor.getPartitionCount());
+        assertEquals(0, executor.getPartition(null));
+        assertNotEquals(executor.getPartition(0), executor.getPartition(1));
+
+        CountDownLatch block = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executor.execute(0, () -> {
+            started.countDown();
+            try {
+                block.await();
+            } catch (InterruptedException ignored) {
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        executor.execute(0, () -> { });
+        executor.execute(0, () -> { });
+
+        int partition = executor.getPartition(0);
+        assertEquals(2, executor.getQueueDepth(partition));
+        assertEquals(0, executor.getQueueDepth(1 - partition));
+        assertEquals(2, executor.getQueueDepth());
+
+        block.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testExecuteAfterShutdown() {
+        PartitionedExecutor executor = new PartitionedExecutor(1, 1);
+        executor.shutdown();
+        executor.execute("key", () -> { });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPartitionCount() {
+        new PartitionedExecutor(0, 1);
+    }
+}
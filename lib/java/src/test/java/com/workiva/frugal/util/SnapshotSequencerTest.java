@@ -0,0 +1,73 @@
+package com.workiva.frugal.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SnapshotSequencer}.
+ */
+@RunWith(JUnit4.class)
+public class SnapshotSequencerTest {
+
+    private final List<byte[]> delivered = new ArrayList<>();
+
+    // Frames are a single byte holding their sequence number, 0 meaning none.
+    private final SnapshotSequencer sequencer = new SnapshotSequencer(
+          frame -> frame[0] == 0 ? -1 : frame[0], delivered::add);
+
+    private List<Integer> deliveredSequences() {
+        return delivered.stream().map(frame -> (int) frame[0]).collect(Collectors.toList());
+    }
+
+    @Test
+    public void testMergeSnapshot() {
+        sequencer.offer(new byte[]{3});
+        sequencer.offer(new byte[]{4});
+        sequencer.offer(new byte[]{0});
+        sequencer.offer(new byte[]{5});
+        assertTrue(delivered.isEmpty());
+        assertFalse(sequencer.isComplete());
+
+        sequencer.complete(new byte[]{4});
+        assertTrue(sequencer.isComplete());
+        assertEquals(Arrays.asList(4, 0, 5), deliveredSequences());
+
+        sequencer.offer(new byte[]{6});
+        sequencer.complete(new byte[]{9});
+        assertEquals(Arrays.asList(4, 0, 5, 6), deliveredSequences());
+    }
+
+    @Test
+    public void testNoSnapshot() {
+        sequencer.offer(new byte[]{1});
+        sequencer.offer(new byte[]{2});
+        sequencer.complete(null);
+        assertEquals(Arrays.asList(1, 2), deliveredSequences());
+    }
+
+    @Test
+    public void testAbandonSnapshotWhenTooManyHeld() {
+        SnapshotSequencer bounded = new SnapshotSequencer(frame -> frame[0], delivered::add, 2);
+        bounded.offer(new byte[]{1});
+        bounded.offer(new byte[]{2});
+        assertTrue(delivered.isEmpty());
+
+        bounded.offer(new byte[]{3});
+        assertTrue(bounded.isComplete());
+        assertEquals(Arrays.asList(1, 2, 3), deliveredSequences());
+
+        // A late snapshot is ignored.
+        bounded.complete(new byte[]{2});
+        assertEquals(Arrays.asList(1, 2, 3), deliveredSequences());
+    }
+}
@@ -0,0 +1,73 @@
+package com.workiva.frugal.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for {@link TopicTemplate}.
+ */
+@RunWith(JUnit4.class)
+public class TopicTemplateTest {
+
+    @Test
+    public void testFormatConstant() {
+        TopicTemplate template = new TopicTemplate("v1.music.AlbumWinners.Winner");
+        assertEquals(0, template.getVariableCount());
+        assertEquals("v1.music.AlbumWinners.Winner", template.format());
+        assertEquals("v1.music.AlbumWinners.Winner", template.format(new String[0]));
+    }
+
+    @Test
+    public void testFormatSingleVariable() {
+        TopicTemplate template = new TopicTemplate("foo.", ".Events.EventCreated");
+        assertEquals(1, template.getVariableCount());
+        assertEquals("foo.bar.Events.EventCreated", template.format("bar"));
+        assertEquals("foo.null.Events.EventCreated", template.format((String) null));
+        assertEquals("foo.baz.Events.EventCreated", template.format(new String[]{"baz"}));
+    }
+
+    @Test
+    public void testFormatMultipleVariables() {
+        TopicTemplate template = new TopicTemplate("", ".", ".Events.Op");
+        assertEquals(2, template.getVariableCount());
+        assertEquals("a.b.Events.Op", template.format("a", "b"));
+    }
+
+    @Test
+    public void testCache() {
+        TopicTemplate template = new TopicTemplate(2, "foo.", ".bar");
+        String topic = template.format(new String("a"));
+        assertSame(topic, template.format(new String("a")));
+
+        // A full cache evicts the least recently used topic.
+        String b = template.format("b");
+        assertSame(topic, template.format("a"));
+        template.format("c");
+        assertSame(topic, template.format("a"));
+        assertNotSame(b, template.format("b"));
+        assertEquals(b, template.format("b"));
+
+        TopicTemplate uncached = new TopicTemplate(0, "foo.", ".bar");
+        assertNotSame(uncached.format("a"), uncached.format("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFormatWrongVariableCount() {
+        new TopicTemplate("foo.", ".bar").format("a", "b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFormatMissingVariable() {
+        new TopicTemplate("foo.", ".bar").format();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoSegments() {
+        new TopicTemplate();
+    }
+}
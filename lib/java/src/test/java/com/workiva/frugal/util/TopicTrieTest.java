@@ -0,0 +1,72 @@
+package com.workiva.frugal.util;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link TopicTrie}.
+ */
+@RunWith(JUnit4.class)
+public class TopicTrieTest {
+
+    @Test
+    public void testMatch() {
+        TopicTrie<String> trie = new TopicTrie<>();
+        trie.add("foo.bar.Events.Created", "exact");
+        trie.add("foo.*.Events.Created", "star");
+        trie.add("foo.>", "tail");
+        trie.add("baz.*", "baz");
+        assertEquals(4, trie.size());
+
+        assertEquals(new HashSet<>(Arrays.asList("exact", "star", "tail")),
+                new HashSet<>(trie.match("foo.bar.Events.Created")));
+        assertEquals(new HashSet<>(Arrays.asList("star", "tail")),
+                new HashSet<>(trie.match("foo.qux.Events.Created")));
+        assertEquals(Collections.singletonList("tail"), trie.match("foo.bar"));
+        assertEquals(Collections.emptyList(), trie.match("foo"));
+        assertEquals(Collections.singletonList("baz"), trie.match("baz.a"));
+        assertEquals(Collections.emptyList(), trie.match("baz.a.b"));
+    }
+
+    @Test
+    public void testMultipleValues() {
+        TopicTrie<String> trie = new TopicTrie<>();
+        trie.add("a.b", "one");
+        trie.add("a.b", "two");
+        assertEquals(Arrays.asList("one", "two"), trie.match("a.b"));
+
+        assertTrue(trie.remove("a.b", "one"));
+        assertEquals(Collections.singletonList("two"), trie.match("a.b"));
+    }
+
+    @Test
+    public void testRemove() {
+        TopicTrie<String> trie = new TopicTrie<>();
+        trie.add("a.*.c", "value");
+        assertFalse(trie.remove("a.*.c", "other"));
+        assertFalse(trie.remove("a.b.c", "value"));
+        assertTrue(trie.remove("a.*.c", "value"));
+        assertFalse(trie.remove("a.*.c", "value"));
+        assertEquals(0, trie.size());
+        assertEquals(Collections.emptyList(), trie.match("a.b.c"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTailWildcardNotLast() {
+        new TopicTrie<String>().add("a.>.b", "value");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEmptyTopic() {
+        new TopicTrie<String>().match("");
+    }
+}
@@ -0,0 +1,606 @@
+/**
+ * Autogenerated by Frugal Compiler (2.18.0)
+ * DO NOT EDIT UNLESS YOU ARE SURE THAT YOU KNOW WHAT YOU ARE DOING
+ *
+ * @generated
+ */
+
+package variety.java;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.exception.TApplicationExceptionType;
+import com.workiva.frugal.middleware.InvocationHandler;
+import com.workiva.frugal.middleware.ServiceMiddleware;
+import com.workiva.frugal.protocol.*;
+import com.workiva.frugal.provider.FScopeProvider;
+import com.workiva.frugal.transport.FPublisherTransport;
+import com.workiva.frugal.transport.FSubscriberTransport;
+import com.workiva.frugal.transport.FSubscription;
+import com.workiva.frugal.transport.TMemoryOutputBuffer;
+import com.workiva.frugal.util.TopicTemplate;
+import org.apache.thrift.TException;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.apache.thrift.protocol.*;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.Collections;
+import java.util.BitSet;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import javax.annotation.Generated;
+
+
+
+
+@Generated(value = "Autogenerated by Frugal Compiler (2.18.0)", date = "2015-11-24")
+public class EventsSubscriber {
+
+	/**
+	 * This docstring gets added to the generated code because it has
+	 * the @ sign. Prefix specifies topic prefix tokens, which can be static or
+	 * variable.
+	 */
+	public interface Iface {
+		/**
+		 * This is a docstring.
+		 */
+		public FSubscription subscribeEventCreated(String user, final EventCreatedHandler handler) throws TException;
+
+		public FSubscription subscribeSomeInt(String user, final SomeIntHandler handler) throws TException;
+
+		public FSubscription subscribeSomeStr(String user, final SomeStrHandler handler) throws TException;
+
+		public FSubscription subscribeSomeList(String user, final SomeListHandler handler) throws TException;
+
+	}
+
+	public interface IfaceThrowable {
+		/**
+		 * This is a docstring.
+		 */
+		public FSubscription subscribeEventCreatedThrowable(String user, final EventCreatedThrowableHandler handler) throws TException;
+
+		public FSubscription subscribeSomeIntThrowable(String user, final SomeIntThrowableHandler handler) throws TException;
+
+		public FSubscription subscribeSomeStrThrowable(String user, final SomeStrThrowableHandler handler) throws TException;
+
+		public FSubscription subscribeSomeListThrowable(String user, final SomeListThrowableHandler handler) throws TException;
+
+	}
+
+	public interface BatchIface {
+		/**
+		 * This is a docstring.
+		 */
+		public FSubscription subscribeEventCreatedBatch(String user, int maxBatchSize, long maxBatchDelay, final EventCreatedBatchHandler handler) throws TException;
+
+		public FSubscription subscribeSomeIntBatch(String user, int maxBatchSize, long maxBatchDelay, final SomeIntBatchHandler handler) throws TException;
+
+		public FSubscription subscribeSomeStrBatch(String user, int maxBatchSize, long maxBatchDelay, final SomeStrBatchHandler handler) throws TException;
+
+		public FSubscription subscribeSomeListBatch(String user, int maxBatchSize, long maxBatchDelay, final SomeListBatchHandler handler) throws TException;
+
+	}
+
+	public interface EventCreatedHandler {
+		void onEventCreated(FContext ctx, Event req) throws TException;
+	}
+
+	public interface SomeIntHandler {
+		void onSomeInt(FContext ctx, long req) throws TException;
+	}
+
+	public interface SomeStrHandler {
+		void onSomeStr(FContext ctx, String req) throws TException;
+	}
+
+	public interface SomeListHandler {
+		void onSomeList(FContext ctx, java.util.List<java.util.Map<Long, Event>> req) throws TException;
+	}
+
+	public interface EventCreatedThrowableHandler {
+		void onEventCreated(FContext ctx, Event req) throws TException;
+	}
+
+	public interface SomeIntThrowableHandler {
+		void onSomeInt(FContext ctx, long req) throws TException;
+	}
+
+	public interface SomeStrThrowableHandler {
+		void onSomeStr(FContext ctx, String req) throws TException;
+	}
+
+	public interface SomeListThrowableHandler {
+		void onSomeList(FContext ctx, java.util.List<java.util.Map<Long, Event>> req) throws TException;
+	}
+
+	public interface EventCreatedBatchHandler {
+		void onEventCreatedBatch(List<FContext> ctxs, List<Event> reqs) throws TException;
+	}
+
+	public interface SomeIntBatchHandler {
+		void onSomeIntBatch(List<FContext> ctxs, List<Long> reqs) throws TException;
+	}
+
+	public interface SomeStrBatchHandler {
+		void onSomeStrBatch(List<FContext> ctxs, List<String> reqs) throws TException;
+	}
+
+	public interface SomeListBatchHandler {
+		void onSomeListBatch(List<FContext> ctxs, List<java.util.List<java.util.Map<Long, Event>>> reqs) throws TException;
+	}
+
+	/**
+	 * This docstring gets added to the generated code because it has
+	 * the @ sign. Prefix specifies topic prefix tokens, which can be static or
+	 * variable.
+	 */
+	public static class Client implements Iface, IfaceThrowable, BatchIface {
+		private static final Logger LOGGER = LoggerFactory.getLogger(Client.class);
+
+		private static final TopicTemplate EVENT_CREATED_TOPIC = new TopicTemplate("foo.", ".Events.EventCreated");
+		private static final TopicTemplate SOME_INT_TOPIC = new TopicTemplate("foo.", ".Events.SomeInt");
+		private static final TopicTemplate SOME_STR_TOPIC = new TopicTemplate("foo.", ".Events.SomeStr");
+		private static final TopicTemplate SOME_LIST_TOPIC = new TopicTemplate("foo.", ".Events.SomeList");
+
+		private final FScopeProvider provider;
+		private final ServiceMiddleware[] middleware;
+
+		public Client(FScopeProvider provider, ServiceMiddleware... middleware) {
+			this.provider = provider;
+			List<ServiceMiddleware> combined = Arrays.asList(middleware);
+			combined.addAll(provider.getMiddleware());
+			this.middleware = combined.toArray(new ServiceMiddleware[0]);
+		}
+
+		/**
+		 * This is a docstring.
+		 */
+		public FSubscription subscribeEventCreated(String user, final EventCreatedHandler handler) throws TException {
+			final String op = "EventCreated";
+			final String topic = EVENT_CREATED_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final EventCreatedHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, EventCreatedHandler.class, middleware);
+			transport.subscribe(topic, recvEventCreated(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvEventCreated(String op, FProtocolFactory pf, EventCreatedHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					Event received = new Event();
+					received.read(iprot);
+					iprot.readMessageEnd();
+					handler.onEventCreated(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeInt(String user, final SomeIntHandler handler) throws TException {
+			final String op = "SomeInt";
+			final String topic = SOME_INT_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeIntHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeIntHandler.class, middleware);
+			transport.subscribe(topic, recvSomeInt(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeInt(String op, FProtocolFactory pf, SomeIntHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					long received = iprot.readI64();
+					iprot.readMessageEnd();
+					handler.onSomeInt(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeStr(String user, final SomeStrHandler handler) throws TException {
+			final String op = "SomeStr";
+			final String topic = SOME_STR_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeStrHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeStrHandler.class, middleware);
+			transport.subscribe(topic, recvSomeStr(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeStr(String op, FProtocolFactory pf, SomeStrHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					String received = iprot.readString();
+					iprot.readMessageEnd();
+					handler.onSomeStr(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeList(String user, final SomeListHandler handler) throws TException {
+			final String op = "SomeList";
+			final String topic = SOME_LIST_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeListHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeListHandler.class, middleware);
+			transport.subscribe(topic, recvSomeList(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeList(String op, FProtocolFactory pf, SomeListHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					org.apache.thrift.protocol.TList elem297 = iprot.readListBegin();
+					java.util.List<java.util.Map<Long, Event>> received = new ArrayList<java.util.Map<Long, Event>>(elem297.size);
+					for (int elem298 = 0; elem298 < elem297.size; ++elem298) {
+						org.apache.thrift.protocol.TMap elem300 = iprot.readMapBegin();
+						java.util.Map<Long, Event> elem299 = new HashMap<Long,Event>(2*elem300.size);
+						for (int elem301 = 0; elem301 < elem300.size; ++elem301) {
+							long elem303 = iprot.readI64();
+							Event elem302 = new Event();
+							elem302.read(iprot);
+							elem299.put(elem303, elem302);
+						}
+						iprot.readMapEnd();
+						received.add(elem299);
+					}
+					iprot.readListEnd();
+					iprot.readMessageEnd();
+					handler.onSomeList(ctx, received);
+				}
+			};
+		}
+
+		/**
+		 * This is a docstring.
+		 */
+		public FSubscription subscribeEventCreatedThrowable(String user, final EventCreatedThrowableHandler handler) throws TException {
+			final String op = "EventCreated";
+			final String topic = EVENT_CREATED_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final EventCreatedThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, EventCreatedThrowableHandler.class, middleware);
+			transport.subscribe(topic, recvEventCreated(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvEventCreated(String op, FProtocolFactory pf, EventCreatedThrowableHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					Event received = new Event();
+					received.read(iprot);
+					iprot.readMessageEnd();
+					handler.onEventCreated(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeIntThrowable(String user, final SomeIntThrowableHandler handler) throws TException {
+			final String op = "SomeInt";
+			final String topic = SOME_INT_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeIntThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeIntThrowableHandler.class, middleware);
+			transport.subscribe(topic, recvSomeInt(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeInt(String op, FProtocolFactory pf, SomeIntThrowableHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					long received = iprot.readI64();
+					iprot.readMessageEnd();
+					handler.onSomeInt(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeStrThrowable(String user, final SomeStrThrowableHandler handler) throws TException {
+			final String op = "SomeStr";
+			final String topic = SOME_STR_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeStrThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeStrThrowableHandler.class, middleware);
+			transport.subscribe(topic, recvSomeStr(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeStr(String op, FProtocolFactory pf, SomeStrThrowableHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					String received = iprot.readString();
+					iprot.readMessageEnd();
+					handler.onSomeStr(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeListThrowable(String user, final SomeListThrowableHandler handler) throws TException {
+			final String op = "SomeList";
+			final String topic = SOME_LIST_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeListThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeListThrowableHandler.class, middleware);
+			transport.subscribe(topic, recvSomeList(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeList(String op, FProtocolFactory pf, SomeListThrowableHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					org.apache.thrift.protocol.TList elem304 = iprot.readListBegin();
+					java.util.List<java.util.Map<Long, Event>> received = new ArrayList<java.util.Map<Long, Event>>(elem304.size);
+					for (int elem305 = 0; elem305 < elem304.size; ++elem305) {
+						org.apache.thrift.protocol.TMap elem307 = iprot.readMapBegin();
+						java.util.Map<Long, Event> elem306 = new HashMap<Long,Event>(2*elem307.size);
+						for (int elem308 = 0; elem308 < elem307.size; ++elem308) {
+							long elem310 = iprot.readI64();
+							Event elem309 = new Event();
+							elem309.read(iprot);
+							elem306.put(elem310, elem309);
+						}
+						iprot.readMapEnd();
+						received.add(elem306);
+					}
+					iprot.readListEnd();
+					iprot.readMessageEnd();
+					handler.onSomeList(ctx, received);
+				}
+			};
+		}
+
+		/**
+		 * This is a docstring.
+		 */
+		public FSubscription subscribeEventCreatedBatch(String user, int maxBatchSize, long maxBatchDelay, final EventCreatedBatchHandler handler) throws TException {
+			final String op = "EventCreated";
+			final String topic = EVENT_CREATED_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			transport.subscribeBatch(topic, maxBatchSize, maxBatchDelay, recvEventCreatedBatch(op, subscriber.getProtocolFactory(), handler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncBatchCallback recvEventCreatedBatch(String op, FProtocolFactory pf, EventCreatedBatchHandler handler) {
+			return new FAsyncBatchCallback() {
+				public void onMessages(List<TTransport> trs) throws TException {
+					List<FContext> ctxs = new ArrayList<FContext>(trs.size());
+					List<Event> reqs = new ArrayList<Event>(trs.size());
+					for (TTransport tr : trs) {
+						try {
+							FProtocol iprot = pf.getProtocol(tr);
+							FContext ctx = iprot.readRequestHeader();
+							TMessage msg = iprot.readMessageBegin();
+							if (!msg.name.equals(op)) {
+								TProtocolUtil.skip(iprot, TType.STRUCT);
+								iprot.readMessageEnd();
+								LOGGER.warn("discarding message with unknown method " + msg.name);
+								continue;
+							}
+							Event received = new Event();
+							received.read(iprot);
+							iprot.readMessageEnd();
+							ctxs.add(ctx);
+							reqs.add(received);
+						} catch (TException e) {
+							LOGGER.warn("discarding message which could not be decoded: " + e.getMessage());
+						}
+					}
+					if (!reqs.isEmpty()) {
+						handler.onEventCreatedBatch(ctxs, reqs);
+					}
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeIntBatch(String user, int maxBatchSize, long maxBatchDelay, final SomeIntBatchHandler handler) throws TException {
+			final String op = "SomeInt";
+			final String topic = SOME_INT_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			transport.subscribeBatch(topic, maxBatchSize, maxBatchDelay, recvSomeIntBatch(op, subscriber.getProtocolFactory(), handler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncBatchCallback recvSomeIntBatch(String op, FProtocolFactory pf, SomeIntBatchHandler handler) {
+			return new FAsyncBatchCallback() {
+				public void onMessages(List<TTransport> trs) throws TException {
+					List<FContext> ctxs = new ArrayList<FContext>(trs.size());
+					List<Long> reqs = new ArrayList<Long>(trs.size());
+					for (TTransport tr : trs) {
+						try {
+							FProtocol iprot = pf.getProtocol(tr);
+							FContext ctx = iprot.readRequestHeader();
+							TMessage msg = iprot.readMessageBegin();
+							if (!msg.name.equals(op)) {
+								TProtocolUtil.skip(iprot, TType.STRUCT);
+								iprot.readMessageEnd();
+								LOGGER.warn("discarding message with unknown method " + msg.name);
+								continue;
+							}
+							long received = iprot.readI64();
+							iprot.readMessageEnd();
+							ctxs.add(ctx);
+							reqs.add(received);
+						} catch (TException e) {
+							LOGGER.warn("discarding message which could not be decoded: " + e.getMessage());
+						}
+					}
+					if (!reqs.isEmpty()) {
+						handler.onSomeIntBatch(ctxs, reqs);
+					}
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeStrBatch(String user, int maxBatchSize, long maxBatchDelay, final SomeStrBatchHandler handler) throws TException {
+			final String op = "SomeStr";
+			final String topic = SOME_STR_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			transport.subscribeBatch(topic, maxBatchSize, maxBatchDelay, recvSomeStrBatch(op, subscriber.getProtocolFactory(), handler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncBatchCallback recvSomeStrBatch(String op, FProtocolFactory pf, SomeStrBatchHandler handler) {
+			return new FAsyncBatchCallback() {
+				public void onMessages(List<TTransport> trs) throws TException {
+					List<FContext> ctxs = new ArrayList<FContext>(trs.size());
+					List<String> reqs = new ArrayList<String>(trs.size());
+					for (TTransport tr : trs) {
+						try {
+							FProtocol iprot = pf.getProtocol(tr);
+							FContext ctx = iprot.readRequestHeader();
+							TMessage msg = iprot.readMessageBegin();
+							if (!msg.name.equals(op)) {
+								TProtocolUtil.skip(iprot, TType.STRUCT);
+								iprot.readMessageEnd();
+								LOGGER.warn("discarding message with unknown method " + msg.name);
+								continue;
+							}
+							String received = iprot.readString();
+							iprot.readMessageEnd();
+							ctxs.add(ctx);
+							reqs.add(received);
+						} catch (TException e) {
+							LOGGER.warn("discarding message which could not be decoded: " + e.getMessage());
+						}
+					}
+					if (!reqs.isEmpty()) {
+						handler.onSomeStrBatch(ctxs, reqs);
+					}
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeListBatch(String user, int maxBatchSize, long maxBatchDelay, final SomeListBatchHandler handler) throws TException {
+			final String op = "SomeList";
+			final String topic = SOME_LIST_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			transport.subscribeBatch(topic, maxBatchSize, maxBatchDelay, recvSomeListBatch(op, subscriber.getProtocolFactory(), handler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncBatchCallback recvSomeListBatch(String op, FProtocolFactory pf, SomeListBatchHandler handler) {
+			return new FAsyncBatchCallback() {
+				public void onMessages(List<TTransport> trs) throws TException {
+					List<FContext> ctxs = new ArrayList<FContext>(trs.size());
+					List<java.util.List<java.util.Map<Long, Event>>> reqs = new ArrayList<java.util.List<java.util.Map<Long, Event>>>(trs.size());
+					for (TTransport tr : trs) {
+						try {
+							FProtocol iprot = pf.getProtocol(tr);
+							FContext ctx = iprot.readRequestHeader();
+							TMessage msg = iprot.readMessageBegin();
+							if (!msg.name.equals(op)) {
+								TProtocolUtil.skip(iprot, TType.STRUCT);
+								iprot.readMessageEnd();
+								LOGGER.warn("discarding message with unknown method " + msg.name);
+								continue;
+							}
+							org.apache.thrift.protocol.TList elem311 = iprot.readListBegin();
+							java.util.List<java.util.Map<Long, Event>> received = new ArrayList<java.util.Map<Long, Event>>(elem311.size);
+							for (int elem312 = 0; elem312 < elem311.size; ++elem312) {
+								org.apache.thrift.protocol.TMap elem314 = iprot.readMapBegin();
+								java.util.Map<Long, Event> elem313 = new HashMap<Long,Event>(2*elem314.size);
+								for (int elem315 = 0; elem315 < elem314.size; ++elem315) {
+									long elem317 = iprot.readI64();
+									Event elem316 = new Event();
+									elem316.read(iprot);
+									elem313.put(elem317, elem316);
+								}
+								iprot.readMapEnd();
+								received.add(elem313);
+							}
+							iprot.readListEnd();
+							iprot.readMessageEnd();
+							ctxs.add(ctx);
+							reqs.add(received);
+						} catch (TException e) {
+							LOGGER.warn("discarding message which could not be decoded: " + e.getMessage());
+						}
+					}
+					if (!reqs.isEmpty()) {
+						handler.onSomeListBatch(ctxs, reqs);
+					}
+				}
+			};
+		}
+	}
+
+}
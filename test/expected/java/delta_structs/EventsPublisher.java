@@ -0,0 +1,327 @@
+/**
+ * Autogenerated by Frugal Compiler (2.18.0)
+ * DO NOT EDIT UNLESS YOU ARE SURE THAT YOU KNOW WHAT YOU ARE DOING
+ *
+ * @generated
+ */
+
+package variety.java;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.exception.TApplicationExceptionType;
+import com.workiva.frugal.middleware.InvocationHandler;
+import com.workiva.frugal.middleware.ServiceMiddleware;
+import com.workiva.frugal.protocol.*;
+import com.workiva.frugal.provider.FScopeProvider;
+import com.workiva.frugal.transport.FPublisherTransport;
+import com.workiva.frugal.transport.FSubscriberTransport;
+import com.workiva.frugal.transport.FSubscription;
+import com.workiva.frugal.transport.TMemoryOutputBuffer;
+import com.workiva.frugal.util.DeltaDecoder;
+import com.workiva.frugal.util.DeltaEncoder;
+import com.workiva.frugal.util.FanOutFrame;
+import com.workiva.frugal.util.TopicTemplate;
+import org.apache.thrift.TException;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.apache.thrift.protocol.*;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.Collections;
+import java.util.BitSet;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import javax.annotation.Generated;
+
+
+
+
+@Generated(value = "Autogenerated by Frugal Compiler (2.18.0)", date = "2015-11-24")
+public class EventsPublisher {
+
+	/**
+	 * This docstring gets added to the generated code because it has
+	 * the @ sign. Prefix specifies topic prefix tokens, which can be static or
+	 * variable.
+	 */
+	public interface Iface {
+		public void open() throws TException;
+
+		public void close() throws TException;
+
+		/**
+		 * Blocks until previously published messages have been sent. Does nothing unless overridden.
+		 */
+		public default void flush() throws TException {
+		}
+
+		/**
+		 * This is a docstring.
+		 */
+		public void publishEventCreated(FContext ctx, String user, Event req) throws TException;
+
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishEventCreatedToMany(FContext ctx, java.util.Collection<String> userValues, Event req) throws TException;
+
+		public void publishSomeInt(FContext ctx, String user, long req) throws TException;
+
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeIntToMany(FContext ctx, java.util.Collection<String> userValues, long req) throws TException;
+
+		public void publishSomeStr(FContext ctx, String user, String req) throws TException;
+
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeStrToMany(FContext ctx, java.util.Collection<String> userValues, String req) throws TException;
+
+		public void publishSomeList(FContext ctx, String user, java.util.List<java.util.Map<Long, Event>> req) throws TException;
+
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeListToMany(FContext ctx, java.util.Collection<String> userValues, java.util.List<java.util.Map<Long, Event>> req) throws TException;
+
+	}
+
+	/**
+	 * This docstring gets added to the generated code because it has
+	 * the @ sign. Prefix specifies topic prefix tokens, which can be static or
+	 * variable.
+	 */
+	public static class Client implements Iface {
+		private final Iface target;
+		private final Iface proxy;
+
+		public Client(FScopeProvider provider, ServiceMiddleware... middleware) {
+			target = new InternalEventsPublisher(provider);
+			List<ServiceMiddleware> combined = Arrays.asList(middleware);
+			combined.addAll(provider.getMiddleware());
+			middleware = combined.toArray(new ServiceMiddleware[0]);
+			proxy = InvocationHandler.composeMiddleware(target, Iface.class, middleware);
+		}
+
+		public void open() throws TException {
+			target.open();
+		}
+
+		public void close() throws TException {
+			target.close();
+		}
+
+		public void flush() throws TException {
+			target.flush();
+		}
+
+		/**
+		 * This is a docstring.
+		 */
+		public void publishEventCreated(FContext ctx, String user, Event req) throws TException {
+			proxy.publishEventCreated(ctx, user, req);
+		}
+
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishEventCreatedToMany(FContext ctx, java.util.Collection<String> userValues, Event req) throws TException {
+			proxy.publishEventCreatedToMany(ctx, userValues, req);
+		}
+
+		public void publishSomeInt(FContext ctx, String user, long req) throws TException {
+			proxy.publishSomeInt(ctx, user, req);
+		}
+
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeIntToMany(FContext ctx, java.util.Collection<String> userValues, long req) throws TException {
+			proxy.publishSomeIntToMany(ctx, userValues, req);
+		}
+
+		public void publishSomeStr(FContext ctx, String user, String req) throws TException {
+			proxy.publishSomeStr(ctx, user, req);
+		}
+
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeStrToMany(FContext ctx, java.util.Collection<String> userValues, String req) throws TException {
+			proxy.publishSomeStrToMany(ctx, userValues, req);
+		}
+
+		public void publishSomeList(FContext ctx, String user, java.util.List<java.util.Map<Long, Event>> req) throws TException {
+			proxy.publishSomeList(ctx, user, req);
+		}
+
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeListToMany(FContext ctx, java.util.Collection<String> userValues, java.util.List<java.util.Map<Long, Event>> req) throws TException {
+			proxy.publishSomeListToMany(ctx, userValues, req);
+		}
+
+		protected static class InternalEventsPublisher implements Iface {
+
+			private static final TopicTemplate EVENT_CREATED_TOPIC = new TopicTemplate("foo.", ".Events.EventCreated");
+			private static final TopicTemplate SOME_INT_TOPIC = new TopicTemplate("foo.", ".Events.SomeInt");
+			private static final TopicTemplate SOME_STR_TOPIC = new TopicTemplate("foo.", ".Events.SomeStr");
+			private static final TopicTemplate SOME_LIST_TOPIC = new TopicTemplate("foo.", ".Events.SomeList");
+
+			private final DeltaEncoder<Event, Event._Fields> eventCreatedDeltas = new DeltaEncoder<Event, Event._Fields>(Event._Fields.class);
+			private FScopeProvider provider;
+			private FPublisherTransport transport;
+			private FProtocolFactory protocolFactory;
+
+			protected InternalEventsPublisher() {
+			}
+
+			public InternalEventsPublisher(FScopeProvider provider) {
+				this.provider = provider;
+			}
+
+			public void open() throws TException {
+				FScopeProvider.Publisher publisher = provider.buildPublisher();
+				transport = publisher.getTransport();
+				protocolFactory = publisher.getProtocolFactory();
+				transport.open();
+			}
+
+			public void close() throws TException {
+				transport.close();
+			}
+
+			public void flush() throws TException {
+				transport.flush();
+			}
+
+			/**
+			 * This is a docstring.
+			 */
+			public void publishEventCreated(FContext ctx, String user, Event req) throws TException {
+				ctx.addRequestHeader("_topic_user", user);
+				String topic = EVENT_CREATED_TOPIC.format(user);
+				transport.publish(topic, writeEventCreated(ctx, eventCreatedDeltas.encode(topic, ctx, req)));
+			}
+
+			public void publishEventCreatedToMany(FContext ctx, java.util.Collection<String> userValues, Event req) throws TException {
+				DeltaEncoder.removeHeaders(ctx);
+				FanOutFrame frame = new FanOutFrame(writeEventCreated(ctx, req), "_topic_user");
+				for (String user : userValues) {
+					transport.publish(EVENT_CREATED_TOPIC.format(user), frame.toFrame(user));
+				}
+			}
+
+			private byte[] writeEventCreated(FContext ctx, Event req) throws TException {
+				String op = "EventCreated";
+				TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());
+				FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);
+				oprot.writeRequestHeader(ctx);
+				oprot.writeMessageBegin(new TMessage(op, TMessageType.CALL, 0));
+				req.write(oprot);
+				oprot.writeMessageEnd();
+				return memoryBuffer.getWriteBytes();
+			}
+
+
+			public void publishSomeInt(FContext ctx, String user, long req) throws TException {
+				ctx.addRequestHeader("_topic_user", user);
+				String topic = SOME_INT_TOPIC.format(user);
+				transport.publish(topic, writeSomeInt(ctx, req));
+			}
+
+			public void publishSomeIntToMany(FContext ctx, java.util.Collection<String> userValues, long req) throws TException {
+				FanOutFrame frame = new FanOutFrame(writeSomeInt(ctx, req), "_topic_user");
+				for (String user : userValues) {
+					transport.publish(SOME_INT_TOPIC.format(user), frame.toFrame(user));
+				}
+			}
+
+			private byte[] writeSomeInt(FContext ctx, long req) throws TException {
+				String op = "SomeInt";
+				TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());
+				FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);
+				oprot.writeRequestHeader(ctx);
+				oprot.writeMessageBegin(new TMessage(op, TMessageType.CALL, 0));
+				long elem292 = req;
+				oprot.writeI64(elem292);
+				oprot.writeMessageEnd();
+				return memoryBuffer.getWriteBytes();
+			}
+
+
+			public void publishSomeStr(FContext ctx, String user, String req) throws TException {
+				ctx.addRequestHeader("_topic_user", user);
+				String topic = SOME_STR_TOPIC.format(user);
+				transport.publish(topic, writeSomeStr(ctx, req));
+			}
+
+			public void publishSomeStrToMany(FContext ctx, java.util.Collection<String> userValues, String req) throws TException {
+				FanOutFrame frame = new FanOutFrame(writeSomeStr(ctx, req), "_topic_user");
+				for (String user : userValues) {
+					transport.publish(SOME_STR_TOPIC.format(user), frame.toFrame(user));
+				}
+			}
+
+			private byte[] writeSomeStr(FContext ctx, String req) throws TException {
+				String op = "SomeStr";
+				TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());
+				FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);
+				oprot.writeRequestHeader(ctx);
+				oprot.writeMessageBegin(new TMessage(op, TMessageType.CALL, 0));
+				String elem293 = req;
+				oprot.writeString(elem293);
+				oprot.writeMessageEnd();
+				return memoryBuffer.getWriteBytes();
+			}
+
+
+			public void publishSomeList(FContext ctx, String user, java.util.List<java.util.Map<Long, Event>> req) throws TException {
+				ctx.addRequestHeader("_topic_user", user);
+				String topic = SOME_LIST_TOPIC.format(user);
+				transport.publish(topic, writeSomeList(ctx, req));
+			}
+
+			public void publishSomeListToMany(FContext ctx, java.util.Collection<String> userValues, java.util.List<java.util.Map<Long, Event>> req) throws TException {
+				FanOutFrame frame = new FanOutFrame(writeSomeList(ctx, req), "_topic_user");
+				for (String user : userValues) {
+					transport.publish(SOME_LIST_TOPIC.format(user), frame.toFrame(user));
+				}
+			}
+
+			private byte[] writeSomeList(FContext ctx, java.util.List<java.util.Map<Long, Event>> req) throws TException {
+				String op = "SomeList";
+				TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());
+				FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);
+				oprot.writeRequestHeader(ctx);
+				oprot.writeMessageBegin(new TMessage(op, TMessageType.CALL, 0));
+				oprot.writeListBegin(new org.apache.thrift.protocol.TList(org.apache.thrift.protocol.TType.MAP, req.size()));
+				for (java.util.Map<Long, Event> elem294 : req) {
+					oprot.writeMapBegin(new org.apache.thrift.protocol.TMap(org.apache.thrift.protocol.TType.I64, org.apache.thrift.protocol.TType.STRUCT, elem294.size()));
+					for (Map.Entry<Long, Event> elem295 : elem294.entrySet()) {
+						long elem296 = elem295.getKey();
+						oprot.writeI64(elem296);
+						elem295.getValue().write(oprot);
+					}
+					oprot.writeMapEnd();
+				}
+				oprot.writeListEnd();
+				oprot.writeMessageEnd();
+				return memoryBuffer.getWriteBytes();
+			}
+		}
+	}
+}
@@ -0,0 +1,418 @@
+/**
+ * Autogenerated by Frugal Compiler (2.18.0)
+ * DO NOT EDIT UNLESS YOU ARE SURE THAT YOU KNOW WHAT YOU ARE DOING
+ *
+ * @generated
+ */
+
+package variety.java;
+
+import com.workiva.frugal.FContext;
+import com.workiva.frugal.exception.TApplicationExceptionType;
+import com.workiva.frugal.middleware.InvocationHandler;
+import com.workiva.frugal.middleware.ServiceMiddleware;
+import com.workiva.frugal.protocol.*;
+import com.workiva.frugal.provider.FScopeProvider;
+import com.workiva.frugal.transport.FPublisherTransport;
+import com.workiva.frugal.transport.FSubscriberTransport;
+import com.workiva.frugal.transport.FSubscription;
+import com.workiva.frugal.transport.TMemoryOutputBuffer;
+import com.workiva.frugal.util.DeltaDecoder;
+import com.workiva.frugal.util.DeltaEncoder;
+import com.workiva.frugal.util.TopicTemplate;
+import org.apache.thrift.TException;
+import org.apache.thrift.TApplicationException;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.apache.thrift.protocol.*;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.Collections;
+import java.util.BitSet;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import javax.annotation.Generated;
+
+
+
+
+@Generated(value = "Autogenerated by Frugal Compiler (2.18.0)", date = "2015-11-24")
+public class EventsSubscriber {
+
+	/**
+	 * This docstring gets added to the generated code because it has
+	 * the @ sign. Prefix specifies topic prefix tokens, which can be static or
+	 * variable.
+	 */
+	public interface Iface {
+		/**
+		 * This is a docstring.
+		 */
+		public FSubscription subscribeEventCreated(String user, final EventCreatedHandler handler) throws TException;
+
+		public FSubscription subscribeSomeInt(String user, final SomeIntHandler handler) throws TException;
+
+		public FSubscription subscribeSomeStr(String user, final SomeStrHandler handler) throws TException;
+
+		public FSubscription subscribeSomeList(String user, final SomeListHandler handler) throws TException;
+
+	}
+
+	public interface IfaceThrowable {
+		/**
+		 * This is a docstring.
+		 */
+		public FSubscription subscribeEventCreatedThrowable(String user, final EventCreatedThrowableHandler handler) throws TException;
+
+		public FSubscription subscribeSomeIntThrowable(String user, final SomeIntThrowableHandler handler) throws TException;
+
+		public FSubscription subscribeSomeStrThrowable(String user, final SomeStrThrowableHandler handler) throws TException;
+
+		public FSubscription subscribeSomeListThrowable(String user, final SomeListThrowableHandler handler) throws TException;
+
+	}
+
+	public interface EventCreatedHandler {
+		void onEventCreated(FContext ctx, Event req) throws TException;
+	}
+
+	public interface SomeIntHandler {
+		void onSomeInt(FContext ctx, long req) throws TException;
+	}
+
+	public interface SomeStrHandler {
+		void onSomeStr(FContext ctx, String req) throws TException;
+	}
+
+	public interface SomeListHandler {
+		void onSomeList(FContext ctx, java.util.List<java.util.Map<Long, Event>> req) throws TException;
+	}
+
+	public interface EventCreatedThrowableHandler {
+		void onEventCreated(FContext ctx, Event req) throws TException;
+	}
+
+	public interface SomeIntThrowableHandler {
+		void onSomeInt(FContext ctx, long req) throws TException;
+	}
+
+	public interface SomeStrThrowableHandler {
+		void onSomeStr(FContext ctx, String req) throws TException;
+	}
+
+	public interface SomeListThrowableHandler {
+		void onSomeList(FContext ctx, java.util.List<java.util.Map<Long, Event>> req) throws TException;
+	}
+
+	/**
+	 * This docstring gets added to the generated code because it has
+	 * the @ sign. Prefix specifies topic prefix tokens, which can be static or
+	 * variable.
+	 */
+	public static class Client implements Iface, IfaceThrowable {
+		private static final Logger LOGGER = LoggerFactory.getLogger(Client.class);
+
+		private static final TopicTemplate EVENT_CREATED_TOPIC = new TopicTemplate("foo.", ".Events.EventCreated");
+		private static final TopicTemplate SOME_INT_TOPIC = new TopicTemplate("foo.", ".Events.SomeInt");
+		private static final TopicTemplate SOME_STR_TOPIC = new TopicTemplate("foo.", ".Events.SomeStr");
+		private static final TopicTemplate SOME_LIST_TOPIC = new TopicTemplate("foo.", ".Events.SomeList");
+
+		private final FScopeProvider provider;
+		private final ServiceMiddleware[] middleware;
+
+		public Client(FScopeProvider provider, ServiceMiddleware... middleware) {
+			this.provider = provider;
+			List<ServiceMiddleware> combined = Arrays.asList(middleware);
+			combined.addAll(provider.getMiddleware());
+			this.middleware = combined.toArray(new ServiceMiddleware[0]);
+		}
+
+		/**
+		 * This is a docstring.
+		 */
+		public FSubscription subscribeEventCreated(String user, final EventCreatedHandler handler) throws TException {
+			final String op = "EventCreated";
+			final String topic = EVENT_CREATED_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final EventCreatedHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, EventCreatedHandler.class, middleware);
+			transport.subscribe(topic, recvEventCreated(op, subscriber.getProtocolFactory(), proxiedHandler, transport));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvEventCreated(String op, FProtocolFactory pf, EventCreatedHandler handler, final FSubscriberTransport transport) {
+			final DeltaDecoder<Event, Event._Fields> deltas = new DeltaDecoder<Event, Event._Fields>(new Runnable() {
+				public void run() {
+					transport.requestKeyframe();
+				}
+			});
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					Event received = new Event();
+					received.read(iprot);
+					iprot.readMessageEnd();
+					received = deltas.decode(ctx, received);
+					if (received == null) {
+						return;
+					}
+					handler.onEventCreated(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeInt(String user, final SomeIntHandler handler) throws TException {
+			final String op = "SomeInt";
+			final String topic = SOME_INT_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeIntHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeIntHandler.class, middleware);
+			transport.subscribe(topic, recvSomeInt(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeInt(String op, FProtocolFactory pf, SomeIntHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					long received = iprot.readI64();
+					iprot.readMessageEnd();
+					handler.onSomeInt(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeStr(String user, final SomeStrHandler handler) throws TException {
+			final String op = "SomeStr";
+			final String topic = SOME_STR_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeStrHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeStrHandler.class, middleware);
+			transport.subscribe(topic, recvSomeStr(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeStr(String op, FProtocolFactory pf, SomeStrHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					String received = iprot.readString();
+					iprot.readMessageEnd();
+					handler.onSomeStr(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeList(String user, final SomeListHandler handler) throws TException {
+			final String op = "SomeList";
+			final String topic = SOME_LIST_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeListHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeListHandler.class, middleware);
+			transport.subscribe(topic, recvSomeList(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeList(String op, FProtocolFactory pf, SomeListHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					org.apache.thrift.protocol.TList elem297 = iprot.readListBegin();
+					java.util.List<java.util.Map<Long, Event>> received = new ArrayList<java.util.Map<Long, Event>>(elem297.size);
+					for (int elem298 = 0; elem298 < elem297.size; ++elem298) {
+						org.apache.thrift.protocol.TMap elem300 = iprot.readMapBegin();
+						java.util.Map<Long, Event> elem299 = new HashMap<Long,Event>(2*elem300.size);
+						for (int elem301 = 0; elem301 < elem300.size; ++elem301) {
+							long elem303 = iprot.readI64();
+							Event elem302 = new Event();
+							elem302.read(iprot);
+							elem299.put(elem303, elem302);
+						}
+						iprot.readMapEnd();
+						received.add(elem299);
+					}
+					iprot.readListEnd();
+					iprot.readMessageEnd();
+					handler.onSomeList(ctx, received);
+				}
+			};
+		}
+
+		/**
+		 * This is a docstring.
+		 */
+		public FSubscription subscribeEventCreatedThrowable(String user, final EventCreatedThrowableHandler handler) throws TException {
+			final String op = "EventCreated";
+			final String topic = EVENT_CREATED_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final EventCreatedThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, EventCreatedThrowableHandler.class, middleware);
+			transport.subscribe(topic, recvEventCreated(op, subscriber.getProtocolFactory(), proxiedHandler, transport));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvEventCreated(String op, FProtocolFactory pf, EventCreatedThrowableHandler handler, final FSubscriberTransport transport) {
+			final DeltaDecoder<Event, Event._Fields> deltas = new DeltaDecoder<Event, Event._Fields>(new Runnable() {
+				public void run() {
+					transport.requestKeyframe();
+				}
+			});
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					Event received = new Event();
+					received.read(iprot);
+					iprot.readMessageEnd();
+					received = deltas.decode(ctx, received);
+					if (received == null) {
+						return;
+					}
+					handler.onEventCreated(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeIntThrowable(String user, final SomeIntThrowableHandler handler) throws TException {
+			final String op = "SomeInt";
+			final String topic = SOME_INT_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeIntThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeIntThrowableHandler.class, middleware);
+			transport.subscribe(topic, recvSomeInt(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeInt(String op, FProtocolFactory pf, SomeIntThrowableHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					long received = iprot.readI64();
+					iprot.readMessageEnd();
+					handler.onSomeInt(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeStrThrowable(String user, final SomeStrThrowableHandler handler) throws TException {
+			final String op = "SomeStr";
+			final String topic = SOME_STR_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeStrThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeStrThrowableHandler.class, middleware);
+			transport.subscribe(topic, recvSomeStr(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeStr(String op, FProtocolFactory pf, SomeStrThrowableHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					String received = iprot.readString();
+					iprot.readMessageEnd();
+					handler.onSomeStr(ctx, received);
+				}
+			};
+		}
+
+		public FSubscription subscribeSomeListThrowable(String user, final SomeListThrowableHandler handler) throws TException {
+			final String op = "SomeList";
+			final String topic = SOME_LIST_TOPIC.format(user);
+			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
+			final FSubscriberTransport transport = subscriber.getTransport();
+			final SomeListThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeListThrowableHandler.class, middleware);
+			transport.subscribe(topic, recvSomeList(op, subscriber.getProtocolFactory(), proxiedHandler));
+			return FSubscription.of(topic, transport);
+		}
+
+		private FAsyncCallback recvSomeList(String op, FProtocolFactory pf, SomeListThrowableHandler handler) {
+			return new FAsyncCallback() {
+				public void onMessage(TTransport tr) throws TException {
+					FProtocol iprot = pf.getProtocol(tr);
+					FContext ctx = iprot.readRequestHeader();
+					TMessage msg = iprot.readMessageBegin();
+					if (!msg.name.equals(op)) {
+						TProtocolUtil.skip(iprot, TType.STRUCT);
+						iprot.readMessageEnd();
+						throw new TApplicationException(TApplicationExceptionType.UNKNOWN_METHOD);
+					}
+					org.apache.thrift.protocol.TList elem304 = iprot.readListBegin();
+					java.util.List<java.util.Map<Long, Event>> received = new ArrayList<java.util.Map<Long, Event>>(elem304.size);
+					for (int elem305 = 0; elem305 < elem304.size; ++elem305) {
+						org.apache.thrift.protocol.TMap elem307 = iprot.readMapBegin();
+						java.util.Map<Long, Event> elem306 = new HashMap<Long,Event>(2*elem307.size);
+						for (int elem308 = 0; elem308 < elem307.size; ++elem308) {
+							long elem310 = iprot.readI64();
+							Event elem309 = new Event();
+							elem309.read(iprot);
+							elem306.put(elem310, elem309);
+						}
+						iprot.readMapEnd();
+						received.add(elem306);
+					}
+					iprot.readListEnd();
+					iprot.readMessageEnd();
+					handler.onSomeList(ctx, received);
+				}
+			};
+		}
+	}
+
+}
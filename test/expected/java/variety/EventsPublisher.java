@@ -17,6 +17,8 @@ import com.workiva.frugal.transport.FPublisherTransport;
 import com.workiva.frugal.transport.FSubscriberTransport;
 import com.workiva.frugal.transport.FSubscription;
 import com.workiva.frugal.transport.TMemoryOutputBuffer;
+import com.workiva.frugal.util.FanOutFrame;
+import com.workiva.frugal.util.TopicTemplate;
 import org.apache.thrift.TException;
 import org.apache.thrift.TApplicationException;
 import org.apache.thrift.transport.TTransport;
@@ -55,17 +57,43 @@ public class EventsPublisher {
 
 		public void close() throws TException;
 
+		/**
+		 * Blocks until previously published messages have been sent. Does nothing unless overridden.
+		 */
+		public default void flush() throws TException {
+		}
+
 		/**
 		 * This is a docstring.
 		 */
 		public void publishEventCreated(FContext ctx, String user, Event req) throws TException;
 
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishEventCreatedToMany(FContext ctx, java.util.Collection<String> userValues, Event req) throws TException;
+
 		public void publishSomeInt(FContext ctx, String user, long req) throws TException;
 
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeIntToMany(FContext ctx, java.util.Collection<String> userValues, long req) throws TException;
+
 		public void publishSomeStr(FContext ctx, String user, String req) throws TException;
 
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeStrToMany(FContext ctx, java.util.Collection<String> userValues, String req) throws TException;
+
 		public void publishSomeList(FContext ctx, String user, java.util.List<java.util.Map<Long, Event>> req) throws TException;
 
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeListToMany(FContext ctx, java.util.Collection<String> userValues, java.util.List<java.util.Map<Long, Event>> req) throws TException;
+
 	}
 
 	/**
@@ -74,8 +102,6 @@ public class EventsPublisher {
 	 * variable.
 	 */
 	public static class Client implements Iface {
-		private static final String DELIMITER = ".";
-
 		private final Iface target;
 		private final Iface proxy;
 
@@ -95,6 +121,10 @@ public class EventsPublisher {
 			target.close();
 		}
 
+		public void flush() throws TException {
+			target.flush();
+		}
+
 		/**
 		 * This is a docstring.
 		 */
@@ -102,20 +132,53 @@ public class EventsPublisher {
 			proxy.publishEventCreated(ctx, user, req);
 		}
 
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishEventCreatedToMany(FContext ctx, java.util.Collection<String> userValues, Event req) throws TException {
+			proxy.publishEventCreatedToMany(ctx, userValues, req);
+		}
+
 		public void publishSomeInt(FContext ctx, String user, long req) throws TException {
 			proxy.publishSomeInt(ctx, user, req);
 		}
 
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeIntToMany(FContext ctx, java.util.Collection<String> userValues, long req) throws TException {
+			proxy.publishSomeIntToMany(ctx, userValues, req);
+		}
+
 		public void publishSomeStr(FContext ctx, String user, String req) throws TException {
 			proxy.publishSomeStr(ctx, user, req);
 		}
 
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeStrToMany(FContext ctx, java.util.Collection<String> userValues, String req) throws TException {
+			proxy.publishSomeStrToMany(ctx, userValues, req);
+		}
+
 		public void publishSomeList(FContext ctx, String user, java.util.List<java.util.Map<Long, Event>> req) throws TException {
 			proxy.publishSomeList(ctx, user, req);
 		}
 
+		/**
+		 * Publishes req to the topic of each of the given user values, serializing it only once.
+		 */
+		public void publishSomeListToMany(FContext ctx, java.util.Collection<String> userValues, java.util.List<java.util.Map<Long, Event>> req) throws TException {
+			proxy.publishSomeListToMany(ctx, userValues, req);
+		}
+
 		protected static class InternalEventsPublisher implements Iface {
 
+			private static final TopicTemplate EVENT_CREATED_TOPIC = new TopicTemplate("foo.", ".Events.EventCreated");
+			private static final TopicTemplate SOME_INT_TOPIC = new TopicTemplate("foo.", ".Events.SomeInt");
+			private static final TopicTemplate SOME_STR_TOPIC = new TopicTemplate("foo.", ".Events.SomeStr");
+			private static final TopicTemplate SOME_LIST_TOPIC = new TopicTemplate("foo.", ".Events.SomeList");
+
 			private FScopeProvider provider;
 			private FPublisherTransport transport;
 			private FProtocolFactory protocolFactory;
@@ -138,29 +201,53 @@ public class EventsPublisher {
 				transport.close();
 			}
 
+			public void flush() throws TException {
+				transport.flush();
+			}
+
 			/**
 			 * This is a docstring.
 			 */
 			public void publishEventCreated(FContext ctx, String user, Event req) throws TException {
 				ctx.addRequestHeader("_topic_user", user);
+				String topic = EVENT_CREATED_TOPIC.format(user);
+				transport.publish(topic, writeEventCreated(ctx, req));
+			}
+
+			public void publishEventCreatedToMany(FContext ctx, java.util.Collection<String> userValues, Event req) throws TException {
+				FanOutFrame frame = new FanOutFrame(writeEventCreated(ctx, req), "_topic_user");
+				for (String user : userValues) {
+					transport.publish(EVENT_CREATED_TOPIC.format(user), frame.toFrame(user));
+				}
+			}
+
+			private byte[] writeEventCreated(FContext ctx, Event req) throws TException {
 				String op = "EventCreated";
-				String prefix = String.format("foo.%s.", user);
-				String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
 				TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());
 				FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);
 				oprot.writeRequestHeader(ctx);
 				oprot.writeMessageBegin(new TMessage(op, TMessageType.CALL, 0));
 				req.write(oprot);
 				oprot.writeMessageEnd();
-				transport.publish(topic, memoryBuffer.getWriteBytes());
+				return memoryBuffer.getWriteBytes();
 			}
 
 
 			public void publishSomeInt(FContext ctx, String user, long req) throws TException {
 				ctx.addRequestHeader("_topic_user", user);
+				String topic = SOME_INT_TOPIC.format(user);
+				transport.publish(topic, writeSomeInt(ctx, req));
+			}
+
+			public void publishSomeIntToMany(FContext ctx, java.util.Collection<String> userValues, long req) throws TException {
+				FanOutFrame frame = new FanOutFrame(writeSomeInt(ctx, req), "_topic_user");
+				for (String user : userValues) {
+					transport.publish(SOME_INT_TOPIC.format(user), frame.toFrame(user));
+				}
+			}
+
+			private byte[] writeSomeInt(FContext ctx, long req) throws TException {
 				String op = "SomeInt";
-				String prefix = String.format("foo.%s.", user);
-				String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
 				TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());
 				FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);
 				oprot.writeRequestHeader(ctx);
@@ -168,15 +255,25 @@ public class EventsPublisher {
 				long elem292 = req;
 				oprot.writeI64(elem292);
 				oprot.writeMessageEnd();
-				transport.publish(topic, memoryBuffer.getWriteBytes());
+				return memoryBuffer.getWriteBytes();
 			}
 
 
 			public void publishSomeStr(FContext ctx, String user, String req) throws TException {
 				ctx.addRequestHeader("_topic_user", user);
+				String topic = SOME_STR_TOPIC.format(user);
+				transport.publish(topic, writeSomeStr(ctx, req));
+			}
+
+			public void publishSomeStrToMany(FContext ctx, java.util.Collection<String> userValues, String req) throws TException {
+				FanOutFrame frame = new FanOutFrame(writeSomeStr(ctx, req), "_topic_user");
+				for (String user : userValues) {
+					transport.publish(SOME_STR_TOPIC.format(user), frame.toFrame(user));
+				}
+			}
+
+			private byte[] writeSomeStr(FContext ctx, String req) throws TException {
 				String op = "SomeStr";
-				String prefix = String.format("foo.%s.", user);
-				String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
 				TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());
 				FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);
 				oprot.writeRequestHeader(ctx);
@@ -184,15 +281,25 @@ public class EventsPublisher {
 				String elem293 = req;
 				oprot.writeString(elem293);
 				oprot.writeMessageEnd();
-				transport.publish(topic, memoryBuffer.getWriteBytes());
+				return memoryBuffer.getWriteBytes();
 			}
 
 
 			public void publishSomeList(FContext ctx, String user, java.util.List<java.util.Map<Long, Event>> req) throws TException {
 				ctx.addRequestHeader("_topic_user", user);
+				String topic = SOME_LIST_TOPIC.format(user);
+				transport.publish(topic, writeSomeList(ctx, req));
+			}
+
+			public void publishSomeListToMany(FContext ctx, java.util.Collection<String> userValues, java.util.List<java.util.Map<Long, Event>> req) throws TException {
+				FanOutFrame frame = new FanOutFrame(writeSomeList(ctx, req), "_topic_user");
+				for (String user : userValues) {
+					transport.publish(SOME_LIST_TOPIC.format(user), frame.toFrame(user));
+				}
+			}
+
+			private byte[] writeSomeList(FContext ctx, java.util.List<java.util.Map<Long, Event>> req) throws TException {
 				String op = "SomeList";
-				String prefix = String.format("foo.%s.", user);
-				String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
 				TMemoryOutputBuffer memoryBuffer = new TMemoryOutputBuffer(transport.getPublishSizeLimit());
 				FProtocol oprot = protocolFactory.getProtocol(memoryBuffer);
 				oprot.writeRequestHeader(ctx);
@@ -209,7 +316,7 @@ public class EventsPublisher {
 				}
 				oprot.writeListEnd();
 				oprot.writeMessageEnd();
-				transport.publish(topic, memoryBuffer.getWriteBytes());
+				return memoryBuffer.getWriteBytes();
 			}
 		}
 	}
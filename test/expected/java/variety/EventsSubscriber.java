@@ -17,6 +17,7 @@ import com.workiva.frugal.transport.FPublisherTransport;
 import com.workiva.frugal.transport.FSubscriberTransport;
 import com.workiva.frugal.transport.FSubscription;
 import com.workiva.frugal.transport.TMemoryOutputBuffer;
+import com.workiva.frugal.util.TopicTemplate;
 import org.apache.thrift.TException;
 import org.apache.thrift.TApplicationException;
 import org.apache.thrift.transport.TTransport;
@@ -116,9 +117,13 @@ public class EventsSubscriber {
 	 * variable.
 	 */
 	public static class Client implements Iface, IfaceThrowable {
-		private static final String DELIMITER = ".";
 		private static final Logger LOGGER = LoggerFactory.getLogger(Client.class);
 
+		private static final TopicTemplate EVENT_CREATED_TOPIC = new TopicTemplate("foo.", ".Events.EventCreated");
+		private static final TopicTemplate SOME_INT_TOPIC = new TopicTemplate("foo.", ".Events.SomeInt");
+		private static final TopicTemplate SOME_STR_TOPIC = new TopicTemplate("foo.", ".Events.SomeStr");
+		private static final TopicTemplate SOME_LIST_TOPIC = new TopicTemplate("foo.", ".Events.SomeList");
+
 		private final FScopeProvider provider;
 		private final ServiceMiddleware[] middleware;
 
@@ -134,8 +139,7 @@ public class EventsSubscriber {
 		 */
 		public FSubscription subscribeEventCreated(String user, final EventCreatedHandler handler) throws TException {
 			final String op = "EventCreated";
-			String prefix = String.format("foo.%s.", user);
-			final String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
+			final String topic = EVENT_CREATED_TOPIC.format(user);
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final EventCreatedHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, EventCreatedHandler.class, middleware);
@@ -164,8 +168,7 @@ public class EventsSubscriber {
 
 		public FSubscription subscribeSomeInt(String user, final SomeIntHandler handler) throws TException {
 			final String op = "SomeInt";
-			String prefix = String.format("foo.%s.", user);
-			final String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
+			final String topic = SOME_INT_TOPIC.format(user);
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final SomeIntHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeIntHandler.class, middleware);
@@ -193,8 +196,7 @@ public class EventsSubscriber {
 
 		public FSubscription subscribeSomeStr(String user, final SomeStrHandler handler) throws TException {
 			final String op = "SomeStr";
-			String prefix = String.format("foo.%s.", user);
-			final String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
+			final String topic = SOME_STR_TOPIC.format(user);
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final SomeStrHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeStrHandler.class, middleware);
@@ -222,8 +224,7 @@ public class EventsSubscriber {
 
 		public FSubscription subscribeSomeList(String user, final SomeListHandler handler) throws TException {
 			final String op = "SomeList";
-			String prefix = String.format("foo.%s.", user);
-			final String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
+			final String topic = SOME_LIST_TOPIC.format(user);
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final SomeListHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeListHandler.class, middleware);
@@ -268,8 +269,7 @@ public class EventsSubscriber {
 		 */
 		public FSubscription subscribeEventCreatedThrowable(String user, final EventCreatedThrowableHandler handler) throws TException {
 			final String op = "EventCreated";
-			String prefix = String.format("foo.%s.", user);
-			final String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
+			final String topic = EVENT_CREATED_TOPIC.format(user);
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final EventCreatedThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, EventCreatedThrowableHandler.class, middleware);
@@ -298,8 +298,7 @@ public class EventsSubscriber {
 
 		public FSubscription subscribeSomeIntThrowable(String user, final SomeIntThrowableHandler handler) throws TException {
 			final String op = "SomeInt";
-			String prefix = String.format("foo.%s.", user);
-			final String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
+			final String topic = SOME_INT_TOPIC.format(user);
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final SomeIntThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeIntThrowableHandler.class, middleware);
@@ -327,8 +326,7 @@ public class EventsSubscriber {
 
 		public FSubscription subscribeSomeStrThrowable(String user, final SomeStrThrowableHandler handler) throws TException {
 			final String op = "SomeStr";
-			String prefix = String.format("foo.%s.", user);
-			final String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
+			final String topic = SOME_STR_TOPIC.format(user);
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final SomeStrThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeStrThrowableHandler.class, middleware);
@@ -356,8 +354,7 @@ public class EventsSubscriber {
 
 		public FSubscription subscribeSomeListThrowable(String user, final SomeListThrowableHandler handler) throws TException {
 			final String op = "SomeList";
-			String prefix = String.format("foo.%s.", user);
-			final String topic = String.format("%sEvents%s%s", prefix, DELIMITER, op);
+			final String topic = SOME_LIST_TOPIC.format(user);
 			final FScopeProvider.Subscriber subscriber = provider.buildSubscriber();
 			final FSubscriberTransport transport = subscriber.getTransport();
 			final SomeListThrowableHandler proxiedHandler = InvocationHandler.composeMiddleware(handler, SomeListThrowableHandler.class, middleware);
@@ -120,3 +120,58 @@ func TestValidJavaBoxedPrimitives(t *testing.T) {
 	copyAllFiles(t, files)
 	compareAllFiles(t, files)
 }
+
+func TestValidJavaBatchSubscribers(t *testing.T) {
+	defer globals.Reset()
+	nowBefore := globals.Now
+	defer func() {
+		globals.Now = nowBefore
+	}()
+	globals.Now = time.Date(2015, 11, 24, 0, 0, 0, 0, time.UTC)
+
+	options := compiler.Options{
+		File:    frugalGenFile,
+		Gen:     "java:batch_subscribers",
+		Out:     outputDir + "/batch_subscribers",
+		Delim:   delim,
+		Recurse: true,
+	}
+	if err := compiler.Compile(options); err != nil {
+		t.Fatal("Unexpected error", err)
+	}
+
+	files := []FileComparisonPair{
+		{"expected/java/batch_subscribers/EventsSubscriber.java", filepath.Join(outputDir, "batch_subscribers", "variety", "java", "EventsSubscriber.java")},
+	}
+
+	copyAllFiles(t, files)
+	compareAllFiles(t, files)
+}
+
+func TestValidJavaDeltaStructs(t *testing.T) {
+	defer globals.Reset()
+	nowBefore := globals.Now
+	defer func() {
+		globals.Now = nowBefore
+	}()
+	globals.Now = time.Date(2015, 11, 24, 0, 0, 0, 0, time.UTC)
+
+	options := compiler.Options{
+		File:    frugalGenFile,
+		Gen:     "java:delta_structs",
+		Out:     outputDir + "/delta_structs",
+		Delim:   delim,
+		Recurse: true,
+	}
+	if err := compiler.Compile(options); err != nil {
+		t.Fatal("Unexpected error", err)
+	}
+
+	files := []FileComparisonPair{
+		{"expected/java/delta_structs/EventsPublisher.java", filepath.Join(outputDir, "delta_structs", "variety", "java", "EventsPublisher.java")},
+		{"expected/java/delta_structs/EventsSubscriber.java", filepath.Join(outputDir, "delta_structs", "variety", "java", "EventsSubscriber.java")},
+	}
+
+	copyAllFiles(t, files)
+	compareAllFiles(t, files)
+}